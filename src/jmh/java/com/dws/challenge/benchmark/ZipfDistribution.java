@@ -0,0 +1,34 @@
+package com.dws.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*** skewed key distribution for benchmarks, rank 0 is the hottest key
+ * skew 0 gives uniform keys, skew around 1 matches typical hot-account traffic
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfDistribution(int size, double skew) {
+        this.cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0d / Math.pow(rank + 1, skew);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
@@ -0,0 +1,121 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** transfers between uniformly chosen accounts of a cluster of `nodes` in-process nodes talking over localhost
+ * every transfer is sent to the node owning its sender, so (nodes - 1) / nodes of them cross partitions and are
+ * committed in two phases, nodes=1 is the same cluster setup with only local transfers.
+ * All nodes share the CPUs of one JVM here, the numbers show the cost of the protocol, not the scaling
+ * of nodes on their own machines
+ * ./gradlew jmh -PjmhIncludes=PartitionedTransferBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class PartitionedTransferBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"1000"})
+    public int accountCount;
+
+    private Path logDirectory;
+    private ConfigurableApplicationContext[] contexts;
+    private AccountBalanceTransferService[] transferServices;
+    private String[] ids;
+    private int[] owners;
+
+    @Setup
+    public void setUp() throws IOException {
+        logDirectory = Files.createTempDirectory("coordinator");
+        StringJoiner addresses = new StringJoiner(",");
+        int[] ports = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+            addresses.add("localhost:" + ports[i]);
+        }
+        contexts = new ConfigurableApplicationContext[nodes];
+        transferServices = new AccountBalanceTransferService[nodes];
+        for (int i = 0; i < nodes; i++) {
+            contexts[i] = new SpringApplicationBuilder(ChallengeApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .initializers(context -> context.getBeanFactory().registerSingleton("notificationService",
+                            (NotificationService) (account, description) -> { }))
+                    .run("--wire.enabled=true", "--wire.port=" + ports[i], "--cluster.enabled=true",
+                            "--cluster.node-id=" + i, "--cluster.nodes=" + addresses,
+                            "--cluster.log-directory=" + logDirectory.resolve("node-" + i),
+                            "--logging.level.root=WARN");
+            transferServices[i] = contexts[i].getBean(AccountBalanceTransferService.class);
+        }
+
+        AccountsService accountsService = contexts[0].getBean(AccountsService.class);
+        ids = new String[accountCount];
+        owners = new int[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            ids[i] = "Id-" + i;
+            owners[i] = PartitionRouter.partitionOf(ids[i], nodes);
+            accountsService.createAccount(new Account(ids[i], new BigDecimal(1_000_000_000_000L)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (ConfigurableApplicationContext context : contexts) {
+            context.close();
+        }
+        FileSystemUtils.deleteRecursively(logDirectory);
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accountCount);
+        int receiver = random.nextInt(accountCount - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        AccountBalanceTransferDto dto = new AccountBalanceTransferDto();
+        dto.setSenderAccountId(ids[sender]);
+        dto.setReceiverAccountId(ids[receiver]);
+        dto.setAmount(BigDecimal.ONE);
+        transferServices[owners[sender]].transferThreadSafe(dto);
+    }
+}
@@ -0,0 +1,92 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*** startup recovery time: latest snapshot with accountCount accounts plus a journal tail of tailTransfers
+ * ./gradlew jmh -PjmhIncludes=JournalRecoveryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class JournalRecoveryBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int accountCount;
+
+    @Param({"1000000"})
+    public int tailTransfers;
+
+    private Path directory;
+    private MappedTransferJournal recovered;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws Exception {
+        directory = Files.createTempDirectory("journal-recovery-benchmark");
+        MappedTransferJournal journal = new MappedTransferJournal(properties(), new AccountsRepositoryInMemory());
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account("Id-" + i, new BigDecimal(1_000_000));
+            journal.appendAccountCreated(accounts[i]);
+        }
+        journal.compact();
+        for (int i = 0; i < tailTransfers; i++) {
+            journal.appendTransfer(accounts[i % accountCount], accounts[(i * 31 + 7) % accountCount], BigDecimal.ONE);
+        }
+        journal.sync();
+        journal.close();
+    }
+
+    @Benchmark
+    public AccountsRepositoryInMemory recover() throws IOException {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        recovered = new MappedTransferJournal(properties(), repository);
+        return repository;
+    }
+
+    //every recovery opens a new empty segment, it only adds an empty file to the next replay
+    @TearDown(Level.Iteration)
+    public void closeRecovered() throws Exception {
+        if (recovered != null) {
+            recovered.close();
+            recovered = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    private JournalProperties properties() {
+        JournalProperties properties = new JournalProperties();
+        properties.setDirectory(directory.toString());
+        //compaction is started explicitly in writeJournal
+        properties.setSnapshotInterval(Duration.ofDays(1));
+        return properties;
+    }
+}
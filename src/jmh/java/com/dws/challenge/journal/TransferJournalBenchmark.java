@@ -0,0 +1,101 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceSnapshots;
+import com.dws.challenge.service.BenchmarkServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** transfers/sec through AccountBalanceTransferService with the journal off and on,
+ * with the journal on every call waits for its group commit
+ * ./gradlew jmh -PjmhIncludes=TransferJournalBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class TransferJournalBenchmark {
+
+    @Param({"off", "on"})
+    public String journal;
+
+    @Param({"10000"})
+    public int accountCount;
+
+    @Param({"2"})
+    public int groupCommitMillis;
+
+    private Path directory;
+    private MappedTransferJournal mappedJournal;
+    private AccountBalanceTransferService transferService;
+    private AccountBalanceTransferDto[] transfers;
+
+    @Setup
+    public void setUp() throws IOException {
+        TransferJournal transferJournal = new NoOpTransferJournal();
+        if ("on".equals(journal)) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            JournalProperties properties = new JournalProperties();
+            properties.setDirectory(directory.toString());
+            properties.setGroupCommitInterval(Duration.ofMillis(groupCommitMillis));
+            mappedJournal = new MappedTransferJournal(properties, new AccountsRepositoryInMemory());
+            transferJournal = mappedJournal;
+        }
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        AccountsService accountsService = new AccountsService(repository, transferJournal,
+                new BalanceSnapshots(repository, transferJournal));
+        for (int i = 0; i < accountCount; i++) {
+            accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000L)));
+        }
+        transferService = BenchmarkServices.transferService(accountsService, transferJournal);
+
+        transfers = new AccountBalanceTransferDto[1024];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < transfers.length; i++) {
+            transfers[i] = new AccountBalanceTransferDto();
+            transfers[i].setSenderAccountId("Id-" + random.nextInt(accountCount));
+            transfers[i].setReceiverAccountId("Id-" + random.nextInt(accountCount));
+            transfers[i].setAmount(BigDecimal.ONE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (mappedJournal != null) {
+            mappedJournal.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        transferService.transferThreadSafe(transfers[ThreadLocalRandom.current().nextInt(transfers.length)]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.dws.challenge.ledger;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransactionPageDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** heap retained per posting and latency of one page of GET /v1/accounts/{accountId}/transactions
+ * the ledger is filled with `postings` postings spread over `accountCount` accounts in setup, which prints
+ * the retained bytes per posting, pages of 50 are then read at random cursors of random accounts.
+ * 1B postings need about 21 GB of heap, scale postings and -Xmx together, e.g.
+ * ./gradlew jmh -PjmhIncludes=TransferLedgerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(4)
+public class TransferLedgerBenchmark {
+
+    private static final int PAGE = 50;
+
+    @Param({"100000000"})
+    public long postings;
+
+    @Param({"1000", "1000000"})
+    public int accountCount;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private Account[] accounts;
+    private TransferLedger ledger;
+
+    @Setup
+    public void fill() {
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), BigDecimal.ZERO);
+        }
+        long heapBefore = usedHeapAfterGc();
+        ledger = new TransferLedger(true);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long started = System.nanoTime();
+        for (long i = 0; i < postings / 2; i++) {
+            int sender = random.nextInt(accountCount);
+            int receiver = random.nextInt(accountCount - 1);
+            if (receiver >= sender) {
+                receiver++;
+            }
+            //typical amounts, cached BigDecimal values are avoided to not undercount allocation
+            ledger.transferred(accounts[sender], accounts[receiver], BigDecimal.valueOf(1 + random.nextInt(100_000), 2),
+                    System.currentTimeMillis());
+        }
+        double fillSeconds = (System.nanoTime() - started) / 1e9;
+        long retained = usedHeapAfterGc() - heapBefore;
+        System.out.printf("%n%d postings over %d accounts appended in %.1f s (%.0f postings/s), "
+                        + "ledger retains %.1f bytes per posting%n", postings, accountCount, fillSeconds,
+                postings / fillSeconds, (double) retained / postings);
+    }
+
+    @Benchmark
+    public TransactionPageDto page() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String accountId = accounts[random.nextInt(accountCount)].getAccountId();
+        //cursors within the average history length
+        long cursor = 1 + random.nextLong(Math.max(1, postings / accountCount));
+        return ledger.page(accountId, cursor, PAGE);
+    }
+
+    private long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
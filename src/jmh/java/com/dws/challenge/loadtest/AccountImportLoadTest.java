@@ -0,0 +1,110 @@
+package com.dws.challenge.loadtest;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*** streams a generated body of `accounts` NDJSON (or CSV) lines into POST /v1/accounts/import of a running server,
+ * then reads GET /v1/accounts/export back, and reports accounts/sec of both.
+ * The body is generated while it is sent, so the client does not hold it in memory either.
+ * Peak heap of the server is taken from its GC log, e.g. start it with -Xlog:gc:gc.log
+ * arguments are key=value: url, accounts, format (NDJSON or CSV), prefix
+ * ./gradlew loadTest -PloadTestMain=com.dws.challenge.loadtest.AccountImportLoadTest -PloadTestArgs="accounts=10000000"
+ */
+public class AccountImportLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String url = arguments.getOrDefault("url", "http://localhost:18080");
+        long accounts = Long.parseLong(arguments.getOrDefault("accounts", "1000000"));
+        boolean csv = "CSV".equalsIgnoreCase(arguments.getOrDefault("format", "NDJSON"));
+        String prefix = arguments.getOrDefault("prefix", "Id-import-");
+
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest importRequest = HttpRequest.newBuilder(URI.create(url + "/v1/accounts/import"))
+                .header("Content-Type", csv ? "text/csv" : "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new GeneratedAccounts(accounts, csv, prefix)))
+                .build();
+        long started = System.nanoTime();
+        HttpResponse<String> imported = client.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        double importSeconds = (System.nanoTime() - started) / 1e9;
+        String report = imported.body();
+        System.out.printf("import status=%d %.1f s, %.0f accounts/s%n", imported.statusCode(), importSeconds,
+                accounts / importSeconds);
+        System.out.println(report.length() > 300 ? report.substring(0, 300) + "..." : report);
+
+        started = System.nanoTime();
+        HttpResponse<InputStream> exported = client.send(HttpRequest.newBuilder(
+                URI.create(url + "/v1/accounts/export?format=" + (csv ? "CSV" : "NDJSON"))).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        long lines = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream body = exported.body()) {
+            int read;
+            while ((read = body.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        double exportSeconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("export status=%d %d lines %.1f s, %.0f accounts/s%n", exported.statusCode(), lines,
+                exportSeconds, lines / exportSeconds);
+    }
+
+    //one line per account, generated on demand
+    private static final class GeneratedAccounts extends InputStream {
+        private final long accounts;
+        private final boolean csv;
+        private final String prefix;
+        private long next;
+        private byte[] line = new byte[0];
+        private int position;
+
+        private GeneratedAccounts(long accounts, boolean csv, String prefix) {
+            this.accounts = accounts;
+            this.csv = csv;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int written = 0;
+            while (written < length) {
+                if (position == line.length) {
+                    if (next == accounts) {
+                        break;
+                    }
+                    long balance = next % 100_000;
+                    line = (csv ? prefix + next + "," + balance + "\n"
+                            : "{\"accountId\":\"" + prefix + next + "\",\"balance\":" + balance + "}\n")
+                            .getBytes(StandardCharsets.UTF_8);
+                    position = 0;
+                    next++;
+                }
+                int count = Math.min(length - written, line.length - position);
+                System.arraycopy(line, position, buffer, offset + written, count);
+                position += count;
+                written += count;
+            }
+            return written == 0 && length > 0 ? -1 : written;
+        }
+    }
+}
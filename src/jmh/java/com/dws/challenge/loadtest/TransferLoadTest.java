@@ -0,0 +1,148 @@
+package com.dws.challenge.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** closed-loop load test against a running server, keeps `concurrency` transfers in flight and reports
+ * throughput and latency percentiles, used to compare request execution models:
+ *   blocking endpoint on Tomcat pool threads:  path=/v1/accounts/balanceTransfer
+ *   same endpoint on virtual threads:          server started with spring.threads.virtual.enabled=true (JDK 21+)
+ *   CompletionStage endpoint:                  path=/v1/accounts/balanceTransfer/async
+ * arguments are key=value: url, path, concurrency, seconds, warmup (seconds), accounts, amount
+ * ./gradlew loadTest -PloadTestArgs="path=/v1/accounts/balanceTransfer/async concurrency=1000"
+ */
+public class TransferLoadTest {
+
+    private static final int MAX_SAMPLES = 20_000_000;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String url;
+    private final String path;
+    private final int concurrency;
+    private final int accounts;
+    private final int amount;
+
+    private final long[] latencies = new long[MAX_SAMPLES];
+    private final AtomicInteger samples = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean recording;
+
+    TransferLoadTest(Map<String, String> arguments) {
+        this.url = arguments.getOrDefault("url", "http://localhost:18080");
+        this.path = arguments.getOrDefault("path", "/v1/accounts/balanceTransfer");
+        this.concurrency = Integer.parseInt(arguments.getOrDefault("concurrency", "256"));
+        this.accounts = Integer.parseInt(arguments.getOrDefault("accounts", "1000"));
+        this.amount = Integer.parseInt(arguments.getOrDefault("amount", "1"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        TransferLoadTest loadTest = new TransferLoadTest(arguments);
+        loadTest.createAccounts();
+        loadTest.run(Integer.parseInt(arguments.getOrDefault("warmup", "5")), false);
+        loadTest.run(Integer.parseInt(arguments.getOrDefault("seconds", "30")), true);
+        System.exit(0);
+    }
+
+    void createAccounts() throws Exception {
+        for (int i = 0; i < accounts; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/v1/accounts"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"accountId\":\"Id-load-" + i + "\",\"balance\":1000000000000}"))
+                    .build();
+            //400 is an account left by a previous run
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    void run(int seconds, boolean record) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        samples.set(0);
+        rejected.set(0);
+        failed.set(0);
+        recording = record;
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(nextTransfer(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        complete(sent, failure == null ? response.statusCode() : -1);
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - started;
+        if (record) {
+            report(elapsed);
+        }
+    }
+
+    private HttpRequest nextTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accounts);
+        int receiver = random.nextInt(accounts - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        return HttpRequest.newBuilder(URI.create(url + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"senderAccountId\":\"Id-load-" + sender
+                        + "\",\"receiverAccountId\":\"Id-load-" + receiver + "\",\"amount\":" + amount + "}"))
+                .build();
+    }
+
+    private void complete(long sent, int status) {
+        if (!recording) {
+            return;
+        }
+        if (status == 400) {
+            rejected.incrementAndGet();
+        } else if (status != 200) {
+            failed.incrementAndGet();
+            return;
+        }
+        int index = samples.getAndIncrement();
+        if (index < MAX_SAMPLES) {
+            latencies[index] = System.nanoTime() - sent;
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        int count = Math.min(samples.get(), MAX_SAMPLES);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s%s concurrency=%d accounts=%d%n", url, path, concurrency, accounts);
+        System.out.printf("requests=%d (%.0f/s) rejected=%d failed=%d%n",
+                samples.get(), samples.get() / seconds, rejected.get(), failed.get());
+        if (count > 0) {
+            System.out.printf("latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[count - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+    }
+}
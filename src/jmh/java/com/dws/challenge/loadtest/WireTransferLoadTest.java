@@ -0,0 +1,153 @@
+package com.dws.challenge.loadtest;
+
+import com.dws.challenge.wire.WireClient;
+import com.dws.challenge.wire.WireResponse;
+import com.dws.challenge.wire.WireStatus;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** closed-loop load test of the binary protocol of a running server (started with wire.enabled=true),
+ * `connections` clients keep `pipeline` transfers in flight each and the transfers/sec are reported.
+ * Then the same accounts are loaded through the REST endpoint by TransferLoadTest with the same arguments
+ * (its concurrency defaults to connections * pipeline), rest=false skips that part
+ * arguments are key=value: host, port, connections, pipeline, seconds, warmup, accounts, amount, rest,
+ * and url, path, concurrency of TransferLoadTest
+ * ./gradlew loadTest -PloadTestMain=com.dws.challenge.loadtest.WireTransferLoadTest -PloadTestArgs="connections=4 pipeline=128"
+ */
+public class WireTransferLoadTest {
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int pipeline;
+    private final int accounts;
+    private final BigDecimal amount;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    WireTransferLoadTest(Map<String, String> arguments) {
+        this.host = arguments.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(arguments.getOrDefault("port", "18081"));
+        this.connections = Integer.parseInt(arguments.getOrDefault("connections", "4"));
+        this.pipeline = Integer.parseInt(arguments.getOrDefault("pipeline", "64"));
+        this.accounts = Integer.parseInt(arguments.getOrDefault("accounts", "1000"));
+        this.amount = new BigDecimal(arguments.getOrDefault("amount", "1"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        WireTransferLoadTest loadTest = new WireTransferLoadTest(arguments);
+        loadTest.createAccounts();
+        int warmup = Integer.parseInt(arguments.getOrDefault("warmup", "5"));
+        int seconds = Integer.parseInt(arguments.getOrDefault("seconds", "30"));
+        loadTest.run(warmup, false);
+        loadTest.run(seconds, true);
+
+        if (Boolean.parseBoolean(arguments.getOrDefault("rest", "true"))) {
+            arguments.putIfAbsent("concurrency", String.valueOf(loadTest.connections * loadTest.pipeline));
+            TransferLoadTest restLoadTest = new TransferLoadTest(arguments);
+            restLoadTest.createAccounts();
+            restLoadTest.run(warmup, false);
+            restLoadTest.run(seconds, true);
+        }
+        System.exit(0);
+    }
+
+    //same ids as TransferLoadTest, accounts left by a previous run are reused
+    void createAccounts() throws Exception {
+        try (WireClient client = new WireClient(host, port)) {
+            BigDecimal balance = new BigDecimal(1_000_000_000_000L);
+            for (int i = 0; i < accounts; i++) {
+                client.createAccount("Id-load-" + i, balance);
+                if (i % pipeline == pipeline - 1) {
+                    receive(client, pipeline);
+                }
+            }
+            receive(client, accounts % pipeline);
+        }
+    }
+
+    private static void receive(WireClient client, int responses) throws Exception {
+        for (int i = 0; i < responses; i++) {
+            WireStatus status = client.receive().getStatus();
+            if (status != WireStatus.OK && status != WireStatus.DUPLICATE_ACCOUNT) {
+                throw new IllegalStateException("Account not created: " + status);
+            }
+        }
+    }
+
+    void run(int seconds, boolean record) throws Exception {
+        completed.set(0);
+        rejected.set(0);
+        failed.set(0);
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            threads[i] = new Thread(() -> drive(deadline), "wire-load-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (record) {
+            double elapsed = (System.nanoTime() - started) / 1e9;
+            System.out.printf("wire %s:%d connections=%d pipeline=%d accounts=%d%n",
+                    host, port, connections, pipeline, accounts);
+            System.out.printf("transfers=%d (%.0f/s) rejected=%d failed=%d%n",
+                    completed.get(), completed.get() / elapsed, rejected.get(), failed.get());
+        }
+    }
+
+    //one connection: a new transfer is sent for every response until the deadline, then the window drains
+    private void drive(long deadline) {
+        try (WireClient client = new WireClient(host, port)) {
+            for (int i = 0; i < pipeline; i++) {
+                sendTransfer(client);
+            }
+            int inFlight = pipeline;
+            while (inFlight > 0) {
+                count(client.receive());
+                inFlight--;
+                if (System.nanoTime() < deadline) {
+                    sendTransfer(client);
+                    inFlight++;
+                }
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            e.printStackTrace();
+        }
+    }
+
+    private void sendTransfer(WireClient client) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accounts);
+        int receiver = random.nextInt(accounts - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        client.transfer("Id-load-" + sender, "Id-load-" + receiver, amount);
+    }
+
+    private void count(WireResponse response) {
+        if (response.getStatus() == WireStatus.OK) {
+            completed.incrementAndGet();
+        } else if (response.getStatus() == WireStatus.INSUFFICIENT_BALANCE) {
+            rejected.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+}
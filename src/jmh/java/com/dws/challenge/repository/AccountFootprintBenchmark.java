@@ -0,0 +1,83 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/*** heap retained per account by the map store (Account objects) and the compact store
+ * the retained size is printed after every iteration, run with -prof gc to also see allocated bytes
+ * ./gradlew jmh -PjmhIncludes=AccountFootprintBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AccountFootprintBenchmark {
+
+    @Param({"map", "compact"})
+    public String store;
+
+    @Param({"1000000"})
+    public int accountCount;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private String[] accountIds;
+    private AccountsRepository repository;
+    private long heapBefore;
+
+    @Setup(Level.Trial)
+    public void createIds() {
+        accountIds = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accountIds[i] = "Id-" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyRepository() {
+        repository = "compact".equals(store) ? new AccountsRepositoryCompact(2) : new AccountsRepositoryInMemory();
+        heapBefore = usedHeapAfterGc();
+    }
+
+    @Benchmark
+    public AccountsRepository createAccounts() {
+        for (int i = 0; i < accountCount; i++) {
+            //distinct balances, like after the first transfers
+            repository.createAccount(new Account(accountIds[i], BigDecimal.valueOf(100_000 + i, 2)));
+        }
+        return repository;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRetainedBytes() {
+        long retained = usedHeapAfterGc() - heapBefore;
+        System.out.printf("%n%s store retains %.1f bytes per account (account ids excluded)%n",
+                store, (double) retained / accountCount);
+        repository = null;
+    }
+
+    private long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
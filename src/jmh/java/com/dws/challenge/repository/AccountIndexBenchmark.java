@@ -0,0 +1,79 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** latency of a page of GET /v1/accounts?prefix=&after=&limit= from AccountsRepositoryInMemory while accounts are
+ * created concurrently, ids are spread over 1000 branch prefixes and a page starts at a random id of a random branch
+ * ./gradlew jmh -PjmhIncludes=AccountIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AccountIndexBenchmark {
+
+    private static final int BRANCHES = 1000;
+
+    @Param({"10000000"})
+    public int accountCount;
+
+    @Param({"100"})
+    public int limit;
+
+    private AccountsRepositoryInMemory repository;
+    private int perBranch;
+    private final AtomicLong createdIds = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        repository = new AccountsRepositoryInMemory();
+        perBranch = accountCount / BRANCHES;
+        BigDecimal balance = BigDecimal.TEN;
+        for (int i = 0; i < accountCount; i++) {
+            repository.createAccount(new Account(accountId(i % BRANCHES, i / BRANCHES), balance));
+        }
+    }
+
+    private static String accountId(int branch, long number) {
+        return String.format("B%03d-%08d", branch, number);
+    }
+
+    @Benchmark
+    @Group("paging")
+    @GroupThreads(3)
+    public List<Account> page() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int branch = random.nextInt(BRANCHES);
+        return repository.listAccounts(String.format("B%03d-", branch), accountId(branch, random.nextInt(perBranch)),
+                limit);
+    }
+
+    @Benchmark
+    @Group("paging")
+    @GroupThreads(1)
+    public void create() {
+        long number = perBranch + createdIds.getAndIncrement();
+        repository.createAccount(new Account(accountId((int) (number % BRANCHES), number), BigDecimal.ONE));
+    }
+}
@@ -0,0 +1,69 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** AccountsRepositoryInMemory lookup and creation, lookups follow the same Zipfian skew as transfers
+ * ./gradlew jmh -PjmhIncludes=AccountsRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AccountsRepositoryBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int accountCount;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    private AccountsRepositoryInMemory repository;
+    private String[] accountIds;
+    private ZipfDistribution distribution;
+    private final AtomicLong createdIds = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new AccountsRepositoryInMemory();
+        accountIds = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accountIds[i] = "Id-" + i;
+            repository.createAccount(new Account(accountIds[i], BigDecimal.TEN));
+        }
+        distribution = new ZipfDistribution(accountCount, skew);
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        return repository.getAccount(accountIds[distribution.sample(ThreadLocalRandom.current())]);
+    }
+
+    @Benchmark
+    public Account createAccount() {
+        Account account = new Account("New-" + createdIds.incrementAndGet(), BigDecimal.TEN);
+        repository.createAccount(account);
+        return account;
+    }
+}
@@ -0,0 +1,100 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** AccountsRepositoryPersistent with a hot-account cache of cachedPercent of all accounts
+ * against AccountsRepositoryInMemory, lookups follow the same Zipfian skew as transfers,
+ * deposit adds the write-behind bookkeeping of a changed balance
+ * ./gradlew jmh -PjmhIncludes=PersistentRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PersistentRepositoryBenchmark {
+
+    @Param({"map", "persistent"})
+    public String store;
+
+    @Param({"1000000"})
+    public int accountCount;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    @Param({"10"})
+    public int cachedPercent;
+
+    private AccountsRepository repository;
+    private Path directory;
+    private String[] accountIds;
+    private ZipfDistribution distribution;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if ("persistent".equals(store)) {
+            directory = Files.createTempDirectory("persistent-repository-benchmark");
+            PersistentStoreProperties properties = new PersistentStoreProperties();
+            properties.setDirectory(directory.toString());
+            properties.setCacheMaxMemory(DataSize.ofBytes(
+                    (long) accountCount * cachedPercent / 100 * (AccountsRepositoryPersistent.ACCOUNT_OVERHEAD_BYTES + 10)));
+            repository = new AccountsRepositoryPersistent(properties, new SimpleMeterRegistry());
+        } else {
+            repository = new AccountsRepositoryInMemory();
+        }
+        accountIds = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accountIds[i] = "Id-" + i;
+            repository.createAccount(new Account(accountIds[i], BigDecimal.TEN));
+        }
+        distribution = new ZipfDistribution(accountCount, skew);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (repository instanceof AccountsRepositoryPersistent) {
+            ((AccountsRepositoryPersistent) repository).close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        return repository.getAccount(accountIds[distribution.sample(ThreadLocalRandom.current())]);
+    }
+
+    @Benchmark
+    public Account deposit() {
+        Account account = repository.getAccount(accountIds[distribution.sample(ThreadLocalRandom.current())]);
+        account.deposit(BigDecimal.ONE);
+        return account;
+    }
+}
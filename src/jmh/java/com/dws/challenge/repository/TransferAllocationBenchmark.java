@@ -0,0 +1,66 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.BenchmarkServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** allocations per transfer with Account objects vs the compact store, gc.alloc.rate.norm is bytes per transfer
+ * ./gradlew jmh -PjmhIncludes=TransferAllocationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class TransferAllocationBenchmark {
+
+    @Param({"map", "compact"})
+    public String store;
+
+    @Param({"10000"})
+    public int accountCount;
+
+    private AccountBalanceTransferService transferService;
+    private AccountBalanceTransferDto[] transfers;
+
+    @Setup
+    public void setUp() {
+        AccountsRepository repository = "compact".equals(store)
+                ? new AccountsRepositoryCompact(2) : new AccountsRepositoryInMemory();
+        for (int i = 0; i < accountCount; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000L)));
+        }
+        transferService = BenchmarkServices.transferService(BenchmarkServices.accountsService(repository));
+
+        transfers = new AccountBalanceTransferDto[1024];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < transfers.length; i++) {
+            transfers[i] = new AccountBalanceTransferDto();
+            transfers[i].setSenderAccountId("Id-" + random.nextInt(accountCount));
+            transfers[i].setReceiverAccountId("Id-" + random.nextInt(accountCount));
+            transfers[i].setAmount(new BigDecimal("1.25"));
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        transferService.transferThreadSafe(transfers[ThreadLocalRandom.current().nextInt(transfers.length)]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AtomicAccount;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryAtomic;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** ReentrantLock balance (accounts.store=map) against the CAS cell of AtomicAccount (accounts.store=atomic)
+ * deposit: every thread deposits to one hot account, scale with -t (or -PjmhThreads) 1, 2, 4, ... 64
+ * mixed: balance reads of the GET endpoint next to transfers between the same accounts,
+ * scale with -tg readers,writers, e.g. -tg 3,1 ... -tg 48,16
+ * ./gradlew jmh -PjmhIncludes=AccountBalanceCasBenchmark.deposit -PjmhThreads=64
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBalanceCasBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"lock", "cas"})
+    public String balance;
+
+    @Param({"2", "1000"})
+    public int accountCount;
+
+    private Account[] accounts;
+    private AccountBalanceTransferService transferService;
+
+    @Setup
+    public void setUp() {
+        AccountsRepository repository = "cas".equals(balance)
+                ? new AccountsRepositoryAtomic() : new AccountsRepositoryInMemory();
+        AccountsService accountsService = BenchmarkServices.accountsService(repository);
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            String accountId = String.format("Id-%08d", i);
+            accountsService.createAccount(new Account(accountId, new BigDecimal(1_000_000_000_000L)));
+            accounts[i] = accountsService.getAccount(accountId);
+        }
+        transferService = BenchmarkServices.transferService(accountsService);
+    }
+
+    @Benchmark
+    public void deposit() {
+        accounts[0].deposit(AMOUNT);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public BigDecimal read() {
+        return accounts[ThreadLocalRandom.current().nextInt(accountCount)].getBalance();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accountCount);
+        int receiver = random.nextInt(accountCount - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        transferService.transferThreadSafe(accounts[sender], accounts[receiver], AMOUNT);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** baseline of AccountBalanceTransferService.transferThreadSafe(Account, Account, BigDecimal)
+ * throughput and sampled latency (p99 in the SampleTime rows), with gc profiler for allocation rate.
+ * accountCount=2 is the ping-pong case of AccountsBalanceTransferControllerTest, skew moves traffic to hot accounts
+ * ./gradlew jmh -PjmhIncludes=AccountBalanceTransferServiceBenchmark -PjmhThreads=8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AccountBalanceTransferServiceBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"2", "1000", "100000"})
+    public int accountCount;
+
+    @Param({"0.0", "0.99", "1.2"})
+    public double skew;
+
+    private Account[] accounts;
+    private ZipfDistribution distribution;
+    private AccountBalanceTransferService transferService;
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(accounts[i]);
+        }
+        distribution = new ZipfDistribution(accountCount, skew);
+        transferService = BenchmarkServices.transferService(accountsService);
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = distribution.sample(random);
+        int receiver = distribution.sample(random);
+        if (sender == receiver) {
+            receiver = (receiver + 1) % accountCount;
+        }
+        try {
+            transferService.transferThreadSafe(accounts[sender], accounts[receiver], AMOUNT);
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.ReconciliationReportDto;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** transfer throughput on the lock path while BalanceSnapshots.reconcile runs back to back on a background thread
+ * (snapshots=on) against no snapshots, the difference is the cost of epoch stamping and pre-image capture.
+ * Thrown if a snapshot ever reports an unbalanced total.
+ * ./gradlew jmh -PjmhIncludes=BalanceSnapshotBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+@Threads(4)
+public class BalanceSnapshotBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"off", "on"})
+    public String snapshots;
+
+    @Param({"100000"})
+    public int accountCount;
+
+    private Account[] accounts;
+    private AccountBalanceTransferService transferService;
+    private Thread reconciler;
+    private volatile boolean running;
+    private volatile ReconciliationReportDto unbalanced;
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(accounts[i]);
+        }
+        transferService = BenchmarkServices.transferService(accountsService);
+
+        if ("on".equals(snapshots)) {
+            BalanceSnapshots balanceSnapshots = accountsService.getBalanceSnapshots();
+            running = true;
+            reconciler = new Thread(() -> {
+                while (running) {
+                    ReconciliationReportDto report = balanceSnapshots.reconcile();
+                    if (!report.isBalanced()) {
+                        unbalanced = report;
+                    }
+                }
+            }, "reconciler");
+            reconciler.setDaemon(true);
+            reconciler.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if (reconciler != null) {
+            reconciler.join();
+        }
+        if (unbalanced != null) {
+            throw new IllegalStateException("Unbalanced snapshot " + unbalanced);
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accountCount);
+        int receiver = random.nextInt(accountCount - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        try {
+            transferService.transferThreadSafe(accounts[sender], accounts[receiver], AMOUNT);
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+}
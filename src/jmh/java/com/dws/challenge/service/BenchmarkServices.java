@@ -0,0 +1,66 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.Optional;
+
+//wires services the way the application context does, without starting Spring
+public final class BenchmarkServices {
+
+    private BenchmarkServices() {
+    }
+
+    public static AccountsService accountsService(AccountsRepository repository) {
+        NoOpTransferJournal transferJournal = new NoOpTransferJournal();
+        return new AccountsService(repository, transferJournal, new BalanceSnapshots(repository, transferJournal));
+    }
+
+    public static AccountBalanceTransferService transferService(AccountsService accountsService) {
+        return transferService(accountsService, new NoOpTransferJournal());
+    }
+
+    public static AccountBalanceTransferService transferService(AccountsService accountsService,
+                                                                TransferJournal transferJournal) {
+        TransferMetrics transferMetrics = transferMetrics();
+        return new AccountBalanceTransferService(accountsService, notificationDispatcher(accountsService),
+                balanceFeed(), transferJournal, accountsService.getBalanceSnapshots(), transferLedger(), auditLog(), transferMetrics,
+                lockManager(transferMetrics), asyncTransferExecutor(), Optional.empty(), Optional.empty());
+    }
+
+    public static TransferLedger transferLedger() {
+        return new TransferLedger(true);
+    }
+
+    public static TransferMetrics transferMetrics() {
+        return new TransferMetrics(true, 64, 10, new SimpleMeterRegistry());
+    }
+
+    public static AccountLockManager lockManager(TransferMetrics transferMetrics) {
+        return new AccountLockManager(new LockManagerProperties(), transferMetrics);
+    }
+
+    public static AsyncTransferExecutor asyncTransferExecutor() {
+        return new AsyncTransferExecutor(false, 0);
+    }
+
+    public static BalanceFeed balanceFeed() {
+        return new BalanceFeed(new BalanceFeedProperties(), new SimpleMeterRegistry());
+    }
+
+    public static TransferAuditLog auditLog() {
+        return new TransferAuditLog(65536, new SimpleMeterRegistry());
+    }
+
+    //synchronous dispatcher with a no-op NotificationService
+    public static NotificationDispatcher notificationDispatcher(AccountsService accountsService) {
+        NotificationProperties properties = new NotificationProperties();
+        properties.setAsync(false);
+        return new NotificationDispatcher((account, description) -> { }, accountsService, properties,
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,96 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** ping-pong transfers between a few account pairs by many concurrent callers: per-transfer locking
+ * against the coalescing engine with different max delays. Throughput and sampled latency of each caller
+ * are reported, coalescing trades latency (up to maxDelay per transfer) for fewer lock acquisitions
+ * ./gradlew jmh -PjmhIncludes=CoalescingTransferBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class CoalescingTransferBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"locking", "coalescing"})
+    public String engine;
+
+    @Param({"50", "200"})
+    public int maxDelayMicros;
+
+    @Param({"1", "100"})
+    public int pairs;
+
+    private Account[] accounts;
+    private TransferEngine transferEngine;
+    private CoalescingTransferEngine coalescingEngine;
+    private TransferAuditLog auditLog;
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        accounts = new Account[pairs * 2];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(accounts[i]);
+        }
+        auditLog = BenchmarkServices.auditLog();
+        if ("coalescing".equals(engine)) {
+            CoalescingProperties properties = new CoalescingProperties();
+            properties.setMaxDelay(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(maxDelayMicros)));
+            coalescingEngine = new CoalescingTransferEngine(properties, new NoOpTransferJournal(), auditLog,
+                    accountsService.getBalanceSnapshots(), BenchmarkServices.transferLedger(),
+                    BenchmarkServices.lockManager(BenchmarkServices.transferMetrics()));
+            transferEngine = coalescingEngine;
+        } else {
+            transferEngine = BenchmarkServices.transferService(accountsService)::transferThreadSafe;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (coalescingEngine != null) {
+            coalescingEngine.shutdown();
+        }
+        auditLog.shutdown();
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pair = random.nextInt(pairs) * 2;
+        int direction = random.nextInt(2);
+        try {
+            transferEngine.transfer(accounts[pair + direction], accounts[pair + 1 - direction], AMOUNT);
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+}
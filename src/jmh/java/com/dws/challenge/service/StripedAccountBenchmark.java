@@ -0,0 +1,89 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.StripedAccountProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** every transfer pays into one merchant account, plain Account against StripedAccount,
+ * payoutPercent of the transfers go from the merchant back to a customer and take the exclusive lock
+ * ./gradlew jmh -PjmhIncludes=StripedAccountBenchmark -PjmhThreads=8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StripedAccountBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final String MERCHANT = "Merchant";
+
+    @Param({"false", "true"})
+    public boolean striped;
+
+    @Param({"0", "1"})
+    public int payoutPercent;
+
+    @Param({"10000"})
+    public int customerCount;
+
+    private Account merchant;
+    private Account[] customers;
+    private AccountBalanceTransferService transferService;
+
+    @Setup
+    public void setUp() {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        NoOpTransferJournal transferJournal = new NoOpTransferJournal();
+        StripedAccountProperties stripedAccounts = new StripedAccountProperties();
+        if (striped) {
+            stripedAccounts.setAccountIds(Collections.singleton(MERCHANT));
+        }
+        AccountsService accountsService = new AccountsService(repository, transferJournal,
+                new BalanceSnapshots(repository, transferJournal), stripedAccounts);
+        accountsService.createAccount(new Account(MERCHANT, new BigDecimal(1_000_000_000_000L)));
+        merchant = accountsService.getAccount(MERCHANT);
+        customers = new Account[customerCount];
+        for (int i = 0; i < customerCount; i++) {
+            customers[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(customers[i]);
+        }
+        transferService = BenchmarkServices.transferService(accountsService);
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Account customer = customers[random.nextInt(customerCount)];
+        try {
+            if (random.nextInt(100) < payoutPercent) {
+                transferService.transferThreadSafe(merchant, customer, AMOUNT);
+            } else {
+                transferService.transferThreadSafe(customer, merchant, AMOUNT);
+            }
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+}
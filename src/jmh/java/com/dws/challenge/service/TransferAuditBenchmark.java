@@ -0,0 +1,145 @@
+package com.dws.challenge.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.log4j.Log4j2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** transfer throughput with INFO audit output written inside the account locks (inline, the former
+ * implementation) against the TransferAuditLog ring drained after the locks are released (async).
+ * accountCount=2 makes every transfer contend, so throughput follows the lock hold time.
+ * Output goes to transfer-audit-benchmark.log in java.io.tmpdir, see src/jmh/resources/logback.xml
+ * ./gradlew jmh -PjmhIncludes=TransferAuditBenchmark -PjmhThreads=8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@Log4j2
+public class TransferAuditBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"inline", "async"})
+    public String audit;
+
+    @Param({"2", "1000"})
+    public int accountCount;
+
+    private Account[] accounts;
+    private TransferAuditLog auditLog;
+    private AccountBalanceTransferService transferService;
+
+    @Setup
+    public void setUp() {
+        setLevel(Level.INFO);
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(accounts[i]);
+        }
+        auditLog = BenchmarkServices.auditLog();
+        NotificationDispatcher notificationDispatcher = BenchmarkServices.notificationDispatcher(accountsService);
+        if ("inline".equals(audit)) {
+            transferService = new InlineLoggingTransferService(accountsService, notificationDispatcher, auditLog);
+        } else {
+            transferService = new AccountBalanceTransferService(accountsService, notificationDispatcher,
+                    BenchmarkServices.balanceFeed(), new NoOpTransferJournal(), accountsService.getBalanceSnapshots(),
+                    BenchmarkServices.transferLedger(), auditLog, BenchmarkServices.transferMetrics(),
+                    BenchmarkServices.lockManager(BenchmarkServices.transferMetrics()),
+                    BenchmarkServices.asyncTransferExecutor(), Optional.empty(), Optional.empty());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        auditLog.shutdown();
+        setLevel(Level.WARN);
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accountCount);
+        int receiver = random.nextInt(accountCount - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        try {
+            transferService.transferThreadSafe(accounts[sender], accounts[receiver], AMOUNT);
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+
+    private static void setLevel(Level level) {
+        ((Logger) LoggerFactory.getLogger(TransferAuditLog.class)).setLevel(level);
+        ((Logger) LoggerFactory.getLogger(TransferAuditBenchmark.class)).setLevel(level);
+    }
+
+    //lock path as it was before TransferAuditLog: messages are built and appended while both locks are held
+    private static final class InlineLoggingTransferService extends AccountBalanceTransferService {
+
+        InlineLoggingTransferService(AccountsService accountsService, NotificationDispatcher notificationDispatcher,
+                                     TransferAuditLog auditLog) {
+            super(accountsService, notificationDispatcher, BenchmarkServices.balanceFeed(), new NoOpTransferJournal(),
+                    accountsService.getBalanceSnapshots(), BenchmarkServices.transferLedger(), auditLog,
+                    BenchmarkServices.transferMetrics(), BenchmarkServices.lockManager(BenchmarkServices.transferMetrics()),
+                    BenchmarkServices.asyncTransferExecutor(), Optional.empty(), Optional.empty());
+        }
+
+        @Override
+        protected void transferThreadSafe(Account sender, Account receiver, BigDecimal amount) {
+            Account firstLock = sender;
+            Account secondLock = receiver;
+            if (sender.getAccountId().compareTo(receiver.getAccountId()) < 0) {
+                firstLock = receiver;
+                secondLock = sender;
+            }
+
+            firstLock.getLock().lock();
+            try {
+                secondLock.getLock().lock();
+                try {
+                    if (sender.withdraw(amount)) {
+                        receiver.deposit(amount);
+                        log.info("Transferred " + amount + " from Account " + sender.getAccountId() + " to Account " + receiver.getAccountId());
+                    } else {
+                        log.info("Insufficient balance in Account " + sender.getAccountId() + " Requested: " + amount + " but only exists: " + sender.getBalance());
+                        throw new InsufficientBalanceAmountException(sender, receiver, amount);
+                    }
+                } finally {
+                    secondLock.getLock().unlock();
+                }
+            } finally {
+                firstLock.getLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** lock-based transfers vs sharded single-writer engine on a Zipfian (hot account) workload
+ * ./gradlew jmh -PjmhIncludes=TransferEngineBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TransferEngineBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"locking", "sharded"})
+    public String engine;
+
+    @Param({"10000"})
+    public int accountCount;
+
+    @Param({"0.0", "0.99", "1.2"})
+    public double skew;
+
+    private Account[] accounts;
+    private ZipfDistribution distribution;
+    private TransferEngine transferEngine;
+    private ShardedTransferEngine shardedEngine;
+
+    @Setup
+    public void setUp() {
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+        }
+        distribution = new ZipfDistribution(accountCount, skew);
+
+        if ("sharded".equals(engine)) {
+            shardedEngine = new ShardedTransferEngine(0, new NoOpTransferJournal(), BenchmarkServices.auditLog(),
+                    new BalanceSnapshots(new AccountsRepositoryInMemory(), new NoOpTransferJournal()),
+                    BenchmarkServices.transferLedger());
+            transferEngine = shardedEngine;
+        } else {
+            AccountBalanceTransferService service = BenchmarkServices.transferService(
+                    BenchmarkServices.accountsService(new AccountsRepositoryInMemory()));
+            transferEngine = service::transferThreadSafe;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (shardedEngine != null) {
+            shardedEngine.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = distribution.sample(random);
+        int receiver = distribution.sample(random);
+        if (sender == receiver) {
+            receiver = (receiver + 1) % accountCount;
+        }
+        transferEngine.transfer(accounts[sender], accounts[receiver], AMOUNT);
+    }
+}
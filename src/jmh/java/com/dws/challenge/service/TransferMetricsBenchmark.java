@@ -0,0 +1,101 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** overhead of TransferMetrics on the lock path: metrics=off against on with the configured sample rate,
+ * the budget is 1% of transfer throughput. accountCount=2 exercises the contended path (sketch updates),
+ * 100000 with skew=0 the uncontended one where only sampling and timers remain.
+ * ./gradlew jmh -PjmhIncludes=TransferMetricsBenchmark -PjmhThreads=8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+@Threads(4)
+public class TransferMetricsBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    @Param({"64"})
+    public int sampleRate;
+
+    @Param({"2", "100000"})
+    public int accountCount;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    private Account[] accounts;
+    private ZipfDistribution distribution;
+    private TransferAuditLog auditLog;
+    private AccountBalanceTransferService transferService;
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account(String.format("Id-%08d", i), new BigDecimal(1_000_000_000_000L));
+            accountsService.createAccount(accounts[i]);
+        }
+        distribution = new ZipfDistribution(accountCount, skew);
+        auditLog = BenchmarkServices.auditLog();
+        TransferMetrics transferMetrics = new TransferMetrics("on".equals(metrics), sampleRate, 10,
+                new SimpleMeterRegistry());
+        transferService = new AccountBalanceTransferService(accountsService,
+                BenchmarkServices.notificationDispatcher(accountsService), BenchmarkServices.balanceFeed(),
+                new NoOpTransferJournal(),
+                accountsService.getBalanceSnapshots(), BenchmarkServices.transferLedger(), auditLog, transferMetrics,
+                BenchmarkServices.lockManager(transferMetrics), BenchmarkServices.asyncTransferExecutor(),
+                Optional.empty(), Optional.empty());
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        auditLog.shutdown();
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = distribution.sample(random);
+        int receiver = distribution.sample(random);
+        if (sender == receiver) {
+            receiver = (receiver + 1) % accountCount;
+        }
+        try {
+            transferService.transferThreadSafe(accounts[sender], accounts[receiver], AMOUNT);
+        } catch (InsufficientBalanceAmountException e) {
+            //balances are large enough, only reachable after extremely long runs
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferDtoValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** reading and validating a transfer body: Jackson binding with Bean Validation against TransferRequestConverter
+ * with AccountBalanceTransferDtoValidator, account ids repeat like they do for a working set of accounts.
+ * Run with -prof gc, gc.alloc.rate.norm is bytes per request body
+ * ./gradlew jmh -PjmhIncludes=TransferBodyBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class TransferBodyBenchmark {
+
+    @Param({"jackson", "lean"})
+    public String reader;
+
+    @Param({"1000"})
+    public int accountCount;
+
+    private final HttpHeaders headers = new HttpHeaders();
+    private MappingJackson2HttpMessageConverter jackson;
+    private TransferRequestConverter lean;
+    private Validator validator;
+    private byte[][] bodies;
+    private Body body;
+
+    //one message and stream pointed at the next body instead of allocated, so only the reader is measured
+    private final class Body extends InputStream implements HttpInputMessage {
+        private byte[] bytes;
+        private int position;
+
+        private void reset(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            int read = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return this;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ObjectMapper objectMapper = new ObjectMapper();
+        jackson = new MappingJackson2HttpMessageConverter(objectMapper);
+        lean = new TransferRequestConverter(objectMapper);
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+        bodies = new byte[1024][];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = ("{\"senderAccountId\":\"Id-" + random.nextInt(accountCount)
+                    + "\",\"receiverAccountId\":\"Id-" + random.nextInt(accountCount)
+                    + "\",\"amount\":" + random.nextInt(1000) + ".25}").getBytes(StandardCharsets.UTF_8);
+        }
+        body = new Body();
+    }
+
+    @Benchmark
+    public AccountBalanceTransferDto read() throws IOException {
+        body.reset(bodies[ThreadLocalRandom.current().nextInt(bodies.length)]);
+        if ("jackson".equals(reader)) {
+            AccountBalanceTransferDto transfer = (AccountBalanceTransferDto) jackson.read(AccountBalanceTransferDto.class, body);
+            Set<ConstraintViolation<AccountBalanceTransferDto>> violations = validator.validate(transfer);
+            if (!violations.isEmpty()) {
+                throw new IllegalStateException(violations.toString());
+            }
+            return transfer;
+        }
+        AccountBalanceTransferDto transfer = lean.read(AccountBalanceTransferDto.class, body);
+        AccountBalanceTransferDtoValidator.validate(transfer);
+        return transfer;
+    }
+}
@@ -0,0 +1,122 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferDtoValidator;
+import com.dws.challenge.exception.ApplicationErrorHandles;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BenchmarkServices;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/*** PUT /v1/accounts/balanceTransfer through MockMvc where rejectedShare of the transfers ask for more than
+ * the sender balance. outcome=exception is the controller as it was before TransferStatus results: the service
+ * throws InsufficientBalanceAmountException and ApplicationErrorHandles answers 400, outcome=status maps
+ * the returned TransferStatus in the controller. Both notify the accounts of every transfer
+ * ./gradlew jmh -PjmhIncludes=TransferRejectionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TransferRejectionBenchmark {
+
+    @Param({"1000"})
+    public int accountCount;
+
+    @Param({"0.15", "1.0"})
+    public double rejectedShare;
+
+    @Param({"exception", "status"})
+    public String outcome;
+
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        for (int i = 0; i < accountCount; i++) {
+            accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000_000L)));
+        }
+        AccountBalanceTransferService transferService = BenchmarkServices.transferService(accountsService);
+        ObjectMapper objectMapper = new ObjectMapper();
+        Object controller = "exception".equals(outcome) ? new ExceptionTransferController(transferService)
+                : new AccountBalanceTransferController(transferService,
+                new IdempotencyCache(new IdempotencyProperties(), new SimpleMeterRegistry()),
+                new TransferAdmission(new AdmissionProperties(), new SimpleMeterRegistry()));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new ApplicationErrorHandles())
+                .setMessageConverters(new TransferRequestConverter(objectMapper),
+                        new MappingJackson2HttpMessageConverter(objectMapper))
+                .build();
+    }
+
+    @Benchmark
+    public MvcResult transfer() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(accountCount);
+        int receiver = random.nextInt(accountCount - 1);
+        if (receiver >= sender) {
+            receiver++;
+        }
+        String amount = random.nextDouble() < rejectedShare ? "10000000000000" : "1";
+        return mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"senderAccountId\":\"Id-" + sender
+                                + "\",\"receiverAccountId\":\"Id-" + receiver + "\",\"amount\":" + amount + "}"))
+                .andReturn();
+    }
+
+    /* transfer endpoint as it was before TransferStatus results, rejections unwind to ApplicationErrorHandles.
+     * Not a @RestController, so component scans of the application never pick it up
+     */
+    @RequestMapping("/v1/accounts/balanceTransfer")
+    public static class ExceptionTransferController {
+
+        private final AccountBalanceTransferService transferService;
+
+        ExceptionTransferController(AccountBalanceTransferService transferService) {
+            this.transferService = transferService;
+        }
+
+        @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<Object> transfer(@RequestBody AccountBalanceTransferDto amount) {
+            AccountBalanceTransferDtoValidator.validate(amount);
+            transferService.transferThreadSafe(amount);
+            return new ResponseEntity<>(HttpStatus.OK);
+        }
+    }
+}
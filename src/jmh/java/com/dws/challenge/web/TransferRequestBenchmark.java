@@ -0,0 +1,110 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.benchmark.ZipfDistribution;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.ApplicationErrorHandles;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BenchmarkServices;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/*** full PUT /v1/accounts/balanceTransfer request through MockMvc: JSON reading, validation, controller, service
+ * idempotencyKey=true sends a fresh Idempotency-Key with every transfer (cache miss and insert),
+ * duplicate replays one key (cache hit, no account locks)
+ * ./gradlew jmh -PjmhIncludes=TransferRequestBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TransferRequestBenchmark {
+
+    @Param({"1000"})
+    public int accountCount;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    @Param({"false", "true"})
+    public boolean idempotencyKey;
+
+    private MockMvc mockMvc;
+    private ZipfDistribution distribution;
+    private final AtomicLong keys = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        AccountsService accountsService = BenchmarkServices.accountsService(new AccountsRepositoryInMemory());
+        for (int i = 0; i < accountCount; i++) {
+            accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000_000L)));
+        }
+        AccountBalanceTransferService transferService = BenchmarkServices.transferService(accountsService);
+        ObjectMapper objectMapper = new ObjectMapper();
+        IdempotencyCache idempotencyCache = new IdempotencyCache(new IdempotencyProperties(), new SimpleMeterRegistry());
+        TransferAdmission transferAdmission = new TransferAdmission(new AdmissionProperties(), new SimpleMeterRegistry());
+        mockMvc = MockMvcBuilders.standaloneSetup(new AccountBalanceTransferController(transferService, idempotencyCache,
+                        transferAdmission))
+                .setControllerAdvice(new ApplicationErrorHandles())
+                .setMessageConverters(new TransferRequestConverter(objectMapper),
+                        new MappingJackson2HttpMessageConverter(objectMapper))
+                .build();
+        distribution = new ZipfDistribution(accountCount, skew);
+    }
+
+    @Benchmark
+    public MvcResult transfer() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = distribution.sample(random);
+        int receiver = distribution.sample(random);
+        if (sender == receiver) {
+            receiver = (receiver + 1) % accountCount;
+        }
+        MockHttpServletRequestBuilder request = put("/v1/accounts/balanceTransfer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"senderAccountId\":\"Id-" + sender
+                        + "\",\"receiverAccountId\":\"Id-" + receiver + "\",\"amount\":1}");
+        if (idempotencyKey) {
+            request.header(AccountBalanceTransferController.IDEMPOTENCY_KEY, "key-" + keys.incrementAndGet());
+        }
+        return mockMvc.perform(request).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult duplicate() throws Exception {
+        return mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(AccountBalanceTransferController.IDEMPOTENCY_KEY, "duplicate")
+                        .content("{\"senderAccountId\":\"Id-0\",\"receiverAccountId\":\"Id-1\",\"amount\":1}"))
+                .andReturn();
+    }
+}
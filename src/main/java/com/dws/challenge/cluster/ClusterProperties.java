@@ -0,0 +1,37 @@
+package com.dws.challenge.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    //needs wire.enabled=true, nodes talk to each other through the wire protocol
+    private boolean enabled = false;
+
+    //index of this node in nodes
+    private int nodeId = 0;
+
+    //host:port of the wire server of every node, the same list in the same order on all nodes
+    private List<String> nodes = new ArrayList<>();
+
+    //directory of the coordinator log of this node
+    private String logDirectory = "coordinator";
+
+    //the log is rewritten with the unfinished transfers only once it grows past this size
+    private DataSize logCompactionSize = DataSize.ofMegabytes(64);
+
+    //how long a prepare or a forwarded request may take before the transfer is aborted
+    private Duration requestTimeout = Duration.ofSeconds(5);
+
+    //how often decisions not yet acknowledged by a participant are sent again
+    private Duration recoveryInterval = Duration.ofSeconds(1);
+}
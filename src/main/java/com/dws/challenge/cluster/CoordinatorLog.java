@@ -0,0 +1,271 @@
+package com.dws.challenge.cluster;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/*** durable state of the cross-partition transfers coordinated by this node, file coordinator.log
+ * record: int bodyLength, int crc32(body), body: byte type, long txId, then for BEGIN string senderAccountId,
+ * string receiverAccountId, decimal amount (long unscaled, byte scale), int senderNode, int receiverNode.
+ * COMMIT and ABORT record the decision, ACKNOWLEDGED that both participants acknowledged it, END that both
+ * forgot the transaction. BEGIN, decisions and ACKNOWLEDGED are forced before the coordinator acts on them, callers arriving during a force share the next one.
+ * Transfers without END are kept in memory and read back at start, replay stops at a torn record.
+ * The file is rewritten with the unfinished transfers only once it grew past compactionSize.
+ */
+@Log4j2
+final class CoordinatorLog implements Closeable {
+
+    static final byte BEGIN = 1;
+    static final byte COMMIT = 2;
+    static final byte ABORT = 3;
+    static final byte END = 4;
+    static final byte ACKNOWLEDGED = 5;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    static final class Transfer {
+        final long txId;
+        final String senderAccountId;
+        final String receiverAccountId;
+        final BigDecimal amount;
+        final int senderNode;
+        final int receiverNode;
+        //null until decided
+        volatile Boolean commit;
+        //both participants acknowledged the decision, only END is still to be sent
+        volatile boolean acknowledged;
+
+        Transfer(long txId, String senderAccountId, String receiverAccountId, BigDecimal amount,
+                 int senderNode, int receiverNode) {
+            this.txId = txId;
+            this.senderAccountId = senderAccountId;
+            this.receiverAccountId = receiverAccountId;
+            this.amount = amount;
+            this.senderNode = senderNode;
+            this.receiverNode = receiverNode;
+        }
+    }
+
+    private final Path file;
+    private final long compactionSize;
+    private final Map<Long, Transfer> unfinished = new ConcurrentHashMap<>();
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    private long maxTxId = Long.MIN_VALUE;
+    //guarded by this
+    private long written;
+    private volatile long durable;
+
+    CoordinatorLog(Path directory, long compactionSize) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve("coordinator.log");
+        this.compactionSize = compactionSize;
+        if (Files.exists(file)) {
+            replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        //a torn tail is cut off, new records follow the last valid one
+        channel.truncate(written);
+        channel.position(written);
+        this.durable = written;
+        if (!unfinished.isEmpty()) {
+            log.info("{} cross-partition transfers are in doubt", unfinished.size());
+        }
+    }
+
+    //greatest txId found in the log, Long.MIN_VALUE for an empty log
+    long maxTxId() {
+        return maxTxId;
+    }
+
+    Collection<Transfer> unfinished() {
+        return unfinished.values();
+    }
+
+    void begin(Transfer transfer) {
+        byte[] sender = transfer.senderAccountId.getBytes(StandardCharsets.UTF_8);
+        byte[] receiver = transfer.receiverAccountId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(Byte.BYTES + Long.BYTES + 2 * Short.BYTES + sender.length
+                + receiver.length + Long.BYTES + Byte.BYTES + 2 * Integer.BYTES);
+        body.put(BEGIN).putLong(transfer.txId);
+        body.putShort((short) sender.length).put(sender);
+        body.putShort((short) receiver.length).put(receiver);
+        body.putLong(transfer.amount.unscaledValue().longValueExact()).put((byte) transfer.amount.scale());
+        body.putInt(transfer.senderNode).putInt(transfer.receiverNode);
+        unfinished.put(transfer.txId, transfer);
+        force(append(body));
+    }
+
+    void decide(Transfer transfer, boolean commit) {
+        transfer.commit = commit;
+        force(append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(commit ? COMMIT : ABORT).putLong(transfer.txId)));
+    }
+
+    //forced, participants forget a transaction on END, after which the decision must not be sent again
+    void acknowledge(Transfer transfer) {
+        transfer.acknowledged = true;
+        force(append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(ACKNOWLEDGED).putLong(transfer.txId)));
+    }
+
+    //not forced, a lost END only repeats the END of participants after a restart
+    void end(Transfer transfer) {
+        unfinished.remove(transfer.txId);
+        append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(END).putLong(transfer.txId));
+    }
+
+    private synchronized long append(ByteBuffer body) {
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(body.remaining()).putInt((int) crc.getValue());
+        header.flip();
+        try {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            written = channel.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the coordinator log", e);
+        }
+        return written;
+    }
+
+    private void force(long position) {
+        synchronized (forceLock) {
+            if (durable >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = written;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot force the coordinator log", e);
+            }
+            durable = target;
+        }
+    }
+
+    //rewrites the file with the records of unfinished transfers once it grew past compactionSize
+    void compactIfNeeded() {
+        synchronized (forceLock) {
+            synchronized (this) {
+                if (written < compactionSize) {
+                    return;
+                }
+                List<Transfer> transfers = new ArrayList<>(unfinished.values());
+                Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+                try {
+                    channel.close();
+                    channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                    written = 0;
+                    for (Transfer transfer : transfers) {
+                        begin(transfer);
+                        if (transfer.commit != null) {
+                            decide(transfer, transfer.commit);
+                        }
+                        if (transfer.acknowledged) {
+                            acknowledge(transfer);
+                        }
+                    }
+                    channel.force(false);
+                    channel.close();
+                    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                    channel.position(written);
+                    durable = written;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot compact the coordinator log", e);
+                }
+                log.info("Coordinator log compacted to {} unfinished transfers", transfers.size());
+            }
+        }
+    }
+
+    private void replay(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Torn record at {} of {}, the rest of the log is ignored", start, file);
+                break;
+            }
+            apply(body);
+            buffer.position(start + HEADER_SIZE + length);
+            written = buffer.position();
+        }
+    }
+
+    private void apply(ByteBuffer body) {
+        byte type = body.get();
+        long txId = body.getLong();
+        maxTxId = Math.max(maxTxId, txId);
+        switch (type) {
+            case BEGIN:
+                String sender = getString(body);
+                String receiver = getString(body);
+                BigDecimal amount = BigDecimal.valueOf(body.getLong(), body.get());
+                unfinished.put(txId, new Transfer(txId, sender, receiver, amount, body.getInt(), body.getInt()));
+                break;
+            case COMMIT:
+            case ABORT:
+                Transfer transfer = unfinished.get(txId);
+                if (transfer != null) {
+                    transfer.commit = type == COMMIT;
+                }
+                break;
+            case ACKNOWLEDGED:
+                Transfer acknowledged = unfinished.get(txId);
+                if (acknowledged != null) {
+                    acknowledged.acknowledged = true;
+                }
+                break;
+            case END:
+                unfinished.remove(txId);
+                break;
+            default:
+                throw new IllegalStateException("Unknown coordinator log record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
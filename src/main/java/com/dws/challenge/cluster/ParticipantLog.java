@@ -0,0 +1,348 @@
+package com.dws.challenge.cluster;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/*** durable state of the legs of cross-partition transfers on this node, file participant.log next to the
+ * coordinator log. It is also the journal of the balance changes made by legs, which never reach the node
+ * TransferJournal: a debit is logged when it is prepared, a credit when it is committed and the payback of a debit
+ * when it is aborted, so a balance change and the state of its leg are one record. At start the net change of each
+ * account is read back and the legs not ended by their coordinator are known again.
+ * record: int bodyLength, int crc32(body), body: byte type, long txId, then for PREPARE string accountId,
+ * string counterpartyAccountId, decimal amount (long unscaled, byte scale), byte debit. COMMIT, ABORT and END have
+ * no more fields, an ABORT of an unknown transaction is a tombstone which refuses its late PREPARE.
+ * LEG is a PREPARE with a trailing byte state whose change is already counted, NET (txId 0) is string accountId,
+ * decimal change, both are only written by compaction.
+ * Legs and tombstones are kept until the coordinator sends END. Callers force the records they act on,
+ * callers arriving during a force share the next one. Replay stops at a torn record.
+ * The file is rewritten with the net changes and the legs not ended once it grew past compactionSize.
+ */
+@Log4j2
+final class ParticipantLog implements Closeable {
+
+    static final byte PREPARE = 1;
+    static final byte COMMIT = 2;
+    static final byte ABORT = 3;
+    static final byte END = 4;
+    static final byte LEG = 5;
+    static final byte NET = 6;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    enum State {
+        PREPARED,
+        COMMITTED,
+        ABORTED
+    }
+
+    static final class Leg {
+        final long txId;
+        //null for a tombstone
+        final String accountId;
+        final String counterpartyAccountId;
+        final BigDecimal amount;
+        final boolean debit;
+        volatile State state;
+
+        Leg(long txId, String accountId, String counterpartyAccountId, BigDecimal amount, boolean debit) {
+            this.txId = txId;
+            this.accountId = accountId;
+            this.counterpartyAccountId = counterpartyAccountId;
+            this.amount = amount;
+            this.debit = debit;
+            this.state = State.PREPARED;
+        }
+
+        private static Leg tombstone(long txId) {
+            Leg leg = new Leg(txId, null, null, BigDecimal.ZERO, false);
+            leg.state = State.ABORTED;
+            return leg;
+        }
+    }
+
+    private final Path file;
+    private final long compactionSize;
+    private final Map<Long, Leg> legs = new ConcurrentHashMap<>();
+    //change of each account made by legs since the log was started, guarded by this
+    private final Map<String, BigDecimal> net = new HashMap<>();
+    private final Map<String, BigDecimal> recovered;
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    //guarded by this
+    private long written;
+    private volatile long durable;
+
+    ParticipantLog(Path directory, long compactionSize) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve("participant.log");
+        this.compactionSize = compactionSize;
+        if (Files.exists(file)) {
+            replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+        }
+        this.recovered = Map.copyOf(net);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        //a torn tail is cut off, new records follow the last valid one
+        channel.truncate(written);
+        channel.position(written);
+        this.durable = written;
+        if (!legs.isEmpty()) {
+            log.info("{} legs of cross-partition transfers are not ended", legs.size());
+        }
+    }
+
+    //net change of each account made by legs, as read at start
+    Map<String, BigDecimal> recoveredChanges() {
+        return recovered;
+    }
+
+    //null when the transaction is unknown or ended
+    Leg leg(long txId) {
+        return legs.get(txId);
+    }
+
+    Collection<Leg> legs() {
+        return legs.values();
+    }
+
+    //the following return the position to force, a debit leg is changed by the amount when prepared
+    synchronized long prepare(Leg leg) {
+        prepared(leg);
+        return append(legBody(PREPARE, leg, 0));
+    }
+
+    synchronized long commit(Leg leg) {
+        committed(leg);
+        return append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(COMMIT).putLong(leg.txId));
+    }
+
+    synchronized long abort(Leg leg) {
+        aborted(leg);
+        return append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(ABORT).putLong(leg.txId));
+    }
+
+    synchronized long abortUnknown(long txId) {
+        legs.put(txId, Leg.tombstone(txId));
+        return append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(ABORT).putLong(txId));
+    }
+
+    //not forced, a lost END only keeps a finished leg until it is ended again
+    synchronized void end(long txId) {
+        if (legs.remove(txId) != null) {
+            append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(END).putLong(txId));
+        }
+    }
+
+    //state changes of live records and of replayed ones
+    private void prepared(Leg leg) {
+        legs.put(leg.txId, leg);
+        if (leg.debit) {
+            change(leg.accountId, leg.amount.negate());
+        }
+    }
+
+    private void committed(Leg leg) {
+        leg.state = State.COMMITTED;
+        if (!leg.debit) {
+            change(leg.accountId, leg.amount);
+        }
+    }
+
+    private void aborted(Leg leg) {
+        leg.state = State.ABORTED;
+        if (leg.debit) {
+            change(leg.accountId, leg.amount);
+        }
+    }
+
+    private void change(String accountId, BigDecimal delta) {
+        net.merge(accountId, delta, BigDecimal::add);
+    }
+
+    private static ByteBuffer legBody(byte type, Leg leg, int extra) {
+        byte[] account = leg.accountId.getBytes(StandardCharsets.UTF_8);
+        byte[] counterparty = leg.counterpartyAccountId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(Byte.BYTES + Long.BYTES + 2 * Short.BYTES + account.length
+                + counterparty.length + Long.BYTES + 2 * Byte.BYTES + extra);
+        body.put(type).putLong(leg.txId);
+        body.putShort((short) account.length).put(account);
+        body.putShort((short) counterparty.length).put(counterparty);
+        body.putLong(leg.amount.unscaledValue().longValueExact()).put((byte) leg.amount.scale());
+        body.put((byte) (leg.debit ? 1 : 0));
+        return body;
+    }
+
+    private synchronized long append(ByteBuffer body) {
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(body.remaining()).putInt((int) crc.getValue());
+        header.flip();
+        try {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            written = channel.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the participant log", e);
+        }
+        return written;
+    }
+
+    void force(long position) {
+        synchronized (forceLock) {
+            if (durable >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = written;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot force the participant log", e);
+            }
+            durable = target;
+        }
+    }
+
+    //rewrites the file with the net changes and the legs not ended once it grew past compactionSize
+    void compactIfNeeded() {
+        synchronized (forceLock) {
+            synchronized (this) {
+                if (written < compactionSize) {
+                    return;
+                }
+                List<Leg> open = new ArrayList<>(legs.values());
+                Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+                try {
+                    channel.close();
+                    channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                    written = 0;
+                    net.forEach((accountId, delta) -> {
+                        byte[] account = accountId.getBytes(StandardCharsets.UTF_8);
+                        append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES + Short.BYTES + account.length
+                                        + Long.BYTES + Byte.BYTES)
+                                .put(NET).putLong(0).putShort((short) account.length).put(account)
+                                .putLong(delta.unscaledValue().longValueExact()).put((byte) delta.scale()));
+                    });
+                    for (Leg leg : open) {
+                        if (leg.accountId == null) {
+                            append(ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put(ABORT).putLong(leg.txId));
+                        } else {
+                            append(legBody(LEG, leg, Byte.BYTES).put((byte) leg.state.ordinal()));
+                        }
+                    }
+                    channel.force(false);
+                    channel.close();
+                    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                    channel.position(written);
+                    durable = written;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot compact the participant log", e);
+                }
+                log.info("Participant log compacted to {} accounts and {} legs", net.size(), open.size());
+            }
+        }
+    }
+
+    private void replay(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Torn record at {} of {}, the rest of the log is ignored", start, file);
+                break;
+            }
+            apply(body);
+            buffer.position(start + HEADER_SIZE + length);
+            written = buffer.position();
+        }
+    }
+
+    private void apply(ByteBuffer body) {
+        byte type = body.get();
+        long txId = body.getLong();
+        Leg leg = legs.get(txId);
+        switch (type) {
+            case PREPARE:
+                prepared(getLeg(txId, body));
+                break;
+            case LEG:
+                Leg restored = getLeg(txId, body);
+                restored.state = State.values()[body.get()];
+                legs.put(txId, restored);
+                break;
+            case COMMIT:
+                if (leg != null) {
+                    committed(leg);
+                }
+                break;
+            case ABORT:
+                if (leg == null) {
+                    legs.put(txId, Leg.tombstone(txId));
+                } else {
+                    aborted(leg);
+                }
+                break;
+            case END:
+                legs.remove(txId);
+                break;
+            case NET:
+                String accountId = getString(body);
+                change(accountId, BigDecimal.valueOf(body.getLong(), body.get()));
+                break;
+            default:
+                throw new IllegalStateException("Unknown participant log record type " + type);
+        }
+    }
+
+    private static Leg getLeg(long txId, ByteBuffer body) {
+        String accountId = getString(body);
+        String counterpartyAccountId = getString(body);
+        BigDecimal amount = BigDecimal.valueOf(body.getLong(), body.get());
+        return new Leg(txId, accountId, counterpartyAccountId, amount, body.get() != 0);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
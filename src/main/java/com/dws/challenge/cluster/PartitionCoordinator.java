@@ -0,0 +1,276 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.exception.PartitionUnavailableException;
+import com.dws.challenge.wire.AsyncWireClient;
+import com.dws.challenge.wire.WireProtocol;
+import com.dws.challenge.wire.WireResponse;
+import com.dws.challenge.wire.WireStatus;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/*** two-phase commit of transfers between accounts of different nodes, the node receiving the transfer coordinates it
+ * BEGIN is forced to the CoordinatorLog, both legs are prepared in parallel (the local one by a direct call),
+ * the decision is forced and sent to both participants. Once both acknowledged it that is forced and END is sent
+ * to both, so they forget the transaction, and logged when both answered it.
+ * A transfer commits only when both prepares succeeded, a failed or timed out prepare aborts it.
+ * Transfers not ended, and those found unfinished in the log at start, are in doubt: every recoveryInterval
+ * their decision, or END once the decision was acknowledged, is sent again, an undecided one is aborted first
+ * (presumed abort). Transfers of two accounts of one other node are forwarded to that node.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Log4j2
+public class PartitionCoordinator {
+
+    private static final long SEQUENCE_MASK = (1L << 56) - 1;
+
+    private final PartitionRouter router;
+
+    private final TransferParticipant participant;
+
+    private final CoordinatorLog coordinatorLog;
+
+    private final long timeoutMillis;
+
+    private final AtomicLong nextSequence;
+
+    private final Set<CoordinatorLog.Transfer> inDoubt = ConcurrentHashMap.newKeySet();
+
+    //decisions are forced and sent here, not on the reader thread of a node connection
+    private final ExecutorService deciders;
+
+    private final ScheduledExecutorService recovery;
+
+    public PartitionCoordinator(ClusterProperties properties, PartitionRouter router, TransferParticipant participant) {
+        this.router = router;
+        this.participant = participant;
+        this.timeoutMillis = properties.getRequestTimeout().toMillis();
+        try {
+            this.coordinatorLog = new CoordinatorLog(Path.of(properties.getLogDirectory()),
+                    properties.getLogCompactionSize().toBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the coordinator log in " + properties.getLogDirectory(), e);
+        }
+        //ids of earlier runs are not reused: the sequence starts at the clock in microseconds or after the log
+        long logged = coordinatorLog.maxTxId() == Long.MIN_VALUE ? 0 : (coordinatorLog.maxTxId() & SEQUENCE_MASK) + 1;
+        this.nextSequence = new AtomicLong(Math.max(logged, System.currentTimeMillis() * 1000));
+        inDoubt.addAll(coordinatorLog.unfinished());
+
+        AtomicInteger threads = new AtomicInteger();
+        this.deciders = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                runnable -> daemon(runnable, "partition-coordinator-" + threads.incrementAndGet()));
+        this.recovery = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "partition-recovery"));
+        long interval = properties.getRecoveryInterval().toMillis();
+        recovery.scheduleWithFixedDelay(this::recover, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public int inDoubtCount() {
+        return inDoubt.size();
+    }
+
+    public WireStatus transfer(String senderAccountId, String receiverAccountId, BigDecimal amount) {
+        return transferAsync(senderAccountId, receiverAccountId, amount).join();
+    }
+
+    //never completes exceptionally, failures are FAILED
+    public CompletableFuture<WireStatus> transferAsync(String senderAccountId, String receiverAccountId,
+                                                      BigDecimal amount) {
+        int senderNode = router.partitionOf(senderAccountId);
+        int receiverNode = router.partitionOf(receiverAccountId);
+        if (senderNode == receiverNode) {
+            return request(senderNode, client -> client.transfer(senderAccountId, receiverAccountId, amount));
+        }
+
+        CoordinatorLog.Transfer transfer = new CoordinatorLog.Transfer(
+                (long) router.getNodeId() << 56 | (nextSequence.getAndIncrement() & SEQUENCE_MASK),
+                senderAccountId, receiverAccountId, amount, senderNode, receiverNode);
+        try {
+            coordinatorLog.begin(transfer);
+        } catch (RuntimeException e) {
+            log.error("Cannot begin transfer {}", transfer.txId, e);
+            return CompletableFuture.completedFuture(WireStatus.FAILED);
+        }
+        CompletableFuture<WireStatus> debit = prepare(transfer, WireProtocol.PREPARE_DEBIT);
+        CompletableFuture<WireStatus> credit = prepare(transfer, WireProtocol.PREPARE_CREDIT);
+        return debit.thenCombine(credit, PartitionCoordinator::outcome)
+                .thenComposeAsync(status -> finish(transfer, status), deciders);
+    }
+
+    static WireStatus outcome(WireStatus debit, WireStatus credit) {
+        if (debit == WireStatus.UNKNOWN_ACCOUNT || credit == WireStatus.UNKNOWN_ACCOUNT) {
+            return WireStatus.UNKNOWN_ACCOUNT;
+        }
+        return debit != WireStatus.OK ? debit : credit;
+    }
+
+    private CompletableFuture<WireStatus> prepare(CoordinatorLog.Transfer transfer, byte type) {
+        boolean debit = type == WireProtocol.PREPARE_DEBIT;
+        int node = debit ? transfer.senderNode : transfer.receiverNode;
+        String accountId = debit ? transfer.senderAccountId : transfer.receiverAccountId;
+        String counterpartyAccountId = debit ? transfer.receiverAccountId : transfer.senderAccountId;
+        if (node == router.getNodeId()) {
+            return local(() -> debit
+                    ? participant.prepareDebit(transfer.txId, accountId, counterpartyAccountId, transfer.amount)
+                    : participant.prepareCredit(transfer.txId, accountId, counterpartyAccountId, transfer.amount));
+        }
+        return request(node, client -> client.prepare(type, transfer.txId, accountId, counterpartyAccountId,
+                transfer.amount));
+    }
+
+    private CompletableFuture<WireStatus> finish(CoordinatorLog.Transfer transfer, WireStatus status) {
+        try {
+            coordinatorLog.decide(transfer, status == WireStatus.OK);
+        } catch (RuntimeException e) {
+            //nobody was told to commit, recovery aborts it
+            log.error("Cannot log the decision of transfer {}", transfer.txId, e);
+            inDoubt.add(transfer);
+            return CompletableFuture.completedFuture(WireStatus.FAILED);
+        }
+        //the caller is answered once the decision is acknowledged, END does not delay it
+        return acknowledge(transfer).thenApply(acknowledged -> {
+            if (!acknowledged) {
+                inDoubt.add(transfer);
+            } else {
+                end(transfer).thenAccept(ended -> {
+                    if (!ended) {
+                        inDoubt.add(transfer);
+                    }
+                });
+            }
+            return status;
+        });
+    }
+
+    //sends what is missing of a logged decision to both participants, true once the transfer is ended
+    private CompletableFuture<Boolean> deliver(CoordinatorLog.Transfer transfer) {
+        if (transfer.acknowledged) {
+            return end(transfer);
+        }
+        return acknowledge(transfer).thenCompose(acknowledged -> acknowledged
+                ? end(transfer) : CompletableFuture.completedFuture(false));
+    }
+
+    //sends the decision to both participants, true once both acknowledged it and that is forced
+    private CompletableFuture<Boolean> acknowledge(CoordinatorLog.Transfer transfer) {
+        byte type = transfer.commit ? WireProtocol.COMMIT : WireProtocol.ABORT;
+        return both(transfer, type).thenApply(acknowledged -> {
+            if (acknowledged) {
+                coordinatorLog.acknowledge(transfer);
+            }
+            return acknowledged;
+        });
+    }
+
+    //sends END to both participants, true once both forgot the transfer and END is logged
+    private CompletableFuture<Boolean> end(CoordinatorLog.Transfer transfer) {
+        return both(transfer, WireProtocol.END).thenApply(ended -> {
+            if (ended) {
+                coordinatorLog.end(transfer);
+            }
+            return ended;
+        });
+    }
+
+    private CompletableFuture<Boolean> both(CoordinatorLog.Transfer transfer, byte type) {
+        CompletableFuture<WireStatus> sender = decide(transfer.senderNode, type, transfer.txId);
+        CompletableFuture<WireStatus> receiver = decide(transfer.receiverNode, type, transfer.txId);
+        return sender.thenCombine(receiver, (senderStatus, receiverStatus) -> {
+            if (senderStatus == WireStatus.UNKNOWN_TRANSACTION || receiverStatus == WireStatus.UNKNOWN_TRANSACTION) {
+                //a participant lost its prepared leg, retrying does not help
+                log.error("Transfer {} was not prepared by a participant, its commit cannot be applied there",
+                        transfer.txId);
+            }
+            return senderStatus == WireStatus.OK && receiverStatus == WireStatus.OK;
+        });
+    }
+
+    private CompletableFuture<WireStatus> decide(int node, byte type, long txId) {
+        if (node == router.getNodeId()) {
+            return local(() -> {
+                switch (type) {
+                    case WireProtocol.COMMIT:
+                        return participant.commit(txId);
+                    case WireProtocol.ABORT:
+                        return participant.abort(txId);
+                    default:
+                        return participant.end(txId);
+                }
+            });
+        }
+        return request(node, client -> client.decide(type, txId));
+    }
+
+    private interface LocalCall {
+        WireStatus call();
+    }
+
+    private static CompletableFuture<WireStatus> local(LocalCall call) {
+        try {
+            return CompletableFuture.completedFuture(call.call());
+        } catch (RuntimeException e) {
+            log.warn("Local participant failed", e);
+            return CompletableFuture.completedFuture(WireStatus.FAILED);
+        }
+    }
+
+    private CompletableFuture<WireStatus> request(int node,
+                                                  Function<AsyncWireClient, CompletableFuture<WireResponse>> call) {
+        try {
+            return call.apply(router.node(node))
+                    .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .handle((response, failure) -> failure == null ? response.getStatus() : WireStatus.FAILED);
+        } catch (PartitionUnavailableException e) {
+            return CompletableFuture.completedFuture(WireStatus.FAILED);
+        }
+    }
+
+    private void recover() {
+        try {
+            for (CoordinatorLog.Transfer transfer : inDoubt) {
+                if (transfer.commit == null) {
+                    coordinatorLog.decide(transfer, false);
+                }
+                if (deliver(transfer).join()) {
+                    inDoubt.remove(transfer);
+                    log.info("In-doubt transfer {} finished with {}", transfer.txId,
+                            transfer.commit ? "commit" : "abort");
+                }
+            }
+            coordinatorLog.compactIfNeeded();
+        } catch (RuntimeException e) {
+            log.warn("Recovery of in-doubt transfers failed, retrying", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        recovery.shutdownNow();
+        deciders.shutdown();
+        deciders.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        recovery.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        coordinatorLog.close();
+    }
+}
@@ -0,0 +1,150 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.PartitionUnavailableException;
+import com.dws.challenge.wire.AsyncWireClient;
+import com.dws.challenge.wire.WireResponse;
+import com.dws.challenge.wire.WireStatus;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*** owner of every account id in a cluster of cluster.nodes, enabled with cluster.enabled=true
+ * accounts are partitioned by a hash of their id, one partition per node, so every node computes the same owner
+ * without asking anybody. Connections to the other nodes are opened on first use and opened again after a failure.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Log4j2
+public class PartitionRouter {
+
+    private final int nodeId;
+
+    private final String[] hosts;
+
+    private final int[] ports;
+
+    private final AsyncWireClient[] clients;
+
+    private final Duration requestTimeout;
+
+    public PartitionRouter(ClusterProperties properties) {
+        int nodeCount = properties.getNodes().size();
+        if (properties.getNodeId() < 0 || properties.getNodeId() >= nodeCount) {
+            throw new IllegalArgumentException("cluster.node-id " + properties.getNodeId()
+                    + " is not an index of cluster.nodes " + properties.getNodes());
+        }
+        this.nodeId = properties.getNodeId();
+        this.hosts = new String[nodeCount];
+        this.ports = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            String node = properties.getNodes().get(i).trim();
+            int separator = node.lastIndexOf(':');
+            hosts[i] = node.substring(0, separator);
+            ports[i] = Integer.parseInt(node.substring(separator + 1));
+        }
+        this.clients = new AsyncWireClient[nodeCount];
+        this.requestTimeout = properties.getRequestTimeout();
+        log.info("Node {} of {} nodes", nodeId, nodeCount);
+    }
+
+    //same on every node and every run, String.hashCode is specified
+    public static int partitionOf(String accountId, int partitions) {
+        int hash = accountId.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), partitions);
+    }
+
+    public int partitionOf(String accountId) {
+        return partitionOf(accountId, hosts.length);
+    }
+
+    public boolean isLocal(String accountId) {
+        return partitionOf(accountId) == nodeId;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getNodeCount() {
+        return hosts.length;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public RemoteAccount remoteAccount(String accountId) {
+        return new RemoteAccount(accountId, partitionOf(accountId), this);
+    }
+
+    //creates an account owned by another node there
+    public void createAccount(Account account) {
+        String accountId = account.getAccountId();
+        int owner = partitionOf(accountId);
+        WireResponse response = await(owner, node(owner).createAccount(accountId, account.getBalance()));
+        switch (response.getStatus()) {
+            case OK:
+                return;
+            case DUPLICATE_ACCOUNT:
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            case INVALID_REQUEST:
+                throw new AmountOutOfRangeException("Balance " + account.getBalance() + " of " + accountId
+                        + " was refused by node " + owner);
+            default:
+                throw new PartitionUnavailableException("Node " + owner + " answered " + response.getStatus());
+        }
+    }
+
+    //waits at most requestTimeout for a response of node
+    WireResponse await(int node, CompletableFuture<WireResponse> response) {
+        try {
+            return response.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PartitionUnavailableException("Interrupted while waiting for node " + node, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new PartitionUnavailableException("No response of node " + node, e);
+        }
+    }
+
+    public AsyncWireClient node(int node) throws PartitionUnavailableException {
+        if (node == nodeId) {
+            throw new IllegalArgumentException("Node " + node + " is this node");
+        }
+        synchronized (clients) {
+            AsyncWireClient client = clients[node];
+            if (client == null || !client.isOpen()) {
+                try {
+                    client = new AsyncWireClient(hosts[node], ports[node]);
+                } catch (IOException e) {
+                    throw new PartitionUnavailableException("Node " + node + " at " + hosts[node] + ":" + ports[node]
+                            + " is not reachable", e);
+                }
+                clients[node] = client;
+            }
+            return client;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (clients) {
+            for (AsyncWireClient client : clients) {
+                if (client != null) {
+                    client.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.PartitionUnavailableException;
+import com.dws.challenge.wire.WireResponse;
+import com.dws.challenge.wire.WireStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*** account owned by another node, returned by AccountsService.getAccount in a cluster
+ * the balance is read from the owner on every call, unknown ids fail with AccountNotFoundException.
+ * The balance cannot be changed here, transfers of remote accounts go through PartitionCoordinator
+ */
+public class RemoteAccount extends Account {
+
+    private final int nodeId;
+
+    private final PartitionRouter router;
+
+    RemoteAccount(String accountId, int nodeId, PartitionRouter router) {
+        super(accountId, null, new ReentrantLock());
+        this.nodeId = nodeId;
+        this.router = router;
+    }
+
+    @JsonIgnore
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        WireResponse response = router.await(nodeId, router.node(nodeId).getBalance(getAccountId()));
+        if (response.getStatus() == WireStatus.UNKNOWN_ACCOUNT) {
+            throw new AccountNotFoundException("Account " + getAccountId() + " does not exist");
+        }
+        if (response.getStatus() != WireStatus.OK) {
+            throw new PartitionUnavailableException("Node " + nodeId + " answered " + response.getStatus());
+        }
+        return response.getBalance();
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        throw unsupported();
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        throw unsupported();
+    }
+
+    private UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Account " + getAccountId() + " is owned by node " + nodeId);
+    }
+
+    //the generated ones of Account would read the balance
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RemoteAccount && ((RemoteAccount) other).getAccountId().equals(getAccountId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getAccountId().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteAccount(accountId=" + getAccountId() + ", nodeId=" + nodeId + ")";
+    }
+}
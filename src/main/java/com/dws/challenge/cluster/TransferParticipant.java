@@ -0,0 +1,294 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.journal.JournalProperties;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.service.AccountLockManager;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceFeed;
+import com.dws.challenge.service.BalanceSnapshots;
+import com.dws.challenge.wire.WireStatus;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
+
+/*** the legs of cross-partition transfers on the node owning their account, driven by a PartitionCoordinator
+ * a debit is taken from the account when it is prepared, so no lock is held between the phases and a commit
+ * cannot fail: commit of a debit only posts it, abort pays it back. A credit is only checked when prepared and
+ * deposited by the commit. Legs, their decisions and the balance changes they make are kept in the ParticipantLog,
+ * which is forced before a prepare or decision is acknowledged. Repeated prepares and decisions get the first
+ * answer again, a commit of a transaction never prepared here is UNKNOWN_TRANSACTION, an abort of one is remembered
+ * as a tombstone, so its prepare arriving late is refused. Legs and tombstones are forgotten on END, which the
+ * coordinator sends once both participants acknowledged its decision.
+ * An account lock not acquired in time answers BUSY and changes nothing, a busy commit or abort stays prepared
+ * and is repeated by the coordinator like an unacknowledged one.
+ * With journal.enabled the changes of legs are added at start to the balances recovered from the node journal,
+ * which does not contain them.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Log4j2
+public class TransferParticipant {
+
+    private static final int TX_LOCKS = 64;
+
+    private final AccountsService accountsService;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final TransferLedger transferLedger;
+
+    private final AccountLockManager lockManager;
+
+    private final BalanceFeed balanceFeed;
+
+    private final ParticipantLog participantLog;
+
+    //the steps of one transaction are serialized, a repeated decision may race with the first one
+    private final Object[] txLocks = new Object[TX_LOCKS];
+
+    public TransferParticipant(ClusterProperties properties, JournalProperties journalProperties,
+                               AccountsService accountsService, TransferLedger transferLedger,
+                               AccountLockManager lockManager, BalanceFeed balanceFeed) {
+        this.accountsService = accountsService;
+        this.balanceSnapshots = accountsService.getBalanceSnapshots();
+        this.transferLedger = transferLedger;
+        this.lockManager = lockManager;
+        this.balanceFeed = balanceFeed;
+        for (int i = 0; i < TX_LOCKS; i++) {
+            txLocks[i] = new Object();
+        }
+        try {
+            this.participantLog = new ParticipantLog(Path.of(properties.getLogDirectory()),
+                    properties.getLogCompactionSize().toBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the participant log in " + properties.getLogDirectory(), e);
+        }
+        //without the journal balances are either not recovered at all or kept by the store with these changes
+        if (journalProperties.isEnabled()) {
+            recoverChanges();
+        }
+    }
+
+    public WireStatus prepareDebit(long txId, String accountId, String counterpartyAccountId, BigDecimal amount) {
+        return prepare(txId, accountId, counterpartyAccountId, amount, true);
+    }
+
+    public WireStatus prepareCredit(long txId, String accountId, String counterpartyAccountId, BigDecimal amount) {
+        return prepare(txId, accountId, counterpartyAccountId, amount, false);
+    }
+
+    private WireStatus prepare(long txId, String accountId, String counterpartyAccountId, BigDecimal amount,
+                               boolean debit) {
+        if (amount.signum() < 0) {
+            return WireStatus.INVALID_REQUEST;
+        }
+        Account account = accountsService.getAccount(accountId);
+        if (account == null || account instanceof RemoteAccount) {
+            return WireStatus.UNKNOWN_ACCOUNT;
+        }
+        synchronized (txLock(txId)) {
+            ParticipantLog.Leg known = participantLog.leg(txId);
+            if (known != null) {
+                //a repeated prepare, or a late one of an aborted transaction
+                return known.state == ParticipantLog.State.ABORTED ? WireStatus.INVALID_REQUEST : WireStatus.OK;
+            }
+            ParticipantLog.Leg leg = new ParticipantLog.Leg(txId, accountId, counterpartyAccountId, amount, debit);
+            if (!debit) {
+                participantLog.force(participantLog.prepare(leg));
+                return WireStatus.OK;
+            }
+            try {
+                if (!change(account, account.getLock(), amount.negate(), () -> participantLog.prepare(leg), null)) {
+                    return WireStatus.INSUFFICIENT_BALANCE;
+                }
+            } catch (AccountBusyException e) {
+                return WireStatus.BUSY;
+            }
+            return WireStatus.OK;
+        }
+    }
+
+    public WireStatus commit(long txId) {
+        synchronized (txLock(txId)) {
+            ParticipantLog.Leg leg = participantLog.leg(txId);
+            if (leg == null) {
+                //never prepared here, acknowledging it would apply only the other leg of the transfer
+                log.error("Commit of transaction {} which was not prepared on this node", txId);
+                return WireStatus.UNKNOWN_TRANSACTION;
+            }
+            if (leg.state != ParticipantLog.State.PREPARED) {
+                return leg.state == ParticipantLog.State.COMMITTED ? WireStatus.OK : WireStatus.INVALID_REQUEST;
+            }
+            Account account = accountsService.getAccount(leg.accountId);
+            if (account == null) {
+                log.error("Account {} of prepared transaction {} is gone", leg.accountId, txId);
+                return WireStatus.FAILED;
+            }
+            //the posting is appended under the account lock, like the postings of local transfers
+            Runnable post = () -> transferLedger.post(account, new Account(leg.counterpartyAccountId),
+                    leg.debit ? leg.amount.negate() : leg.amount, System.currentTimeMillis());
+            try {
+                if (leg.debit) {
+                    long position;
+                    lockManager.lock(account, account.getLock());
+                    try {
+                        position = participantLog.commit(leg);
+                        post.run();
+                    } finally {
+                        account.getLock().unlock();
+                    }
+                    participantLog.force(position);
+                } else {
+                    change(account, account.getDepositLock(), leg.amount, () -> participantLog.commit(leg), post);
+                }
+            } catch (AccountBusyException e) {
+                return WireStatus.BUSY;
+            }
+            return WireStatus.OK;
+        }
+    }
+
+    public WireStatus abort(long txId) {
+        synchronized (txLock(txId)) {
+            ParticipantLog.Leg leg = participantLog.leg(txId);
+            if (leg == null) {
+                //presumed abort of a transaction whose prepare did not arrive (yet)
+                participantLog.force(participantLog.abortUnknown(txId));
+                return WireStatus.OK;
+            }
+            if (leg.state != ParticipantLog.State.PREPARED) {
+                return leg.state == ParticipantLog.State.ABORTED ? WireStatus.OK : WireStatus.INVALID_REQUEST;
+            }
+            if (!leg.debit) {
+                participantLog.force(participantLog.abort(leg));
+                return WireStatus.OK;
+            }
+            Account account = accountsService.getAccount(leg.accountId);
+            if (account == null) {
+                log.error("Account {} of prepared transaction {} is gone", leg.accountId, txId);
+                return WireStatus.FAILED;
+            }
+            try {
+                change(account, account.getDepositLock(), leg.amount, () -> participantLog.abort(leg), null);
+            } catch (AccountBusyException e) {
+                return WireStatus.BUSY;
+            }
+            return WireStatus.OK;
+        }
+    }
+
+    //the coordinator received both acknowledgements of its decision and will not send it again
+    public WireStatus end(long txId) {
+        synchronized (txLock(txId)) {
+            ParticipantLog.Leg leg = participantLog.leg(txId);
+            if (leg != null && leg.state == ParticipantLog.State.PREPARED) {
+                return WireStatus.INVALID_REQUEST;
+            }
+            participantLog.end(txId);
+        }
+        participantLog.compactIfNeeded();
+        return WireStatus.OK;
+    }
+
+    public int preparedCount() {
+        int prepared = 0;
+        for (ParticipantLog.Leg leg : participantLog.legs()) {
+            if (leg.state == ParticipantLog.State.PREPARED) {
+                prepared++;
+            }
+        }
+        return prepared;
+    }
+
+    //legs and tombstones not ended yet
+    public int legCount() {
+        return participantLog.legs().size();
+    }
+
+    private Object txLock(long txId) {
+        return txLocks[(int) (txId ^ (txId >>> 32)) & (TX_LOCKS - 1)];
+    }
+
+    private void recoverChanges() {
+        participantLog.recoveredChanges().forEach((accountId, delta) -> {
+            Account account = accountsService.getAccount(accountId);
+            if (account == null || account instanceof RemoteAccount) {
+                log.error("Account {} changed by {} in cross-partition transfers was not recovered", accountId, delta);
+                return;
+            }
+            balanceSnapshots.startCreation();
+            try {
+                account.setBalance(account.getBalance().add(delta));
+            } finally {
+                balanceSnapshots.finishCreation(delta);
+            }
+        });
+        if (!participantLog.recoveredChanges().isEmpty()) {
+            log.info("Recovered changes of {} accounts from cross-partition transfers",
+                    participantLog.recoveredChanges().size());
+        }
+    }
+
+    /* money entering (positive delta) or leaving this node, under the same account lock and snapshot epoch
+     * as a local transfer, and accounted for in the expected total of reconciliation like a created account.
+     * record appends the log record of the change and returns its position: a deposit is logged and forced before
+     * it is made, so no durable local transfer spends money which is not logged, a withdrawal is logged once made
+     * and forced after the lock is released. posted, if any, runs under the lock once the balance changed.
+     * A withdrawal which the balance does not allow changes and logs nothing and returns false,
+     * a lock not acquired in time changes nothing and throws AccountBusyException
+     */
+    private boolean change(Account account, Lock lock, BigDecimal delta, LongSupplier record, Runnable posted) {
+        boolean changed = false;
+        long position = -1;
+        balanceSnapshots.startCreation();
+        try {
+            lockManager.lock(account, lock);
+            try {
+                long epoch = balanceSnapshots.enter();
+                try {
+                    balanceSnapshots.beforeChange(epoch, account);
+                    if (delta.signum() >= 0) {
+                        participantLog.force(record.getAsLong());
+                        account.deposit(delta);
+                        changed = true;
+                    } else if (account.withdraw(delta.negate())) {
+                        position = record.getAsLong();
+                        changed = true;
+                    }
+                    if (changed && posted != null) {
+                        posted.run();
+                    }
+                } finally {
+                    balanceSnapshots.exit(epoch);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            balanceSnapshots.finishCreation(changed ? delta : BigDecimal.ZERO);
+        }
+        if (position >= 0) {
+            participantLog.force(position);
+        }
+        if (changed) {
+            balanceFeed.changed(account);
+            log.debug("Changed {} by {} for a cross-partition transfer", account.getAccountId(), delta);
+        }
+        return changed;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        participantLog.close();
+    }
+}
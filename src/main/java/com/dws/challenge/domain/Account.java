@@ -22,7 +22,7 @@ public class Account {
      * for different accounts
       */
     @JsonIgnore
-    private final Lock lock = new ReentrantLock();
+    private final Lock lock;
 
     @NotNull
     @NotEmpty
@@ -34,22 +34,39 @@ public class Account {
     private BigDecimal balance;
 
     public Account(String accountId) {
-        this.accountId = accountId;
-        this.balance = BigDecimal.ZERO;
+        this(accountId, BigDecimal.ZERO);
     }
 
     @JsonCreator
     public Account(@JsonProperty("accountId") String accountId,
                    @JsonProperty("balance") BigDecimal balance) {
+        this(accountId, balance, new ReentrantLock());
+    }
+
+    //for account variants which keep balance and lock state outside of this object
+    protected Account(String accountId, BigDecimal balance, Lock lock) {
         this.accountId = accountId;
         this.balance = balance;
+        this.lock = lock;
+    }
+
+    /* lock a transfer holds on its receiver, the same exclusive lock unless deposits of the account may run
+     * concurrently, see StripedAccount
+     */
+    @JsonIgnore
+    public Lock getDepositLock() {
+        return lock;
+    }
+
+    public boolean acceptsConcurrentDeposits() {
+        return false;
     }
 
     public void deposit(BigDecimal amount) {
         lock.lock();
         try {
             balance = balance.add(amount);
-            log.info("Deposited " + amount + " to the " + accountId + " account. New balance: " + balance);
+            log.debug("Deposited {} to the {} account. New balance: {}", amount, accountId, balance);
         } finally {
             lock.unlock();
         }
@@ -60,7 +77,7 @@ public class Account {
         try {
             if (balance.compareTo(amount) > 0) {
                 balance = balance.subtract(amount);
-                log.info("Withdrawn " + amount + " from the " + accountId + " account. New balance: " + balance);
+                log.debug("Withdrawn {} from the {} account. New balance: {}", amount, accountId, balance);
                 return true;
             }
             return false;
@@ -0,0 +1,71 @@
+package com.dws.challenge.domain;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*** Account variant with the balance in a single atomically replaced cell
+ * reads are plain volatile reads and never wait for a transfer in flight,
+ * deposit and withdraw are CAS loops, so they stay correct without the account lock.
+ * The lock is kept for multi-account writers (transfers and batches take it in the canonical order)
+ * and setBalance must only be called while holding it.
+ */
+@Log4j2
+public class AtomicAccount extends Account {
+
+    private static final VarHandle CURRENT;
+
+    static {
+        try {
+            CURRENT = MethodHandles.lookup().findVarHandle(AtomicAccount.class, "current", BigDecimal.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile BigDecimal current;
+
+    public AtomicAccount(String accountId, BigDecimal balance) {
+        super(accountId, null, new ReentrantLock());
+        this.current = balance;
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        BigDecimal balance;
+        BigDecimal updated;
+        do {
+            balance = current;
+            updated = balance.add(amount);
+        } while (!CURRENT.compareAndSet(this, balance, updated));
+        log.debug("Deposited {} to the {} account. New balance: {}", amount, getAccountId(), updated);
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        BigDecimal balance;
+        BigDecimal updated;
+        do {
+            balance = current;
+            if (balance.compareTo(amount) <= 0) {
+                return false;
+            }
+            updated = balance.subtract(amount);
+        } while (!CURRENT.compareAndSet(this, balance, updated));
+        log.debug("Withdrawn {} from the {} account. New balance: {}", amount, getAccountId(), updated);
+        return true;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return current;
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        current = balance;
+    }
+}
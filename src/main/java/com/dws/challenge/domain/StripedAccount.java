@@ -0,0 +1,154 @@
+package com.dws.challenge.domain;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*** Account variant for a few very hot receivers, the balance is split into padded cells like a LongAdder
+ * a transfer holds the shared deposit lock of its receiver, so deposits of concurrent transfers do not wait for
+ * each other and each adds to the cell of its thread with a CAS. Withdrawals and setBalance hold the exclusive
+ * lock, which waits for running deposits, and take the amount out of the cells one after the other.
+ * getBalance sums the cells without locking: exact while the exclusive lock is held or no deposit runs,
+ * otherwise it may or may not contain the deposits in progress, like LongAdder.sum.
+ */
+@Log4j2
+public class StripedAccount extends Account {
+
+    private final ReentrantReadWriteLock stripesLock;
+    private final Cell[] cells;
+    private final int mask;
+
+    //fields of the superclasses are laid out first, so the value sits between two padding blocks
+    abstract static class LeftPadding {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    abstract static class CellValue extends LeftPadding {
+        volatile BigDecimal value = BigDecimal.ZERO;
+    }
+
+    static final class Cell extends CellValue {
+        long p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    private static final AtomicReferenceFieldUpdater<CellValue, BigDecimal> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(CellValue.class, BigDecimal.class, "value");
+
+    //stripes is rounded up to a power of two
+    public StripedAccount(String accountId, BigDecimal balance, int stripes) {
+        this(accountId, balance, stripes, new ReentrantReadWriteLock());
+    }
+
+    private StripedAccount(String accountId, BigDecimal balance, int stripes, ReentrantReadWriteLock stripesLock) {
+        super(accountId, null, stripesLock.writeLock());
+        this.stripesLock = stripesLock;
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.cells = new Cell[size];
+        for (int i = 0; i < size; i++) {
+            cells[i] = new Cell();
+        }
+        this.mask = size - 1;
+        cells[0].value = balance;
+    }
+
+    public int getStripes() {
+        return cells.length;
+    }
+
+    @Override
+    public Lock getDepositLock() {
+        return stripesLock.readLock();
+    }
+
+    @Override
+    public boolean acceptsConcurrentDeposits() {
+        return true;
+    }
+
+    //atomic without any lock, a failed CAS moves on to the next cell
+    @Override
+    public void deposit(BigDecimal amount) {
+        for (int index = (int) Thread.currentThread().getId(); ; index++) {
+            Cell cell = cells[index & mask];
+            BigDecimal current = cell.value;
+            if (VALUE.compareAndSet(cell, current, current.add(amount))) {
+                break;
+            }
+        }
+        log.debug("Deposited {} to the {} account", amount, getAccountId());
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        getLock().lock();
+        try {
+            BigDecimal balance = getBalance();
+            if (balance.compareTo(amount) <= 0) {
+                return false;
+            }
+            take(amount);
+            log.debug("Withdrawn {} from the {} account. New balance: {}", amount, getAccountId(),
+                    balance.subtract(amount));
+            return true;
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        BigDecimal sum = cells[0].value;
+        for (int i = 1; i < cells.length; i++) {
+            sum = sum.add(cells[i].value);
+        }
+        return sum;
+    }
+
+    //replaces the whole balance, deposits running without the deposit lock are kept on top of it
+    @Override
+    public void setBalance(BigDecimal balance) {
+        getLock().lock();
+        try {
+            BigDecimal delta = balance.subtract(getBalance());
+            if (delta.signum() >= 0) {
+                add(cells[0], delta);
+            } else {
+                take(delta.negate());
+            }
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    /* called with the exclusive lock, empties cells from the first one on, so readers only see balances between
+     * the old and the new one. Whatever the cells do not cover is taken from the first cell
+     */
+    private void take(BigDecimal amount) {
+        BigDecimal remaining = amount;
+        for (int i = 0; i < cells.length && remaining.signum() > 0; i++) {
+            Cell cell = cells[i];
+            BigDecimal current;
+            BigDecimal taken;
+            do {
+                current = cell.value;
+                taken = current.min(remaining);
+            } while (taken.signum() > 0 && !VALUE.compareAndSet(cell, current, current.subtract(taken)));
+            if (taken.signum() > 0) {
+                remaining = remaining.subtract(taken);
+            }
+        }
+        if (remaining.signum() > 0) {
+            add(cells[0], remaining.negate());
+        }
+    }
+
+    private static void add(Cell cell, BigDecimal amount) {
+        BigDecimal current;
+        do {
+            current = cell.value;
+        } while (!VALUE.compareAndSet(cell, current, current.add(amount)));
+    }
+}
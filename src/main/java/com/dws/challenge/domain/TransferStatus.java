@@ -0,0 +1,9 @@
+package com.dws.challenge.domain;
+
+public enum TransferStatus {
+    COMPLETED,
+    INSUFFICIENT_BALANCE,
+    UNKNOWN_ACCOUNT,
+    //leg was valid but not applied because another leg of an all-or-nothing batch failed
+    ROLLED_BACK
+}
@@ -0,0 +1,19 @@
+package com.dws.challenge.dto;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class AccountBalanceTransferBatchDto {
+    @NotNull
+    private BatchTransferMode mode = BatchTransferMode.ALL_OR_NOTHING;
+
+    @NotEmpty
+    @Size(max = 10000)
+    private List<@Valid @NotNull AccountBalanceTransferDto> transfers;
+}
@@ -0,0 +1,28 @@
+package com.dws.challenge.dto;
+
+import com.dws.challenge.exception.InvalidTransferException;
+
+/*** the constraints of AccountBalanceTransferDto written out by hand for the single transfer endpoints,
+ * no metadata lookup, reflection or violation set per request. Keep in line with the annotations of the dto,
+ * which still validate the transfers of a batch
+ */
+public final class AccountBalanceTransferDtoValidator {
+
+    private AccountBalanceTransferDtoValidator() {
+    }
+
+    public static void validate(AccountBalanceTransferDto transfer) throws InvalidTransferException {
+        if (transfer.getSenderAccountId() == null) {
+            throw new InvalidTransferException("senderAccountId must not be null");
+        }
+        if (transfer.getReceiverAccountId() == null) {
+            throw new InvalidTransferException("receiverAccountId must not be null");
+        }
+        if (transfer.getAmount() == null) {
+            throw new InvalidTransferException("amount must not be null");
+        }
+        if (transfer.getAmount().signum() < 0) {
+            throw new InvalidTransferException("amount must be greater than or equal to 0");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.dws.challenge.dto;
+
+import com.dws.challenge.domain.TransferStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+public class AccountBalanceTransferResultDto {
+    private String senderAccountId;
+    private String receiverAccountId;
+    private BigDecimal amount;
+    private TransferStatus status;
+}
@@ -0,0 +1,13 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AccountImportErrorDto {
+    //1-based line of the import body
+    private long line;
+    private String accountId;
+    private String message;
+}
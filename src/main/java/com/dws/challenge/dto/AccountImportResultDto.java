@@ -0,0 +1,15 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class AccountImportResultDto {
+    private long imported;
+    private long rejected;
+    //first rejected lines ordered by line, rejected can be greater than the number of reported errors
+    private List<AccountImportErrorDto> errors;
+}
@@ -0,0 +1,16 @@
+package com.dws.challenge.dto;
+
+import com.dws.challenge.domain.Account;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class AccountPageDto {
+    //in accountId order
+    private List<Account> accounts;
+    //passed as after to get the next page, null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,14 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+public class BalanceChangeDto {
+    private String accountId;
+    //current balance when the event was built, intermediate balances of a slow subscriber are skipped
+    private BigDecimal balance;
+}
@@ -0,0 +1,8 @@
+package com.dws.challenge.dto;
+
+public enum BatchTransferMode {
+    //either every transfer of the batch is applied or none of them
+    ALL_OR_NOTHING,
+    //every transfer is applied independently, failed ones are reported and skipped
+    BEST_EFFORT
+}
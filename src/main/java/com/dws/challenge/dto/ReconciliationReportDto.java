@@ -0,0 +1,19 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+public class ReconciliationReportDto {
+    //balances are as of the end of this epoch
+    private long epoch;
+    private long accounts;
+    private BigDecimal total;
+    //sum of the balances accounts were created with, transfers do not change it
+    private BigDecimal expectedTotal;
+    private boolean balanced;
+    private long durationMillis;
+}
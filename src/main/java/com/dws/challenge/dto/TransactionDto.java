@@ -0,0 +1,18 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class TransactionDto {
+    //position in the account history, starting at 0
+    private long sequence;
+    private String counterpartyAccountId;
+    //negative for outgoing transfers
+    private BigDecimal amount;
+    private Instant timestamp;
+}
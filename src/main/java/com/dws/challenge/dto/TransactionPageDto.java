@@ -0,0 +1,15 @@
+package com.dws.challenge.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class TransactionPageDto {
+    //newest first
+    private List<TransactionDto> transactions;
+    //cursor of the next older page, null on the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,15 @@
+package com.dws.challenge.exception;
+
+import lombok.Getter;
+
+//a lock of the account was not acquired before the deadline, nothing was changed and the request may be retried
+@Getter
+public class AccountBusyException extends RuntimeException {
+
+    private final String accountId;
+
+    public AccountBusyException(String accountId) {
+        super("Account " + accountId + " is busy, retry");
+        this.accountId = accountId;
+    }
+}
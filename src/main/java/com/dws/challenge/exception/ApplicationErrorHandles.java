@@ -1,29 +1,65 @@
 package com.dws.challenge.exception;
 
-
-import com.dws.challenge.service.NotificationService;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 
 @RestControllerAdvice
 @Slf4j
-@RequiredArgsConstructor
 public class ApplicationErrorHandles {
 
-    private final NotificationService notificationService;
-
+    /* transfers return rejections as TransferStatus and notify the accounts themselves,
+     * the exception only reaches this handler from code still using the exception-based API
+     */
     @ExceptionHandler(value = {InsufficientBalanceAmountException.class})
     public ResponseEntity<HttpEntity> handleBindException(InsufficientBalanceAmountException exception) {
+        return new ResponseEntity<>(BAD_REQUEST);
+    }
 
-        notificationService.notifyAboutTransfer(exception.getReceiverAccount(), exception.getReceiverMessage());
-        notificationService.notifyAboutTransfer(exception.getSenderAccount(), exception.getSenderMessage());
+    @ExceptionHandler(value = {AmountOutOfRangeException.class})
+    public ResponseEntity<Object> handleAmountOutOfRange(AmountOutOfRangeException exception) {
+        log.info("Rejected amount: {}", exception.getMessage());
+        return new ResponseEntity<>(exception.getMessage(), BAD_REQUEST);
+    }
 
-        return new ResponseEntity<>(BAD_REQUEST);
+    @ExceptionHandler(value = {InvalidTransferException.class})
+    public ResponseEntity<Object> handleInvalidTransfer(InvalidTransferException exception) {
+        log.info("Rejected transfer: {}", exception.getMessage());
+        return new ResponseEntity<>(exception.getMessage(), BAD_REQUEST);
+    }
+
+    @ExceptionHandler(value = {IdempotencyKeyReusedException.class})
+    public ResponseEntity<Object> handleIdempotencyKeyReused(IdempotencyKeyReusedException exception) {
+        log.info("Rejected request: {}", exception.getMessage());
+        return new ResponseEntity<>(exception.getMessage(), UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(value = {AccountNotFoundException.class})
+    public ResponseEntity<Object> handleAccountNotFound(AccountNotFoundException exception) {
+        log.info("Unknown account: {}", exception.getMessage());
+        return new ResponseEntity<>(exception.getMessage(), NOT_FOUND);
+    }
+
+    @ExceptionHandler(value = {PartitionUnavailableException.class})
+    public ResponseEntity<Object> handlePartitionUnavailable(PartitionUnavailableException exception) {
+        log.warn("Partition unavailable: {}", exception.getMessage());
+        return new ResponseEntity<>(exception.getMessage(), SERVICE_UNAVAILABLE);
+    }
+
+    //the locks were not acquired in time, nothing was changed
+    @ExceptionHandler(value = {AccountBusyException.class})
+    public ResponseEntity<Object> handleAccountBusy(AccountBusyException exception) {
+        log.info("Busy account: {}", exception.getAccountId());
+        return ResponseEntity.status(SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(exception.getMessage());
     }
 }
@@ -1,30 +1,52 @@
 package com.dws.challenge.exception;
 
 import com.dws.challenge.domain.Account;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.math.BigDecimal;
 
-@AllArgsConstructor
 @Getter
 public class InsufficientBalanceAmountException extends RuntimeException {
     private Account senderAccount;
     private Account receiverAccount;
     private BigDecimal requestedAmount;
 
+    public InsufficientBalanceAmountException(Account senderAccount, Account receiverAccount,
+                                              BigDecimal requestedAmount) {
+        this(senderAccount, receiverAccount, requestedAmount, true);
+    }
 
-    public String getReceiverMessage() {
-        return  "Transfer of " + getRequestedAmount()
-                + " amount cannot be done from " + getSenderAccount().getAccountId()
-                + " due to insufficient balance amount";
+    private InsufficientBalanceAmountException(Account senderAccount, Account receiverAccount,
+                                               BigDecimal requestedAmount, boolean stackTrace) {
+        super(null, null, stackTrace, stackTrace);
+        this.senderAccount = senderAccount;
+        this.receiverAccount = receiverAccount;
+        this.requestedAmount = requestedAmount;
+    }
 
+    //without a stack trace, for transfer engines which complete every rejected transfer with one
+    public static InsufficientBalanceAmountException rejected(Account senderAccount, Account receiverAccount,
+                                                              BigDecimal requestedAmount) {
+        return new InsufficientBalanceAmountException(senderAccount, receiverAccount, requestedAmount, false);
+    }
+
+    public String getReceiverMessage() {
+        return receiverMessage(getSenderAccount(), getRequestedAmount());
     }
 
     public String getSenderMessage() {
-        return  "Transfer of " + getRequestedAmount()
-                + " amount cannot be done to " + getReceiverAccount().getAccountId()
+        return senderMessage(getReceiverAccount(), getRequestedAmount());
+    }
+
+    public static String receiverMessage(Account sender, BigDecimal amount) {
+        return  "Transfer of " + amount
+                + " amount cannot be done from " + sender.getAccountId()
                 + " due to insufficient balance amount";
+    }
 
+    public static String senderMessage(Account receiver, BigDecimal amount) {
+        return  "Transfer of " + amount
+                + " amount cannot be done to " + receiver.getAccountId()
+                + " due to insufficient balance amount";
     }
 }
@@ -0,0 +1,12 @@
+package com.dws.challenge.exception;
+
+public class PartitionUnavailableException extends RuntimeException {
+
+    public PartitionUnavailableException(String message) {
+        super(message);
+    }
+
+    public PartitionUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,178 @@
+package com.dws.challenge.journal;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*** binary layout of journal segments and snapshots
+ * record: int bodyLength, int crc32(body), body
+ * body: byte type, then for ACCOUNT_CREATED accountId, balance and for TRANSFER senderId, receiverId, amount
+ * string: short length, utf-8 bytes; decimal: int scale, short length, unscaled two's-complement bytes
+ * snapshot: int magic, long count, count * (accountId, balance)
+ */
+@Log4j2
+final class JournalCodec {
+
+    static final byte ACCOUNT_CREATED = 1;
+    static final byte TRANSFER = 2;
+
+    static final int HEADER_SIZE = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x44575331;
+
+    private JournalCodec() {
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int stringSize(byte[] value) {
+        return Short.BYTES + value.length;
+    }
+
+    static int decimalSize(byte[] unscaled) {
+        return Integer.BYTES + Short.BYTES + unscaled.length;
+    }
+
+    //writes header and body at the buffer position, body bytes are expected right after the header
+    static void writeHeader(ByteBuffer buffer, int start, int bodyLength) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + bodyLength);
+        crc.update(body);
+        buffer.putInt(start, bodyLength);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    static void putDecimal(ByteBuffer buffer, int scale, byte[] unscaled) {
+        buffer.putInt(scale);
+        buffer.putShort((short) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.getShort()];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    /* applies every valid record of the segment to balances,
+     * replay stops at the preallocated zero tail or at a torn record left by a crash
+     */
+    static long replaySegment(Path segment, Map<String, BigDecimal> balances) throws IOException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Torn record at {} of {}, rest of the segment is ignored", start, segment);
+                    break;
+                }
+                apply(body, balances);
+                buffer.position(start + HEADER_SIZE + length);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static void apply(ByteBuffer body, Map<String, BigDecimal> balances) {
+        byte type = body.get();
+        if (type == ACCOUNT_CREATED) {
+            String accountId = getString(body);
+            //a duplicate create was rejected when it happened, first one wins
+            balances.putIfAbsent(accountId, getDecimal(body));
+        } else if (type == TRANSFER) {
+            String senderId = getString(body);
+            String receiverId = getString(body);
+            BigDecimal amount = getDecimal(body);
+            BigDecimal senderBalance = balances.get(senderId);
+            BigDecimal receiverBalance = balances.get(receiverId);
+            if (senderBalance == null || receiverBalance == null) {
+                log.warn("Transfer from {} to {} references unknown account, skipped", senderId, receiverId);
+                return;
+            }
+            balances.put(senderId, senderBalance.subtract(amount));
+            balances.put(receiverId, balances.get(receiverId).add(amount));
+        } else {
+            throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    static void writeSnapshot(Path file, Map<String, BigDecimal> balances) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(balances.size());
+            for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+                out.writeUTF(entry.getKey());
+                BigDecimal balance = entry.getValue();
+                byte[] unscaled = balance.unscaledValue().toByteArray();
+                out.writeInt(balance.scale());
+                out.writeShort(unscaled.length);
+                out.write(unscaled);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void readSnapshot(Path file, Map<String, BigDecimal> balances) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a journal snapshot: " + file);
+            }
+            long count = in.readLong();
+            for (long i = 0; i < count; i++) {
+                String accountId = in.readUTF();
+                int scale = in.readInt();
+                byte[] unscaled = new byte[in.readShort()];
+                in.readFully(unscaled);
+                balances.put(accountId, new BigDecimal(new BigInteger(unscaled), scale));
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.dws.challenge.journal;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "journal")
+public class JournalProperties {
+
+    private boolean enabled = false;
+
+    private String directory = "journal";
+
+    //size of one memory-mapped journal segment file
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    //how long appended records may wait for the next fsync, all of them share it
+    private Duration groupCommitInterval = Duration.ofMillis(2);
+
+    //how often sealed segments are folded into a new snapshot
+    private Duration snapshotInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,331 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.StripedAccountProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*** append-only journal of account creations and transfers in memory-mapped segment files, journal.enabled=true
+ * appends only copy a record into the mapped segment, one flusher thread forces the segment every
+ * journal.group-commit-interval, so all transfers appended in between share one fsync (group commit).
+ * Sealed segments are periodically folded into a compact snapshot of all balances by a background thread
+ * which never touches the live accounts. On startup the latest snapshot is loaded, newer segments are replayed
+ * and the result is inserted into the AccountsRepository.
+ *
+ * files: journal-{sequence}.log segments, snapshot-{sequence}.bin contains every segment below sequence
+ */
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+@Log4j2
+public class MappedTransferJournal implements TransferJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long groupCommitNanos;
+
+    private final Object appendLock = new Object();
+    private final Object durableLock = new Object();
+
+    //guarded by appendLock, volatile for the flusher
+    private volatile MappedByteBuffer segment;
+    private long segmentSequence;
+
+    //number of appended and of forced records
+    private volatile long appended;
+    private volatile long durable;
+
+    private BigDecimal recoveredTotal = BigDecimal.ZERO;
+
+    private volatile boolean running = true;
+    private final Thread flusher;
+    private final ScheduledExecutorService compactor;
+
+    public MappedTransferJournal(JournalProperties properties, AccountsRepository accountsRepository) throws IOException {
+        this(properties, accountsRepository, new StripedAccountProperties());
+    }
+
+    @Autowired
+    public MappedTransferJournal(JournalProperties properties, AccountsRepository accountsRepository,
+                                 StripedAccountProperties stripedAccounts) throws IOException {
+        this.directory = Paths.get(properties.getDirectory());
+        this.segmentSize = (int) properties.getSegmentSize().toBytes();
+        this.groupCommitNanos = properties.getGroupCommitInterval().toNanos();
+        Files.createDirectories(directory);
+
+        long lastSequence = recover(accountsRepository, stripedAccounts);
+        synchronized (appendLock) {
+            openSegment(lastSequence + 1);
+        }
+
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+        long snapshotMillis = properties.getSnapshotInterval().toMillis();
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compactQuietly, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void appendAccountCreated(Account account) {
+        byte[] accountId = JournalCodec.utf8(account.getAccountId());
+        BigDecimal balance = account.getBalance();
+        byte[] unscaled = balance.unscaledValue().toByteArray();
+        int bodyLength = 1 + JournalCodec.stringSize(accountId) + JournalCodec.decimalSize(unscaled);
+
+        synchronized (appendLock) {
+            int start = reserve(bodyLength);
+            segment.put(JournalCodec.ACCOUNT_CREATED);
+            JournalCodec.putString(segment, accountId);
+            JournalCodec.putDecimal(segment, balance.scale(), unscaled);
+            published(start, bodyLength);
+        }
+    }
+
+    @Override
+    public void appendTransfer(Account sender, Account receiver, BigDecimal amount) {
+        byte[] senderId = JournalCodec.utf8(sender.getAccountId());
+        byte[] receiverId = JournalCodec.utf8(receiver.getAccountId());
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        int bodyLength = 1 + JournalCodec.stringSize(senderId) + JournalCodec.stringSize(receiverId)
+                + JournalCodec.decimalSize(unscaled);
+
+        synchronized (appendLock) {
+            int start = reserve(bodyLength);
+            segment.put(JournalCodec.TRANSFER);
+            JournalCodec.putString(segment, senderId);
+            JournalCodec.putString(segment, receiverId);
+            JournalCodec.putDecimal(segment, amount.scale(), unscaled);
+            published(start, bodyLength);
+        }
+    }
+
+    //called under appendLock, rolls the segment when the record does not fit and skips the header
+    private int reserve(int bodyLength) {
+        int recordLength = JournalCodec.HEADER_SIZE + bodyLength;
+        if (recordLength > segmentSize) {
+            throw new IllegalStateException("Journal record of " + recordLength + " bytes exceeds segment size");
+        }
+        if (segment.remaining() < recordLength) {
+            roll();
+        }
+        int start = segment.position();
+        segment.position(start + JournalCodec.HEADER_SIZE);
+        return start;
+    }
+
+    private void published(int start, int bodyLength) {
+        JournalCodec.writeHeader(segment, start, bodyLength);
+        appended++;
+    }
+
+    @Override
+    public void sync() {
+        long target = appended;
+        if (durable >= target) {
+            return;
+        }
+        synchronized (durableLock) {
+            while (durable < target && running) {
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public BigDecimal recoveredTotal() {
+        return recoveredTotal;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(groupCommitNanos);
+            flush();
+        }
+    }
+
+    private void flush() {
+        long target = appended;
+        if (target > durable) {
+            //records of previous segments were forced when those segments were rolled
+            segment.force();
+            synchronized (durableLock) {
+                durable = target;
+                durableLock.notifyAll();
+            }
+        }
+    }
+
+    //called under appendLock
+    private void roll() {
+        segment.force();
+        openSegment(segmentSequence + 1);
+    }
+
+    //called under appendLock
+    private void openSegment(long sequence) {
+        Path file = directory.resolve(segmentName(sequence));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //the mapping stays valid after the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            segmentSequence = sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal segment " + file, e);
+        }
+    }
+
+    private long recover(AccountsRepository accountsRepository, StripedAccountProperties stripedAccounts)
+            throws IOException {
+        long started = System.nanoTime();
+        Map<String, BigDecimal> balances = new HashMap<>();
+        long snapshotSequence = loadLatestSnapshot(balances);
+        long lastSequence = snapshotSequence - 1;
+        long records = 0;
+        for (long sequence : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (sequence >= snapshotSequence) {
+                records += JournalCodec.replaySegment(directory.resolve(segmentName(sequence)), balances);
+            }
+            lastSequence = Math.max(lastSequence, sequence);
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+            //a persistent repository already has the account, the journal balance is the durable one
+            Account existing = accountsRepository.getAccount(entry.getKey());
+            if (existing == null) {
+                accountsRepository.createAccount(stripedAccounts.stripe(new Account(entry.getKey(), entry.getValue())));
+            } else {
+                existing.setBalance(entry.getValue());
+            }
+            total = total.add(entry.getValue());
+        }
+        recoveredTotal = total;
+        log.info("Recovered {} accounts from snapshot {} and {} journal records in {} ms", balances.size(),
+                snapshotSequence, records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return lastSequence;
+    }
+
+    //returns the first segment sequence not contained in the snapshot
+    private long loadLatestSnapshot(Map<String, BigDecimal> balances) throws IOException {
+        List<Long> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        long sequence = snapshots.get(snapshots.size() - 1);
+        JournalCodec.readSnapshot(directory.resolve(snapshotName(sequence)), balances);
+        return sequence;
+    }
+
+    /* folds every sealed segment into a new snapshot and deletes what it replaces,
+     * a non-empty current segment is sealed first so idle periods also end up in the snapshot
+     */
+    public void compact() throws IOException {
+        long current;
+        synchronized (appendLock) {
+            if (segment.position() > 0) {
+                roll();
+            }
+            current = segmentSequence;
+        }
+
+        Map<String, BigDecimal> balances = new HashMap<>();
+        long snapshotSequence = loadLatestSnapshot(balances);
+        List<Long> sealed = list(SEGMENT_PREFIX, SEGMENT_SUFFIX).stream()
+                .filter(sequence -> sequence >= snapshotSequence && sequence < current)
+                .collect(Collectors.toList());
+        if (sealed.isEmpty()) {
+            return;
+        }
+        for (long sequence : sealed) {
+            JournalCodec.replaySegment(directory.resolve(segmentName(sequence)), balances);
+        }
+        JournalCodec.writeSnapshot(directory.resolve(snapshotName(current)), balances);
+
+        for (long sequence : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (sequence < current) {
+                Files.deleteIfExists(directory.resolve(segmentName(sequence)));
+            }
+        }
+        for (long sequence : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (sequence < current) {
+                Files.deleteIfExists(directory.resolve(snapshotName(sequence)));
+            }
+        }
+        log.info("Journal snapshot {} written with {} accounts", current, balances.size());
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("Journal compaction failed", e);
+        }
+    }
+
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    private static String snapshotName(long sequence) {
+        return String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        compactor.shutdown();
+        compactor.awaitTermination(10, TimeUnit.SECONDS);
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        flush();
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+}
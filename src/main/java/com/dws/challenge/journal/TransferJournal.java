@@ -0,0 +1,24 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+
+import java.math.BigDecimal;
+
+/*** write-ahead log of balance changes
+ * appends are called while the locks of the affected accounts are held, so journal order is the order
+ * in which changes were applied, sync is called after the locks are released and returns once everything
+ * appended by the caller is durable
+ */
+public interface TransferJournal {
+
+    void appendAccountCreated(Account account);
+
+    void appendTransfer(Account sender, Account receiver, BigDecimal amount);
+
+    void sync();
+
+    //sum of balances of the accounts restored on startup
+    default BigDecimal recoveredTotal() {
+        return BigDecimal.ZERO;
+    }
+}
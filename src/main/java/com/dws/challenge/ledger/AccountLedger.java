@@ -0,0 +1,128 @@
+package com.dws.challenge.ledger;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*** postings of one account kept as columns (amount, scale, timestamp, counterparty slot) in chunks
+ * chunk sizes double from 16 up to 4096 entries, so accounts with a short history stay small and a long history
+ * is never copied when it grows. An entry takes 21 bytes, amounts which do not fit a long with a byte scale
+ * are kept aside as BigDecimal.
+ * Single writer: appends happen while the account lock is held (or on the shard thread owning the account),
+ * readers do not lock, an entry becomes visible when the volatile size is advanced past it
+ */
+final class AccountLedger {
+
+    private static final int FIRST_CHUNK_BITS = 4;
+    private static final int LAST_CHUNK_BITS = 12;
+    private static final int LAST_CHUNK_MASK = (1 << LAST_CHUNK_BITS) - 1;
+    //chunks 0..GROWING_CHUNKS-1 have 16..2048 entries, all later chunks 4096
+    private static final int GROWING_CHUNKS = LAST_CHUNK_BITS - FIRST_CHUNK_BITS;
+    private static final long GROWING_ENTRIES = ((1L << GROWING_CHUNKS) - 1) << FIRST_CHUNK_BITS;
+
+    private static final byte OVERSIZED = Byte.MIN_VALUE;
+
+    private volatile Chunk[] chunks = new Chunk[1];
+    private volatile long size;
+
+    //written by the single writer only
+    private int chunkCount;
+    private long capacity;
+
+    private volatile Map<Long, BigDecimal> oversized;
+
+    private static final class Chunk {
+        private final long[] amounts;
+        private final byte[] scales;
+        private final long[] timestamps;
+        private final int[] counterparties;
+
+        private Chunk(int length) {
+            amounts = new long[length];
+            scales = new byte[length];
+            timestamps = new long[length];
+            counterparties = new int[length];
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    void append(int counterparty, BigDecimal amount, long timestamp) {
+        long index = size;
+        if (index == capacity) {
+            addChunk();
+        }
+        Chunk chunk = chunks[chunkOf(index)];
+        int offset = offsetOf(index);
+        int scale = amount.scale();
+        BigInteger unscaled = amount.unscaledValue();
+        if (scale > OVERSIZED && scale <= Byte.MAX_VALUE && unscaled.bitLength() < Long.SIZE) {
+            chunk.amounts[offset] = unscaled.longValue();
+            chunk.scales[offset] = (byte) scale;
+        } else {
+            oversized().put(index, amount);
+            chunk.scales[offset] = OVERSIZED;
+        }
+        chunk.timestamps[offset] = timestamp;
+        chunk.counterparties[offset] = counterparty;
+        //publishes the entry
+        size = index + 1;
+    }
+
+    //newest first, entries with index < before, at most limit of them
+    void read(long before, int limit, EntryConsumer consumer) {
+        long end = Math.min(before, size);
+        Chunk[] current = chunks;
+        for (long index = end - 1; index >= 0 && index >= end - limit; index--) {
+            Chunk chunk = current[chunkOf(index)];
+            int offset = offsetOf(index);
+            byte scale = chunk.scales[offset];
+            BigDecimal amount = scale == OVERSIZED
+                    ? oversized.get(index) : BigDecimal.valueOf(chunk.amounts[offset], scale);
+            consumer.accept(index, chunk.counterparties[offset], amount, chunk.timestamps[offset]);
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long index, int counterparty, BigDecimal amount, long timestamp);
+    }
+
+    private void addChunk() {
+        Chunk[] current = chunks;
+        if (chunkCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        int length = 1 << Math.min(FIRST_CHUNK_BITS + chunkCount, LAST_CHUNK_BITS);
+        current[chunkCount++] = new Chunk(length);
+        capacity += length;
+        //the volatile size written after the entry publishes the chunk as well
+        chunks = current;
+    }
+
+    private Map<Long, BigDecimal> oversized() {
+        if (oversized == null) {
+            oversized = new ConcurrentHashMap<>();
+        }
+        return oversized;
+    }
+
+    static int chunkOf(long index) {
+        if (index < GROWING_ENTRIES) {
+            return 31 - Integer.numberOfLeadingZeros((int) (index >>> FIRST_CHUNK_BITS) + 1);
+        }
+        return GROWING_CHUNKS + (int) ((index - GROWING_ENTRIES) >>> LAST_CHUNK_BITS);
+    }
+
+    static int offsetOf(long index) {
+        if (index < GROWING_ENTRIES) {
+            int chunk = chunkOf(index);
+            return (int) (index - (((1L << chunk) - 1) << FIRST_CHUNK_BITS));
+        }
+        return (int) ((index - GROWING_ENTRIES) & LAST_CHUNK_MASK);
+    }
+}
@@ -0,0 +1,122 @@
+package com.dws.challenge.ledger;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransactionDto;
+import com.dws.challenge.dto.TransactionPageDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*** per-account history of postings written by transfers, in memory only
+ * every account has an AccountLedger, counterparties are stored as int slots of an account id dictionary.
+ * Postings are appended by the writer of the account (under its lock or on its shard thread), so appending
+ * needs no locking of its own, only the first posting of an account and the first appearance of a counterparty
+ * go through ConcurrentHashMap.computeIfAbsent. Accounts taking concurrent deposits append under the ledger monitor
+ */
+@Component
+public class TransferLedger {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<String, AccountLedger> ledgers = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final Object growLock = new Object();
+    private volatile String[][] accountIds = new String[0][];
+    private int nextSlot;
+
+    public TransferLedger(@Value("${ledger.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    //called with the locks of both accounts held, the sender gets the negative posting
+    public void transferred(Account sender, Account receiver, BigDecimal amount, long timestamp) {
+        if (!enabled) {
+            return;
+        }
+        post(sender, receiver, amount.negate(), timestamp);
+        post(receiver, sender, amount, timestamp);
+    }
+
+    //single posting, for engines which change sender and receiver on different threads
+    public void post(Account account, Account counterparty, BigDecimal amount, long timestamp) {
+        if (!enabled) {
+            return;
+        }
+        AccountLedger ledger = ledgerOf(account.getAccountId());
+        int slot = slotOf(counterparty.getAccountId());
+        if (account.acceptsConcurrentDeposits()) {
+            //several transfers may deposit to the account at once, they take turns here instead
+            synchronized (ledger) {
+                ledger.append(slot, amount, timestamp);
+            }
+        } else {
+            ledger.append(slot, amount, timestamp);
+        }
+    }
+
+    /* newest first, cursor is the sequence the page starts below (null for the newest posting),
+     * nextCursor of the page is null when there are no older postings
+     */
+    public TransactionPageDto page(String accountId, Long cursor, int limit) {
+        AccountLedger ledger = ledgers.get(accountId);
+        if (ledger == null) {
+            return new TransactionPageDto(Collections.emptyList(), null);
+        }
+        long before = cursor == null ? Long.MAX_VALUE : cursor;
+        List<TransactionDto> transactions = new ArrayList<>((int) Math.min(ledger.size(), limit));
+        ledger.read(before, limit, (index, counterparty, amount, timestamp) -> transactions.add(
+                new TransactionDto(index, accountIdOf(counterparty), amount, Instant.ofEpochMilli(timestamp))));
+        Long nextCursor = null;
+        if (!transactions.isEmpty()) {
+            long oldest = transactions.get(transactions.size() - 1).getSequence();
+            nextCursor = oldest > 0 ? oldest : null;
+        }
+        return new TransactionPageDto(transactions, nextCursor);
+    }
+
+    private AccountLedger ledgerOf(String accountId) {
+        AccountLedger ledger = ledgers.get(accountId);
+        return ledger != null ? ledger : ledgers.computeIfAbsent(accountId, id -> new AccountLedger());
+    }
+
+    private int slotOf(String accountId) {
+        Integer slot = slots.get(accountId);
+        return slot != null ? slot : slots.computeIfAbsent(accountId, this::allocate);
+    }
+
+    private int allocate(String accountId) {
+        synchronized (growLock) {
+            int slot = nextSlot++;
+            int page = slot >>> PAGE_BITS;
+            String[][] current = accountIds;
+            if (page >= current.length) {
+                current = Arrays.copyOf(current, page + 1);
+                current[page] = new String[PAGE_SIZE];
+            }
+            current[page][slot & (PAGE_SIZE - 1)] = accountId;
+            //volatile write publishes the id together with new pages
+            accountIds = current;
+            return slot;
+        }
+    }
+
+    private String accountIdOf(int slot) {
+        return accountIds[slot >>> PAGE_BITS][slot & (PAGE_SIZE - 1)];
+    }
+
+    //histories of removed accounts, see AccountsRepository.clearAccounts
+    public void clear() {
+        ledgers.clear();
+    }
+}
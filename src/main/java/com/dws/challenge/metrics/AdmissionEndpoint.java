@@ -0,0 +1,32 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.web.TransferAdmission;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*** /actuator/admission, accounts with the most transfers shed by TransferAdmission since start or the last reset
+ */
+@Component
+@Endpoint(id = "admission")
+@RequiredArgsConstructor
+public class AdmissionEndpoint {
+
+    private static final int TOP = 20;
+
+    private final TransferAdmission transferAdmission;
+
+    @ReadOperation
+    public List<TransferAdmission.ShedAccount> shedAccounts() {
+        return transferAdmission.topShedAccounts(TOP);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        transferAdmission.resetShedAccounts();
+    }
+}
@@ -0,0 +1,29 @@
+package com.dws.challenge.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*** /actuator/contention, accounts whose locks were found taken most often since start or the last reset
+ */
+@Component
+@Endpoint(id = "contention")
+@RequiredArgsConstructor
+public class ContentionEndpoint {
+
+    private final TransferMetrics transferMetrics;
+
+    @ReadOperation
+    public List<SpaceSavingSketch.Entry> contendedAccounts() {
+        return transferMetrics.topContendedAccounts();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        transferMetrics.resetContendedAccounts();
+    }
+}
@@ -0,0 +1,39 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.service.AccountLockManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*** /actuator/lockwaits, accounts whose locks were waited for longest since start or the last reset,
+ * /actuator/lockwaits/{accountId} for one account (404 when it never waited)
+ */
+@Component
+@Endpoint(id = "lockwaits")
+@RequiredArgsConstructor
+public class LockWaitEndpoint {
+
+    private static final int TOP = 20;
+
+    private final AccountLockManager lockManager;
+
+    @ReadOperation
+    public List<LockWaitStatistics.Entry> longestWaits() {
+        return lockManager.getWaitStatistics().top(TOP);
+    }
+
+    @ReadOperation
+    public LockWaitStatistics.Entry waits(@Selector String accountId) {
+        return lockManager.getWaitStatistics().get(accountId);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        lockManager.getWaitStatistics().clear();
+    }
+}
@@ -0,0 +1,88 @@
+package com.dws.challenge.metrics;
+
+import lombok.Value;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/*** per-account time spent waiting for account locks, recorded by AccountLockManager for acquisitions which found
+ * the lock taken, so uncontended accounts never get an entry. At most maxAccounts accounts are tracked,
+ * waits of the accounts beyond are summed up under OTHER
+ */
+public class LockWaitStatistics {
+
+    public static final String OTHER = "*";
+
+    @Value
+    public static class Entry {
+        String accountId;
+        long waits;
+        //waits which ended at the deadline without the lock
+        long timeouts;
+        long totalWaitMicros;
+        long meanWaitMicros;
+        long maxWaitMicros;
+    }
+
+    private static final class Waits {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+    }
+
+    private final int maxAccounts;
+    private final Map<String, Waits> waits = new ConcurrentHashMap<>();
+
+    public LockWaitStatistics(int maxAccounts) {
+        this.maxAccounts = maxAccounts;
+    }
+
+    public void record(String accountId, long nanos, boolean acquired) {
+        Waits account = waits.get(accountId);
+        if (account == null) {
+            account = waits.computeIfAbsent(waits.size() < maxAccounts ? accountId : OTHER, id -> new Waits());
+        }
+        account.count.increment();
+        account.totalNanos.add(nanos);
+        if (!acquired) {
+            account.timeouts.increment();
+        }
+        if (nanos > account.maxNanos.get()) {
+            account.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    //null for an account which never waited
+    public Entry get(String accountId) {
+        Waits account = waits.get(accountId);
+        return account == null ? null : entry(accountId, account);
+    }
+
+    //accounts with the longest total wait first
+    public List<Entry> top(int limit) {
+        return waits.entrySet().stream()
+                .map(account -> entry(account.getKey(), account.getValue()))
+                .sorted(Comparator.comparingLong(Entry::getTotalWaitMicros).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public void clear() {
+        waits.clear();
+    }
+
+    private static Entry entry(String accountId, Waits account) {
+        long count = account.count.sum();
+        long total = account.totalNanos.sum();
+        return new Entry(accountId, count, account.timeouts.sum(), TimeUnit.NANOSECONDS.toMicros(total),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(total / count),
+                TimeUnit.NANOSECONDS.toMicros(account.maxNanos.get()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.dws.challenge.metrics;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*** Space-Saving heavy hitters over a stream of keys with a fixed number of counters
+ * a new key replaces the smallest counter and inherits its count as the error bound,
+ * so any key seen more than total/capacity times is guaranteed to be tracked
+ */
+public class SpaceSavingSketch {
+
+    @Value
+    public static class Entry {
+        String key;
+        //upper bound of occurrences, at least count - error of them are real
+        long count;
+        long error;
+    }
+
+    private static final class Counter {
+        private long count;
+        private long error;
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public synchronized void offer(String key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            if (counters.size() >= capacity) {
+                Map.Entry<String, Counter> smallest = null;
+                for (Map.Entry<String, Counter> candidate : counters.entrySet()) {
+                    if (smallest == null || candidate.getValue().count < smallest.getValue().count) {
+                        smallest = candidate;
+                    }
+                }
+                counters.remove(smallest.getKey());
+                counter.count = smallest.getValue().count;
+                counter.error = smallest.getValue().count;
+            }
+            counters.put(key, counter);
+        }
+        counter.count++;
+    }
+
+    //at most limit keys, highest count first
+    public synchronized List<Entry> top(int limit) {
+        List<Entry> entries = new ArrayList<>(counters.size());
+        counters.forEach((key, counter) -> entries.add(new Entry(key, counter.count, counter.error)));
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+    }
+}
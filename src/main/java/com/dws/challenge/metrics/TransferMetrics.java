@@ -0,0 +1,87 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.domain.Account;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*** transfer instrumentation kept off the common path
+ * timers are recorded for one of sample-rate transfers, contention is detected by a failed tryLock,
+ * so uncontended lock acquisition costs nothing extra, and only contended accounts reach the sketch
+ */
+@Component
+public class TransferMetrics {
+
+    private final boolean enabled;
+    private final int sampleMask;
+    private final int topK;
+    private final Timer lockWait;
+    private final Timer lockHeld;
+    private final Counter rejected;
+    private final Counter contended;
+    private final SpaceSavingSketch contendedAccounts;
+
+    public TransferMetrics(@Value("${transfer.metrics.enabled:true}") boolean enabled,
+                           @Value("${transfer.metrics.sample-rate:64}") int sampleRate,
+                           @Value("${transfer.metrics.top-k:10}") int topK,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.sampleMask = Integer.highestOneBit(Math.max(1, sampleRate)) - 1;
+        this.topK = topK;
+        this.lockWait = Timer.builder("transfer.lock.wait")
+                .description("Time to acquire both account locks of a transfer, sampled")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.lockHeld = Timer.builder("transfer.lock.held")
+                .description("Time both account locks of a transfer are held, sampled")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("transfer.rejected")
+                .tag("reason", "insufficient_balance")
+                .register(meterRegistry);
+        this.contended = meterRegistry.counter("transfer.lock.contended");
+        //four counters per reported key keep the reported top-k accurate for skewed streams
+        this.contendedAccounts = new SpaceSavingSketch(topK * 4);
+    }
+
+    //true for the transfers whose lock timings are recorded
+    public boolean sample() {
+        return enabled && (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLockHeld(long nanos) {
+        lockHeld.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    //called when the account lock was not free on the first attempt
+    public void contended(Account account) {
+        if (enabled) {
+            contended.increment();
+            contendedAccounts.offer(account.getAccountId());
+        }
+    }
+
+    public void rejected() {
+        if (enabled) {
+            rejected.increment();
+        }
+    }
+
+    public List<SpaceSavingSketch.Entry> topContendedAccounts() {
+        return contendedAccounts.top(topK);
+    }
+
+    public void resetContendedAccounts() {
+        contendedAccounts.clear();
+    }
+}
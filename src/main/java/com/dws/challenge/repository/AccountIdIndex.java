@@ -0,0 +1,44 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/*** ids of a hash map store in id order, for listing accounts by prefix page by page without a global lock
+ * an id is added after its account was put into the map and the index is cleared before the map, so every account
+ * of the map is in the index once createAccount returned. An id left behind by a create racing with clear has no
+ * account and is skipped by page. About 30 bytes per account on top of the map, the id String is shared
+ */
+final class AccountIdIndex {
+
+    private final NavigableSet<String> ids = new ConcurrentSkipListSet<>();
+
+    void add(String accountId) {
+        ids.add(accountId);
+    }
+
+    void clear() {
+        ids.clear();
+    }
+
+    //see AccountsRepository.listAccounts, lookup returns null for an id without account
+    List<Account> page(String prefix, String after, int limit, Function<String, Account> lookup) {
+        NavigableSet<String> tail = after != null && after.compareTo(prefix) >= 0
+                ? ids.tailSet(after, false) : ids.tailSet(prefix, true);
+        List<Account> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String accountId : tail) {
+            if (page.size() == limit || !accountId.startsWith(prefix)) {
+                break;
+            }
+            Account account = lookup.apply(accountId);
+            if (account != null) {
+                page.add(account);
+            }
+        }
+        return page;
+    }
+}
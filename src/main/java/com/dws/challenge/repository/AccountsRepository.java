@@ -3,11 +3,55 @@ package com.dws.challenge.repository;
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 public interface AccountsRepository {
 
-    void createAccount(Account account) throws DuplicateAccountIdException;
+    //stores with fewer accounts are reduced by the calling thread only
+    long PARALLELISM_THRESHOLD = 10_000;
+
+    default void createAccount(Account account) throws DuplicateAccountIdException {
+        createAccount(account, stored -> { });
+    }
+
+    /* created gets the stored account, which may be another object than account, before getAccount can return it,
+     * so the creation is journaled before any transfer of the account. A duplicate throws without calling it
+     */
+    void createAccount(Account account, Consumer<Account> created) throws DuplicateAccountIdException;
 
     Account getAccount(String accountId);
 
+    //weakly consistent, accounts created or cleared during the iteration may or may not be visited
+    void forEachAccount(Consumer<Account> action);
+
+    /* parallel reduction over all accounts on the common ForkJoinPool, null when there are no accounts,
+     * weakly consistent in the same way as forEachAccount
+     */
+    <U> U reduceAccounts(Function<Account, ? extends U> transformer,
+                         BiFunction<? super U, ? super U, ? extends U> reducer);
+
+    /* at most limit accounts whose id starts with prefix and is greater than after (null for the first page),
+     * in id order, weakly consistent in the same way as forEachAccount.
+     * Stores without an ordered index scan all accounts and keep the smallest ids
+     */
+    default List<Account> listAccounts(String prefix, String after, int limit) {
+        TreeMap<String, Account> page = new TreeMap<>();
+        forEachAccount(account -> {
+            String accountId = account.getAccountId();
+            if (accountId.startsWith(prefix) && (after == null || accountId.compareTo(after) > 0)) {
+                page.put(accountId, account);
+                if (page.size() > limit) {
+                    page.pollLastEntry();
+                }
+            }
+        });
+        return new ArrayList<>(page.values());
+    }
+
     void clearAccounts();
 }
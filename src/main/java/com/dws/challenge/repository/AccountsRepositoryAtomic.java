@@ -0,0 +1,72 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AtomicAccount;
+import com.dws.challenge.domain.StripedAccount;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*** accounts.store=atomic, accounts are stored as AtomicAccount so balance reads never take the account lock,
+ * a StripedAccount is kept as it is
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "atomic")
+public class AccountsRepositoryAtomic implements AccountsRepository {
+
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final AccountIdIndex index = new AccountIdIndex();
+
+    @Override
+    public void createAccount(Account account, Consumer<Account> created) throws DuplicateAccountIdException {
+        boolean[] absent = {false};
+        //not visible to get until the mapping function returned
+        accounts.computeIfAbsent(account.getAccountId(), accountId -> {
+            Account stored = account instanceof StripedAccount ? account
+                    : new AtomicAccount(account.getAccountId(), account.getBalance());
+            created.accept(stored);
+            absent[0] = true;
+            return stored;
+        });
+        if (!absent[0]) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+        index.add(account.getAccountId());
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public <U> U reduceAccounts(Function<Account, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return accounts.reduceValues(PARALLELISM_THRESHOLD, transformer, reducer);
+    }
+
+    @Override
+    public List<Account> listAccounts(String prefix, String after, int limit) {
+        return index.page(prefix, after, limit, accounts::get);
+    }
+
+    //index first, see AccountIdIndex
+    @Override
+    public void clearAccounts() {
+        index.clear();
+        accounts.clear();
+    }
+}
@@ -0,0 +1,54 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*** accounts.store=compact, balances kept as scaled longs in CompactAccountStore,
+ * getAccount returns a lightweight view instead of a stored Account object
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "compact")
+public class AccountsRepositoryCompact implements AccountsRepository {
+
+    private final CompactAccountStore store;
+
+    public AccountsRepositoryCompact(@Value("${accounts.compact.scale:2}") int scale) {
+        this.store = new CompactAccountStore(scale);
+    }
+
+    @Override
+    public void createAccount(Account account, Consumer<Account> created) throws DuplicateAccountIdException {
+        store.create(account.getAccountId(), account.getBalance(),
+                slot -> created.accept(new CompactAccount(store, slot)));
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        int slot = store.slotOf(accountId);
+        return slot < 0 ? null : new CompactAccount(store, slot);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        store.forEachSlot(slot -> action.accept(new CompactAccount(store, slot)));
+    }
+
+    @Override
+    public <U> U reduceAccounts(Function<Account, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return store.reduceSlots(PARALLELISM_THRESHOLD, slot -> transformer.apply(new CompactAccount(store, slot)),
+                reducer);
+    }
+
+    @Override
+    public void clearAccounts() {
+        store.clear();
+    }
+}
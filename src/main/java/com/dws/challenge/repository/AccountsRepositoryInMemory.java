@@ -2,23 +2,37 @@ package com.dws.challenge.repository;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "map", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final AccountIdIndex index = new AccountIdIndex();
 
     @Override
-    public void createAccount(Account account) throws DuplicateAccountIdException {
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-        if (previousAccount != null) {
+    public void createAccount(Account account, Consumer<Account> created) throws DuplicateAccountIdException {
+        boolean[] absent = {false};
+        //not visible to get until the mapping function returned
+        accounts.computeIfAbsent(account.getAccountId(), accountId -> {
+            created.accept(account);
+            absent[0] = true;
+            return account;
+        });
+        if (!absent[0]) {
             throw new DuplicateAccountIdException(
                     "Account id " + account.getAccountId() + " already exists!");
         }
+        index.add(account.getAccountId());
     }
 
     @Override
@@ -26,8 +40,26 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
         return accounts.get(accountId);
     }
 
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        accounts.values().forEach(action);
+    }
+
+    @Override
+    public <U> U reduceAccounts(Function<Account, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return accounts.reduceValues(PARALLELISM_THRESHOLD, transformer, reducer);
+    }
+
+    @Override
+    public List<Account> listAccounts(String prefix, String after, int limit) {
+        return index.page(prefix, after, limit, accounts::get);
+    }
+
+    //index first, see AccountIdIndex
     @Override
     public void clearAccounts() {
+        index.clear();
         accounts.clear();
     }
 
@@ -0,0 +1,308 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/*** accounts.store=persistent, accounts live in PersistentAccountStore and only hot accounts are kept on the heap
+ * getAccount is a HotAccountCache hit or loads the account from the mapped files (read-through), changed balances
+ * are written back by one thread every accounts.persistent.write-behind-interval and then forced to disk.
+ * An evicted account may still be held by a caller or wait for its flush, so it stays reachable by a weak
+ * reference until it is collected and a reload returns that same object: there is never more than one
+ * Account object with its own lock per account id.
+ * Without journal.enabled=true changes of the last write-behind interval are lost on a crash.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.store", havingValue = "persistent")
+@Log4j2
+public class AccountsRepositoryPersistent implements AccountsRepository {
+
+    //id characters are added on top: PersistentAccount, lock, BigDecimal, id String, cache node and map entries
+    static final int ACCOUNT_OVERHEAD_BYTES = 256;
+
+    private final PersistentAccountStore store;
+    private final HotAccountCache cache;
+    private final int scale;
+
+    private final ConcurrentHashMap<String, Ghost> ghosts = new ConcurrentHashMap<>();
+    private final ReferenceQueue<PersistentAccount> collected = new ReferenceQueue<>();
+
+    private final Queue<PersistentAccount> dirtyAccounts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingWrites = new AtomicLong();
+    private final Object flushLock = new Object();
+    //incremented by clearAccounts, accounts of older generations are not written back
+    private volatile long generation;
+    //guarded by flushLock, new records are forced with the next flush as well
+    private int forcedAccounts;
+    private final ScheduledExecutorService writeBehind;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final Timer loads;
+
+    private static final class Ghost extends WeakReference<PersistentAccount> {
+        private final String accountId;
+
+        private Ghost(PersistentAccount account, ReferenceQueue<PersistentAccount> queue) {
+            super(account, queue);
+            this.accountId = account.getAccountId();
+        }
+    }
+
+    public AccountsRepositoryPersistent(PersistentStoreProperties properties, MeterRegistry meterRegistry) {
+        this.store = new PersistentAccountStore(Paths.get(properties.getDirectory()),
+                properties.getSegmentSize().toBytes());
+        this.scale = properties.getScale();
+        long maxWeight = properties.getCacheMaxMemory().toBytes();
+        int expectedAccounts = (int) Math.min(Integer.MAX_VALUE, maxWeight / ACCOUNT_OVERHEAD_BYTES);
+        this.cache = new HotAccountCache(maxWeight, expectedAccounts, this::evicted);
+
+        FunctionCounter.builder("accounts.cache.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("accounts.cache.misses", misses, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("accounts.cache.evictions", evictions, LongAdder::sum).register(meterRegistry);
+        this.loads = meterRegistry.timer("accounts.cache.load");
+        meterRegistry.gauge("accounts.cache.hit.ratio", this, AccountsRepositoryPersistent::hitRatio);
+        meterRegistry.gauge("accounts.cache.size", cache, HotAccountCache::size);
+        meterRegistry.gauge("accounts.cache.weight", cache, HotAccountCache::weight);
+        meterRegistry.gauge("accounts.write.behind.pending", pendingWrites);
+
+        long intervalMillis = Math.max(1, properties.getWriteBehindInterval().toMillis());
+        this.writeBehind = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "accounts-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeBehind.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        log.info("Opened account store in {} with {} accounts", properties.getDirectory(), store.size());
+    }
+
+    @Override
+    public void createAccount(Account account, Consumer<Account> created) throws DuplicateAccountIdException {
+        long minorUnits = toMinorUnits(account.getBalance());
+        long current = generation;
+        PersistentAccount[] stored = {null};
+        store.append(account.getAccountId(), minorUnits, offset -> {
+            stored[0] = new PersistentAccount(account.getAccountId(), toDecimal(minorUnits), offset, current, this);
+            created.accept(stored[0]);
+        });
+        //a getAccount since the append may have loaded the account already
+        cache.computeIfAbsent(account.getAccountId(), accountId -> stored[0], weigh(account.getAccountId()));
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        PersistentAccount account = cache.get(accountId);
+        if (account != null) {
+            hits.increment();
+            return account;
+        }
+        Ghost[] resurrected = {null};
+        account = cache.computeIfAbsent(accountId, id -> load(id, resurrected), weigh(accountId));
+        //the ghost is dropped only once the account is cached again, so scans always find the live object
+        if (resurrected[0] != null) {
+            ghosts.remove(accountId, resurrected[0]);
+        }
+        return account;
+    }
+
+    private PersistentAccount load(String accountId, Ghost[] resurrected) {
+        misses.increment();
+        long started = System.nanoTime();
+        try {
+            expungeCollected();
+            Ghost ghost = ghosts.get(accountId);
+            PersistentAccount account = ghost == null ? null : ghost.get();
+            if (account != null) {
+                resurrected[0] = ghost;
+                return account;
+            }
+            long offset = store.find(accountId);
+            return offset < 0 ? null
+                    : new PersistentAccount(accountId, toDecimal(store.balance(offset)), offset, generation, this);
+        } finally {
+            loads.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> action) {
+        store.forEachRecord((accountId, offset) -> action.accept(current(accountId, offset)));
+    }
+
+    //accounts of one segment are reduced by one task, nulls are skipped like in ConcurrentHashMap.reduceValues
+    @Override
+    public <U> U reduceAccounts(Function<Account, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        IntStream segments = IntStream.range(0, store.segmentCount());
+        if (store.size() >= PARALLELISM_THRESHOLD) {
+            segments = segments.parallel();
+        }
+        return segments.<U>mapToObj(segment -> {
+                    Reduction<U> reduction = new Reduction<>(reducer);
+                    store.forEachRecord(segment,
+                            (accountId, offset) -> reduction.add(transformer.apply(current(accountId, offset))));
+                    return reduction.result;
+                })
+                .filter(Objects::nonNull)
+                .reduce((left, right) -> reducer.apply(left, right))
+                .orElse(null);
+    }
+
+    private static final class Reduction<U> {
+        private final BiFunction<? super U, ? super U, ? extends U> reducer;
+        private U result;
+
+        private Reduction(BiFunction<? super U, ? super U, ? extends U> reducer) {
+            this.reducer = reducer;
+        }
+
+        private void add(U value) {
+            if (value != null) {
+                result = result == null ? value : reducer.apply(result, value);
+            }
+        }
+    }
+
+    //the live object when there is one, otherwise a detached copy of the stored balance
+    private Account current(String accountId, long offset) {
+        PersistentAccount account = cache.peek(accountId);
+        if (account == null) {
+            Ghost ghost = ghosts.get(accountId);
+            account = ghost == null ? null : ghost.get();
+        }
+        return account != null ? account : new Account(accountId, toDecimal(store.balance(offset)));
+    }
+
+    //not meant to run concurrently with other calls
+    @Override
+    public void clearAccounts() {
+        synchronized (flushLock) {
+            generation++;
+            cache.clear();
+            ghosts.clear();
+            dirtyAccounts.clear();
+            pendingWrites.set(0);
+            store.clear();
+            forcedAccounts = 0;
+        }
+    }
+
+    //writes every balance changed so far and forces the store
+    public void flush() {
+        synchronized (flushLock) {
+            long current = generation;
+            int written = 0;
+            PersistentAccount account;
+            while ((account = dirtyAccounts.poll()) != null) {
+                pendingWrites.decrementAndGet();
+                if (account.clearDirty() && account.getGeneration() == current) {
+                    store.setBalance(account.getOffset(), toMinorUnits(account.getBalance()));
+                    written++;
+                }
+            }
+            int accounts = store.size();
+            if (written > 0 || accounts != forcedAccounts) {
+                store.force();
+                forcedAccounts = accounts;
+            }
+        }
+        expungeCollected();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Cannot write back account balances", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        writeBehind.shutdown();
+        flush();
+        store.close();
+    }
+
+    public int cachedAccounts() {
+        return cache.size();
+    }
+
+    public long cachedWeight() {
+        return cache.weight();
+    }
+
+    public long pendingWrites() {
+        return pendingWrites.get();
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    //called by HotAccountCache under its eviction lock, before the account leaves the cache
+    private void evicted(PersistentAccount account) {
+        evictions.increment();
+        ghosts.put(account.getAccountId(), new Ghost(account, collected));
+    }
+
+    void changed(PersistentAccount account) {
+        pendingWrites.incrementAndGet();
+        dirtyAccounts.add(account);
+    }
+
+    private void expungeCollected() {
+        Reference<? extends PersistentAccount> reference;
+        while ((reference = collected.poll()) != null) {
+            Ghost ghost = (Ghost) reference;
+            ghosts.remove(ghost.accountId, ghost);
+        }
+    }
+
+    long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeException("Amount " + amount + " cannot be stored with scale " + scale);
+        }
+    }
+
+    private BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    private static int weigh(String accountId) {
+        return ACCOUNT_OVERHEAD_BYTES + accountId.length();
+    }
+}
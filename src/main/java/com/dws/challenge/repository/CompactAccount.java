@@ -0,0 +1,72 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+
+import java.math.BigDecimal;
+
+/*** short-lived Account view of a CompactAccountStore slot,
+ * BigDecimal is produced only when the balance is read (JSON boundary) and amounts are converted to minor units once
+ */
+final class CompactAccount extends Account {
+
+    private final CompactAccountStore store;
+    private final int slot;
+
+    CompactAccount(CompactAccountStore store, int slot) {
+        super(store.accountId(slot), null, new SlotLock(store, slot));
+        this.store = store;
+        this.slot = slot;
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        long minorUnits = store.toMinorUnits(amount);
+        getLock().lock();
+        try {
+            store.setBalance(slot, add(store.balance(slot), minorUnits));
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        long minorUnits = store.toMinorUnits(amount);
+        getLock().lock();
+        try {
+            long balance = store.balance(slot);
+            if (balance > minorUnits) {
+                store.setBalance(slot, balance - minorUnits);
+                return true;
+            }
+            return false;
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return store.toDecimal(store.balance(slot));
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        long minorUnits = store.toMinorUnits(balance);
+        getLock().lock();
+        try {
+            store.setBalance(slot, minorUnits);
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    private long add(long balance, long minorUnits) {
+        try {
+            return Math.addExact(balance, minorUnits);
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeException("Balance of " + getAccountId() + " would overflow");
+        }
+    }
+}
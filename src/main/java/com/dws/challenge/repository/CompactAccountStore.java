@@ -0,0 +1,187 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/*** balances of all accounts as scaled long minor units (balance * 10^scale) in paged primitive arrays
+ * every account gets an interned int slot, per slot the store keeps the balance, the lock owner thread id
+ * and the lock hold count, so an account costs a few primitive array cells instead of an Account object
+ * with its own ReentrantLock and BigDecimal.
+ * Balance reads are lock-free volatile reads, writes happen under the slot lock.
+ */
+public class CompactAccountStore {
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int SPINS_BEFORE_PARK = 64;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int scale;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final Object growLock = new Object();
+    private volatile Page[] pages = new Page[0];
+    private int nextSlot;
+
+    private static final class Page {
+        private final long[] balances = new long[PAGE_SIZE];
+        private final long[] owners = new long[PAGE_SIZE];
+        private final int[] holds = new int[PAGE_SIZE];
+        private final String[] accountIds = new String[PAGE_SIZE];
+    }
+
+    public CompactAccountStore(int scale) {
+        this.scale = scale;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    //returns slot of the new account
+    //created gets the new slot before slotOf finds it
+    public int create(String accountId, BigDecimal balance, IntConsumer created) {
+        long minorUnits = toMinorUnits(balance);
+        int[] slot = {-1};
+        slots.computeIfAbsent(accountId, id -> {
+            int allocated = allocate(id, minorUnits);
+            created.accept(allocated);
+            slot[0] = allocated;
+            return allocated;
+        });
+        if (slot[0] < 0) {
+            throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+        }
+        return slot[0];
+    }
+
+    private int allocate(String accountId, long minorUnits) {
+        synchronized (growLock) {
+            int slot = nextSlot++;
+            int pageIndex = slot >>> PAGE_BITS;
+            Page[] current = pages;
+            if (pageIndex >= current.length) {
+                Page[] grown = Arrays.copyOf(current, pageIndex + 1);
+                grown[pageIndex] = new Page();
+                current = grown;
+            }
+            Page page = current[pageIndex];
+            page.accountIds[slot & PAGE_MASK] = accountId;
+            LONGS.setVolatile(page.balances, slot & PAGE_MASK, minorUnits);
+            //volatile write publishes the slot content together with new pages
+            pages = current;
+            return slot;
+        }
+    }
+
+    //-1 when there is no such account
+    public int slotOf(String accountId) {
+        Integer slot = slots.get(accountId);
+        return slot == null ? -1 : slot;
+    }
+
+    public String accountId(int slot) {
+        return page(slot).accountIds[slot & PAGE_MASK];
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public void forEachSlot(IntConsumer action) {
+        slots.values().forEach(action::accept);
+    }
+
+    //see ConcurrentHashMap.reduceValues
+    public <U> U reduceSlots(long parallelismThreshold, IntFunction<? extends U> transformer,
+                             BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return slots.reduceValues(parallelismThreshold, transformer::apply, reducer);
+    }
+
+    //not meant to run concurrently with create, slots are cleared first to keep the bin lock -> growLock order
+    public void clear() {
+        slots.clear();
+        synchronized (growLock) {
+            pages = new Page[0];
+            nextSlot = 0;
+        }
+    }
+
+    public long balance(int slot) {
+        return (long) LONGS.getVolatile(page(slot).balances, slot & PAGE_MASK);
+    }
+
+    //callers hold the slot lock
+    public void setBalance(int slot, long minorUnits) {
+        LONGS.setVolatile(page(slot).balances, slot & PAGE_MASK, minorUnits);
+    }
+
+    public long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new AmountOutOfRangeException("Amount " + amount + " cannot be stored with scale " + scale);
+        }
+    }
+
+    public BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    private Page page(int slot) {
+        return pages[slot >>> PAGE_BITS];
+    }
+
+    /* reentrant lock of one slot: owner thread id is CAS-ed into owners, the hold count is only touched by the owner.
+     * Waiters spin briefly and then park for short periods, there is no waiter queue to keep per-slot state small
+     */
+    public boolean tryLock(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        long thread = Thread.currentThread().getId();
+        long owner = (long) LONGS.getVolatile(page.owners, index);
+        if (owner == thread) {
+            page.holds[index]++;
+            return true;
+        }
+        if (owner == 0 && LONGS.compareAndSet(page.owners, index, 0L, thread)) {
+            page.holds[index] = 1;
+            return true;
+        }
+        return false;
+    }
+
+    public void lock(int slot) {
+        int spins = 0;
+        while (!tryLock(slot)) {
+            if (++spins < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+    }
+
+    public void unlock(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        if ((long) LONGS.getVolatile(page.owners, index) != Thread.currentThread().getId()) {
+            throw new IllegalMonitorStateException("Account slot " + slot + " is not locked by current thread");
+        }
+        if (--page.holds[index] == 0) {
+            LONGS.setVolatile(page.owners, index, 0L);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.dws.challenge.repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*** size-bounded cache of loaded accounts with W-TinyLFU eviction
+ * hits are a ConcurrentHashMap lookup plus an entry in a lossy striped read buffer, the eviction policy is
+ * only updated under evictionLock when a buffer fills up or an account is inserted, so readers never
+ * wait for each other. Policy: new accounts enter a small LRU window (1% of the weight), accounts leaving it
+ * compete with the least recently used account of the main probation segment and the one seen more often
+ * according to a count-min sketch stays. Accounts hit again in probation move to the protected segment (80%).
+ * The evicted callback runs under evictionLock before the account leaves the map.
+ */
+public class HotAccountCache {
+
+    private static final int STRIPES = 4 * Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private static final int BUFFER_SIZE = 16;
+
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers = new ReadBuffer[STRIPES];
+    private final FrequencySketch sketch;
+    private final Consumer<PersistentAccount> evicted;
+
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final long maxProtectedWeight;
+
+    //guarded by evictionLock
+    private final Queue window = new Queue();
+    private final Queue probation = new Queue();
+    private final Queue protectedQueue = new Queue();
+    private long weight;
+
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+    private static final int REMOVED = 4;
+
+    private static final class Node {
+        private final String accountId;
+        private final PersistentAccount account;
+        private final int weight;
+        //guarded by evictionLock, 0 until the node is added to a queue
+        private int queue;
+        private Node previous;
+        private Node next;
+
+        private Node(String accountId, PersistentAccount account, int weight) {
+            this.accountId = accountId;
+            this.account = account;
+            this.weight = weight;
+        }
+    }
+
+    public HotAccountCache(long maxWeight, int expectedAccounts, Consumer<PersistentAccount> evicted) {
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, maxWeight / 100);
+        this.maxProtectedWeight = (maxWeight - maxWindowWeight) * 4 / 5;
+        this.sketch = new FrequencySketch(expectedAccounts);
+        this.evicted = evicted;
+        for (int i = 0; i < STRIPES; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    //null when the account is not cached
+    public PersistentAccount get(String accountId) {
+        Node node = data.get(accountId);
+        if (node == null) {
+            return null;
+        }
+        recordRead(node);
+        return node.account;
+    }
+
+    //like get but does not count as an access
+    public PersistentAccount peek(String accountId) {
+        Node node = data.get(accountId);
+        return node == null ? null : node.account;
+    }
+
+    /* the cached account, otherwise the loaded one which is then cached, null when the loader returns null.
+     * The loader runs at most once per missing account at a time
+     */
+    public PersistentAccount computeIfAbsent(String accountId, Function<String, PersistentAccount> loader, int weight) {
+        Node[] created = {null};
+        Node node = data.computeIfAbsent(accountId, id -> {
+            PersistentAccount account = loader.apply(id);
+            return account == null ? null : (created[0] = new Node(id, account, weight));
+        });
+        if (node == null) {
+            return null;
+        }
+        if (created[0] == null) {
+            recordRead(node);
+        } else {
+            afterWrite(created[0]);
+        }
+        return node.account;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long weight() {
+        evictionLock.lock();
+        try {
+            return weight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    //not meant to run concurrently with other calls, evicted is not called
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            data.clear();
+            for (Queue queue : new Queue[]{window, probation, protectedQueue}) {
+                for (Node node = queue.head; node != null; node = node.next) {
+                    node.queue = REMOVED;
+                }
+                queue.head = null;
+                queue.tail = null;
+                queue.weight = 0;
+            }
+            weight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordRead(Node node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+        if (!buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(Node node) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            sketch.increment(node.accountId.hashCode());
+            node.queue = WINDOW;
+            window.addLast(node);
+            weight += node.weight;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    //called under evictionLock
+    private void onAccess(Node node) {
+        sketch.increment(node.accountId.hashCode());
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                while (protectedQueue.weight > maxProtectedWeight) {
+                    Node demoted = protectedQueue.head;
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+                //evicted or not yet added
+                break;
+        }
+    }
+
+    //called under evictionLock
+    private void evict() {
+        Node candidate = null;
+        while (window.weight > maxWindowWeight && window.head != null) {
+            Node moved = window.head;
+            window.remove(moved);
+            moved.queue = PROBATION;
+            probation.addLast(moved);
+            if (candidate == null) {
+                candidate = moved;
+            }
+        }
+        while (weight > maxWeight) {
+            Node victim = probation.head != null ? probation.head
+                    : protectedQueue.head != null ? protectedQueue.head : window.head;
+            if (candidate == null || candidate.queue != PROBATION || candidate == victim) {
+                remove(victim);
+                candidate = null;
+            } else if (sketch.frequency(candidate.accountId.hashCode())
+                    > sketch.frequency(victim.accountId.hashCode())) {
+                remove(victim);
+            } else {
+                Node next = candidate.next;
+                remove(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void remove(Node node) {
+        queueOf(node).remove(node);
+        node.queue = REMOVED;
+        weight -= node.weight;
+        evicted.accept(node.account);
+        data.remove(node.accountId, node);
+    }
+
+    private Queue queueOf(Node node) {
+        return node.queue == WINDOW ? window : node.queue == PROBATION ? probation : protectedQueue;
+    }
+
+    //called under evictionLock
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this::onAccess);
+        }
+    }
+
+    //doubly linked list in access order, head is the least recently used node
+    private static final class Queue {
+        private Node head;
+        private Node tail;
+        private long weight;
+
+        private void addLast(Node node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    //bounded multi-producer ring drained by the lock holder, reads are dropped while it is full
+    private static final class ReadBuffer {
+        private final AtomicReferenceArray<Node> nodes = new AtomicReferenceArray<>(BUFFER_SIZE);
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        //false when the buffer is full and should be drained
+        private boolean offer(Node node) {
+            long current = tail.get();
+            if (current - head >= BUFFER_SIZE) {
+                return false;
+            }
+            if (tail.compareAndSet(current, current + 1)) {
+                nodes.lazySet((int) current & (BUFFER_SIZE - 1), node);
+            }
+            return true;
+        }
+
+        private void drainTo(Consumer<Node> action) {
+            long current = head;
+            long end = tail.get();
+            while (current < end) {
+                int index = (int) current & (BUFFER_SIZE - 1);
+                Node node = nodes.get(index);
+                if (node == null) {
+                    //claimed but not written yet
+                    break;
+                }
+                nodes.lazySet(index, null);
+                action.accept(node);
+                current++;
+            }
+            head = current;
+        }
+    }
+
+    /* count-min sketch with four 4-bit counters per account packed into longs, all counters are halved
+     * once the number of increments reaches ten times the table size, so old popularity fades out
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedAccounts) {
+            int size = Integer.highestOneBit(Math.max(16, Math.min(expectedAccounts, 1 << 26)) - 1) << 1;
+            this.table = new long[size];
+            this.tableMask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long mixed = mix(hash, i);
+                int shift = counterShift(mixed);
+                frequency = Math.min(frequency, (int) ((table[tableIndex(mixed)] >>> shift) & 0xfL));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long mixed = mix(hash, i);
+                int index = tableIndex(mixed);
+                int shift = counterShift(mixed);
+                if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private long mix(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            return mixed ^ (mixed >>> 32);
+        }
+
+        private int tableIndex(long mixed) {
+            return (int) mixed & tableMask;
+        }
+
+        //one of the 16 counters of a long
+        private static int counterShift(long mixed) {
+            return (int) (mixed >>> 40 & 0xf) << 2;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*** Account loaded from PersistentAccountStore, knows the offset of its record
+ * every balance change is checked to fit the store scale before it is applied and afterwards the account
+ * queues itself once for the write-behind flush. The flusher clears the dirty flag before it reads the balance,
+ * so a change racing with the flush queues the account again.
+ */
+public class PersistentAccount extends Account {
+
+    private final long offset;
+    private final long generation;
+    private final AccountsRepositoryPersistent repository;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    PersistentAccount(String accountId, BigDecimal balance, long offset, long generation,
+                      AccountsRepositoryPersistent repository) {
+        super(accountId, balance, new ReentrantLock());
+        this.offset = offset;
+        this.generation = generation;
+        this.repository = repository;
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        getLock().lock();
+        try {
+            repository.toMinorUnits(super.getBalance().add(amount));
+            super.deposit(amount);
+        } finally {
+            getLock().unlock();
+        }
+        changed();
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        repository.toMinorUnits(amount);
+        if (super.withdraw(amount)) {
+            changed();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        repository.toMinorUnits(balance);
+        super.setBalance(balance);
+        changed();
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    //true when the account was dirty, the caller writes the current balance afterwards
+    boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    private void changed() {
+        if (dirty.compareAndSet(false, true)) {
+            repository.changed(this);
+        }
+    }
+}
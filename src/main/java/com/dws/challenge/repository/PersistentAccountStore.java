@@ -0,0 +1,354 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.exception.DuplicateAccountIdException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/*** account ids and balances (scaled long minor units) in memory-mapped files
+ * records are appended to segment files accounts-{n}.dat as [int id length][id utf-8][padding][long balance],
+ * every record starts at an 8 byte boundary and never crosses a segment, a zero length ends a segment.
+ * accounts.idx is an open-addressing hash table of record offsets + 1 (0 is an empty slot) with linear probing,
+ * it is rebuilt from the segments when missing or damaged and doubled at half load.
+ * Balances are updated in place with volatile accesses, everything else runs under the read-write lock:
+ * lookups share it, appends and index growth take it exclusively.
+ */
+public class PersistentAccountStore implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "accounts-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String INDEX_FILE = "accounts.idx";
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 12;
+    //index positions stay below 2GB, so at most 2^27 accounts at half load
+    private static final int MAX_INDEX_CAPACITY = 1 << 28;
+    private static final int MAX_ID_BYTES = 1 << 12;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int segmentBits;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //guarded by lock, volatile so balance accesses can resolve an offset without it
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private MappedByteBuffer index;
+    private int indexCapacity;
+    private long appendOffset;
+    private int size;
+
+    //segmentSize is rounded down to a power of two, so an offset splits into segment and position by shifts
+    public PersistentAccountStore(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentBits = 63 - Long.numberOfLeadingZeros(Math.min(segmentSize, 1 << 30));
+        this.segmentSize = 1 << segmentBits;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open account store in " + directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        long segmentCount;
+        try (var files = Files.list(directory)) {
+            segmentCount = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .count();
+        }
+        MappedByteBuffer[] opened = new MappedByteBuffer[(int) segmentCount];
+        for (int i = 0; i < opened.length; i++) {
+            opened[i] = map(segmentFile(i), segmentSize);
+        }
+        segments = opened;
+        appendOffset = opened.length == 0 ? 0 : endOfRecords(opened.length - 1);
+
+        size = 0;
+        forEachRecord((accountId, offset) -> size++);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile) || !indexMatches(indexFile)) {
+            rebuildIndex(Math.max(INITIAL_INDEX_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 2));
+        }
+    }
+
+    //a usable index has room for every record and finds the last appended one, it stays mapped when it does
+    private boolean indexMatches(Path indexFile) throws IOException {
+        long bytes = Files.size(indexFile);
+        long capacity = bytes / Long.BYTES;
+        if (bytes % Long.BYTES != 0 || Long.bitCount(capacity) != 1 || capacity < 2L * size
+                || capacity > MAX_INDEX_CAPACITY) {
+            return false;
+        }
+        index = map(indexFile, bytes);
+        indexCapacity = (int) capacity;
+        long[] last = {-1};
+        String[] lastId = {null};
+        forEachRecord((accountId, offset) -> {
+            last[0] = offset;
+            lastId[0] = accountId;
+        });
+        return lastId[0] == null || findLocked(lastId[0]) == last[0];
+    }
+
+    //offset of the account record, -1 when there is no such account
+    public long find(String accountId) {
+        lock.readLock().lock();
+        try {
+            return findLocked(accountId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long findLocked(String accountId) {
+        int mask = indexCapacity - 1;
+        for (int slot = spread(accountId.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            long entry = index.getLong(slot * Long.BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            if (accountId.equals(readAccountId(entry - 1))) {
+                return entry - 1;
+            }
+        }
+    }
+
+    //returns the offset of the new record, created gets it before find can return it
+    public long append(String accountId, long minorUnits, LongConsumer created) {
+        byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Account id must have between 1 and " + MAX_ID_BYTES + " bytes");
+        }
+        int recordSize = recordSize(id.length);
+        lock.writeLock().lock();
+        try {
+            if (findLocked(accountId) >= 0) {
+                throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+            }
+            if (2L * (size + 1) > indexCapacity) {
+                if (indexCapacity == MAX_INDEX_CAPACITY) {
+                    throw new IllegalStateException("Account store in " + directory + " is full");
+                }
+                rebuildIndex(indexCapacity << 1);
+            }
+            //the record and a terminating zero length must fit into the segment
+            if (position(appendOffset) + recordSize + Integer.BYTES > segmentSize) {
+                appendOffset = (long) segments.length << segmentBits;
+            }
+            if ((appendOffset >>> segmentBits) == segments.length) {
+                addSegment();
+            }
+            long offset = appendOffset;
+            ByteBuffer segment = segments[(int) (offset >>> segmentBits)].duplicate();
+            segment.position(position(offset) + Integer.BYTES);
+            segment.put(id);
+            LONGS.setVolatile(segment, balancePosition(position(offset), id.length), minorUnits);
+            //the length makes the record visible to scans, so it is written last
+            segment.putInt(position(offset), id.length);
+            insert(offset);
+            appendOffset = offset + recordSize;
+            size++;
+            created.accept(offset);
+            return offset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long balance(long offset) {
+        return (long) LONGS.getVolatile(segment(offset), balancePosition(offset));
+    }
+
+    public void setBalance(long offset, long minorUnits) {
+        LONGS.setVolatile(segment(offset), balancePosition(offset), minorUnits);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(String accountId, long offset);
+    }
+
+    //records in append order, records appended during the scan may or may not be visited
+    public void forEachRecord(RecordConsumer action) {
+        for (int segment = 0; segment < segments.length; segment++) {
+            forEachRecord(segment, action);
+        }
+    }
+
+    public void forEachRecord(int segmentIndex, RecordConsumer action) {
+        MappedByteBuffer segment = segments[segmentIndex];
+        long base = (long) segmentIndex << segmentBits;
+        int position = 0;
+        while (position + Integer.BYTES <= segmentSize) {
+            int idLength = segment.getInt(position);
+            if (idLength == 0) {
+                return;
+            }
+            action.accept(readAccountId(base + position), base + position);
+            position += recordSize(idLength);
+        }
+    }
+
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        MappedByteBuffer current = index;
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    //not meant to run concurrently with other calls, removes all records
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            segments = new MappedByteBuffer[0];
+            index = null;
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.equals(INDEX_FILE) || name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            appendOffset = 0;
+            size = 0;
+            rebuildIndex(INITIAL_INDEX_CAPACITY);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear account store in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    //called under the write lock or while opening
+    private void rebuildIndex(int capacity) {
+        try {
+            Path file = directory.resolve(INDEX_FILE);
+            Path rebuilt = directory.resolve(INDEX_FILE + ".tmp");
+            Files.deleteIfExists(rebuilt);
+            index = map(rebuilt, (long) capacity * Long.BYTES);
+            indexCapacity = capacity;
+            forEachRecord((accountId, offset) -> insert(offset));
+            index.force();
+            Files.move(rebuilt, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot rebuild account index in " + directory, e);
+        }
+    }
+
+    private void insert(long offset) {
+        int mask = indexCapacity - 1;
+        int slot = spread(readAccountId(offset).hashCode()) & mask;
+        while (index.getLong(slot * Long.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slot * Long.BYTES, offset + 1);
+    }
+
+    private void addSegment() {
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+        try {
+            grown[segments.length] = map(segmentFile(segments.length), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot add account segment in " + directory, e);
+        }
+        segments = grown;
+    }
+
+    private long endOfRecords(int segmentIndex) {
+        long[] end = {(long) segmentIndex << segmentBits};
+        forEachRecord(segmentIndex, (accountId, offset) -> end[0] = offset + recordSize(readIdLength(offset)));
+        return end[0];
+    }
+
+    private String readAccountId(long offset) {
+        ByteBuffer segment = segment(offset).duplicate();
+        int position = position(offset);
+        int idLength = segment.getInt(position);
+        byte[] id = new byte[idLength];
+        segment.position(position + Integer.BYTES);
+        segment.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private int readIdLength(long offset) {
+        return segment(offset).getInt(position(offset));
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> segmentBits)];
+    }
+
+    private int position(long offset) {
+        return (int) (offset & (segmentSize - 1));
+    }
+
+    private int balancePosition(long offset) {
+        int position = position(offset);
+        return balancePosition(position, readIdLength(offset));
+    }
+
+    private static int balancePosition(int position, int idLength) {
+        return position + align(Integer.BYTES + idLength);
+    }
+
+    private static int recordSize(int idLength) {
+        return align(Integer.BYTES + idLength) + Long.BYTES;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Path segmentFile(int segmentIndex) {
+        return directory.resolve(SEGMENT_PREFIX + segmentIndex + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(Path file, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.dws.challenge.repository;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "accounts.persistent")
+public class PersistentStoreProperties {
+
+    private String directory = "accounts";
+
+    //size of one memory-mapped account segment file, rounded down to a power of two
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    //balances are stored as balance * 10^scale in a long, amounts with more decimals are rejected
+    private int scale = 2;
+
+    //estimated heap of cached accounts, the least valuable accounts are evicted above it
+    private DataSize cacheMaxMemory = DataSize.ofMegabytes(256);
+
+    //how long changed balances may wait before they are written to the mapped files and forced
+    private Duration writeBehindInterval = Duration.ofMillis(100);
+}
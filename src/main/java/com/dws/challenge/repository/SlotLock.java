@@ -0,0 +1,63 @@
+package com.dws.challenge.repository;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+//Lock view of one CompactAccountStore slot, all state lives in the store
+final class SlotLock implements Lock {
+
+    private final CompactAccountStore store;
+    private final int slot;
+
+    SlotLock(CompactAccountStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    @Override
+    public void lock() {
+        store.lock(slot);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        while (!store.tryLock(slot)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(1_000);
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        return store.tryLock(slot);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        while (!store.tryLock(slot)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(1_000);
+        }
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        store.unlock(slot);
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("Account slot locks do not support conditions");
+    }
+}
@@ -0,0 +1,33 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.StripedAccount;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/*** accounts created as StripedAccount, meant for a handful of merchant accounts receiving a large share of transfers
+ * kept by the map and atomic stores, the compact and persistent stores have their own account representation
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "accounts.striped")
+public class StripedAccountProperties {
+
+    private Set<String> accountIds = new HashSet<>();
+
+    //balance cells per striped account, 0 means twice the number of available processors
+    private int stripes = 0;
+
+    //the account itself unless its id is configured as striped
+    public Account stripe(Account account) {
+        if (account instanceof StripedAccount || !accountIds.contains(account.getAccountId())) {
+            return account;
+        }
+        int cells = stripes > 0 ? stripes : 2 * Runtime.getRuntime().availableProcessors();
+        return new StripedAccount(account.getAccountId(), account.getBalance(), cells);
+    }
+}
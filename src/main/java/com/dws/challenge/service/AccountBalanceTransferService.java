@@ -1,13 +1,36 @@
 package com.dws.challenge.service;
 
+import com.dws.challenge.cluster.PartitionCoordinator;
+import com.dws.challenge.cluster.RemoteAccount;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.dto.AccountBalanceTransferBatchDto;
 import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferResultDto;
+import com.dws.challenge.dto.BatchTransferMode;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.PartitionUnavailableException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.wire.WireStatus;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 @Service
 @RequiredArgsConstructor
@@ -16,57 +39,364 @@ public class AccountBalanceTransferService {
 
     private final AccountsService accountsService;
 
-    private final NotificationService notificationService;
+    private final NotificationDispatcher notificationDispatcher;
 
-    protected void transferThreadSafe(Account sender, Account receiver, BigDecimal amount) {
-        Account firstLock = sender;
-        Account secondLock = receiver;
+    private final BalanceFeed balanceFeed;
+
+    private final TransferJournal transferJournal;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final TransferLedger transferLedger;
+
+    private final TransferAuditLog auditLog;
+
+    private final TransferMetrics transferMetrics;
+
+    private final AccountLockManager lockManager;
+
+    private final AsyncTransferExecutor asyncTransferExecutor;
+
+    //empty unless an alternative engine is configured with transfer.engine
+    private final Optional<TransferEngine> transferEngine;
+
+    //present with cluster.enabled, transfers involving a RemoteAccount go through it
+    private final Optional<PartitionCoordinator> partitionCoordinator;
 
-        /* in order to avoid deadlock object locks should be always enabled in the same order.
-         //order is defining by object accountId field
-         //note: when "if" section commented tests may catch deadlock
-         */
-        if (sender.getAccountId().compareTo(receiver.getAccountId()) < 0) {
-            firstLock = receiver;
-            secondLock = sender;
+    //exception-based variant of transferLocked, kept for subclasses and callers of the old API
+    protected void transferThreadSafe(Account sender, Account receiver, BigDecimal amount) {
+        if (!transferLocked(sender, receiver, amount)) {
+            throw new InsufficientBalanceAmountException(sender, receiver, amount);
         }
+    }
 
-        firstLock.getLock().lock();
+    //returns false and changes nothing when the sender balance is too low, either outcome is audited
+    protected boolean transferLocked(Account sender, Account receiver, BigDecimal amount) {
+        boolean sampled = transferMetrics.sample();
+        long started = sampled ? System.nanoTime() : 0;
+        long acquired = 0;
+        BigDecimal rejectedBalance = null;
+        //both locks in the global order or AccountBusyException with none of them held
+        lockManager.lockTransfer(sender, receiver);
         try {
-            secondLock.getLock().lock();
+            if (sampled) {
+                acquired = System.nanoTime();
+            }
+            //entered with the locks held, so a snapshot never waits for a transfer queued on a lock
+            long epoch = balanceSnapshots.enter();
             try {
+                balanceSnapshots.beforeChange(epoch, sender);
+                balanceSnapshots.beforeChange(epoch, receiver);
                 if (sender.withdraw(amount)) {
                     receiver.deposit(amount);
-                    log.info("Transferred " + amount + " from Account " + sender.getAccountId() + " to Account " + receiver.getAccountId());
+                    transferJournal.appendTransfer(sender, receiver, amount);
+                    transferLedger.transferred(sender, receiver, amount, System.currentTimeMillis());
                 } else {
-                    log.info("Insufficient balance in Account " + sender.getAccountId() + " Requested: " + amount + " but only exists: " + sender.getBalance());
-                    throw new InsufficientBalanceAmountException(sender, receiver, amount);
+                    rejectedBalance = sender.getBalance();
                 }
             } finally {
-                secondLock.getLock().unlock();
+                balanceSnapshots.exit(epoch);
             }
         } finally {
-            firstLock.getLock().unlock();
+            lockManager.unlockTransfer(sender, receiver);
         }
+        if (sampled) {
+            transferMetrics.recordLockWait(acquired - started);
+            transferMetrics.recordLockHeld(System.nanoTime() - acquired);
+        }
+
+        //auditing happens after the locks are released
+        if (rejectedBalance != null) {
+            auditLog.rejected(sender, receiver, amount, rejectedBalance);
+            return false;
+        }
+        auditLog.transferred(sender, receiver, amount);
+        return true;
     }
 
+    /* exception-based variant of transfer(AccountBalanceTransferDto), kept for API compatibility:
+     * throws InsufficientBalanceAmountException or AccountNotFoundException after the accounts were notified
+     */
     public void transferThreadSafe(AccountBalanceTransferDto amountDto) {
+        TransferStatus status = transfer(amountDto);
+        if (status == TransferStatus.INSUFFICIENT_BALANCE) {
+            throw new InsufficientBalanceAmountException(accountsService.getAccount(amountDto.getSenderAccountId()),
+                    accountsService.getAccount(amountDto.getReceiverAccountId()), amountDto.getAmount());
+        }
+        if (status == TransferStatus.UNKNOWN_ACCOUNT) {
+            throw new AccountNotFoundException("Account " + amountDto.getSenderAccountId() + " or "
+                    + amountDto.getReceiverAccountId() + " does not exist");
+        }
+    }
+
+    /* COMPLETED, INSUFFICIENT_BALANCE or UNKNOWN_ACCOUNT, a rejected transfer is an outcome and not an exception,
+     * so it costs no stack trace. Both accounts are notified of completed and rejected transfers alike.
+     * Only failures of the transfer itself throw: AccountBusyException, PartitionUnavailableException
+     */
+    public TransferStatus transfer(AccountBalanceTransferDto amountDto) {
+        Account sender = accountsService.getAccount(amountDto.getSenderAccountId());
+        Account receiver = accountsService.getAccount(amountDto.getReceiverAccountId());
+        if (sender == null || receiver == null) {
+            return TransferStatus.UNKNOWN_ACCOUNT;
+        }
+        BigDecimal amount = amountDto.getAmount();
+
+        TransferStatus status;
+        if (isPartitioned(sender, receiver)) {
+            status = partitioned(sender, receiver, amount, partitionCoordinator.get()
+                    .transfer(sender.getAccountId(), receiver.getAccountId(), amount));
+        } else if (transferEngine.isPresent()) {
+            status = engineTransfer(transferEngine.get(), sender, receiver, amount);
+        } else {
+            status = transferLocked(sender, receiver, amount) ? TransferStatus.COMPLETED
+                    : TransferStatus.INSUFFICIENT_BALANCE;
+        }
+        if (status == TransferStatus.COMPLETED) {
+            transferJournal.sync();
+        }
+        notify(sender, receiver, amount, status);
+        return status;
+    }
+
+    /* same transfer without blocking the caller: the sharded engine completes it on shard threads,
+     * the lock path and the journal sync run on AsyncTransferExecutor.
+     * Completes with the outcome of transfer(AccountBalanceTransferDto), exceptionally only when that one throws
+     */
+    public CompletionStage<TransferStatus> transferAsync(AccountBalanceTransferDto amountDto) {
         Account sender = accountsService.getAccount(amountDto.getSenderAccountId());
         Account receiver = accountsService.getAccount(amountDto.getReceiverAccountId());
+        if (sender == null || receiver == null) {
+            return CompletableFuture.completedFuture(TransferStatus.UNKNOWN_ACCOUNT);
+        }
+        BigDecimal amount = amountDto.getAmount();
+
+        CompletableFuture<TransferStatus> transferred;
+        if (isPartitioned(sender, receiver)) {
+            transferred = partitionCoordinator.get()
+                    .transferAsync(sender.getAccountId(), receiver.getAccountId(), amount)
+                    .thenApply(status -> partitioned(sender, receiver, amount, status));
+        } else {
+            transferred = transferEngine
+                    .map(engine -> engine.transferAsync(sender, receiver, amount)
+                            .handle(AccountBalanceTransferService::engineStatus))
+                    .orElseGet(() -> CompletableFuture.supplyAsync(() -> transferLocked(sender, receiver, amount)
+                                    ? TransferStatus.COMPLETED : TransferStatus.INSUFFICIENT_BALANCE,
+                            asyncTransferExecutor::execute));
+        }
+
+        CompletableFuture<TransferStatus> result = new CompletableFuture<>();
+        transferred.whenComplete((status, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                return;
+            }
+            if (status != TransferStatus.COMPLETED) {
+                notify(sender, receiver, amount, status);
+                result.complete(status);
+                return;
+            }
+            asyncTransferExecutor.execute(() -> {
+                try {
+                    transferJournal.sync();
+                    notify(sender, receiver, amount, status);
+                    result.complete(status);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        });
+        return result;
+    }
+
+    private boolean isPartitioned(Account sender, Account receiver) {
+        return sender instanceof RemoteAccount || receiver instanceof RemoteAccount;
+    }
 
-        transferThreadSafe(sender, receiver, amountDto.getAmount());
+    //engines report a rejection with InsufficientBalanceAmountException, see TransferEngine
+    private static TransferStatus engineTransfer(TransferEngine engine, Account sender, Account receiver,
+                                                 BigDecimal amount) {
+        try {
+            engine.transfer(sender, receiver, amount);
+            return TransferStatus.COMPLETED;
+        } catch (InsufficientBalanceAmountException e) {
+            return TransferStatus.INSUFFICIENT_BALANCE;
+        }
+    }
+
+    private static TransferStatus engineStatus(Void ignored, Throwable failure) {
+        if (failure == null) {
+            return TransferStatus.COMPLETED;
+        }
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof InsufficientBalanceAmountException) {
+            return TransferStatus.INSUFFICIENT_BALANCE;
+        }
+        throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(cause);
+    }
+
+    /* audits a transfer decided by the PartitionCoordinator and returns its outcome,
+     * failures throw the exceptions of a local transfer
+     */
+    private TransferStatus partitioned(Account sender, Account receiver, BigDecimal amount, WireStatus status) {
+        switch (status) {
+            case OK:
+                auditLog.transferred(sender, receiver, amount);
+                return TransferStatus.COMPLETED;
+            case INSUFFICIENT_BALANCE:
+                auditLog.rejected(sender, receiver, amount, null);
+                return TransferStatus.INSUFFICIENT_BALANCE;
+            case UNKNOWN_ACCOUNT:
+                return TransferStatus.UNKNOWN_ACCOUNT;
+            case INVALID_REQUEST:
+                throw new InvalidTransferException("Transfer from " + sender.getAccountId() + " to "
+                        + receiver.getAccountId() + " was refused");
+            case BUSY:
+                throw new AccountBusyException(sender.getAccountId());
+            default:
+                throw new PartitionUnavailableException("Transfer from " + sender.getAccountId() + " to "
+                        + receiver.getAccountId() + " could not be completed");
+        }
+    }
+
+    /* every account of the batch is locked exactly once by AccountLockManager, in the same global order as single
+     * transfers use, so batches never deadlock with each other or with single transfers.
+     * A batch which does not get all its locks in time fails as a whole with AccountBusyException.
+     * Legs are validated one by one against the running balances, which are written back only at the end,
+     * in ALL_OR_NOTHING mode nothing is written back if any leg fails
+     */
+    public List<AccountBalanceTransferResultDto> transferBatchThreadSafe(AccountBalanceTransferBatchDto batchDto) {
+        List<AccountBalanceTransferDto> transfers = batchDto.getTransfers();
+        boolean allOrNothing = batchDto.getMode() == BatchTransferMode.ALL_OR_NOTHING;
+
+        int size = transfers.size();
+        Account[] senders = new Account[size];
+        Account[] receivers = new Account[size];
+        TransferStatus[] statuses = new TransferStatus[size];
+
+        List<Account> lockedAccounts = new ArrayList<>(size * 2);
+        //one Account object per id: stores like the compact one return a new view on every lookup, while the
+        //running balances of applyBatchLocked are kept per object
+        Map<String, Account> accounts = new HashMap<>();
+        boolean failed = false;
+        for (int i = 0; i < size; i++) {
+            AccountBalanceTransferDto transfer = transfers.get(i);
+            senders[i] = accounts.computeIfAbsent(transfer.getSenderAccountId(), accountsService::getAccount);
+            receivers[i] = accounts.computeIfAbsent(transfer.getReceiverAccountId(), accountsService::getAccount);
+            //batches are local, legs of accounts owned by other nodes are refused like unknown ones
+            if (senders[i] == null || receivers[i] == null || isPartitioned(senders[i], receivers[i])) {
+                statuses[i] = TransferStatus.UNKNOWN_ACCOUNT;
+                failed = true;
+            } else {
+                lockedAccounts.add(senders[i]);
+                lockedAccounts.add(receivers[i]);
+            }
+        }
+
+        if (!(failed && allOrNothing)) {
+            failed |= applyBatchLocked(transfers, senders, receivers, statuses, lockedAccounts, allOrNothing);
+            transferJournal.sync();
+        }
+
+        List<AccountBalanceTransferResultDto> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (statuses[i] == null || (failed && allOrNothing && statuses[i] == TransferStatus.COMPLETED)) {
+                statuses[i] = TransferStatus.ROLLED_BACK;
+            }
+            AccountBalanceTransferDto transfer = transfers.get(i);
+            BigDecimal amount = transfer.getAmount();
+            if (statuses[i] == TransferStatus.COMPLETED) {
+                auditLog.transferred(senders[i], receivers[i], amount);
+                balanceFeed.changed(senders[i]);
+                balanceFeed.changed(receivers[i]);
+                notifyAccounts(senders[i], receivers[i], amount);
+            } else if (statuses[i] == TransferStatus.INSUFFICIENT_BALANCE) {
+                transferMetrics.rejected();
+                auditLog.rejected(senders[i], receivers[i], amount, null);
+                notifyRejected(senders[i], receivers[i], amount);
+            }
+            results.add(new AccountBalanceTransferResultDto(transfer.getSenderAccountId(),
+                    transfer.getReceiverAccountId(), amount, statuses[i]));
+        }
+        log.debug("Batch of {} transfers processed in {} mode", size, batchDto.getMode());
+        return results;
+    }
+
+    //returns true if at least one leg was rejected
+    private boolean applyBatchLocked(List<AccountBalanceTransferDto> transfers, Account[] senders, Account[] receivers,
+                                     TransferStatus[] statuses, List<Account> accounts, boolean allOrNothing) {
+        List<Account> locked = lockManager.lockAll(accounts);
+        try {
+            Map<Account, BigDecimal> balances = new IdentityHashMap<>();
+            boolean failed = false;
+            for (int i = 0; i < transfers.size() && !(failed && allOrNothing); i++) {
+                if (statuses[i] != null) {
+                    continue;
+                }
+                BigDecimal amount = transfers.get(i).getAmount();
+                BigDecimal senderBalance = balances.computeIfAbsent(senders[i], Account::getBalance);
+                //same rule as Account.withdraw
+                if (senderBalance.compareTo(amount) > 0) {
+                    balances.put(senders[i], senderBalance.subtract(amount));
+                    balances.put(receivers[i], balances.computeIfAbsent(receivers[i], Account::getBalance).add(amount));
+                    statuses[i] = TransferStatus.COMPLETED;
+                } else {
+                    statuses[i] = TransferStatus.INSUFFICIENT_BALANCE;
+                    failed = true;
+                }
+            }
 
-        notifyAccounts(sender, receiver, amountDto.getAmount());
+            if (!(failed && allOrNothing)) {
+                long epoch = balanceSnapshots.enter();
+                try {
+                    balances.forEach((account, balance) -> {
+                        balanceSnapshots.beforeChange(epoch, account);
+                        account.setBalance(balance);
+                    });
+                } finally {
+                    balanceSnapshots.exit(epoch);
+                }
+                long timestamp = System.currentTimeMillis();
+                for (int i = 0; i < transfers.size(); i++) {
+                    if (statuses[i] == TransferStatus.COMPLETED) {
+                        BigDecimal amount = transfers.get(i).getAmount();
+                        transferJournal.appendTransfer(senders[i], receivers[i], amount);
+                        transferLedger.transferred(senders[i], receivers[i], amount, timestamp);
+                    }
+                }
+            }
+            return failed;
+        } finally {
+            lockManager.unlockAll(locked);
+        }
+    }
+
+    /* completed and rejected transfers notify both accounts on the same path, unknown accounts have no one to notify.
+     * Called once the transfer is committed, so the balance feed publishes balances which survive a restart
+     */
+    private void notify(Account sender, Account receiver, BigDecimal amount, TransferStatus status) {
+        if (status == TransferStatus.COMPLETED) {
+            balanceFeed.changed(sender);
+            balanceFeed.changed(receiver);
+            notifyAccounts(sender, receiver, amount);
+        } else if (status == TransferStatus.INSUFFICIENT_BALANCE) {
+            transferMetrics.rejected();
+            notifyRejected(sender, receiver, amount);
+        }
     }
 
     //ToDo: this logic probably should be done fully by notificationService, so interface should be changed
     private void notifyAccounts(Account sender, Account receiver, BigDecimal amount) {
         String receiverMessage = "Transfer of " + amount
                 + " amount completed from " + sender.getAccountId();
-        notificationService.notifyAboutTransfer(receiver, receiverMessage);
+        notificationDispatcher.dispatch(receiver, receiverMessage);
 
         String senderMessage = "Transfer of " + amount
                 + " amount completed to " + receiver.getAccountId();
-        notificationService.notifyAboutTransfer(sender, senderMessage);
+        notificationDispatcher.dispatch(sender, senderMessage);
+    }
+
+    private void notifyRejected(Account sender, Account receiver, BigDecimal amount) {
+        notificationDispatcher.dispatch(receiver, InsufficientBalanceAmountException.receiverMessage(sender, amount));
+        notificationDispatcher.dispatch(sender, InsufficientBalanceAmountException.senderMessage(receiver, amount));
     }
 }
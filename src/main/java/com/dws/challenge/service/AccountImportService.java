@@ -0,0 +1,308 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountImportErrorDto;
+import com.dws.challenge.dto.AccountImportResultDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/*** bulk account import and export, one account per line as NDJSON {"accountId":"Id-1","balance":10}
+ * or CSV accountId,balance (optional header line, no quoting).
+ * The body is parsed line by line on the request thread with the Jackson streaming parser, parsed accounts are
+ * validated and created in chunks on the import pool, at most two chunks per thread are in flight,
+ * so memory does not grow with the size of the body. A rejected line is reported and the load goes on.
+ * Export streams the repository straight into the response without collecting the accounts.
+ */
+@Service
+@Log4j2
+public class AccountImportService {
+
+    public enum Format {
+        NDJSON(MediaType.APPLICATION_NDJSON),
+        CSV(MediaType.parseMediaType(Format.CSV_VALUE));
+
+        public static final String CSV_VALUE = "text/csv";
+
+        @Getter
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public static Format of(MediaType mediaType) {
+            return NDJSON.mediaType.isCompatibleWith(mediaType) ? NDJSON : CSV;
+        }
+    }
+
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final String CSV_HEADER = "accountId,balance";
+
+    private final AccountsService accountsService;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+    //the response stream is closed by the container, balances are written like BigDecimal.toPlainString
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .enable(StreamWriteFeature.WRITE_BIGDECIMAL_AS_PLAIN)
+            .build();
+
+    public AccountImportService(AccountsService accountsService, Validator validator,
+                                @Value("${accounts.import.threads:0}") int threads,
+                                @Value("${accounts.import.chunk-size:10000}") int chunkSize) {
+        this.accountsService = accountsService;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "account-import-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Chunk {
+        private final List<Account> accounts;
+        private final long[] lines;
+
+        private Chunk(int size) {
+            this.accounts = new ArrayList<>(size);
+            this.lines = new long[size];
+        }
+
+        private void add(Account account, long line) {
+            lines[accounts.size()] = line;
+            accounts.add(account);
+        }
+
+        private boolean isFull() {
+            return accounts.size() == lines.length;
+        }
+    }
+
+    private static final class Report {
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<AccountImportErrorDto> errors = new ArrayList<>();
+
+        private void rejected(long line, String accountId, String message) {
+            rejected.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new AccountImportErrorDto(line, accountId, message));
+                }
+            }
+        }
+
+        private AccountImportResultDto toDto() {
+            synchronized (errors) {
+                errors.sort(Comparator.comparingLong(AccountImportErrorDto::getLine));
+                return new AccountImportResultDto(imported.get(), rejected.get(), new ArrayList<>(errors));
+            }
+        }
+    }
+
+    public AccountImportResultDto importAccounts(InputStream body, Format format) throws IOException {
+        long started = System.nanoTime();
+        Report report = new Report();
+        int permits = threads * 2;
+        Semaphore inFlight = new Semaphore(permits);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16);
+        Chunk chunk = new Chunk(chunkSize);
+        long lineNumber = 0;
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && line.startsWith(CSV_HEADER))) {
+                    continue;
+                }
+                try {
+                    chunk.add(format == Format.NDJSON ? parseJson(line) : parseCsv(line), lineNumber);
+                } catch (IOException | IllegalArgumentException e) {
+                    report.rejected(lineNumber, null, "Malformed line: " + e.getMessage());
+                    continue;
+                }
+                if (chunk.isFull()) {
+                    submit(chunk, report, inFlight);
+                    chunk = new Chunk(chunkSize);
+                }
+            }
+            if (!chunk.accounts.isEmpty()) {
+                submit(chunk, report, inFlight);
+            }
+        } finally {
+            //waits for the chunks in flight
+            inFlight.acquireUninterruptibly(permits);
+        }
+
+        log.info("Imported {} accounts, rejected {} lines in {} ms", report.imported.get(), report.rejected.get(),
+                (System.nanoTime() - started) / 1_000_000);
+        return report.toDto();
+    }
+
+    private void submit(Chunk chunk, Report report, Semaphore inFlight) {
+        inFlight.acquireUninterruptibly();
+        executor.execute(() -> {
+            try {
+                createChunk(chunk, report);
+            } catch (RuntimeException e) {
+                log.error("Import chunk starting at line {} failed", chunk.lines[0], e);
+                for (int i = 0; i < chunk.accounts.size(); i++) {
+                    report.rejected(chunk.lines[i], chunk.accounts.get(i).getAccountId(), e.toString());
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void createChunk(Chunk chunk, Report report) {
+        List<Account> valid = new ArrayList<>(chunk.accounts.size());
+        long[] validLines = new long[chunk.accounts.size()];
+        for (int i = 0; i < chunk.accounts.size(); i++) {
+            Account account = chunk.accounts.get(i);
+            Set<ConstraintViolation<Account>> violations = validator.validate(account);
+            if (violations.isEmpty()) {
+                validLines[valid.size()] = chunk.lines[i];
+                valid.add(account);
+            } else {
+                report.rejected(chunk.lines[i], account.getAccountId(), violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+            }
+        }
+        int created = accountsService.createAccounts(valid, (duplicate, index) ->
+                report.rejected(validLines[index], valid.get(index).getAccountId(), duplicate.getMessage()));
+        report.imported.addAndGet(created);
+    }
+
+    private Account parseJson(String line) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            String accountId = null;
+            BigDecimal balance = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("accountId".equals(field)) {
+                    accountId = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                } else if ("balance".equals(field)) {
+                    balance = value == JsonToken.VALUE_NULL ? null : decimal(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new Account(accountId, balance);
+        }
+    }
+
+    private Account parseCsv(String line) {
+        int separator = line.indexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("expected " + CSV_HEADER);
+        }
+        String balance = line.substring(separator + 1).trim();
+        return new Account(line.substring(0, separator).trim(), balance.isEmpty() ? null : decimal(balance));
+    }
+
+    private static BigDecimal decimal(String value) {
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("balance " + value + " is not a number");
+        }
+    }
+
+    public void exportAccounts(OutputStream output, Format format) throws IOException {
+        try {
+            if (format == Format.NDJSON) {
+                exportJson(output);
+            } else {
+                exportCsv(output);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void exportJson(OutputStream output) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.setRootValueSeparator(null);
+            accountsService.getAccountsRepository().forEachAccount(account -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("accountId", account.getAccountId());
+                    generator.writeNumberField("balance", account.getBalance());
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void exportCsv(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        accountsService.getAccountsRepository().forEachAccount(account -> {
+            try {
+                writer.write(account.getAccountId());
+                writer.write(',');
+                writer.write(account.getBalance().toPlainString());
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
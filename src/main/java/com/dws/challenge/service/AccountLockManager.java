@@ -0,0 +1,164 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.metrics.LockWaitStatistics;
+import com.dws.challenge.metrics.TransferMetrics;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/*** takes the account locks of every operation changing more than one account, in one global order:
+ * the account with the greater accountId is locked first, so operations never deadlock with each other.
+ * A lock is tried once, so an uncontended acquisition costs nothing extra. A taken lock is tried again while
+ * spinning for an adaptive number of rounds, then the thread parks in the lock queue until the deadline of the
+ * operation, timeout after its first wait. An operation which does not get all its locks in time releases the
+ * ones it took and fails with AccountBusyException, nothing is changed and the caller may retry.
+ * Waits are recorded per account in LockWaitStatistics, served by /actuator/lockwaits
+ */
+@Component
+public class AccountLockManager {
+
+    public static final Comparator<String> LOCK_ORDER = Comparator.reverseOrder();
+
+    private final long timeoutNanos;
+
+    private final int maxSpins;
+
+    private final TransferMetrics transferMetrics;
+
+    @Getter
+    private final LockWaitStatistics waitStatistics;
+
+    /* spin rounds before parking, doubled when spinning got the lock and halved when it did not.
+     * Updated without synchronization, a lost update only delays the adaptation
+     */
+    private int spins;
+
+    public AccountLockManager(LockManagerProperties properties, TransferMetrics transferMetrics) {
+        this.timeoutNanos = properties.getTimeout().toNanos();
+        //a spinning thread only delays the holder when they share one CPU
+        this.maxSpins = Runtime.getRuntime().availableProcessors() > 1 ? Math.max(0, properties.getMaxSpins()) : 0;
+        this.spins = Math.min(maxSpins, 16);
+        this.transferMetrics = transferMetrics;
+        this.waitStatistics = new LockWaitStatistics(properties.getMaxTrackedAccounts());
+    }
+
+    /* the sender lock and the deposit lock of the receiver, which is shared for receivers taking concurrent
+     * deposits, released by unlockTransfer
+     */
+    public void lockTransfer(Account sender, Account receiver) {
+        //equal ids keep the sender first, the same Account is locked reentrantly
+        boolean senderFirst = sender.getAccountId().compareTo(receiver.getAccountId()) >= 0;
+        lockPair(senderFirst ? sender : receiver, senderFirst ? sender.getLock() : receiver.getDepositLock(),
+                senderFirst ? receiver : sender, senderFirst ? receiver.getDepositLock() : sender.getLock());
+    }
+
+    public void unlockTransfer(Account sender, Account receiver) {
+        receiver.getDepositLock().unlock();
+        sender.getLock().unlock();
+    }
+
+    //exclusive locks of two accounts, released by unlockBoth
+    public void lockBoth(Account one, Account other) {
+        boolean oneFirst = one.getAccountId().compareTo(other.getAccountId()) >= 0;
+        Account first = oneFirst ? one : other;
+        Account second = oneFirst ? other : one;
+        lockPair(first, first.getLock(), second, second.getLock());
+    }
+
+    public void unlockBoth(Account one, Account other) {
+        other.getLock().unlock();
+        one.getLock().unlock();
+    }
+
+    private void lockPair(Account first, Lock firstLock, Account second, Lock secondLock) {
+        long deadline = acquire(first, firstLock, 0);
+        try {
+            acquire(second, secondLock, deadline);
+        } catch (AccountBusyException e) {
+            firstLock.unlock();
+            throw e;
+        }
+    }
+
+    //exclusive locks of all accounts, an account given twice is locked once, returns them for unlockAll
+    public List<Account> lockAll(Collection<Account> accounts) {
+        TreeMap<String, Account> ordered = new TreeMap<>(LOCK_ORDER);
+        accounts.forEach(account -> ordered.put(account.getAccountId(), account));
+        List<Account> locked = new ArrayList<>(ordered.size());
+        long deadline = 0;
+        try {
+            for (Account account : ordered.values()) {
+                deadline = acquire(account, account.getLock(), deadline);
+                locked.add(account);
+            }
+        } catch (AccountBusyException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        return locked;
+    }
+
+    public void unlockAll(List<Account> locked) {
+        for (int i = locked.size() - 1; i >= 0; i--) {
+            locked.get(i).getLock().unlock();
+        }
+    }
+
+    //one account lock under the same timeout, released by the caller
+    public void lock(Account account, Lock lock) {
+        acquire(account, lock, 0);
+    }
+
+    /* deadline 0 is set by the first wait of the operation, which gets the whole timeout.
+     * Returns the deadline for the next lock of the operation
+     */
+    private long acquire(Account account, Lock lock, long deadline) {
+        if (lock.tryLock()) {
+            return deadline;
+        }
+        transferMetrics.contended(account);
+        long started = System.nanoTime();
+        if (deadline == 0) {
+            deadline = started + timeoutNanos;
+        }
+        boolean acquired = spin(lock) || park(lock, deadline);
+        waitStatistics.record(account.getAccountId(), System.nanoTime() - started, acquired);
+        if (!acquired) {
+            throw new AccountBusyException(account.getAccountId());
+        }
+        return deadline;
+    }
+
+    private boolean spin(Lock lock) {
+        int rounds = spins;
+        for (int i = 0; i < rounds; i++) {
+            Thread.onSpinWait();
+            if (lock.tryLock()) {
+                spins = Math.min(maxSpins, rounds * 2);
+                return true;
+            }
+        }
+        if (maxSpins > 0) {
+            spins = Math.max(1, rounds / 2);
+        }
+        return false;
+    }
+
+    private boolean park(Lock lock, long deadline) {
+        try {
+            return lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
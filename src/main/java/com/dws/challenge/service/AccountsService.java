@@ -1,27 +1,142 @@
 package com.dws.challenge.service;
 
+import com.dws.challenge.cluster.PartitionRouter;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountPageDto;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.journal.TransferJournal;
 import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.StripedAccountProperties;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ObjIntConsumer;
+
 @Service
 public class AccountsService {
 
     @Getter
     private final AccountsRepository accountsRepository;
 
+    private final TransferJournal transferJournal;
+
+    @Getter
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final StripedAccountProperties stripedAccounts;
+
+    //null outside a cluster
+    private final PartitionRouter partitionRouter;
+
+    public AccountsService(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                           BalanceSnapshots balanceSnapshots) {
+        this(accountsRepository, transferJournal, balanceSnapshots, new StripedAccountProperties());
+    }
+
+    public AccountsService(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                           BalanceSnapshots balanceSnapshots, StripedAccountProperties stripedAccounts) {
+        this(accountsRepository, transferJournal, balanceSnapshots, stripedAccounts, Optional.empty());
+    }
+
     @Autowired
-    public AccountsService(AccountsRepository accountsRepository) {
+    public AccountsService(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                           BalanceSnapshots balanceSnapshots, StripedAccountProperties stripedAccounts,
+                           Optional<PartitionRouter> partitionRouter) {
         this.accountsRepository = accountsRepository;
+        this.transferJournal = transferJournal;
+        this.balanceSnapshots = balanceSnapshots;
+        this.stripedAccounts = stripedAccounts;
+        this.partitionRouter = partitionRouter.orElse(null);
+    }
+
+    private boolean isRemote(String accountId) {
+        return partitionRouter != null && !partitionRouter.isLocal(accountId);
+    }
+
+    /* accounts configured in accounts.striped.account-ids are created as StripedAccount,
+     * in a cluster an account owned by another node is created there
+     */
+    public void createAccount(Account requested) {
+        if (isRemote(requested.getAccountId())) {
+            partitionRouter.createAccount(requested);
+            return;
+        }
+        Account account = stripedAccounts.stripe(requested);
+        BigDecimal created = BigDecimal.ZERO;
+        this.balanceSnapshots.startCreation();
+        try {
+            //journaled before the account can be found, so no transfer of it can be journaled before its creation
+            this.accountsRepository.createAccount(account, this.transferJournal::appendAccountCreated);
+            created = account.getBalance();
+        } finally {
+            this.balanceSnapshots.finishCreation(created);
+        }
+        this.transferJournal.sync();
     }
 
-    public void createAccount(Account account) {
-        this.accountsRepository.createAccount(account);
+    /* bulk variant of createAccount used by imports: every account is created and journaled the same way,
+     * the journal is synced once for all of them. Duplicates are reported with their index and do not stop the rest.
+     * Returns the number of created accounts
+     */
+    public int createAccounts(List<Account> accounts, ObjIntConsumer<DuplicateAccountIdException> onDuplicate) {
+        int created = 0;
+        BigDecimal createdBalance = BigDecimal.ZERO;
+        this.balanceSnapshots.startCreation();
+        try {
+            for (int i = 0; i < accounts.size(); i++) {
+                if (isRemote(accounts.get(i).getAccountId())) {
+                    //one request per account, owners do not batch
+                    try {
+                        partitionRouter.createAccount(accounts.get(i));
+                        created++;
+                    } catch (DuplicateAccountIdException e) {
+                        onDuplicate.accept(e, i);
+                    }
+                    continue;
+                }
+                Account account = stripedAccounts.stripe(accounts.get(i));
+                try {
+                    this.accountsRepository.createAccount(account, this.transferJournal::appendAccountCreated);
+                    createdBalance = createdBalance.add(account.getBalance());
+                    created++;
+                } catch (DuplicateAccountIdException e) {
+                    onDuplicate.accept(e, i);
+                }
+            }
+        } finally {
+            this.balanceSnapshots.finishCreation(createdBalance);
+        }
+        this.transferJournal.sync();
+        return created;
     }
 
+    //only the accounts of this node, reconciliation no longer expects their money
+    public void clearAccounts() {
+        this.balanceSnapshots.clearAccounts();
+    }
+
+    //in a cluster an id owned by another node is a RemoteAccount, whether it exists or not
     public Account getAccount(String accountId) {
+        if (isRemote(accountId)) {
+            return partitionRouter.remoteAccount(accountId);
+        }
         return this.accountsRepository.getAccount(accountId);
     }
+
+    /* accounts whose id starts with prefix in id order, after is the nextCursor of the previous page.
+     * In a cluster only the accounts of this node are listed
+     */
+    public AccountPageDto listAccounts(String prefix, String after, int limit) {
+        //one more tells whether there is a next page
+        List<Account> accounts = this.accountsRepository.listAccounts(prefix, after, limit + 1);
+        if (accounts.size() <= limit) {
+            return new AccountPageDto(accounts, null);
+        }
+        List<Account> page = accounts.subList(0, limit);
+        return new AccountPageDto(page, page.get(limit - 1).getAccountId());
+    }
 }
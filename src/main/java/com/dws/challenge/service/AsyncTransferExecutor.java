@@ -0,0 +1,47 @@
+package com.dws.challenge.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*** runs the blocking parts of AccountBalanceTransferService.transferAsync (account locks, journal sync)
+ * off the request thread: one virtual thread per task with spring.threads.virtual.enabled=true,
+ * otherwise a fixed pool of transfer.async.threads platform threads.
+ * It is not an Executor bean, which would stand in for the applicationTaskExecutor of Spring MVC async requests
+ */
+@Component
+@Log4j2
+public class AsyncTransferExecutor {
+
+    private final ExecutorService executor;
+
+    public AsyncTransferExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                 @Value("${transfer.async.threads:0}") int threads) {
+        if (virtualThreads) {
+            this.executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            log.info("Async transfers run on virtual threads");
+        } else {
+            int count = threads > 0 ? threads : 2 * Runtime.getRuntime().availableProcessors();
+            AtomicInteger index = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(count, runnable -> {
+                Thread thread = new Thread(runnable, "transfer-async-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
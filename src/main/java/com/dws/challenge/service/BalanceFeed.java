@@ -0,0 +1,363 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BalanceChangeDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*** push feed of account balances served as Server-Sent Events by GET /v1/accounts/balances/stream
+ * AccountBalanceTransferService calls changed() for the accounts of a committed transfer, which only marks
+ * the account dirty and wakes the broadcaster thread, an account nobody subscribed to costs one map lookup.
+ * The broadcaster reads the balance of a dirty account once, after the change, and puts it into the buffer of
+ * every subscriber of the account. A buffer keeps only the latest balance per account, so a slow subscriber
+ * skips intermediate balances and its buffer never holds more than its accounts, yet the last event it gets
+ * for an account always carries the current balance.
+ * Buffers are written to the SseEmitters by senderThreads threads, one sender at a time per subscriber,
+ * streams are asynchronous requests which hold no thread while idle. A subscriber whose write failed is dropped.
+ * A servlet write blocks while the client does not read, so the broadcaster also drops a subscriber whose write
+ * takes longer than sendTimeout: its sender is interrupted and, as the container may ignore that, a replacement
+ * sender is started until the write returns, at most senderThreads of them. Slow clients cost the other
+ * subscribers at most sendTimeout of delay, instead of every sender thread.
+ */
+@Component
+@Log4j2
+public class BalanceFeed {
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final List<String> accountIds;
+        //latest balance per account not sent yet, guarded by itself
+        private final Map<String, BigDecimal> pending = new LinkedHashMap<>();
+        private boolean heartbeatDue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        //start of the write in progress, 0 while not writing, guarded by this with stuck
+        private volatile long sendingSince;
+        private volatile Thread sender;
+        private boolean stuck;
+
+        private Subscriber(SseEmitter emitter, List<String> accountIds) {
+            this.emitter = emitter;
+            this.accountIds = accountIds;
+        }
+
+        private void offer(String accountId, BigDecimal balance) {
+            synchronized (pending) {
+                if (pending.put(accountId, balance) != null) {
+                    conflated.increment();
+                }
+            }
+        }
+
+        private void heartbeat() {
+            synchronized (pending) {
+                heartbeatDue = true;
+            }
+        }
+
+        private boolean hasPending() {
+            synchronized (pending) {
+                return heartbeatDue || !pending.isEmpty();
+            }
+        }
+    }
+
+    private final int maxSubscribers;
+    private final int maxAccountsPerSubscriber;
+    private final long heartbeatNanos;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int senderThreads;
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> all = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    //latest Account object of each dirty account, its id is queued once until the broadcaster takes it
+    private final Map<String, Account> dirty = new ConcurrentHashMap<>();
+    //holds at most one entry per subscribed account
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor senders;
+    //senders blocked in the write of a dropped subscriber, each replaced by one more core thread
+    private final AtomicInteger stuckSenders = new AtomicInteger();
+    private final Thread broadcaster;
+    private volatile boolean running = true;
+    private final Counter sent;
+    private final Counter conflated;
+    private final Counter dropped;
+
+    public BalanceFeed(BalanceFeedProperties properties, MeterRegistry meterRegistry) {
+        this.maxSubscribers = properties.getMaxSubscribers();
+        this.maxAccountsPerSubscriber = properties.getMaxAccountsPerSubscriber();
+        this.heartbeatNanos = properties.getHeartbeatInterval().toNanos();
+        this.timeoutMillis = properties.getTimeout().toMillis();
+        this.sendTimeoutNanos = properties.getSendTimeout().toNanos();
+        this.sent = meterRegistry.counter("balance.feed.sent");
+        this.conflated = meterRegistry.counter("balance.feed.conflated");
+        this.dropped = meterRegistry.counter("balance.feed.dropped");
+        meterRegistry.gauge("balance.feed.subscribers", subscriberCount);
+
+        this.senderThreads = properties.getSenderThreads() > 0 ? properties.getSenderThreads()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(senderThreads, 2 * senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "balance-feed-sender-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.broadcaster = new Thread(this::broadcast, "balance-feed-broadcaster");
+        this.broadcaster.setDaemon(true);
+        this.broadcaster.start();
+    }
+
+    public int getMaxAccountsPerSubscriber() {
+        return maxAccountsPerSubscriber;
+    }
+
+    /* streams the current balance of each account and then every change of them, null when maxSubscribers
+     * streams are open. The accounts are distinct accounts of this node, at most maxAccountsPerSubscriber
+     */
+    public SseEmitter subscribe(Collection<Account> accounts) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        List<String> accountIds = new ArrayList<>(accounts.size());
+        accounts.forEach(account -> accountIds.add(account.getAccountId()));
+        Subscriber subscriber = new Subscriber(emitter, accountIds);
+        all.add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        emitter.onTimeout(emitter::complete);
+
+        //registered before the first balances are read, so no change in between is missed
+        for (String accountId : accountIds) {
+            subscribers.compute(accountId, (id, set) -> {
+                Set<Subscriber> subscribed = set == null ? ConcurrentHashMap.newKeySet() : set;
+                subscribed.add(subscriber);
+                return subscribed;
+            });
+        }
+        for (Account account : accounts) {
+            subscriber.offer(account.getAccountId(), account.getBalance());
+        }
+        schedule(subscriber);
+        return emitter;
+    }
+
+    //called after the change of account was committed
+    public void changed(Account account) {
+        String accountId = account.getAccountId();
+        if (!subscribers.containsKey(accountId)) {
+            return;
+        }
+        if (dirty.put(accountId, account) == null) {
+            changes.add(accountId);
+        }
+    }
+
+    public int subscribers() {
+        return subscriberCount.get();
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    //false when the subscriber was already gone
+    private boolean unsubscribe(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        all.remove(subscriber);
+        for (String accountId : subscriber.accountIds) {
+            subscribers.computeIfPresent(accountId, (id, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        subscriberCount.decrementAndGet();
+        return true;
+    }
+
+    private void broadcast() {
+        long checkNanos = Math.min(heartbeatNanos, sendTimeoutNanos / 2);
+        long lastHeartbeat = System.nanoTime();
+        long lastCheck = lastHeartbeat;
+        while (running) {
+            try {
+                String accountId = changes.poll(checkNanos, TimeUnit.NANOSECONDS);
+                if (accountId != null) {
+                    publish(accountId);
+                }
+                long now = System.nanoTime();
+                if (now - lastCheck >= checkNanos) {
+                    lastCheck = now;
+                    dropStuckSubscribers(now);
+                }
+                if (now - lastHeartbeat >= heartbeatNanos) {
+                    lastHeartbeat = now;
+                    heartbeat();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Balance feed broadcast failed", e);
+            }
+        }
+    }
+
+    private void publish(String accountId) {
+        //removed before the balance is read, a change from now on queues the account again
+        Account account = dirty.remove(accountId);
+        Set<Subscriber> subscribed = subscribers.get(accountId);
+        if (account == null || subscribed == null) {
+            return;
+        }
+        BigDecimal balance = account.getBalance();
+        for (Subscriber subscriber : subscribed) {
+            subscriber.offer(accountId, balance);
+            schedule(subscriber);
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : all) {
+            subscriber.heartbeat();
+            schedule(subscriber);
+        }
+    }
+
+    //never touches the emitter, whose monitor the stuck sender holds
+    private void dropStuckSubscribers(long now) {
+        for (Subscriber subscriber : all) {
+            long since = subscriber.sendingSince;
+            if (since == 0 || now - since < sendTimeoutNanos) {
+                continue;
+            }
+            synchronized (subscriber) {
+                //the write may have returned and the next one started meanwhile
+                since = subscriber.sendingSince;
+                if (since == 0 || now - since < sendTimeoutNanos || subscriber.stuck || !unsubscribe(subscriber)) {
+                    continue;
+                }
+                subscriber.stuck = true;
+                //under the monitor the sender is still in the drain of this subscriber, which clears it again
+                subscriber.sender.interrupt();
+                stuckSenders.incrementAndGet();
+            }
+            resizeSenders();
+            log.debug("Dropping balance feed subscriber of {}, its write is stuck", subscriber.accountIds);
+            dropped.increment();
+        }
+    }
+
+    private synchronized void resizeSenders() {
+        senders.setCorePoolSize(senderThreads + Math.min(senderThreads, stuckSenders.get()));
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.closed.get() || !subscriber.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            senders.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.scheduled.set(false);
+        }
+    }
+
+    //runs on one sender at a time per subscriber, balances buffered while it writes are sent by the next round
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            List<BalanceChangeDto> events;
+            boolean heartbeat;
+            synchronized (subscriber.pending) {
+                events = new ArrayList<>(subscriber.pending.size());
+                subscriber.pending.forEach((accountId, balance) ->
+                        events.add(new BalanceChangeDto(accountId, balance)));
+                subscriber.pending.clear();
+                heartbeat = subscriber.heartbeatDue;
+                subscriber.heartbeatDue = false;
+            }
+            subscriber.sender = Thread.currentThread();
+            try {
+                for (BalanceChangeDto event : events) {
+                    send(subscriber, SseEmitter.event().name("balance").data(event, MediaType.APPLICATION_JSON));
+                }
+                if (heartbeat && events.isEmpty()) {
+                    send(subscriber, SseEmitter.event().comment("heartbeat"));
+                }
+                sent.increment(events.size());
+            } catch (IOException | IllegalStateException e) {
+                //the container reports the broken stream to the emitter, which is not completed here
+                log.debug("Dropping balance feed subscriber of {}: {}", subscriber.accountIds, e.toString());
+                if (!sent(subscriber) && unsubscribe(subscriber)) {
+                    dropped.increment();
+                }
+                return;
+            }
+            if (sent(subscriber)) {
+                //the write returned after all, the client reconnects
+                subscriber.emitter.complete();
+                return;
+            }
+            subscriber.scheduled.set(false);
+            if (subscriber.closed.get() || !subscriber.hasPending()
+                    || !subscriber.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+        subscriber.sendingSince = System.nanoTime();
+        subscriber.emitter.send(event);
+        subscriber.sendingSince = 0;
+    }
+
+    //ends the write of a subscriber, true when it was dropped as stuck meanwhile and its replacement is stopped
+    private boolean sent(Subscriber subscriber) {
+        synchronized (subscriber) {
+            subscriber.sendingSince = 0;
+            if (!subscriber.stuck) {
+                return false;
+            }
+        }
+        Thread.interrupted();
+        stuckSenders.decrementAndGet();
+        resizeSenders();
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        broadcaster.interrupt();
+        broadcaster.join(TimeUnit.SECONDS.toMillis(5));
+        senders.shutdown();
+    }
+}
@@ -0,0 +1,31 @@
+package com.dws.challenge.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "balance-feed")
+public class BalanceFeedProperties {
+
+    //further subscriptions get 503 until others end
+    private int maxSubscribers = 20_000;
+
+    //the buffer of a subscriber holds at most one balance per account
+    private int maxAccountsPerSubscriber = 100;
+
+    //threads writing events to subscribers, 0 means number of available processors
+    private int senderThreads = 0;
+
+    //a subscriber whose write takes longer is dropped, see BalanceFeed
+    private Duration sendTimeout = Duration.ofSeconds(5);
+
+    //a comment is sent to idle subscribers so that closed connections are noticed
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    //a stream is completed after this long and the client reconnects
+    private Duration timeout = Duration.ofMinutes(30);
+}
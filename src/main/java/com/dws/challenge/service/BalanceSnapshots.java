@@ -0,0 +1,232 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.ReconciliationReportDto;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.repository.AccountsRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*** point-in-time consistent cut of all balances taken while transfers keep running
+ * every balance change is stamped with the global epoch by enter() and finished by exit().
+ * A snapshot moves the epoch from s to s+1 and waits until the changes stamped with s are finished,
+ * a change stamped with s+1 first records the balance its account had before it (pre-image), so the snapshot
+ * reads every account as of the end of epoch s, in parallel and without locking out transfers.
+ * Account creation is the only thing paused while a snapshot runs, which keeps the expected total exact.
+ */
+@Component
+@Log4j2
+public class BalanceSnapshots {
+
+    private static final int DRAIN_SPINS = 1024;
+    private static final long DRAIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AccountsRepository accountsRepository;
+
+    /* changes in flight per epoch parity, only epochs s and s+1 can be in flight while snapshot s runs.
+     * AtomicLong and not LongAdder: LongAdder.sum() is not an atomic read and may show zero while a change is running
+     */
+    private final AtomicLong[] inFlight = {new AtomicLong(), new AtomicLong()};
+
+    private volatile long epoch;
+
+    //non-null while a snapshot runs
+    private volatile Capture capture;
+
+    //creations share the read lock, a snapshot holds the write lock
+    private final ReadWriteLock creationLock = new ReentrantReadWriteLock();
+
+    //sum of initial balances of all accounts, accounts recovered from the journal included
+    private final AtomicReference<BigDecimal> expectedTotal;
+
+    private static final class Capture {
+        private final long epoch;
+        private final Map<String, BigDecimal> preImages = new ConcurrentHashMap<>();
+        //set once the changes of the sealed epoch are finished
+        private volatile boolean drained;
+
+        private Capture(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class Cut {
+        private final long accounts;
+        private final BigDecimal total;
+
+        private Cut(long accounts, BigDecimal total) {
+            this.accounts = accounts;
+            this.total = total;
+        }
+
+        private Cut add(Cut other) {
+            return new Cut(accounts + other.accounts, total.add(other.total));
+        }
+    }
+
+    //the journal is a dependency so that its recovery is finished before the expected total is read
+    public BalanceSnapshots(AccountsRepository accountsRepository, TransferJournal transferJournal) {
+        this.accountsRepository = accountsRepository;
+        this.expectedTotal = new AtomicReference<>(transferJournal.recoveredTotal());
+    }
+
+    //returns the epoch the caller passes to beforeChange and exit
+    public long enter() {
+        while (true) {
+            long current = epoch;
+            AtomicLong counter = inFlight[(int) (current & 1)];
+            counter.incrementAndGet();
+            if (current == epoch) {
+                return current;
+            }
+            //a snapshot switched the epoch in between, it may already be waiting for the old one
+            counter.decrementAndGet();
+        }
+    }
+
+    public void exit(long epoch) {
+        inFlight[(int) (epoch & 1)].decrementAndGet();
+    }
+
+    /* called by the writer of the account before its balance is changed, changes of one account have to be made
+     * in epoch order, cheap check unless a snapshot runs
+     */
+    public void beforeChange(long epoch, Account account) {
+        Capture current = capture;
+        if (current != null && current.epoch == epoch) {
+            if (account.acceptsConcurrentDeposits() && !current.drained) {
+                /* deposits of the sealed epoch may still run on this account next to this change, the pre-image must
+                 * contain them. They hold all their locks already, so waiting with the locks of this change is safe
+                 */
+                awaitDrained(current);
+            }
+            current.preImages.putIfAbsent(account.getAccountId(), account.getBalance());
+        }
+    }
+
+    /* variant for writers which own the account while they change it, like the shard thread of the account:
+     * changes of one account never overlap there, so it does not wait for the sealed epoch
+     */
+    public void beforeConfinedChange(long epoch, Account account) {
+        Capture current = capture;
+        if (current != null && current.epoch == epoch) {
+            current.preImages.putIfAbsent(account.getAccountId(), account.getBalance());
+        }
+    }
+
+    /* variant for changes which may reach the account after changes of a later epoch, like the deposit phase
+     * of a cross-shard transfer: such a late change of the sealed epoch is added to the pre-image taken before
+     */
+    public void beforeChange(long epoch, Account account, BigDecimal delta) {
+        Capture current = capture;
+        if (current == null) {
+            return;
+        }
+        if (current.epoch == epoch) {
+            current.preImages.putIfAbsent(account.getAccountId(), account.getBalance());
+        } else if (current.epoch == epoch + 1) {
+            current.preImages.computeIfPresent(account.getAccountId(), (accountId, preImage) -> preImage.add(delta));
+        }
+    }
+
+    //account creation runs between startCreation and finishCreation, it waits only while a snapshot runs
+    public void startCreation() {
+        creationLock.readLock().lock();
+    }
+
+    /* createdBalance is the sum of initial balances of the accounts actually created, zero if none was.
+     * Legs of cross-partition transfers use the same pair for money entering or leaving the node, see TransferParticipant
+     */
+    public void finishCreation(BigDecimal createdBalance) {
+        try {
+            if (createdBalance.signum() != 0) {
+                expectedTotal.accumulateAndGet(createdBalance, BigDecimal::add);
+            }
+        } finally {
+            creationLock.readLock().unlock();
+        }
+    }
+
+    //removes every account together with the money they held from the expected total, for tests and resets
+    public synchronized void clearAccounts() {
+        creationLock.writeLock().lock();
+        try {
+            accountsRepository.clearAccounts();
+            expectedTotal.set(BigDecimal.ZERO);
+        } finally {
+            creationLock.writeLock().unlock();
+        }
+    }
+
+    /* snapshots are serialized, transfers keep running during the whole call,
+     * account creation waits until it is finished
+     */
+    public synchronized ReconciliationReportDto reconcile() {
+        long started = System.nanoTime();
+        creationLock.writeLock().lock();
+        try {
+            long sealed = epoch;
+            Capture current = new Capture(sealed + 1);
+            //capture has to be visible to every change which reads the new epoch
+            capture = current;
+            epoch = sealed + 1;
+            awaitDrained(sealed);
+            current.drained = true;
+
+            Cut cut = accountsRepository.reduceAccounts(account -> new Cut(1, valueAt(current, account)), Cut::add);
+            long accounts = cut == null ? 0 : cut.accounts;
+            BigDecimal total = cut == null ? BigDecimal.ZERO : cut.total;
+            BigDecimal expected = expectedTotal.get();
+            boolean balanced = total.compareTo(expected) == 0;
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            if (balanced) {
+                log.info("Snapshot at epoch {}: {} accounts, total {} in {} ms", sealed, accounts, total, durationMillis);
+            } else {
+                log.error("Snapshot at epoch {}: {} accounts, total {} differs from expected {}", sealed, accounts,
+                        total, expected);
+            }
+            return new ReconciliationReportDto(sealed, accounts, total, expected, balanced, durationMillis);
+        } finally {
+            capture = null;
+            creationLock.writeLock().unlock();
+        }
+    }
+
+    //balance is read before the pre-image, a change which is not captured yet has not modified the account
+    private static BigDecimal valueAt(Capture capture, Account account) {
+        BigDecimal balance = account.getBalance();
+        BigDecimal preImage = capture.preImages.get(account.getAccountId());
+        return preImage != null ? preImage : balance;
+    }
+
+    private void awaitDrained(long sealed) {
+        AtomicLong counter = inFlight[(int) (sealed & 1)];
+        for (int spins = 0; counter.get() != 0; spins++) {
+            backOff(spins);
+        }
+    }
+
+    private static void awaitDrained(Capture capture) {
+        for (int spins = 0; !capture.drained; spins++) {
+            backOff(spins);
+        }
+    }
+
+    private static void backOff(int spins) {
+        if (spins < DRAIN_SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(DRAIN_PARK_NANOS);
+        }
+    }
+}
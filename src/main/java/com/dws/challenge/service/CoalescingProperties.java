@@ -0,0 +1,23 @@
+package com.dws.challenge.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//transfer.engine=coalescing, see CoalescingTransferEngine
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.coalescing")
+public class CoalescingProperties {
+
+    //transfers applied by one lane at once, the batch is applied as soon as it is full
+    private int maxBatchSize = 256;
+
+    //how long a lane waits for more transfers after the first one of a batch arrived
+    private Duration maxDelay = Duration.ofNanos(200_000);
+
+    //threads applying batches, every account pair belongs to one lane, 0 means number of available processors
+    private int lanes = 0;
+}
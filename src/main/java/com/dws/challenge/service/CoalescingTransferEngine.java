@@ -0,0 +1,304 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*** micro-batching transfer engine, enabled with transfer.engine=coalescing
+ * transfers are queued to a lane chosen by their account pair, a lane gathers up to maxBatchSize transfers
+ * for at most maxDelay, groups them by account pair and applies every group with one acquisition
+ * of the two account locks. Legs of a group are validated one by one in arrival order against the running
+ * balances (same rule as Account.withdraw), only the net result is written to the accounts,
+ * every leg is still journaled, posted and audited on its own and every caller gets its own result.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "coalescing")
+@Log4j2
+public class CoalescingTransferEngine implements TransferEngine {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final TransferJournal transferJournal;
+
+    private final TransferAuditLog auditLog;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final TransferLedger transferLedger;
+
+    private final AccountLockManager lockManager;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final Lane[] lanes;
+
+    private volatile boolean running = true;
+
+    private static final class Request {
+        private final Account sender;
+        private final Account receiver;
+        private final BigDecimal amount;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private boolean applied;
+
+        private Request(Account sender, Account receiver, BigDecimal amount) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.amount = amount;
+        }
+    }
+
+    //unordered account pair, first is the account locked first
+    private static final class Pair {
+        private final String first;
+        private final String second;
+
+        private Pair(String accountId, String otherAccountId) {
+            boolean ordered = accountId.compareTo(otherAccountId) >= 0;
+            this.first = ordered ? accountId : otherAccountId;
+            this.second = ordered ? otherAccountId : accountId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Pair)) {
+                return false;
+            }
+            Pair pair = (Pair) other;
+            return first.equals(pair.first) && second.equals(pair.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(first, second);
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private Lane(int index) {
+            thread = new Thread(this, "transfer-coalescer-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>(maxBatchSize);
+            while (running) {
+                try {
+                    collect(batch);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!batch.isEmpty()) {
+                    applyBatch(batch);
+                    batch.clear();
+                }
+            }
+            //transfers still queued on shutdown are failed, not silently dropped
+            queue.drainTo(batch);
+            for (Request request : batch) {
+                request.result.completeExceptionally(new IllegalStateException("Transfer engine is shut down"));
+            }
+        }
+
+        private void collect(List<Request> batch) throws InterruptedException {
+            Request first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (batch.size() < maxBatchSize) {
+                if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        }
+    }
+
+    public CoalescingTransferEngine(CoalescingProperties properties, TransferJournal transferJournal,
+                                    TransferAuditLog auditLog, BalanceSnapshots balanceSnapshots,
+                                    TransferLedger transferLedger, AccountLockManager lockManager) {
+        this.transferJournal = transferJournal;
+        this.auditLog = auditLog;
+        this.balanceSnapshots = balanceSnapshots;
+        this.transferLedger = transferLedger;
+        this.lockManager = lockManager;
+        this.maxBatchSize = Math.max(1, properties.getMaxBatchSize());
+        this.maxDelayNanos = properties.getMaxDelay().toNanos();
+        int count = properties.getLanes() > 0 ? properties.getLanes() : Runtime.getRuntime().availableProcessors();
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i);
+            lanes[i].thread.start();
+        }
+        log.info("Coalescing transfer engine started with {} lanes, batches of up to {} transfers within {} us",
+                count, maxBatchSize, TimeUnit.NANOSECONDS.toMicros(maxDelayNanos));
+    }
+
+    @Override
+    public void transfer(Account sender, Account receiver, BigDecimal amount) {
+        try {
+            transferAsync(sender, receiver, amount).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    //completes on the lane thread
+    @Override
+    public CompletableFuture<Void> transferAsync(Account sender, Account receiver, BigDecimal amount) {
+        Request request = new Request(sender, receiver, amount);
+        if (!running) {
+            request.result.completeExceptionally(new IllegalStateException("Transfer engine is shut down"));
+            return request.result;
+        }
+        Pair pair = new Pair(sender.getAccountId(), receiver.getAccountId());
+        Lane lane = lanes[Math.floorMod(pair.hashCode(), lanes.length)];
+        lane.queue.add(request);
+        //a shutdown in between may have drained the queue already, a request still in it is failed here,
+        //one the lane took is applied or failed by the lane
+        if (!running && lane.queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("Transfer engine is shut down"));
+        }
+        return request.result;
+    }
+
+    private void applyBatch(List<Request> batch) {
+        Map<Pair, List<Request>> groups = new LinkedHashMap<>();
+        for (Request request : batch) {
+            groups.computeIfAbsent(new Pair(request.sender.getAccountId(), request.receiver.getAccountId()),
+                    pair -> new ArrayList<>(2)).add(request);
+        }
+        for (List<Request> group : groups.values()) {
+            try {
+                applyGroup(group);
+            } catch (AccountBusyException e) {
+                //nothing was changed, the callers may retry
+                for (Request request : group) {
+                    request.result.completeExceptionally(e);
+                }
+                continue;
+            } catch (RuntimeException e) {
+                log.error("Coalesced transfers of {} and {} failed", group.get(0).sender.getAccountId(),
+                        group.get(0).receiver.getAccountId(), e);
+                for (Request request : group) {
+                    request.result.completeExceptionally(e);
+                }
+                continue;
+            }
+            //auditing and completion happen after the locks are released
+            for (Request request : group) {
+                if (request.applied) {
+                    auditLog.transferred(request.sender, request.receiver, request.amount);
+                    request.result.complete(null);
+                } else {
+                    auditLog.rejected(request.sender, request.receiver, request.amount, null);
+                    request.result.completeExceptionally(InsufficientBalanceAmountException.rejected(
+                            request.sender, request.receiver, request.amount));
+                }
+            }
+        }
+    }
+
+    private void applyGroup(List<Request> group) {
+        Request head = group.get(0);
+        //same global lock order as AccountBalanceTransferService, greater accountId first
+        boolean senderFirst = head.sender.getAccountId().compareTo(head.receiver.getAccountId()) >= 0;
+        Account first = senderFirst ? head.sender : head.receiver;
+        Account second = senderFirst ? head.receiver : head.sender;
+        boolean sameAccount = first.getAccountId().equals(second.getAccountId());
+
+        lockManager.lockBoth(first, second);
+        try {
+            long epoch = balanceSnapshots.enter();
+            try {
+                applyLocked(group, first, second, sameAccount, epoch);
+            } finally {
+                balanceSnapshots.exit(epoch);
+            }
+        } finally {
+            lockManager.unlockBoth(first, second);
+        }
+    }
+
+    private void applyLocked(List<Request> group, Account first, Account second, boolean sameAccount, long epoch) {
+        BigDecimal firstBalance = first.getBalance();
+        BigDecimal secondBalance = second.getBalance();
+        boolean changed = false;
+        for (Request request : group) {
+            boolean fromFirst = request.sender.getAccountId().equals(first.getAccountId());
+            BigDecimal senderBalance = fromFirst ? firstBalance : secondBalance;
+            //same rule as Account.withdraw
+            request.applied = senderBalance.compareTo(request.amount) > 0;
+            if (!request.applied || sameAccount) {
+                continue;
+            }
+            if (fromFirst) {
+                firstBalance = firstBalance.subtract(request.amount);
+                secondBalance = secondBalance.add(request.amount);
+            } else {
+                secondBalance = secondBalance.subtract(request.amount);
+                firstBalance = firstBalance.add(request.amount);
+            }
+            changed = true;
+        }
+
+        if (changed) {
+            balanceSnapshots.beforeChange(epoch, first);
+            balanceSnapshots.beforeChange(epoch, second);
+            first.setBalance(firstBalance);
+            second.setBalance(secondBalance);
+        }
+        long timestamp = System.currentTimeMillis();
+        for (Request request : group) {
+            if (request.applied) {
+                transferJournal.appendTransfer(request.sender, request.receiver, request.amount);
+                transferLedger.transferred(request.sender, request.receiver, request.amount, timestamp);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.join();
+        }
+    }
+}
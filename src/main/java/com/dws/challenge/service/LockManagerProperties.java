@@ -0,0 +1,23 @@
+package com.dws.challenge.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//see AccountLockManager
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.locks")
+public class LockManagerProperties {
+
+    //how long an operation may wait for all its account locks before it fails as busy
+    private Duration timeout = Duration.ofSeconds(2);
+
+    //upper bound of the adaptive spinning before a waiting thread parks, 0 parks right away (always on one CPU)
+    private int maxSpins = 256;
+
+    //accounts with wait statistics, waits of further accounts are counted under LockWaitStatistics.OTHER
+    private int maxTrackedAccounts = 10_000;
+}
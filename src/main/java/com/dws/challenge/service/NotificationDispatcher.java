@@ -0,0 +1,355 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*** bounded, back-pressured queue in front of NotificationService
+ * transfers only enqueue, worker threads deliver in batches grouped by account and retry failed deliveries,
+ * so notification I/O is never part of transfer latency.
+ * When the queue is full notification.overflow-policy decides between blocking the caller,
+ * dropping the oldest notification or spilling to disk.
+ * Spilled notifications are appended to one writer kept open, which is flushed when they are replayed and on
+ * shutdown. An idle worker moves the spill file aside and streams it back with queue.offer, what does not fit
+ * the queue stays on disk for its next idle round, so replay neither loads the file nor blocks a worker.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final NotificationService notificationService;
+    private final AccountsService accountsService;
+    private final NotificationProperties properties;
+
+    private final BlockingQueue<PendingNotification> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final Object spillLock = new Object();
+    private final Object replayLock = new Object();
+    private final Path spillFile;
+    //spilled notifications being replayed, read by one worker at a time
+    private final Path replayFile;
+    //guarded by spillLock, opened by the first spilled notification
+    private BufferedWriter spillWriter;
+    private volatile boolean running = true;
+
+    //queued plus in-delivery notifications
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final Counter delivered;
+    private final Counter retried;
+    private final Counter dropped;
+
+    public NotificationDispatcher(NotificationService notificationService, AccountsService accountsService,
+                                  NotificationProperties properties, MeterRegistry meterRegistry) {
+        this.notificationService = notificationService;
+        this.accountsService = accountsService;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.spillFile = Paths.get(properties.getSpillFile());
+        this.replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+
+        Gauge.builder("notifications.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("notifications.spilled", spilled, AtomicLong::get).register(meterRegistry);
+        this.delivered = meterRegistry.counter("notifications.delivered");
+        this.retried = meterRegistry.counter("notifications.retried");
+        this.dropped = meterRegistry.counter("notifications.dropped");
+
+        countSpilled();
+        if (properties.isAsync()) {
+            for (int i = 0; i < properties.getWorkers(); i++) {
+                Thread worker = new Thread(this::work, "notification-worker-" + i);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+        }
+    }
+
+    public void dispatch(Account account, String transferDescription) {
+        if (!properties.isAsync()) {
+            notificationService.notifyAboutTransfer(account, transferDescription);
+            delivered.increment();
+            return;
+        }
+        enqueue(new PendingNotification(account, transferDescription));
+    }
+
+    private void enqueue(PendingNotification notification) {
+        pending.incrementAndGet();
+        if (queue.offer(notification)) {
+            return;
+        }
+        switch (properties.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                while (!queue.offer(notification)) {
+                    if (queue.poll() != null) {
+                        drop();
+                    }
+                }
+                break;
+            case SPILL_TO_DISK:
+                pending.decrementAndGet();
+                spill(notification);
+                break;
+            case BLOCK:
+            default:
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop();
+                }
+        }
+    }
+
+    private void work() {
+        List<PendingNotification> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingNotification first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    replaySpilled();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, properties.getBatchSize() - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<PendingNotification> batch) throws InterruptedException {
+        Map<String, List<PendingNotification>> byAccount = new LinkedHashMap<>();
+        for (PendingNotification notification : batch) {
+            byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>()).add(notification);
+        }
+
+        boolean failed = false;
+        for (List<PendingNotification> group : byAccount.values()) {
+            try {
+                notificationService.notifyAboutTransfer(group.get(0).account, describe(group));
+                delivered.increment(group.size());
+                pending.addAndGet(-group.size());
+            } catch (RuntimeException e) {
+                log.warn("Notification to {} failed: {}", group.get(0).account.getAccountId(), e.toString());
+                failed = true;
+                group.forEach(this::retry);
+            }
+        }
+        if (failed) {
+            Thread.sleep(properties.getRetryBackoff().toMillis());
+        }
+    }
+
+    private void retry(PendingNotification notification) {
+        if (notification.attempts++ < properties.getMaxRetries() && queue.offer(notification)) {
+            retried.increment();
+        } else {
+            drop();
+        }
+    }
+
+    private void drop() {
+        dropped.increment();
+        pending.decrementAndGet();
+    }
+
+    private static String describe(List<PendingNotification> group) {
+        if (group.size() == 1) {
+            return group.get(0).description;
+        }
+        StringBuilder description = new StringBuilder();
+        for (PendingNotification notification : group) {
+            if (description.length() > 0) {
+                description.append('\n');
+            }
+            description.append(notification.description);
+        }
+        return description.toString();
+    }
+
+    private void spill(PendingNotification notification) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                spillWriter.write(notification.account.getAccountId() + '\t'
+                        + escape(notification.description));
+                spillWriter.newLine();
+                spilled.incrementAndGet();
+            } catch (IOException e) {
+                log.error("Cannot spill notification for {}", notification.account.getAccountId(), e);
+                dropped.increment();
+            }
+        }
+    }
+
+    private void closeSpillWriter() throws IOException {
+        synchronized (spillLock) {
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+            }
+        }
+    }
+
+    //notifications spilled before a restart are replayed as well
+    private void countSpilled() {
+        for (Path file : List.of(replayFile, spillFile)) {
+            if (Files.exists(file)) {
+                try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    spilled.addAndGet(lines.count());
+                } catch (IOException e) {
+                    log.error("Cannot read spilled notifications from {}", file, e);
+                }
+            }
+        }
+    }
+
+    //called by idle workers, replays the notifications which fit the queue
+    private void replaySpilled() {
+        if (spilled.get() == 0) {
+            return;
+        }
+        synchronized (replayLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    synchronized (spillLock) {
+                        closeSpillWriter();
+                        if (!Files.exists(spillFile)) {
+                            return;
+                        }
+                        Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+                replay();
+            } catch (IOException e) {
+                log.error("Cannot replay spilled notifications from {}", replayFile, e);
+            }
+        }
+    }
+
+    private void replay() throws IOException {
+        Path rest = replayFile.resolveSibling(replayFile.getFileName() + ".tmp");
+        boolean full = false;
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                int separator = line.indexOf('\t');
+                Account account = separator < 0 ? null : accountsService.getAccount(line.substring(0, separator));
+                if (account == null) {
+                    spilled.decrementAndGet();
+                    dropped.increment();
+                    continue;
+                }
+                pending.incrementAndGet();
+                if (!queue.offer(new PendingNotification(account, unescape(line.substring(separator + 1))))) {
+                    pending.decrementAndGet();
+                    full = true;
+                    //the line which did not fit and the ones after it are kept for the next round
+                    try (BufferedWriter writer = Files.newBufferedWriter(rest, StandardCharsets.UTF_8)) {
+                        do {
+                            writer.write(line);
+                            writer.newLine();
+                        } while ((line = reader.readLine()) != null);
+                    }
+                    break;
+                }
+                spilled.decrementAndGet();
+            }
+        }
+        if (full) {
+            Files.move(rest, replayFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.delete(replayFile);
+        }
+    }
+
+    private static String escape(String description) {
+        return description.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String unescape(String line) {
+        StringBuilder description = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                c = line.charAt(++i) == 'n' ? '\n' : line.charAt(i);
+            }
+            description.append(c);
+        }
+        return description.toString();
+    }
+
+    //waits until every queued notification is delivered or dropped, returns false on timeout
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (pending.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        try {
+            closeSpillWriter();
+        } catch (IOException e) {
+            log.error("Cannot close spilled notifications in {}", spillFile, e);
+        }
+    }
+
+    private static final class PendingNotification {
+        private final Account account;
+        private final String description;
+        private int attempts;
+
+        private PendingNotification(Account account, String description) {
+            this.account = account;
+            this.description = description;
+        }
+    }
+}
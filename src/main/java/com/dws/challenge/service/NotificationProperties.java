@@ -0,0 +1,40 @@
+package com.dws.challenge.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "notification")
+public class NotificationProperties {
+
+    public enum OverflowPolicy {
+        //request thread waits for free space in the queue
+        BLOCK,
+        //oldest queued notification is dropped to make room
+        DROP_OLDEST,
+        //notification is appended to spillFile and re-queued when workers are idle
+        SPILL_TO_DISK
+    }
+
+    //false delivers notifications on the calling thread
+    private boolean async = true;
+
+    private int queueCapacity = 10_000;
+
+    private int workers = 2;
+
+    //max notifications taken from the queue at once, notifications of one account within a batch are sent together
+    private int batchSize = 100;
+
+    private int maxRetries = 3;
+
+    private Duration retryBackoff = Duration.ofMillis(100);
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    private String spillFile = "notifications-spill.log";
+}
@@ -0,0 +1,225 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+/*** single-writer transfer engine, enabled with transfer.engine=sharded
+ * accounts are partitioned by accountId hash onto single-threaded shards and every balance change of an account
+ * is executed by its owning shard thread, so account locks are never contended by transfers
+ * and request threads do not park on hot accounts.
+ * A change still holds the lock of its account (the deposit lock for a deposit) together with its journal and
+ * ledger entries: batches lock all their accounts, write the balances they computed and append to the same
+ * AccountLedgers, which must not race with a shard, nor overwrite a change made without the lock by AtomicAccount
+ * or by a StripedAccount deposit. A same-shard transfer takes both locks in AccountLockManager.LOCK_ORDER.
+ * Same-shard transfer is one task on the owning shard.
+ * Cross-shard transfer is two-phase: reserve (withdraw) on the sender shard, then commit (deposit)
+ * on the receiver shard, if commit fails the reservation is returned by the sender shard (abort).
+ * A transfer enters its BalanceSnapshots epoch on the sender shard and leaves it when both phases are done,
+ * its deposit may reach the receiver after changes of a later epoch and is reported with its amount.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "sharded")
+@Log4j2
+public class ShardedTransferEngine implements TransferEngine {
+
+    private final ExecutorService[] shards;
+
+    private final TransferJournal transferJournal;
+
+    private final TransferAuditLog auditLog;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final TransferLedger transferLedger;
+
+    public ShardedTransferEngine(@Value("${transfer.engine.shards:0}") int shardCount, TransferJournal transferJournal,
+                                 TransferAuditLog auditLog, BalanceSnapshots balanceSnapshots,
+                                 TransferLedger transferLedger) {
+        this.transferJournal = transferJournal;
+        this.auditLog = auditLog;
+        this.balanceSnapshots = balanceSnapshots;
+        this.transferLedger = transferLedger;
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            String name = "transfer-shard-" + i;
+            this.shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("Sharded transfer engine started with {} shards", count);
+    }
+
+    int shardOf(Account account) {
+        return Math.floorMod(account.getAccountId().hashCode(), shards.length);
+    }
+
+    @Override
+    public void transfer(Account sender, Account receiver, BigDecimal amount) {
+        await(transferAsync(sender, receiver, amount));
+    }
+
+    //completes on the shard thread, the caller is not blocked
+    @Override
+    public CompletableFuture<Void> transferAsync(Account sender, Account receiver, BigDecimal amount) {
+        int senderShard = shardOf(sender);
+        int receiverShard = shardOf(receiver);
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (senderShard == receiverShard) {
+            shards[senderShard].execute(() -> transferLocal(sender, receiver, amount, result));
+        } else {
+            shards[senderShard].execute(() -> reserve(sender, receiver, amount, receiverShard, result));
+        }
+        return result.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                auditLog.transferred(sender, receiver, amount);
+            } else if (failure instanceof InsufficientBalanceAmountException) {
+                auditLog.rejected(sender, receiver, amount, null);
+            }
+        });
+    }
+
+    private void transferLocal(Account sender, Account receiver, BigDecimal amount, CompletableFuture<Void> result) {
+        long epoch = balanceSnapshots.enter();
+        boolean withdrawn;
+        try {
+            balanceSnapshots.beforeConfinedChange(epoch, sender);
+            balanceSnapshots.beforeConfinedChange(epoch, receiver);
+            lockTransfer(sender, receiver);
+            try {
+                withdrawn = sender.withdraw(amount);
+                if (withdrawn) {
+                    receiver.deposit(amount);
+                    transferJournal.appendTransfer(sender, receiver, amount);
+                    transferLedger.transferred(sender, receiver, amount, System.currentTimeMillis());
+                }
+            } finally {
+                receiver.getDepositLock().unlock();
+                sender.getLock().unlock();
+            }
+        } finally {
+            balanceSnapshots.exit(epoch);
+        }
+        if (withdrawn) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(InsufficientBalanceAmountException.rejected(sender, receiver, amount));
+        }
+    }
+
+    //phase one, runs on the sender shard
+    private void reserve(Account sender, Account receiver, BigDecimal amount, int receiverShard,
+                         CompletableFuture<Void> result) {
+        long epoch = balanceSnapshots.enter();
+        balanceSnapshots.beforeConfinedChange(epoch, sender);
+        //the sender posting is written by the sender shard, an abort adds a reversing posting
+        boolean withdrawn = withdraw(sender, amount,
+                () -> transferLedger.post(sender, receiver, amount.negate(), System.currentTimeMillis()));
+        if (!withdrawn) {
+            balanceSnapshots.exit(epoch);
+            result.completeExceptionally(InsufficientBalanceAmountException.rejected(sender, receiver, amount));
+            return;
+        }
+        int senderShard = shardOf(sender);
+        shards[receiverShard].execute(() -> commit(sender, receiver, amount, senderShard, epoch, result));
+    }
+
+    //phase two, runs on the receiver shard
+    private void commit(Account sender, Account receiver, BigDecimal amount, int senderShard, long epoch,
+                        CompletableFuture<Void> result) {
+        try {
+            balanceSnapshots.beforeChange(epoch, receiver, amount);
+            //the reservation is not journaled, an interrupted cross-shard transfer is not replayed
+            deposit(receiver, amount, () -> {
+                transferJournal.appendTransfer(sender, receiver, amount);
+                transferLedger.post(receiver, sender, amount, System.currentTimeMillis());
+            });
+        } catch (RuntimeException e) {
+            shards[senderShard].execute(() -> abort(sender, receiver, amount, epoch, e, result));
+            return;
+        }
+        balanceSnapshots.exit(epoch);
+        result.complete(null);
+    }
+
+    private void abort(Account sender, Account receiver, BigDecimal amount, long epoch, RuntimeException cause,
+                       CompletableFuture<Void> result) {
+        balanceSnapshots.beforeChange(epoch, sender, amount);
+        deposit(sender, amount, () -> transferLedger.post(sender, receiver, amount, System.currentTimeMillis()));
+        balanceSnapshots.exit(epoch);
+        result.completeExceptionally(cause);
+    }
+
+    //withdrawn records the withdrawal under the same lock
+    private static boolean withdraw(Account account, BigDecimal amount, Runnable withdrawn) {
+        Lock lock = account.getLock();
+        lock.lock();
+        try {
+            if (!account.withdraw(amount)) {
+                return false;
+            }
+            withdrawn.run();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void deposit(Account account, BigDecimal amount, Runnable deposited) {
+        Lock lock = account.getDepositLock();
+        lock.lock();
+        try {
+            account.deposit(amount);
+            deposited.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //not timed like AccountLockManager.lockTransfer, a shard waits for the batch holding the account
+    private static void lockTransfer(Account sender, Account receiver) {
+        //equal ids keep the sender first, the same Account is locked reentrantly
+        if (AccountLockManager.LOCK_ORDER.compare(sender.getAccountId(), receiver.getAccountId()) <= 0) {
+            sender.getLock().lock();
+            receiver.getDepositLock().lock();
+        } else {
+            receiver.getDepositLock().lock();
+            sender.getLock().lock();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> result) {
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*** asynchronous audit trail of transfers
+ * producers claim a slot of a preallocated ring of fixed-layout events, fill it and publish it by writing
+ * the slot sequence, no message is formatted and no appender is called on the transfer path.
+ * A single background writer drains published events and logs them, when the ring is full events are
+ * dropped and counted instead of blocking the transfer.
+ */
+@Component
+@Log4j2
+public class TransferAuditLog {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    enum Type {
+        TRANSFERRED,
+        REJECTED
+    }
+
+    private static final class Event {
+        //sequence of the event currently stored in the slot, written last by the producer
+        private volatile long published = -1;
+        private Type type;
+        private String senderId;
+        private String receiverId;
+        private BigDecimal amount;
+        private BigDecimal senderBalance;
+        private long timestamp;
+    }
+
+    private final Event[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running = true;
+    private final Thread writer;
+    private final Counter dropped;
+
+    public TransferAuditLog(@Value("${transfer.audit.buffer-size:65536}") int bufferSize, MeterRegistry meterRegistry) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = capacity - 1;
+        this.dropped = meterRegistry.counter("transfer.audit.dropped");
+
+        this.writer = new Thread(this::drain, "transfer-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void transferred(Account sender, Account receiver, BigDecimal amount) {
+        publish(Type.TRANSFERRED, sender, receiver, amount, null);
+    }
+
+    public void rejected(Account sender, Account receiver, BigDecimal amount, BigDecimal senderBalance) {
+        publish(Type.REJECTED, sender, receiver, amount, senderBalance);
+    }
+
+    private void publish(Type type, Account sender, Account receiver, BigDecimal amount, BigDecimal senderBalance) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Event event = ring[(int) sequence & mask];
+        event.type = type;
+        event.senderId = sender.getAccountId();
+        event.receiverId = receiver.getAccountId();
+        event.amount = amount;
+        event.senderBalance = senderBalance;
+        event.timestamp = System.currentTimeMillis();
+        event.published = sequence;
+    }
+
+    private void drain() {
+        long next = 0;
+        while (running || next < claimed.get()) {
+            Event event = ring[(int) next & mask];
+            if (event.published != next) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            write(event);
+            event.senderId = null;
+            event.receiverId = null;
+            event.amount = null;
+            event.senderBalance = null;
+            consumed = ++next;
+        }
+    }
+
+    private void write(Event event) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        if (event.type == Type.TRANSFERRED) {
+            log.info("{} Transferred {} from Account {} to Account {}",
+                    event.timestamp, event.amount, event.senderId, event.receiverId);
+        } else if (event.senderBalance == null) {
+            log.info("{} Insufficient balance in Account {} Requested: {}",
+                    event.timestamp, event.senderId, event.amount);
+        } else {
+            log.info("{} Insufficient balance in Account {} Requested: {} but only exists: {}",
+                    event.timestamp, event.senderId, event.amount, event.senderBalance);
+        }
+    }
+
+    //number of published events not written yet
+    public long backlog() {
+        return claimed.get() - consumed;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,27 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/*** alternative way of moving money between two accounts,
+ * when no engine is configured AccountBalanceTransferService uses per-account locks
+ */
+public interface TransferEngine {
+
+    void transfer(Account sender, Account receiver, BigDecimal amount) throws InsufficientBalanceAmountException;
+
+    /* completes exceptionally with InsufficientBalanceAmountException, engines which do not block override it
+     * and reject with InsufficientBalanceAmountException.rejected, which costs no stack trace
+     */
+    default CompletableFuture<Void> transferAsync(Account sender, Account receiver, BigDecimal amount) {
+        try {
+            transfer(sender, receiver, amount);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.dws.challenge.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*** virtual threads are looked up reflectively, the code base still compiles for Java 11
+ * and spring.threads.virtual.enabled=true fails fast on a JDK without them
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("spring.threads.virtual.enabled=true requires JDK 21 or newer, running on "
+                    + Runtime.version());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor cannot be created", e);
+        }
+    }
+}
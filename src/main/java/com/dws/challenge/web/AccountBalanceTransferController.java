@@ -1,32 +1,129 @@
 package com.dws.challenge.web;
 
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.dto.AccountBalanceTransferBatchDto;
 import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferDtoValidator;
+import com.dws.challenge.dto.AccountBalanceTransferResultDto;
+import com.dws.challenge.dto.BatchTransferMode;
 import com.dws.challenge.service.AccountBalanceTransferService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @RestController
 @RequestMapping("/v1/accounts/balanceTransfer")
 @Slf4j
 @RequiredArgsConstructor
 public class AccountBalanceTransferController {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    //bodiless and immutable, every transfer with the same outcome returns the same instance
+    private static final ResponseEntity<Object> TRANSFERRED = new ResponseEntity<>(HttpStatus.OK);
+
+    private static final ResponseEntity<Object> INSUFFICIENT_BALANCE = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+    private static final ResponseEntity<Object> UNKNOWN_ACCOUNT = new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
     private final AccountBalanceTransferService transferService;
 
+    private final IdempotencyCache idempotencyCache;
+
+    private final TransferAdmission transferAdmission;
+
+    //the body is read by TransferRequestConverter and validated without Bean Validation
     @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Object> transfer(@Valid @RequestBody AccountBalanceTransferDto amount) {
-        log.info("Transfer {} ", amount);
+    public ResponseEntity<Object> transfer(@RequestBody AccountBalanceTransferDto amount,
+                                           @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        AccountBalanceTransferDtoValidator.validate(amount);
+        log.debug("Transfer {}", amount);
+
+        //retries with the same key get the stored response and do not debit again
+        if (idempotencyKey != null) {
+            return idempotencyCache.execute(idempotencyKey, requestKey(amount), () -> executeTransfer(amount));
+        }
+        return executeTransfer(amount);
+    }
+
+    //compared by IdempotencyCache with equals, amounts of another scale such as 500 and 500.00 are the same transfer
+    private static List<Object> requestKey(AccountBalanceTransferDto transfer) {
+        return List.of(transfer.getSenderAccountId(), transfer.getReceiverAccountId(),
+                transfer.getAmount().stripTrailingZeros());
+    }
+
+    //request thread is released while the transfer waits for account locks or shards
+    @PutMapping(path = "/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletionStage<ResponseEntity<Object>> transferAsync(@RequestBody AccountBalanceTransferDto amount) {
+        AccountBalanceTransferDtoValidator.validate(amount);
+        log.debug("Async transfer {}", amount);
+
+        TransferAdmission.Permit permit = transferAdmission.admit(amount.getSenderAccountId(),
+                amount.getReceiverAccountId());
+        if (!permit.isAdmitted()) {
+            return CompletableFuture.completedFuture(shed(permit));
+        }
+        return this.transferService.transferAsync(amount)
+                .whenComplete((status, failure) -> permit.release())
+                .thenApply(AccountBalanceTransferController::response);
+    }
+
+    //replays of an Idempotency-Key take no locks and are not subject to admission
+    private ResponseEntity<Object> executeTransfer(AccountBalanceTransferDto amount) {
+        TransferAdmission.Permit permit = transferAdmission.admit(amount.getSenderAccountId(),
+                amount.getReceiverAccountId());
+        if (!permit.isAdmitted()) {
+            return shed(permit);
+        }
+        try {
+            return response(this.transferService.transfer(amount));
+        } finally {
+            permit.release();
+        }
+    }
+
+    //refused by TransferAdmission before reaching the account locks
+    private static ResponseEntity<Object> shed(TransferAdmission.Permit permit) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(permit.getRetryAfterSeconds()))
+                .build();
+    }
+
+    //rejections are outcomes of the transfer service, mapped here without going through ApplicationErrorHandles
+    private static ResponseEntity<Object> response(TransferStatus status) {
+        switch (status) {
+            case COMPLETED:
+                return TRANSFERRED;
+            case INSUFFICIENT_BALANCE:
+                return INSUFFICIENT_BALANCE;
+            case UNKNOWN_ACCOUNT:
+                return UNKNOWN_ACCOUNT;
+            default:
+                throw new IllegalStateException("Unexpected transfer status " + status);
+        }
+    }
+
+    @PutMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<AccountBalanceTransferResultDto>> transferBatch(
+            @Valid @RequestBody AccountBalanceTransferBatchDto batch) {
+        log.debug("Batch transfer of {} items in {} mode", batch.getTransfers().size(), batch.getMode());
 
-        this.transferService.transferThreadSafe(amount);
+        List<AccountBalanceTransferResultDto> results = this.transferService.transferBatchThreadSafe(batch);
 
-        return new ResponseEntity<>(HttpStatus.OK);
+        boolean rejected = batch.getMode() == BatchTransferMode.ALL_OR_NOTHING
+                && results.stream().anyMatch(result -> result.getStatus() != TransferStatus.COMPLETED);
+        return new ResponseEntity<>(results, rejected ? HttpStatus.BAD_REQUEST : HttpStatus.OK);
     }
 }
@@ -0,0 +1,61 @@
+package com.dws.challenge.web;
+
+import java.nio.charset.StandardCharsets;
+
+/*** canonical String instances of account ids read from request bodies and wire frames
+ * a direct-mapped table indexed by the String hash of the id bytes: a hit compares the bytes with the cached
+ * String and returns it, so a repeated id costs neither a String nor a hash computation in the repository lookup.
+ * A miss replaces the slot, the table never grows with unknown ids. Slots are written without locking,
+ * Strings are immutable, so a racing reader sees either instance.
+ * Ids with non-ASCII bytes are decoded and not cached.
+ */
+public class AccountIdInterner {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final String[] table;
+    private final int mask;
+
+    public AccountIdInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    //capacity is rounded up to a power of two
+    public AccountIdInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    public String intern(byte[] bytes, int offset, int length) {
+        //same as String.hashCode for Latin-1 characters
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            }
+            hash = 31 * hash + b;
+        }
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[index];
+        if (cached != null && cached.hashCode() == hash && matches(cached, bytes, offset, length)) {
+            return cached;
+        }
+        String accountId = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        table[index] = accountId;
+        return accountId;
+    }
+
+    private static boolean matches(String cached, byte[] bytes, int offset, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
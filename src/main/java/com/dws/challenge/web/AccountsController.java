@@ -1,27 +1,56 @@
 package com.dws.challenge.web;
 
+import com.dws.challenge.cluster.RemoteAccount;
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.dto.AccountImportResultDto;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.service.AccountImportService;
+import com.dws.challenge.service.AccountImportService.Format;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceFeed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+    private static final int MAX_TRANSACTIONS_PAGE = 1000;
+
+    private static final int MAX_ACCOUNTS_PAGE = 1000;
+
     private final AccountsService accountsService;
 
+    private final AccountImportService accountImportService;
+
+    private final TransferLedger transferLedger;
+
+    private final BalanceFeed balanceFeed;
+
     @Autowired
-    public AccountsController(AccountsService accountsService) {
+    public AccountsController(AccountsService accountsService, AccountImportService accountImportService,
+                              TransferLedger transferLedger, BalanceFeed balanceFeed) {
         this.accountsService = accountsService;
+        this.accountImportService = accountImportService;
+        this.transferLedger = transferLedger;
+        this.balanceFeed = balanceFeed;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -37,10 +66,79 @@ public class AccountsController {
         return new ResponseEntity<>(HttpStatus.CREATED);
     }
 
+    //NDJSON or CSV body, lines are rejected one by one, the response reports them and the load is not aborted
+    @PostMapping(path = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, Format.CSV_VALUE})
+    public AccountImportResultDto importAccounts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                 InputStream body) throws IOException {
+        log.info("Importing accounts as {}", contentType);
+        return this.accountImportService.importAccounts(body, Format.of(contentType));
+    }
+
+    @GetMapping(path = "/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts(@RequestParam(defaultValue = "NDJSON") Format format) {
+        log.info("Exporting accounts as {}", format);
+        StreamingResponseBody body = output -> this.accountImportService.exportAccounts(output, format);
+        return ResponseEntity.ok().contentType(format.getMediaType()).body(body);
+    }
+
+    //in accountId order, nextCursor of the response is passed as after to get the next page
+    @GetMapping
+    public ResponseEntity<Object> listAccounts(@RequestParam(defaultValue = "") String prefix,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_ACCOUNTS_PAGE) {
+            return new ResponseEntity<>("limit must be between 1 and " + MAX_ACCOUNTS_PAGE, HttpStatus.BAD_REQUEST);
+        }
+        return ResponseEntity.ok(this.accountsService.listAccounts(prefix, after, limit));
+    }
+
     @GetMapping(path = "/{accountId}")
     public Account getAccount(@PathVariable String accountId) {
         log.info("Retrieving account for id {}", accountId);
         return this.accountsService.getAccount(accountId);
     }
 
+    /* Server-Sent Events named balance with the current balance of each accountId, then one after every committed
+     * change, instead of polling getAccount. A slow client skips intermediate balances of an account, never the
+     * latest one. Only accounts of this node can be subscribed to, 503 when the node serves too many streams
+     */
+    @GetMapping(path = "/balances/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamBalances(@RequestParam List<String> accountId) {
+        Set<String> accountIds = new LinkedHashSet<>(accountId);
+        if (accountIds.isEmpty() || accountIds.size() > this.balanceFeed.getMaxAccountsPerSubscriber()) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Account> accounts = new ArrayList<>(accountIds.size());
+        for (String id : accountIds) {
+            Account account = this.accountsService.getAccount(id);
+            if (account == null || account instanceof RemoteAccount) {
+                return ResponseEntity.notFound().build();
+            }
+            accounts.add(account);
+        }
+        SseEmitter emitter = this.balanceFeed.subscribe(accounts);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        log.info("Streaming balances of {}", accountIds);
+        return ResponseEntity.ok(emitter);
+    }
+
+    //newest first, nextCursor of the response is passed as cursor to get the next older page
+    @GetMapping(path = "/{accountId}/transactions")
+    public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+                                                  @RequestParam(required = false) Long cursor,
+                                                  @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_TRANSACTIONS_PAGE) {
+            return new ResponseEntity<>("limit must be between 1 and " + MAX_TRANSACTIONS_PAGE, HttpStatus.BAD_REQUEST);
+        }
+        if (cursor != null && cursor < 0) {
+            return new ResponseEntity<>("cursor must not be negative", HttpStatus.BAD_REQUEST);
+        }
+        if (this.accountsService.getAccount(accountId) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(this.transferLedger.page(accountId, cursor, limit));
+    }
+
 }
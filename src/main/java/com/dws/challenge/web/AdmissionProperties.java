@@ -0,0 +1,30 @@
+package com.dws.challenge.web;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.admission")
+public class AdmissionProperties {
+
+    //off by default, every transfer is admitted
+    private boolean enabled = false;
+
+    //transfers per second and bucket size of one account, sender and receiver each take a token
+    private int accountRate = 500;
+
+    private int accountBurst = 100;
+
+    //transfers per second and bucket size of all accounts together
+    private int globalRate = 50_000;
+
+    private int globalBurst = 5_000;
+
+    //transfers of one account waiting for or holding its lock
+    private int maxInFlightPerAccount = 32;
+
+    //accounts with a bucket, idle ones are forgotten above it
+    private int maxTrackedAccounts = 100_000;
+}
@@ -0,0 +1,142 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/*** responses of recent requests by Idempotency-Key
+ * the first request of a key runs the action, concurrent duplicates wait for its result and later
+ * duplicates get the stored response from a hash lookup. Only successful responses are kept: a failed
+ * execution did not move money, so its key is released and a retry runs again. The same holds for a response
+ * with another status than 2xx, such as a rejected or shed transfer, which concurrent duplicates still get.
+ * Entries live for the configured ttl and the oldest are evicted when the estimated memory exceeds the budget,
+ * all entries share one ttl, so completion order is also expiry order.
+ * A key is bound to its request by equals, callers pass requests which mean the same in one normalized form.
+ */
+@Component
+public class IdempotencyCache {
+
+    //key characters are added on top: entry, future, response and the request dto with two account ids
+    static final long ENTRY_OVERHEAD_BYTES = 512;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> completionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final long ttlNanos;
+    private final long maxBytes;
+    private final LongSupplier nanoTime;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    private static final class Entry {
+        private final String key;
+        private final Object request;
+        private final long bytes;
+        private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private Entry(String key, Object request) {
+            this.key = key;
+            this.request = request;
+            this.bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length();
+        }
+    }
+
+    @Autowired
+    public IdempotencyCache(IdempotencyProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    IdempotencyCache(IdempotencyProperties properties, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.maxBytes = properties.getMaxMemory().toBytes();
+        this.nanoTime = nanoTime;
+        this.hits = meterRegistry.counter("idempotency.hits");
+        this.misses = meterRegistry.counter("idempotency.misses");
+        this.evictions = meterRegistry.counter("idempotency.evictions");
+        meterRegistry.gauge("idempotency.memory.used", usedBytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String key, Object request, Supplier<ResponseEntity<T>> action) {
+        Entry created = new Entry(key, request);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, created)) != null && existing.expiresAt - nanoTime.getAsLong() <= 0) {
+            remove(existing);
+        }
+
+        if (existing != null) {
+            hits.increment();
+            if (!Objects.equals(existing.request, request)) {
+                throw new IdempotencyKeyReusedException("Idempotency-Key " + key + " was used for a different request");
+            }
+            try {
+                return (ResponseEntity<T>) existing.response.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        misses.increment();
+        ResponseEntity<T> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, created);
+            created.response.completeExceptionally(e);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            entries.remove(key, created);
+            created.response.complete(response);
+            return response;
+        }
+        created.expiresAt = nanoTime.getAsLong() + ttlNanos;
+        created.response.complete(response);
+        usedBytes.addAndGet(created.bytes);
+        completionOrder.add(created);
+        evict();
+        return response;
+    }
+
+    //estimated bytes of cached entries
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    private void evict() {
+        long now = nanoTime.getAsLong();
+        Entry oldest;
+        while ((oldest = completionOrder.peek()) != null
+                && (usedBytes.get() > maxBytes || oldest.expiresAt - now <= 0)) {
+            if (completionOrder.remove(oldest)) {
+                remove(oldest);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            usedBytes.addAndGet(-entry.bytes);
+            evictions.increment();
+        }
+    }
+}
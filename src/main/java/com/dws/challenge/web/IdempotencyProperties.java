@@ -0,0 +1,20 @@
+package com.dws.challenge.web;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+
+    //how long a completed transfer is replayed for its Idempotency-Key
+    private Duration ttl = Duration.ofHours(1);
+
+    //estimated memory of cached keys and responses, the oldest entries are evicted above it
+    private DataSize maxMemory = DataSize.ofMegabytes(32);
+}
@@ -0,0 +1,29 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.dto.ReconciliationReportDto;
+import com.dws.challenge.service.BalanceSnapshots;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+//sum of all balances at one point in time compared with the sum accounts were created with
+@RestController
+@RequestMapping("/v1/reconciliation")
+@Slf4j
+public class ReconciliationController {
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    @Autowired
+    public ReconciliationController(BalanceSnapshots balanceSnapshots) {
+        this.balanceSnapshots = balanceSnapshots;
+    }
+
+    @GetMapping
+    public ReconciliationReportDto reconcile() {
+        log.info("Reconciling account balances");
+        return this.balanceSnapshots.reconcile();
+    }
+}
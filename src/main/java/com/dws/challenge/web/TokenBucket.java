@@ -0,0 +1,47 @@
+package com.dws.challenge.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** token bucket of rate tokens per second holding at most burst tokens, kept as the time at which it is full
+ * again (the generic cell rate algorithm): a token moves that time one interval forward, which is allowed
+ * while it stays within burst intervals from now. Taking a token is one CAS, nothing is locked
+ */
+final class TokenBucket {
+
+    private final long interval;
+
+    private final long capacity;
+
+    private final AtomicLong fullAt;
+
+    TokenBucket(int rate, int burst, long now) {
+        this.interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        this.capacity = interval * Math.max(1, burst);
+        this.fullAt = new AtomicLong(now);
+    }
+
+    //0 when a token was taken, otherwise nanos until the next one
+    long tryTake(long now) {
+        while (true) {
+            long full = fullAt.get();
+            long next = Math.max(full, now) + interval;
+            long missing = next - now - capacity;
+            if (missing > 0) {
+                return missing;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    //gives back a token taken by a request which was refused by a later check
+    void refund() {
+        fullAt.addAndGet(-interval);
+    }
+
+    boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
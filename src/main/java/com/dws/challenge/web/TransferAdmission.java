@@ -0,0 +1,253 @@
+package com.dws.challenge.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*** admission control of single transfers in front of AccountBalanceTransferService, enabled with
+ * transfer.admission.enabled. A transfer needs a slot of each of its accounts, at most maxInFlightPerAccount
+ * transfers of one account wait for or hold its lock, a token of the bucket of each account and a token
+ * of the global bucket. A transfer refused by any of them is shed at once with the time after which a retry
+ * may pass, instead of parking a request thread on the lock of a hot account.
+ * Slots and buckets are atomics, an admitted transfer of a tracked account locks nothing.
+ * An account whose bucket is full and which has no transfer in flight is idle, idle accounts are forgotten when
+ * more than maxTrackedAccounts are tracked, which loses nothing as a new bucket is full. While all tracked
+ * accounts are busy, further accounts are only limited by the global bucket.
+ */
+@Component
+public class TransferAdmission {
+
+    private static final long RETRY_AFTER_BUSY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Permit ADMITTED = new Permit(null, null, 0);
+
+    @Value
+    public static class ShedAccount {
+        String accountId;
+        long shed;
+        int inFlight;
+    }
+
+    private static final class Gate {
+        private final TokenBucket bucket;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder shed = new LongAdder();
+
+        private Gate(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        private boolean isIdle(long now) {
+            return inFlight.get() == 0 && bucket.isFull(now);
+        }
+    }
+
+    //released once the transfer is done, a shed transfer holds nothing
+    public static final class Permit {
+        private final Gate sender;
+        private final Gate receiver;
+        private final long retryAfterNanos;
+
+        private Permit(Gate sender, Gate receiver, long retryAfterNanos) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        public boolean isAdmitted() {
+            return retryAfterNanos == 0;
+        }
+
+        //whole seconds of the Retry-After header
+        public long getRetryAfterSeconds() {
+            return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+
+        public void release() {
+            exit(sender);
+            exit(receiver);
+        }
+    }
+
+    private final boolean enabled;
+    private final int accountRate;
+    private final int accountBurst;
+    private final int maxInFlight;
+    private final int maxTrackedAccounts;
+    private final TokenBucket global;
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep;
+    private final LongSupplier nanoTime;
+    private final Counter shedAccountRate;
+    private final Counter shedAccountBusy;
+    private final Counter shedGlobalRate;
+    private final Counter evicted;
+
+    @Autowired
+    public TransferAdmission(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    TransferAdmission(AdmissionProperties properties, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.enabled = properties.isEnabled();
+        this.accountRate = properties.getAccountRate();
+        this.accountBurst = properties.getAccountBurst();
+        this.maxInFlight = properties.getMaxInFlightPerAccount();
+        this.maxTrackedAccounts = properties.getMaxTrackedAccounts();
+        this.nanoTime = nanoTime;
+        long now = nanoTime.getAsLong();
+        this.global = new TokenBucket(properties.getGlobalRate(), properties.getGlobalBurst(), now);
+        this.lastSweep = new AtomicLong(now - SWEEP_INTERVAL_NANOS);
+        this.shedAccountRate = shedCounter(meterRegistry, "account_rate");
+        this.shedAccountBusy = shedCounter(meterRegistry, "account_in_flight");
+        this.shedGlobalRate = shedCounter(meterRegistry, "global_rate");
+        this.evicted = meterRegistry.counter("transfer.admission.evicted");
+        meterRegistry.gaugeMapSize("transfer.admission.accounts", List.of(), gates);
+    }
+
+    private static Counter shedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("transfer.admission.shed")
+                .description("Transfers refused with 429 before reaching the account locks")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    public Permit admit(String senderAccountId, String receiverAccountId) {
+        if (!enabled) {
+            return ADMITTED;
+        }
+        long now = nanoTime.getAsLong();
+        Gate sender = gate(senderAccountId, now);
+        Gate receiver = receiverAccountId.equals(senderAccountId) ? null : gate(receiverAccountId, now);
+
+        //checked in this order so a refused transfer gives back what it took
+        if (!enter(sender)) {
+            return shed(sender, shedAccountBusy, RETRY_AFTER_BUSY_NANOS);
+        }
+        if (!enter(receiver)) {
+            exit(sender);
+            return shed(receiver, shedAccountBusy, RETRY_AFTER_BUSY_NANOS);
+        }
+        long wait = take(sender, now);
+        if (wait > 0) {
+            exit(sender);
+            exit(receiver);
+            return shed(sender, shedAccountRate, wait);
+        }
+        wait = take(receiver, now);
+        if (wait > 0) {
+            refund(sender);
+            exit(sender);
+            exit(receiver);
+            return shed(receiver, shedAccountRate, wait);
+        }
+        wait = global.tryTake(now);
+        if (wait > 0) {
+            refund(sender);
+            refund(receiver);
+            exit(sender);
+            exit(receiver);
+            return shed(null, shedGlobalRate, wait);
+        }
+        return new Permit(sender, receiver, 0);
+    }
+
+    //accounts with the most shed transfers first, only tracked accounts are counted
+    public List<ShedAccount> topShedAccounts(int limit) {
+        List<ShedAccount> accounts = new ArrayList<>();
+        gates.forEach((accountId, gate) -> {
+            long shed = gate.shed.sum();
+            if (shed > 0) {
+                accounts.add(new ShedAccount(accountId, shed, gate.inFlight.get()));
+            }
+        });
+        accounts.sort(Comparator.comparingLong(ShedAccount::getShed).reversed());
+        return accounts.size() > limit ? new ArrayList<>(accounts.subList(0, limit)) : accounts;
+    }
+
+    public void resetShedAccounts() {
+        gates.values().forEach(gate -> gate.shed.reset());
+    }
+
+    int trackedAccounts() {
+        return gates.size();
+    }
+
+    //null when the account is not tracked
+    private Gate gate(String accountId, long now) {
+        Gate gate = gates.get(accountId);
+        if (gate != null) {
+            return gate;
+        }
+        if (gates.size() >= maxTrackedAccounts && !sweep(now)) {
+            return null;
+        }
+        return gates.computeIfAbsent(accountId, id -> new Gate(new TokenBucket(accountRate, accountBurst, now)));
+    }
+
+    /* forgets idle accounts, at most once per SWEEP_INTERVAL_NANOS, true when there is room for another account.
+     * A transfer which took an account just before it was forgotten releases the old gate, the account is
+     * briefly limited by two gates at worst
+     */
+    private boolean sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            gates.forEach((accountId, gate) -> {
+                if (gate.isIdle(now) && gates.remove(accountId, gate)) {
+                    evicted.increment();
+                }
+            });
+        }
+        return gates.size() < maxTrackedAccounts;
+    }
+
+    private boolean enter(Gate gate) {
+        if (gate == null) {
+            return true;
+        }
+        if (gate.inFlight.incrementAndGet() > maxInFlight) {
+            gate.inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static void exit(Gate gate) {
+        if (gate != null) {
+            gate.inFlight.decrementAndGet();
+        }
+    }
+
+    private static long take(Gate gate, long now) {
+        return gate == null ? 0 : gate.bucket.tryTake(now);
+    }
+
+    private static void refund(Gate gate) {
+        if (gate != null) {
+            gate.bucket.refund();
+        }
+    }
+
+    private static Permit shed(Gate gate, Counter reason, long retryAfterNanos) {
+        reason.increment();
+        if (gate != null) {
+            gate.shed.increment();
+        }
+        return new Permit(null, null, retryAfterNanos);
+    }
+}
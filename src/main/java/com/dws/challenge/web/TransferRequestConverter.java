@@ -0,0 +1,275 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*** reads the body of the single transfer endpoints without Jackson data binding
+ * the body is copied into a pooled buffer and a flat object of senderAccountId, receiverAccountId and a plain
+ * decimal amount is parsed in place: ids come from AccountIdInterner, amounts of up to 18 digits are built from
+ * a long, so a transfer costs the dto and its BigDecimal. Anything else (escapes, other fields, exponents,
+ * nulls, malformed json) is handed to the ObjectMapper, which keeps Jackson's behaviour and error messages.
+ * Spring Boot registers it ahead of the Jackson converter. Responses are left to the Jackson converter, a dto
+ * written through this one directly is serialized by the same ObjectMapper.
+ */
+@Component
+public class TransferRequestConverter extends AbstractHttpMessageConverter<AccountBalanceTransferDto> {
+
+    static final int INITIAL_BUFFER_SIZE = 512;
+
+    //a request with a larger body allocates its own buffer, the pool does not keep it
+    static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_PROBES = 4;
+
+    private static final byte[] SENDER_ACCOUNT_ID = "senderAccountId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RECEIVER_ACCOUNT_ID = "receiverAccountId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMOUNT = "amount".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper objectMapper;
+    private final AccountIdInterner accountIds = new AccountIdInterner();
+    private final AtomicReferenceArray<byte[]> buffers;
+    private final int poolMask;
+
+    public TransferRequestConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.objectMapper = objectMapper;
+        int size = Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.buffers = new AtomicReferenceArray<>(size);
+        this.poolMask = size - 1;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return AccountBalanceTransferDto.class == clazz;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected AccountBalanceTransferDto readInternal(Class<? extends AccountBalanceTransferDto> clazz,
+                                                     HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        byte[] buffer = acquireBuffer();
+        try {
+            InputStream body = inputMessage.getBody();
+            int length = 0;
+            for (int read; (read = body.read(buffer, length, buffer.length - length)) != -1; ) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+
+            AccountBalanceTransferDto transfer = parse(buffer, length);
+            if (transfer == null) {
+                transfer = objectMapper.readValue(buffer, 0, length, AccountBalanceTransferDto.class);
+            }
+            return transfer;
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    @Override
+    protected void writeInternal(AccountBalanceTransferDto transfer, HttpOutputMessage outputMessage)
+            throws IOException {
+        objectMapper.writeValue(outputMessage.getBody(), transfer);
+    }
+
+    //null when the body is not a flat object of the three fields
+    AccountBalanceTransferDto parse(byte[] json, int length) {
+        int position = skipWhitespace(json, 0, length);
+        if (position == length || json[position] != '{') {
+            return null;
+        }
+        position = skipWhitespace(json, position + 1, length);
+
+        String senderAccountId = null;
+        String receiverAccountId = null;
+        BigDecimal amount = null;
+        while (true) {
+            int keyEnd = stringEnd(json, position, length);
+            if (keyEnd < 0) {
+                return null;
+            }
+            int keyStart = position + 1;
+            position = skipWhitespace(json, keyEnd + 1, length);
+            if (position == length || json[position] != ':') {
+                return null;
+            }
+            position = skipWhitespace(json, position + 1, length);
+
+            if (matches(json, keyStart, keyEnd, AMOUNT)) {
+                int valueEnd = numberEnd(json, position, length);
+                amount = valueEnd < 0 ? null : decimal(json, position, valueEnd);
+                if (amount == null) {
+                    return null;
+                }
+                position = valueEnd;
+            } else {
+                boolean sender = matches(json, keyStart, keyEnd, SENDER_ACCOUNT_ID);
+                if (!sender && !matches(json, keyStart, keyEnd, RECEIVER_ACCOUNT_ID)) {
+                    return null;
+                }
+                int valueEnd = stringEnd(json, position, length);
+                if (valueEnd < 0) {
+                    return null;
+                }
+                String accountId = accountIds.intern(json, position + 1, valueEnd - position - 1);
+                if (sender) {
+                    senderAccountId = accountId;
+                } else {
+                    receiverAccountId = accountId;
+                }
+                position = valueEnd + 1;
+            }
+
+            position = skipWhitespace(json, position, length);
+            if (position == length) {
+                return null;
+            }
+            if (json[position] == '}') {
+                break;
+            }
+            if (json[position] != ',') {
+                return null;
+            }
+            position = skipWhitespace(json, position + 1, length);
+        }
+        if (skipWhitespace(json, position + 1, length) != length) {
+            return null;
+        }
+
+        AccountBalanceTransferDto transfer = new AccountBalanceTransferDto();
+        transfer.setSenderAccountId(senderAccountId);
+        transfer.setReceiverAccountId(receiverAccountId);
+        transfer.setAmount(amount);
+        return transfer;
+    }
+
+    private static int skipWhitespace(byte[] json, int position, int length) {
+        while (position < length
+                && (json[position] == ' ' || json[position] == '\n' || json[position] == '\r' || json[position] == '\t')) {
+            position++;
+        }
+        return position;
+    }
+
+    //index of the closing quote of a string without escapes starting at position, -1 otherwise
+    private static int stringEnd(byte[] json, int position, int length) {
+        if (position == length || json[position] != '"') {
+            return -1;
+        }
+        for (int i = position + 1; i < length; i++) {
+            byte b = json[i];
+            if (b == '"') {
+                return i;
+            }
+            if (b == '\\' || (b >= 0 && b < 0x20)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    //end of a json number without exponent starting at position, -1 otherwise
+    private static int numberEnd(byte[] json, int position, int length) {
+        int i = position;
+        if (i < length && json[i] == '-') {
+            i++;
+        }
+        int integerStart = i;
+        while (i < length && isDigit(json[i])) {
+            i++;
+        }
+        if (i == integerStart || (json[integerStart] == '0' && i - integerStart > 1)) {
+            return -1;
+        }
+        if (i < length && json[i] == '.') {
+            int fractionStart = ++i;
+            while (i < length && isDigit(json[i])) {
+                i++;
+            }
+            if (i == fractionStart) {
+                return -1;
+            }
+        }
+        if (i < length && (json[i] == 'e' || json[i] == 'E')) {
+            return -1;
+        }
+        return i;
+    }
+
+    //null when the unscaled value may not fit a long
+    private static BigDecimal decimal(byte[] json, int start, int end) {
+        boolean negative = json[start] == '-';
+        long unscaled = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            if (json[i] == '.') {
+                fraction = true;
+                continue;
+            }
+            if (++digits > 18) {
+                return null;
+            }
+            unscaled = unscaled * 10 + (json[i] - '0');
+            if (fraction) {
+                scale++;
+            }
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean matches(byte[] json, int start, int end, byte[] name) {
+        return Arrays.equals(json, start, end, name, 0, name.length);
+    }
+
+    private byte[] acquireBuffer() {
+        int home = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            byte[] buffer = buffers.getAndSet((home + i) & poolMask, null);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[INITIAL_BUFFER_SIZE];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer.length > MAX_POOLED_BUFFER_SIZE) {
+            return;
+        }
+        int home = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            if (buffers.compareAndSet((home + i) & poolMask, null, buffer)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.service.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*** spring.threads.virtual.enabled=true, Tomcat runs every request on its own virtual thread (JDK 21+),
+ * so a request parked on an account lock or on notification back-pressure does not hold a pool thread
+ * and concurrent requests are no longer capped by server.tomcat.threads.max
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadsConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            protocolHandler.setExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor());
+            log.info("Tomcat requests run on virtual threads");
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package com.dws.challenge.wire;
+
+import com.dws.challenge.exception.PartitionUnavailableException;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*** thread-safe client of WireServer for one connection shared by many callers, used between cluster nodes
+ * every request is written right away under the connection monitor and returns a future, a reader thread
+ * completes the futures by correlation id. When the connection fails every pending and later request
+ * completes with PartitionUnavailableException, the owner opens a new client.
+ */
+@Log4j2
+public class AsyncWireClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Map<Long, CompletableFuture<WireResponse>> pending = new ConcurrentHashMap<>();
+    private final String address;
+    private final Thread reader;
+    private long nextCorrelationId;
+    private volatile boolean open = true;
+
+    public AsyncWireClient(String host, int port) throws IOException {
+        this.address = host + ":" + port;
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.reader = new Thread(this::read, "wire-client-" + address);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public CompletableFuture<WireResponse> transfer(String senderAccountId, String receiverAccountId,
+                                                    BigDecimal amount) {
+        byte[] sender = WireProtocol.utf8(senderAccountId);
+        byte[] receiver = WireProtocol.utf8(receiverAccountId);
+        return send(WireProtocol.TRANSFER,
+                WireProtocol.stringSize(sender) + WireProtocol.stringSize(receiver) + WireProtocol.DECIMAL_SIZE,
+                body -> {
+                    WireProtocol.putString(body, sender);
+                    WireProtocol.putString(body, receiver);
+                    WireProtocol.putDecimal(body, amount);
+                });
+    }
+
+    public CompletableFuture<WireResponse> createAccount(String accountId, BigDecimal balance) {
+        byte[] id = WireProtocol.utf8(accountId);
+        return send(WireProtocol.CREATE_ACCOUNT, WireProtocol.stringSize(id) + WireProtocol.DECIMAL_SIZE, body -> {
+            WireProtocol.putString(body, id);
+            WireProtocol.putDecimal(body, balance);
+        });
+    }
+
+    public CompletableFuture<WireResponse> getBalance(String accountId) {
+        byte[] id = WireProtocol.utf8(accountId);
+        return send(WireProtocol.GET_BALANCE, WireProtocol.stringSize(id), body -> WireProtocol.putString(body, id));
+    }
+
+    //type is PREPARE_DEBIT or PREPARE_CREDIT
+    public CompletableFuture<WireResponse> prepare(byte type, long txId, String accountId,
+                                                   String counterpartyAccountId, BigDecimal amount) {
+        byte[] id = WireProtocol.utf8(accountId);
+        byte[] counterparty = WireProtocol.utf8(counterpartyAccountId);
+        return send(type, Long.BYTES + WireProtocol.stringSize(id) + WireProtocol.stringSize(counterparty)
+                + WireProtocol.DECIMAL_SIZE, body -> {
+            body.putLong(txId);
+            WireProtocol.putString(body, id);
+            WireProtocol.putString(body, counterparty);
+            WireProtocol.putDecimal(body, amount);
+        });
+    }
+
+    //type is COMMIT, ABORT or END
+    public CompletableFuture<WireResponse> decide(byte type, long txId) {
+        return send(type, Long.BYTES, body -> body.putLong(txId));
+    }
+
+    private interface BodyWriter {
+        void write(ByteBuffer body);
+    }
+
+    private CompletableFuture<WireResponse> send(byte type, int bodySize, BodyWriter writer) {
+        CompletableFuture<WireResponse> response = new CompletableFuture<>();
+        synchronized (out) {
+            if (!open) {
+                response.completeExceptionally(unavailable(null));
+                return response;
+            }
+            long correlationId = nextCorrelationId++;
+            pending.put(correlationId, response);
+            try {
+                out.clear();
+                WireProtocol.putHeader(out, type, correlationId, bodySize);
+                writer.write(out);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            } catch (IOException | RuntimeException e) {
+                pending.remove(correlationId);
+                response.completeExceptionally(e instanceof IOException ? unavailable(e) : e);
+                if (e instanceof IOException) {
+                    close();
+                }
+            }
+        }
+        return response;
+    }
+
+    private void read() {
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            while (open) {
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Connection closed by " + address);
+                }
+                in.flip();
+                while (in.remaining() >= Integer.BYTES && in.remaining() >= Integer.BYTES + in.getInt(in.position())) {
+                    WireResponse response = WireProtocol.getResponse(in, in.getInt());
+                    CompletableFuture<WireResponse> future = pending.remove(response.getCorrelationId());
+                    if (future != null) {
+                        future.complete(response);
+                    }
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            if (open) {
+                log.warn("Wire connection to {} failed", address, e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private PartitionUnavailableException unavailable(Throwable cause) {
+        return new PartitionUnavailableException("Node " + address + " is not reachable", cause);
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Cannot close wire connection to {}", address, e);
+        }
+        //requests registered before open was cleared are failed here, later ones fail in send
+        synchronized (out) {
+            pending.values().forEach(future -> future.completeExceptionally(unavailable(null)));
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.dws.challenge.wire;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/*** blocking client of WireServer for one connection, not thread-safe
+ * requests are buffered and sent by flush, or when the buffer is full, and return their correlation id.
+ * receive flushes and returns the next response, responses come in request order,
+ * so a caller pipelines by sending several requests before receiving their responses.
+ */
+public class WireClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    //kept in write mode, the next response starts at index 0
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private long nextCorrelationId;
+
+    public WireClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    public long transfer(String senderAccountId, String receiverAccountId, BigDecimal amount) throws IOException {
+        byte[] sender = WireProtocol.utf8(senderAccountId);
+        byte[] receiver = WireProtocol.utf8(receiverAccountId);
+        long correlationId = begin(WireProtocol.TRANSFER,
+                WireProtocol.stringSize(sender) + WireProtocol.stringSize(receiver) + WireProtocol.DECIMAL_SIZE);
+        WireProtocol.putString(out, sender);
+        WireProtocol.putString(out, receiver);
+        WireProtocol.putDecimal(out, amount);
+        return correlationId;
+    }
+
+    public long createAccount(String accountId, BigDecimal balance) throws IOException {
+        byte[] id = WireProtocol.utf8(accountId);
+        long correlationId = begin(WireProtocol.CREATE_ACCOUNT, WireProtocol.stringSize(id) + WireProtocol.DECIMAL_SIZE);
+        WireProtocol.putString(out, id);
+        WireProtocol.putDecimal(out, balance);
+        return correlationId;
+    }
+
+    public long getBalance(String accountId) throws IOException {
+        byte[] id = WireProtocol.utf8(accountId);
+        long correlationId = begin(WireProtocol.GET_BALANCE, WireProtocol.stringSize(id));
+        WireProtocol.putString(out, id);
+        return correlationId;
+    }
+
+    private long begin(byte type, int bodySize) throws IOException {
+        int length = WireProtocol.HEADER_SIZE + bodySize;
+        if (Integer.BYTES + length > out.capacity()) {
+            throw new IllegalArgumentException("Request of " + length + " bytes does not fit a frame");
+        }
+        if (out.remaining() < Integer.BYTES + length) {
+            flush();
+        }
+        long correlationId = nextCorrelationId++;
+        WireProtocol.putHeader(out, type, correlationId, bodySize);
+        return correlationId;
+    }
+
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    public WireResponse receive() throws IOException {
+        flush();
+        while (in.position() < Integer.BYTES || in.position() < Integer.BYTES + in.getInt(0)) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+        }
+        in.flip();
+        WireResponse response = WireProtocol.getResponse(in, in.getInt());
+        in.compact();
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
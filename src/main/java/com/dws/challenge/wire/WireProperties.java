@@ -0,0 +1,23 @@
+package com.dws.challenge.wire;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "wire")
+public class WireProperties {
+
+    private boolean enabled = false;
+
+    //0 binds an ephemeral port, see WireServer.getPort
+    private int port = 18081;
+
+    //selector threads, requests run on the thread of their connection, 0 means number of available processors
+    private int ioThreads = 0;
+
+    //larger frames close the connection
+    private DataSize maxFrameSize = DataSize.ofKilobytes(4);
+}
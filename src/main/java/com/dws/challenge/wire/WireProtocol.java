@@ -0,0 +1,82 @@
+package com.dws.challenge.wire;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*** frame layout of the binary transfer protocol, all numbers big-endian
+ * frame: int length of the rest of the frame, byte type (request) or status (response), long correlationId, body
+ * TRANSFER body: string senderAccountId, string receiverAccountId, decimal amount
+ * CREATE_ACCOUNT body: string accountId, decimal balance
+ * GET_BALANCE body: string accountId, an OK response carries decimal balance
+ * PREPARE_DEBIT, PREPARE_CREDIT body: long txId, string accountId, string counterpartyAccountId, decimal amount
+ * COMMIT, ABORT, END body: long txId, the legs of a cross-partition transfer, see TransferParticipant
+ * string: short length, utf-8 bytes; decimal: long unscaled value, byte scale
+ * other responses have no body. Responses of one connection come back in request order,
+ * the correlation id is echoed for clients which match them anyway.
+ */
+public final class WireProtocol {
+
+    public static final byte TRANSFER = 1;
+    public static final byte CREATE_ACCOUNT = 2;
+    public static final byte GET_BALANCE = 3;
+    public static final byte PREPARE_DEBIT = 4;
+    public static final byte PREPARE_CREDIT = 5;
+    public static final byte COMMIT = 6;
+    public static final byte ABORT = 7;
+    public static final byte END = 8;
+
+    //type or status and correlation id
+    static final int HEADER_SIZE = Byte.BYTES + Long.BYTES;
+
+    static final int DECIMAL_SIZE = Long.BYTES + Byte.BYTES;
+
+    private WireProtocol() {
+    }
+
+    static void putHeader(ByteBuffer buffer, byte type, long correlationId, int bodySize) {
+        buffer.putInt(HEADER_SIZE + bodySize).put(type).putLong(correlationId);
+    }
+
+    //reads a response whose length was already taken from the buffer
+    static WireResponse getResponse(ByteBuffer buffer, int length) {
+        int end = buffer.position() + length;
+        WireStatus status = WireStatus.values()[buffer.get()];
+        long correlationId = buffer.getLong();
+        BigDecimal balance = buffer.position() < end ? getDecimal(buffer) : null;
+        buffer.position(end);
+        return new WireResponse(correlationId, status, balance);
+    }
+
+    static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long");
+        }
+        return bytes;
+    }
+
+    static int stringSize(byte[] value) {
+        return Short.BYTES + value.length;
+    }
+
+    static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    //amounts whose unscaled value does not fit a long or whose scale does not fit a byte are rejected
+    static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        BigDecimal decimal = value.scale() < 0 ? value.setScale(0) : value;
+        if (decimal.scale() > Byte.MAX_VALUE) {
+            throw new ArithmeticException("Scale " + decimal.scale() + " is too large");
+        }
+        buffer.putLong(decimal.unscaledValue().longValueExact());
+        buffer.put((byte) decimal.scale());
+    }
+
+    static BigDecimal getDecimal(ByteBuffer buffer) {
+        long unscaled = buffer.getLong();
+        return BigDecimal.valueOf(unscaled, buffer.get());
+    }
+}
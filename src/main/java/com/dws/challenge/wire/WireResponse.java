@@ -0,0 +1,13 @@
+package com.dws.challenge.wire;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+@Value
+public class WireResponse {
+    long correlationId;
+    WireStatus status;
+    //only set by an OK response to GET_BALANCE
+    BigDecimal balance;
+}
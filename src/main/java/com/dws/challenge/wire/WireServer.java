@@ -0,0 +1,542 @@
+package com.dws.challenge.wire;
+
+import com.dws.challenge.cluster.PartitionRouter;
+import com.dws.challenge.cluster.TransferParticipant;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferDtoValidator;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.web.AccountIdInterner;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*** binary transfer protocol over plain TCP next to the REST API, enabled with wire.enabled=true, see WireProtocol
+ * an acceptor thread hands connections round-robin to ioThreads selector loops. A loop reads whatever a
+ * connection has sent, runs every complete frame in order on its own thread with the same services as the
+ * REST controllers and writes all responses of the read with one write, so clients pipeline requests and
+ * get batched responses over one connection. While responses are pending the connection is not read,
+ * which pushes back on the client through TCP.
+ * Transfers, and in a cluster requests for accounts of other nodes, complete later without blocking the loop on
+ * an account lock, an engine batch or a node: responses are queued per connection and written in request order
+ * as they complete, at most MAX_PENDING per connection, so pipelined transfers run concurrently.
+ * The PREPARE, COMMIT, ABORT and END frames of a coordinating node are answered by the TransferParticipant.
+ */
+@Component
+@ConditionalOnProperty(name = "wire.enabled", havingValue = "true")
+@Log4j2
+public class WireServer {
+
+    private static final int MIN_READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_PENDING = 1024;
+
+    private final AccountsService accountsService;
+
+    private final AccountBalanceTransferService transferService;
+
+    //both null outside a cluster
+    private final PartitionRouter partitionRouter;
+
+    private final TransferParticipant transferParticipant;
+
+    private final AccountIdInterner accountIds = new AccountIdInterner();
+
+    private final int maxFrameSize;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final IoLoop[] loops;
+
+    private final Thread acceptor;
+
+    private volatile boolean running = true;
+
+    public WireServer(WireProperties properties, AccountsService accountsService,
+                      AccountBalanceTransferService transferService,
+                      Optional<PartitionRouter> partitionRouter, Optional<TransferParticipant> transferParticipant) {
+        this.accountsService = accountsService;
+        this.transferService = transferService;
+        this.partitionRouter = partitionRouter.orElse(null);
+        this.transferParticipant = transferParticipant.orElse(null);
+        this.maxFrameSize = (int) properties.getMaxFrameSize().toBytes();
+
+        int ioThreads = properties.getIoThreads() > 0
+                ? properties.getIoThreads() : Runtime.getRuntime().availableProcessors();
+        try {
+            this.serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(properties.getPort()));
+            this.loops = new IoLoop[ioThreads];
+            for (int i = 0; i < ioThreads; i++) {
+                loops[i] = new IoLoop(i);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start the wire server on port " + properties.getPort(), e);
+        }
+        for (IoLoop loop : loops) {
+            loop.thread.start();
+        }
+        this.acceptor = new Thread(this::accept, "wire-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+        log.info("Wire protocol listening on port {} with {} io threads", getPort(), ioThreads);
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next++ % loops.length].add(channel);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                log.warn("Cannot accept a wire connection", e);
+            }
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        //run on the loop thread, queued by requests completing elsewhere
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+
+        private IoLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "wire-io-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void add(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    log.error("Wire selector failed", e);
+                    break;
+                }
+                for (SocketChannel channel; (channel = accepted.poll()) != null; ) {
+                    register(channel);
+                }
+                for (Runnable task; (task = tasks.poll()) != null; ) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        } else if (key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.debug("Closing wire connection {}", connection, e);
+                        connection.close();
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("Cannot close the wire selector", e);
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel, this);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                log.warn("Cannot register a wire connection", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    //already failed
+                }
+            }
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final IoLoop loop;
+        private final ByteBuffer in = ByteBuffer.allocate(Math.max(MIN_READ_BUFFER_SIZE, Integer.BYTES + maxFrameSize));
+        //kept in write mode, holds the responses not yet written
+        private ByteBuffer out = ByteBuffer.allocate(MIN_READ_BUFFER_SIZE);
+        //responses of requests completing later and of every request after them, in request order
+        private final Queue<CompletableFuture<WireResponse>> pending = new ArrayDeque<>();
+        private SelectionKey key;
+
+        private Connection(SocketChannel channel, IoLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            process();
+            flush();
+        }
+
+        //runs the complete frames in the read buffer, stops while MAX_PENDING responses are pending
+        private void process() throws IOException {
+            in.flip();
+            while (pending.size() < MAX_PENDING && in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < WireProtocol.HEADER_SIZE || length > maxFrameSize) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                int frameEnd = in.position() + Integer.BYTES + length;
+                int limit = in.limit();
+                //a body running past its frame underflows instead of reading the next frame
+                in.position(in.position() + Integer.BYTES).limit(frameEnd);
+                handle(in);
+                in.limit(limit).position(frameEnd);
+            }
+            in.compact();
+        }
+
+        private void handle(ByteBuffer frame) {
+            byte type = frame.get();
+            long correlationId = frame.getLong();
+            try {
+                switch (type) {
+                    case WireProtocol.TRANSFER:
+                        transfer(correlationId, readAccountId(frame), readAccountId(frame),
+                                WireProtocol.getDecimal(frame));
+                        break;
+                    case WireProtocol.CREATE_ACCOUNT:
+                        createAccount(correlationId, readAccountId(frame), WireProtocol.getDecimal(frame));
+                        break;
+                    case WireProtocol.GET_BALANCE:
+                        getBalance(correlationId, readAccountId(frame));
+                        break;
+                    case WireProtocol.PREPARE_DEBIT:
+                    case WireProtocol.PREPARE_CREDIT:
+                        prepare(correlationId, type, frame.getLong(), readAccountId(frame), readAccountId(frame),
+                                WireProtocol.getDecimal(frame));
+                        break;
+                    case WireProtocol.COMMIT:
+                    case WireProtocol.ABORT:
+                    case WireProtocol.END:
+                        decide(correlationId, type, frame.getLong());
+                        break;
+                    default:
+                        respond(correlationId, WireStatus.INVALID_REQUEST);
+                }
+            } catch (BufferUnderflowException e) {
+                respond(correlationId, WireStatus.INVALID_REQUEST);
+            } catch (RuntimeException e) {
+                log.warn("Wire request {} of type {} failed", correlationId, type, e);
+                respond(correlationId, WireStatus.FAILED);
+            }
+        }
+
+        private void transfer(long correlationId, String senderAccountId, String receiverAccountId,
+                              BigDecimal amount) {
+            respondLater(correlationId, transferAsync(correlationId, senderAccountId, receiverAccountId, amount));
+        }
+
+        private void createAccount(long correlationId, String accountId, BigDecimal balance) {
+            if (isRemote(accountId)) {
+                respondLater(correlationId, partitionRouter.node(partitionRouter.partitionOf(accountId))
+                        .createAccount(accountId, balance));
+            } else {
+                respond(correlationId, WireServer.this.createAccount(accountId, balance));
+            }
+        }
+
+        private void getBalance(long correlationId, String accountId) {
+            if (isRemote(accountId)) {
+                respondLater(correlationId, partitionRouter.node(partitionRouter.partitionOf(accountId))
+                        .getBalance(accountId));
+                return;
+            }
+            Account account = accountsService.getAccount(accountId);
+            if (account == null) {
+                respond(correlationId, WireStatus.UNKNOWN_ACCOUNT);
+            } else if (pending.isEmpty()) {
+                respondBalance(correlationId, account.getBalance());
+            } else {
+                //read once the requests ahead of it completed, so it sees the transfers pipelined before it
+                respondLater(correlationId, CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                        .thenApply(ignored -> new WireResponse(correlationId, WireStatus.OK, account.getBalance())));
+            }
+        }
+
+        private void prepare(long correlationId, byte type, long txId, String accountId,
+                             String counterpartyAccountId, BigDecimal amount) {
+            if (transferParticipant == null) {
+                respond(correlationId, WireStatus.INVALID_REQUEST);
+            } else if (type == WireProtocol.PREPARE_DEBIT) {
+                respond(correlationId, transferParticipant.prepareDebit(txId, accountId, counterpartyAccountId, amount));
+            } else {
+                respond(correlationId, transferParticipant.prepareCredit(txId, accountId, counterpartyAccountId,
+                        amount));
+            }
+        }
+
+        private void decide(long correlationId, byte type, long txId) {
+            if (transferParticipant == null) {
+                respond(correlationId, WireStatus.INVALID_REQUEST);
+            } else if (type == WireProtocol.COMMIT) {
+                respond(correlationId, transferParticipant.commit(txId));
+            } else if (type == WireProtocol.ABORT) {
+                respond(correlationId, transferParticipant.abort(txId));
+            } else {
+                respond(correlationId, transferParticipant.end(txId));
+            }
+        }
+
+        private String readAccountId(ByteBuffer frame) {
+            int length = frame.getShort();
+            if (length < 0 || length > frame.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            String accountId = accountIds.intern(frame.array(), frame.arrayOffset() + frame.position(), length);
+            frame.position(frame.position() + length);
+            return accountId;
+        }
+
+        private void respond(long correlationId, WireStatus status) {
+            if (!pending.isEmpty()) {
+                pending.add(CompletableFuture.completedFuture(new WireResponse(correlationId, status, null)));
+                return;
+            }
+            write(correlationId, status);
+        }
+
+        private void respondBalance(long correlationId, BigDecimal balance) {
+            if (!pending.isEmpty()) {
+                pending.add(CompletableFuture.completedFuture(new WireResponse(correlationId, WireStatus.OK, balance)));
+                return;
+            }
+            writeBalance(correlationId, balance);
+        }
+
+        //the response keeps its place in the order, the connection is drained on the loop thread once it completes
+        private void respondLater(long correlationId, CompletableFuture<WireResponse> response) {
+            CompletableFuture<WireResponse> answered = response.handle((completed, failure) -> failure == null
+                    ? new WireResponse(correlationId, completed.getStatus(), completed.getBalance())
+                    : new WireResponse(correlationId, WireStatus.FAILED, null));
+            pending.add(answered);
+            answered.thenRun(() -> loop.execute(this::drain));
+        }
+
+        private void drain() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    WireResponse response = pending.poll().join();
+                    if (response.getBalance() != null) {
+                        writeBalance(response.getCorrelationId(), response.getBalance());
+                    } else {
+                        write(response.getCorrelationId(), response.getStatus());
+                    }
+                }
+                //frames left in the buffer while the queue was full
+                process();
+                flush();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing wire connection {}", this, e);
+                close();
+            }
+        }
+
+        private void write(long correlationId, WireStatus status) {
+            ensureCapacity(Integer.BYTES + WireProtocol.HEADER_SIZE);
+            out.putInt(WireProtocol.HEADER_SIZE).put((byte) status.ordinal()).putLong(correlationId);
+        }
+
+        private void writeBalance(long correlationId, BigDecimal balance) {
+            ensureCapacity(Integer.BYTES + WireProtocol.HEADER_SIZE + WireProtocol.DECIMAL_SIZE);
+            int start = out.position();
+            try {
+                out.putInt(WireProtocol.HEADER_SIZE + WireProtocol.DECIMAL_SIZE)
+                        .put((byte) WireStatus.OK.ordinal()).putLong(correlationId);
+                WireProtocol.putDecimal(out, balance);
+            } catch (ArithmeticException e) {
+                out.position(start);
+                write(correlationId, WireStatus.FAILED);
+            }
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (out.position() > 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(pending.size() < MAX_PENDING ? SelectionKey.OP_READ : 0);
+            }
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Cannot close wire connection", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(channel);
+        }
+    }
+
+    private boolean isRemote(String accountId) {
+        return partitionRouter != null && !partitionRouter.isLocal(accountId);
+    }
+
+    /* through transferAsync of the transfer service, which runs local transfers on its engine or executor and
+     * hands the others to the PartitionCoordinator. The accounts are notified by it, as for REST transfers
+     */
+    private CompletableFuture<WireResponse> transferAsync(long correlationId, String senderAccountId,
+                                                          String receiverAccountId, BigDecimal amount) {
+        AccountBalanceTransferDto transfer = new AccountBalanceTransferDto();
+        transfer.setSenderAccountId(senderAccountId);
+        transfer.setReceiverAccountId(receiverAccountId);
+        transfer.setAmount(amount);
+        try {
+            AccountBalanceTransferDtoValidator.validate(transfer);
+        } catch (InvalidTransferException e) {
+            return CompletableFuture.completedFuture(new WireResponse(correlationId, WireStatus.INVALID_REQUEST, null));
+        }
+        return transferService.transferAsync(transfer).toCompletableFuture()
+                .handle((status, failure) -> new WireResponse(correlationId,
+                        failure == null ? status(status) : status(failure), null));
+    }
+
+    private static WireStatus status(TransferStatus status) {
+        switch (status) {
+            case COMPLETED:
+                return WireStatus.OK;
+            case INSUFFICIENT_BALANCE:
+                return WireStatus.INSUFFICIENT_BALANCE;
+            case UNKNOWN_ACCOUNT:
+                return WireStatus.UNKNOWN_ACCOUNT;
+            default:
+                return WireStatus.FAILED;
+        }
+    }
+
+    private WireStatus status(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof AccountNotFoundException) {
+            return WireStatus.UNKNOWN_ACCOUNT;
+        }
+        if (cause instanceof AccountBusyException) {
+            return WireStatus.BUSY;
+        }
+        if (cause instanceof InvalidTransferException || cause instanceof AmountOutOfRangeException) {
+            return WireStatus.INVALID_REQUEST;
+        }
+        return WireStatus.FAILED;
+    }
+
+    private WireStatus createAccount(String accountId, BigDecimal balance) {
+        if (accountId.isEmpty() || balance.signum() < 0) {
+            return WireStatus.INVALID_REQUEST;
+        }
+        try {
+            accountsService.createAccount(new Account(accountId, balance));
+            return WireStatus.OK;
+        } catch (DuplicateAccountIdException e) {
+            return WireStatus.DUPLICATE_ACCOUNT;
+        } catch (AmountOutOfRangeException e) {
+            return WireStatus.INVALID_REQUEST;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close the wire server channel", e);
+        }
+        acceptor.join();
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+            loop.thread.join();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.dws.challenge.wire;
+
+//the ordinal is the status byte of a response, new statuses are appended
+public enum WireStatus {
+    OK,
+    INSUFFICIENT_BALANCE,
+    UNKNOWN_ACCOUNT,
+    DUPLICATE_ACCOUNT,
+    INVALID_REQUEST,
+    FAILED,
+    //an account lock was not acquired in time, nothing was changed and the request may be retried
+    BUSY,
+    //a decision for a cross-partition transaction which was never prepared on the node
+    UNKNOWN_TRANSACTION
+}
@@ -2,6 +2,7 @@ package com.dws.challenge;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationDispatcher;
 import com.dws.challenge.service.NotificationService;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,20 +18,27 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -47,6 +55,9 @@ class AccountsBalanceTransferControllerTest {
     @Autowired
     private AccountsService accountsService;
 
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
     @Autowired
     private WebApplicationContext webApplicationContext;
 
@@ -62,13 +73,17 @@ class AccountsBalanceTransferControllerTest {
         this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 
         // Reset the existing accounts before each test.
-        accountsService.getAccountsRepository().clearAccounts();
+        accountsService.clearAccounts();
 
         this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
                 .content("{\"accountId\":\"Id-0001\",\"balance\":1000}")).andExpect(status().isCreated());
 
         this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
                 .content("{\"accountId\":\"Id-0002\",\"balance\":2000}")).andExpect(status().isCreated());
+
+        // Notifications are delivered asynchronously, do not count the ones left by previous tests.
+        notificationDispatcher.awaitIdle(5000);
+        clearInvocations(notificationService);
     }
 
     @Test
@@ -79,6 +94,20 @@ class AccountsBalanceTransferControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void transferWithoutSenderOrMalformedBody() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"receiverAccountId\":\"Id-0002\",\"amount\":10}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("senderAccountId must not be null"));
+
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void transferOneSuccess() throws Exception {
         this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
@@ -89,11 +118,12 @@ class AccountsBalanceTransferControllerTest {
         assertEquals(new BigDecimal(500), accountsService.getAccount("Id-0001").getBalance());
         assertEquals(new BigDecimal(2500), accountsService.getAccount("Id-0002").getBalance());
 
+        notificationDispatcher.awaitIdle(5000);
         verify(notificationService, times(2)).notifyAboutTransfer(any(Account.class), message.capture());
 
         String[] expected = {"Transfer of 500 amount completed from Id-0001",
                 "Transfer of 500 amount completed to Id-0002"};
-        assertArrayEquals(expected, message.getAllValues().toArray());
+        assertThat(message.getAllValues()).containsExactlyInAnyOrder(expected);
     }
 
     @Test
@@ -106,11 +136,111 @@ class AccountsBalanceTransferControllerTest {
         assertEquals(new BigDecimal(1000), accountsService.getAccount("Id-0001").getBalance());
         assertEquals(new BigDecimal(2000), accountsService.getAccount("Id-0002").getBalance());
 
+        notificationDispatcher.awaitIdle(5000);
         verify(notificationService, times(2)).notifyAboutTransfer(any(Account.class), message.capture());
 
         String[] expected = {"Transfer of 1500 amount cannot be done from Id-0001 due to insufficient balance amount",
                 "Transfer of 1500 amount cannot be done to Id-0002 due to insufficient balance amount"};
-        assertArrayEquals(expected, message.getAllValues().toArray());
+        assertThat(message.getAllValues()).containsExactlyInAnyOrder(expected);
+    }
+
+    @Test
+    void transferToUnknownAccount() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-9999\",\"amount\":5}"))
+                .andExpect(status().isNotFound());
+
+        assertEquals(new BigDecimal(1000), accountsService.getAccount("Id-0001").getBalance());
+    }
+
+    @Test
+    void transferBatchBestEffort() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+                                + "{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":300},"
+                                + "{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":800},"
+                                + "{\"senderAccountId\":\"Id-0002\", \"receiverAccountId\":\"Id-9999\",\"amount\":100},"
+                                + "{\"senderAccountId\":\"Id-0002\", \"receiverAccountId\":\"Id-0001\",\"amount\":200}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+                .andExpect(jsonPath("$[1].status").value("INSUFFICIENT_BALANCE"))
+                .andExpect(jsonPath("$[2].status").value("UNKNOWN_ACCOUNT"))
+                .andExpect(jsonPath("$[3].status").value("COMPLETED"));
+
+        assertEquals(new BigDecimal(900), accountsService.getAccount("Id-0001").getBalance());
+        assertEquals(new BigDecimal(2100), accountsService.getAccount("Id-0002").getBalance());
+    }
+
+    @Test
+    void transferBatchAllOrNothing() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mode\":\"ALL_OR_NOTHING\",\"transfers\":["
+                                + "{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":300},"
+                                + "{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":800}]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$[0].status").value("ROLLED_BACK"))
+                .andExpect(jsonPath("$[1].status").value("INSUFFICIENT_BALANCE"));
+
+        assertEquals(new BigDecimal(1000), accountsService.getAccount("Id-0001").getBalance());
+        assertEquals(new BigDecimal(2000), accountsService.getAccount("Id-0002").getBalance());
+
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mode\":\"ALL_OR_NOTHING\",\"transfers\":["
+                                + "{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":300},"
+                                + "{\"senderAccountId\":\"Id-0002\", \"receiverAccountId\":\"Id-0001\",\"amount\":2100}]}"))
+                .andExpect(status().isOk());
+
+        assertEquals(new BigDecimal(2800), accountsService.getAccount("Id-0001").getBalance());
+        assertEquals(new BigDecimal(200), accountsService.getAccount("Id-0002").getBalance());
+    }
+
+    @Test
+    void transferRetryWithIdempotencyKeyIsNotDebitedTwice() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        //a retry may send the amount with another scale
+        for (String amount : new String[]{"500", "500.00", "5E+2"}) {
+            this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header("Idempotency-Key", idempotencyKey)
+                            .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":"
+                                    + amount + "}"))
+                    .andExpect(status().isOk());
+        }
+
+        assertEquals(new BigDecimal(500), accountsService.getAccount("Id-0001").getBalance());
+        assertEquals(new BigDecimal(2500), accountsService.getAccount("Id-0002").getBalance());
+
+        this.mockMvc.perform(put("/v1/accounts/balanceTransfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Idempotency-Key", idempotencyKey)
+                        .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":100}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        assertEquals(new BigDecimal(500), accountsService.getAccount("Id-0001").getBalance());
+    }
+
+    @Test
+    void transferAsync() throws Exception {
+        MvcResult completed = this.mockMvc.perform(put("/v1/accounts/balanceTransfer/async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":500}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(completed)).andExpect(status().isOk());
+
+        MvcResult rejected = this.mockMvc.perform(put("/v1/accounts/balanceTransfer/async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"senderAccountId\":\"Id-0001\", \"receiverAccountId\":\"Id-0002\",\"amount\":1500}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(rejected)).andExpect(status().isBadRequest());
+
+        assertEquals(new BigDecimal(500), accountsService.getAccount("Id-0001").getBalance());
+        assertEquals(new BigDecimal(2500), accountsService.getAccount("Id-0002").getBalance());
     }
 
     ExecutorService executorService = new ForkJoinPool(3);
@@ -1,6 +1,9 @@
 package com.dws.challenge;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.service.AccountBalanceTransferService;
 import com.dws.challenge.service.AccountsService;
 import com.dws.challenge.service.NotificationService;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,14 +16,18 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -35,6 +42,12 @@ class AccountsControllerTest {
     @Autowired
     private AccountsService accountsService;
 
+    @Autowired
+    private AccountBalanceTransferService transferService;
+
+    @Autowired
+    private TransferLedger transferLedger;
+
     @Autowired
     private WebApplicationContext webApplicationContext;
 
@@ -43,7 +56,8 @@ class AccountsControllerTest {
         this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 
         // Reset the existing accounts before each test.
-        accountsService.getAccountsRepository().clearAccounts();
+        accountsService.clearAccounts();
+        transferLedger.clear();
     }
 
     @Test
@@ -105,4 +119,186 @@ class AccountsControllerTest {
                 .andExpect(
                         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
     }
+
+    @Test
+    void importAccountsReportsRejectedLines() throws Exception {
+        accountsService.createAccount(new Account("Id-1", BigDecimal.ONE));
+
+        this.mockMvc.perform(post("/v1/accounts/import").contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"accountId\":\"Id-1\",\"balance\":10}\n"
+                                + "{\"accountId\":\"Id-2\",\"balance\":20.5}\n"
+                                + "\n"
+                                + "{\"accountId\":\"Id-3\",\"balance\":-1}\n"
+                                + "{\"accountId\":\"Id-4\",\n"
+                                + "{\"accountId\":\"Id-5\",\"balance\":\"50\",\"currency\":\"EUR\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(3))
+                .andExpect(jsonPath("$.errors[0].line").value(1))
+                .andExpect(jsonPath("$.errors[0].message").value("Account id Id-1 already exists!"))
+                .andExpect(jsonPath("$.errors[1].line").value(4))
+                .andExpect(jsonPath("$.errors[1].message").value("balance must be greater than or equal to 0"))
+                .andExpect(jsonPath("$.errors[2].line").value(5));
+
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("1");
+        assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("20.5");
+        assertThat(accountsService.getAccount("Id-3")).isNull();
+        assertThat(accountsService.getAccount("Id-5").getBalance()).isEqualByComparingTo("50");
+    }
+
+    @Test
+    void importAndExportAccountsAsCsv() throws Exception {
+        this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+                        .content("accountId,balance\nId-1,10\nId-2,1E+3\nId-2,5\nId-3\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(2));
+
+        MvcResult export = this.mockMvc.perform(get("/v1/accounts/export").param("format", "CSV"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String csv = this.mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(csv.split("\n")).containsExactlyInAnyOrder("accountId,balance", "Id-1,10", "Id-2,1000");
+
+        export = this.mockMvc.perform(get("/v1/accounts/export")).andReturn();
+        String ndjson = this.mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(ndjson.split("\n")).containsExactlyInAnyOrder("{\"accountId\":\"Id-1\",\"balance\":10}",
+                "{\"accountId\":\"Id-2\",\"balance\":1000}");
+    }
+
+    @Test
+    void reconcileBalances() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+        accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+
+        this.mockMvc.perform(get("/v1/reconciliation"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts").value(2))
+                .andExpect(jsonPath("$.total").value(1010.5))
+                .andExpect(jsonPath("$.expectedTotal").value(1010.5))
+                .andExpect(jsonPath("$.balanced").value(true));
+    }
+
+    @Test
+    void listAccountsPageByPage() throws Exception {
+        for (String accountId : new String[]{"Id-B-2", "Id-A-1", "Id-B-1", "Id-B-3", "Other"}) {
+            accountsService.createAccount(new Account(accountId, BigDecimal.TEN));
+        }
+
+        this.mockMvc.perform(get("/v1/accounts").param("prefix", "Id-B-").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts.length()").value(2))
+                .andExpect(jsonPath("$.accounts[0].accountId").value("Id-B-1"))
+                .andExpect(jsonPath("$.accounts[0].balance").value(10))
+                .andExpect(jsonPath("$.accounts[1].accountId").value("Id-B-2"))
+                .andExpect(jsonPath("$.nextCursor").value("Id-B-2"));
+        this.mockMvc.perform(get("/v1/accounts").param("prefix", "Id-B-").param("after", "Id-B-2")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts.length()").value(1))
+                .andExpect(jsonPath("$.accounts[0].accountId").value("Id-B-3"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        this.mockMvc.perform(get("/v1/accounts"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts.length()").value(5));
+        this.mockMvc.perform(get("/v1/accounts").param("limit", "1001")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getTransactionsPageByPage() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+        accountsService.createAccount(new Account("Id-2", new BigDecimal(1000)));
+        for (int i = 1; i <= 3; i++) {
+            AccountBalanceTransferDto transfer = new AccountBalanceTransferDto();
+            transfer.setSenderAccountId("Id-1");
+            transfer.setReceiverAccountId("Id-2");
+            transfer.setAmount(new BigDecimal(i));
+            transferService.transferThreadSafe(transfer);
+        }
+
+        this.mockMvc.perform(get("/v1/accounts/Id-1/transactions").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactions.length()").value(2))
+                .andExpect(jsonPath("$.transactions[0].sequence").value(2))
+                .andExpect(jsonPath("$.transactions[0].amount").value(-3))
+                .andExpect(jsonPath("$.transactions[0].counterpartyAccountId").value("Id-2"))
+                .andExpect(jsonPath("$.nextCursor").value(1));
+        this.mockMvc.perform(get("/v1/accounts/Id-2/transactions").param("cursor", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactions.length()").value(1))
+                .andExpect(jsonPath("$.transactions[0].amount").value(1))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void getTransactionsRejectsBadRequests() throws Exception {
+        accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+
+        this.mockMvc.perform(get("/v1/accounts/Id-1/transactions").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/v1/accounts/Id-1/transactions").param("cursor", "-1"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/v1/accounts/Id-none/transactions")).andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/v1/accounts/Id-1/transactions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactions").isEmpty());
+    }
+
+    @Test
+    void streamBalancesSendsCurrentBalancesAndCommittedChanges() throws Exception {
+        accountsService.createAccount(new Account("Feed-1", new BigDecimal(1000)));
+        accountsService.createAccount(new Account("Feed-2", BigDecimal.ZERO));
+
+        MvcResult result = this.mockMvc.perform(get("/v1/accounts/balances/stream")
+                        .param("accountId", "Feed-1", "Feed-2", "Feed-1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(result, "{\"accountId\":\"Feed-1\",\"balance\":1000}");
+        awaitContent(result, "{\"accountId\":\"Feed-2\",\"balance\":0}");
+
+        AccountBalanceTransferDto transfer = new AccountBalanceTransferDto();
+        transfer.setSenderAccountId("Feed-1");
+        transfer.setReceiverAccountId("Feed-2");
+        transfer.setAmount(BigDecimal.TEN);
+        for (int i = 0; i < 10; i++) {
+            transferService.transfer(transfer);
+        }
+        //intermediate balances may be conflated, the last ones are always sent
+        awaitContent(result, "{\"accountId\":\"Feed-1\",\"balance\":900}");
+        awaitContent(result, "{\"accountId\":\"Feed-2\",\"balance\":100}");
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(result.getResponse().getContentAsString()).contains("event:balance");
+    }
+
+    @Test
+    void streamBalancesRejectsBadRequests() throws Exception {
+        accountsService.createAccount(new Account("Feed-1", new BigDecimal(1000)));
+
+        this.mockMvc.perform(get("/v1/accounts/balances/stream").param("accountId", "Feed-1", "Feed-none")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/v1/accounts/balances/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isBadRequest());
+        String[] tooMany = new String[101];
+        for (int i = 0; i < tooMany.length; i++) {
+            tooMany[i] = "Feed-" + i;
+        }
+        this.mockMvc.perform(get("/v1/accounts/balances/stream").param("accountId", tooMany)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isBadRequest());
+    }
+
+    //events are written by the feed sender threads after the request returned
+    private static void awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().contains(expected)) {
+            assertThat(System.currentTimeMillis()).as("waiting for %s", expected).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
 }
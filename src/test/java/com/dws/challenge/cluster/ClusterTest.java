@@ -0,0 +1,308 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.exception.PartitionUnavailableException;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.wire.WireStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClusterTest {
+
+    private static final int NODES = 2;
+
+    @TempDir
+    Path directory;
+
+    private final int[] ports = new int[NODES];
+
+    private final ConfigurableApplicationContext[] nodes = new ConfigurableApplicationContext[NODES];
+
+    @BeforeEach
+    void choosePorts() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+        }
+    }
+
+    @AfterEach
+    void stopNodes() {
+        for (int i = 0; i < NODES; i++) {
+            if (nodes[i] != null) {
+                nodes[i].close();
+            }
+        }
+    }
+
+    @Test
+    void crossPartitionTransfersKeepTheTotal() throws Exception {
+        start(0);
+        start(1);
+        AccountsService accountsService = nodes[0].getBean(AccountsService.class);
+        List<String> ids = List.of(idOn(0, "A-"), idOn(0, "B-"), idOn(1, "A-"), idOn(1, "B-"));
+        for (String id : ids) {
+            accountsService.createAccount(new Account(id, new BigDecimal("1000")));
+        }
+        assertThat(accountsService.getAccount(ids.get(2))).isInstanceOf(RemoteAccount.class);
+        assertThat(nodes[1].getBean(AccountsService.class).getAccount(ids.get(2)).getBalance())
+                .isEqualByComparingTo("1000");
+        assertThatThrownBy(() -> accountsService.createAccount(new Account(ids.get(3), BigDecimal.ONE)))
+                .isInstanceOf(DuplicateAccountIdException.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    AccountBalanceTransferService transferService =
+                            nodes[thread % NODES].getBean(AccountBalanceTransferService.class);
+                    for (int i = 0; i < 100; i++) {
+                        transferService.transferThreadSafe(dto(ids.get((thread + i) % 4), ids.get((thread + i + 1) % 4),
+                                new BigDecimal("1.5")));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //both accounts on node 1, forwarded to it
+        nodes[0].getBean(AccountBalanceTransferService.class)
+                .transferThreadSafe(dto(ids.get(2), ids.get(3), BigDecimal.TEN));
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (String id : ids) {
+            total = total.add(accountsService.getAccount(id).getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("4000");
+        for (ConfigurableApplicationContext node : nodes) {
+            assertThat(node.getBean(TransferParticipant.class).preparedCount()).isZero();
+            assertThat(node.getBean(PartitionCoordinator.class).inDoubtCount()).isZero();
+        }
+    }
+
+    @Test
+    void rejectedCrossPartitionTransfersChangeNothing() {
+        start(0);
+        start(1);
+        AccountsService accountsService = nodes[0].getBean(AccountsService.class);
+        AccountBalanceTransferService transferService = nodes[0].getBean(AccountBalanceTransferService.class);
+        String local = idOn(0, "A-");
+        String remote = idOn(1, "A-");
+        accountsService.createAccount(new Account(local, BigDecimal.TEN));
+        accountsService.createAccount(new Account(remote, BigDecimal.TEN));
+
+        assertThatThrownBy(() -> transferService.transferThreadSafe(dto(local, remote, BigDecimal.TEN)))
+                .isInstanceOf(InsufficientBalanceAmountException.class);
+        assertThatThrownBy(() -> transferService.transferThreadSafe(dto(remote, local, new BigDecimal("20"))))
+                .isInstanceOf(InsufficientBalanceAmountException.class);
+        //the local debit is prepared before the unknown receiver is found out
+        assertThatThrownBy(() -> transferService.transferThreadSafe(dto(local, idOn(1, "Missing-"), BigDecimal.ONE)))
+                .isInstanceOf(AccountNotFoundException.class);
+
+        assertThat(accountsService.getAccount(local).getBalance()).isEqualByComparingTo("10");
+        assertThat(accountsService.getAccount(remote).getBalance()).isEqualByComparingTo("10");
+        assertThat(nodes[0].getBean(TransferParticipant.class).preparedCount()).isZero();
+        assertThat(nodes[1].getBean(TransferParticipant.class).preparedCount()).isZero();
+    }
+
+    @Test
+    void transferToAStoppedNodeIsAborted() {
+        start(0);
+        AccountsService accountsService = nodes[0].getBean(AccountsService.class);
+        String local = idOn(0, "A-");
+        accountsService.createAccount(new Account(local, BigDecimal.TEN));
+
+        assertThatThrownBy(() -> nodes[0].getBean(AccountBalanceTransferService.class)
+                .transferThreadSafe(dto(local, idOn(1, "A-"), BigDecimal.ONE)))
+                .isInstanceOf(PartitionUnavailableException.class);
+        assertThat(accountsService.getAccount(local).getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void inDoubtTransferIsAbortedWhenTheCoordinatorRestarts() throws Exception {
+        start(1);
+        AccountsService accountsService = nodes[1].getBean(AccountsService.class);
+        String sender = idOn(1, "A-");
+        String receiver = idOn(0, "A-");
+        accountsService.createAccount(new Account(sender, BigDecimal.TEN));
+
+        //node 0 logged BEGIN and had the debit prepared, then stopped before deciding
+        long txId = 42;
+        TransferParticipant participant = nodes[1].getBean(TransferParticipant.class);
+        assertThat(participant.prepareDebit(txId, sender, receiver, BigDecimal.ONE)).isEqualTo(WireStatus.OK);
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory.resolve("node-0"), Long.MAX_VALUE)) {
+            coordinatorLog.begin(new CoordinatorLog.Transfer(txId, sender, receiver, BigDecimal.ONE, 1, 0));
+        }
+        assertThat(accountsService.getAccount(sender).getBalance()).isEqualByComparingTo("9");
+
+        start(0);
+        PartitionCoordinator coordinator = nodes[0].getBean(PartitionCoordinator.class);
+        for (int i = 0; i < 100 && coordinator.inDoubtCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(coordinator.inDoubtCount()).isZero();
+        assertThat(participant.preparedCount()).isZero();
+        assertThat(accountsService.getAccount(sender).getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void participantRecoversItsLegsWhenItRestarts() {
+        String journal = "--journal.directory=" + directory.resolve("journal-1");
+        start(1, "--journal.enabled=true", journal);
+        String account = idOn(1, "A-");
+        String counterparty = idOn(0, "A-");
+        nodes[1].getBean(AccountsService.class).createAccount(new Account(account, BigDecimal.TEN));
+        TransferParticipant participant = nodes[1].getBean(TransferParticipant.class);
+        assertThat(participant.prepareDebit(1, account, counterparty, new BigDecimal("3"))).isEqualTo(WireStatus.OK);
+        assertThat(participant.prepareCredit(2, account, counterparty, new BigDecimal("5"))).isEqualTo(WireStatus.OK);
+        assertThat(participant.commit(2)).isEqualTo(WireStatus.OK);
+        assertThat(participant.prepareDebit(3, account, counterparty, BigDecimal.ONE)).isEqualTo(WireStatus.OK);
+        assertThat(participant.abort(3)).isEqualTo(WireStatus.OK);
+        assertThat(participant.abort(4)).isEqualTo(WireStatus.OK);
+        nodes[1].close();
+
+        start(1, "--journal.enabled=true", journal);
+        AccountsService accountsService = nodes[1].getBean(AccountsService.class);
+        participant = nodes[1].getBean(TransferParticipant.class);
+        assertThat(accountsService.getAccount(account).getBalance()).isEqualByComparingTo("12");
+        assertThat(participant.preparedCount()).isEqualTo(1);
+        //decisions of the first run are answered again, the tombstone still refuses a late prepare
+        assertThat(participant.commit(2)).isEqualTo(WireStatus.OK);
+        assertThat(participant.abort(3)).isEqualTo(WireStatus.OK);
+        assertThat(participant.prepareDebit(4, account, counterparty, BigDecimal.ONE))
+                .isEqualTo(WireStatus.INVALID_REQUEST);
+
+        assertThat(participant.commit(1)).isEqualTo(WireStatus.OK);
+        assertThat(accountsService.getAccount(account).getBalance()).isEqualByComparingTo("12");
+        assertThat(participant.legCount()).isEqualTo(4);
+        for (long txId = 1; txId <= 4; txId++) {
+            assertThat(participant.end(txId)).isEqualTo(WireStatus.OK);
+        }
+        assertThat(participant.legCount()).isZero();
+    }
+
+    @Test
+    void decisionsOfUnknownTransactionsAreNotAcknowledgedAsCommits() {
+        start(1);
+        String account = idOn(1, "A-");
+        nodes[1].getBean(AccountsService.class).createAccount(new Account(account, BigDecimal.TEN));
+        TransferParticipant participant = nodes[1].getBean(TransferParticipant.class);
+
+        assertThat(participant.commit(7)).isEqualTo(WireStatus.UNKNOWN_TRANSACTION);
+        assertThat(participant.abort(8)).isEqualTo(WireStatus.OK);
+        assertThat(participant.commit(8)).isEqualTo(WireStatus.INVALID_REQUEST);
+        //a prepare still in flight is refused until the coordinator ends the transaction
+        assertThat(participant.prepareDebit(8, account, idOn(0, "A-"), BigDecimal.ONE))
+                .isEqualTo(WireStatus.INVALID_REQUEST);
+        assertThat(participant.end(8)).isEqualTo(WireStatus.OK);
+        assertThat(participant.legCount()).isZero();
+        assertThat(nodes[1].getBean(AccountsService.class).getAccount(account).getBalance())
+                .isEqualByComparingTo("10");
+    }
+
+    @Test
+    void committedDebitIsPostedUnderTheAccountLock() throws Exception {
+        start(1, "--transfer.locks.timeout=100ms");
+        String account = idOn(1, "A-");
+        AccountsService accountsService = nodes[1].getBean(AccountsService.class);
+        accountsService.createAccount(new Account(account, BigDecimal.TEN));
+        Account stored = accountsService.getAccount(account);
+        TransferParticipant participant = nodes[1].getBean(TransferParticipant.class);
+        TransferLedger transferLedger = nodes[1].getBean(TransferLedger.class);
+        assertThat(participant.prepareDebit(1, account, idOn(0, "A-"), BigDecimal.ONE)).isEqualTo(WireStatus.OK);
+
+        //a local transfer holding the lock appends to the same ledger
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> held = holder.submit(() -> {
+                stored.getLock().lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                } finally {
+                    stored.getLock().unlock();
+                }
+                return null;
+            });
+            locked.await();
+            assertThat(participant.commit(1)).isEqualTo(WireStatus.BUSY);
+            assertThat(transferLedger.page(account, null, 10).getTransactions()).isEmpty();
+            release.countDown();
+            held.get(5, TimeUnit.SECONDS);
+        } finally {
+            holder.shutdownNow();
+        }
+
+        assertThat(participant.commit(1)).isEqualTo(WireStatus.OK);
+        assertThat(transferLedger.page(account, null, 10).getTransactions()).hasSize(1);
+    }
+
+    private void start(int nodeId, String... properties) {
+        StringBuilder addresses = new StringBuilder();
+        for (int port : ports) {
+            addresses.append(addresses.length() == 0 ? "" : ",").append("localhost:").append(port);
+        }
+        List<String> args = new ArrayList<>(List.of("--wire.enabled=true", "--wire.port=" + ports[nodeId],
+                "--wire.io-threads=1", "--cluster.enabled=true", "--cluster.node-id=" + nodeId,
+                "--cluster.nodes=" + addresses, "--cluster.log-directory=" + directory.resolve("node-" + nodeId),
+                "--cluster.request-timeout=2s", "--cluster.recovery-interval=50ms"));
+        args.addAll(List.of(properties));
+        nodes[nodeId] = new SpringApplicationBuilder(ChallengeApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(context -> context.getBeanFactory().registerSingleton("notificationService",
+                        (NotificationService) (account, description) -> { }))
+                .run(args.toArray(String[]::new));
+    }
+
+    private static String idOn(int node, String prefix) {
+        for (int i = 0; ; i++) {
+            if (PartitionRouter.partitionOf(prefix + i, NODES) == node) {
+                return prefix + i;
+            }
+        }
+    }
+
+    private static AccountBalanceTransferDto dto(String senderAccountId, String receiverAccountId, BigDecimal amount) {
+        AccountBalanceTransferDto dto = new AccountBalanceTransferDto();
+        dto.setSenderAccountId(senderAccountId);
+        dto.setReceiverAccountId(receiverAccountId);
+        dto.setAmount(amount);
+        return dto;
+    }
+}
@@ -0,0 +1,98 @@
+package com.dws.challenge.cluster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoordinatorLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unfinishedTransfersAreReplayedUpToATornRecord() throws IOException {
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory, Long.MAX_VALUE)) {
+            CoordinatorLog.Transfer undecided = transfer(1);
+            CoordinatorLog.Transfer committed = transfer(2);
+            CoordinatorLog.Transfer finished = transfer(3);
+            coordinatorLog.begin(undecided);
+            coordinatorLog.begin(committed);
+            coordinatorLog.begin(finished);
+            coordinatorLog.decide(committed, true);
+            coordinatorLog.decide(finished, false);
+            coordinatorLog.acknowledge(committed);
+            coordinatorLog.end(finished);
+        }
+        //a record cut off by a crash
+        Files.write(directory.resolve("coordinator.log"), new byte[]{0, 0, 0, 40, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory, Long.MAX_VALUE)) {
+            Map<Long, CoordinatorLog.Transfer> unfinished = byTxId(coordinatorLog);
+            assertThat(unfinished).containsOnlyKeys(1L, 2L);
+            assertThat(unfinished.get(1L).commit).isNull();
+            assertThat(unfinished.get(2L).commit).isTrue();
+            assertThat(unfinished.get(1L).acknowledged).isFalse();
+            assertThat(unfinished.get(2L).acknowledged).isTrue();
+            assertThat(unfinished.get(2L).senderAccountId).isEqualTo("Id-2");
+            assertThat(unfinished.get(2L).amount).isEqualByComparingTo("12.50");
+            assertThat(unfinished.get(2L).receiverNode).isEqualTo(1);
+            assertThat(coordinatorLog.maxTxId()).isEqualTo(3);
+            coordinatorLog.end(unfinished.get(2L));
+        }
+
+        //the torn tail was cut off, so the record written after it is read
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory, Long.MAX_VALUE)) {
+            assertThat(byTxId(coordinatorLog)).containsOnlyKeys(1L);
+        }
+    }
+
+    @Test
+    void compactionKeepsOnlyUnfinishedTransfers() throws IOException {
+        Path file = directory.resolve("coordinator.log");
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory, 1024)) {
+            for (long txId = 0; txId < 100; txId++) {
+                CoordinatorLog.Transfer transfer = transfer(txId);
+                coordinatorLog.begin(transfer);
+                coordinatorLog.decide(transfer, txId % 2 == 0);
+                if (txId == 8) {
+                    coordinatorLog.acknowledge(transfer);
+                } else if (txId != 7) {
+                    coordinatorLog.end(transfer);
+                }
+            }
+            long size = Files.size(file);
+            coordinatorLog.compactIfNeeded();
+            assertThat(Files.size(file)).isLessThan(size);
+            coordinatorLog.begin(transfer(100));
+        }
+
+        try (CoordinatorLog coordinatorLog = new CoordinatorLog(directory, 1024)) {
+            Map<Long, CoordinatorLog.Transfer> unfinished = byTxId(coordinatorLog);
+            assertThat(unfinished).containsOnlyKeys(7L, 8L, 100L);
+            assertThat(unfinished.get(7L).commit).isFalse();
+            assertThat(unfinished.get(8L).commit).isTrue();
+            assertThat(unfinished.get(7L).acknowledged).isFalse();
+            assertThat(unfinished.get(8L).acknowledged).isTrue();
+        }
+    }
+
+    private static CoordinatorLog.Transfer transfer(long txId) {
+        return new CoordinatorLog.Transfer(txId, "Id-" + txId, "Id-" + (txId + 1), new BigDecimal("12.50"), 0, 1);
+    }
+
+    private static Map<Long, CoordinatorLog.Transfer> byTxId(CoordinatorLog coordinatorLog) {
+        return coordinatorLog.unfinished().stream()
+                .collect(Collectors.toMap(transfer -> transfer.txId, Function.identity()));
+    }
+}
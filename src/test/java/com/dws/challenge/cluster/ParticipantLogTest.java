@@ -0,0 +1,92 @@
+package com.dws.challenge.cluster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParticipantLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void legsAndTheirChangesAreReplayedUpToATornRecord() throws IOException {
+        try (ParticipantLog participantLog = new ParticipantLog(directory, Long.MAX_VALUE)) {
+            ParticipantLog.Leg prepared = leg(1, true);
+            ParticipantLog.Leg committed = leg(2, false);
+            ParticipantLog.Leg aborted = leg(3, true);
+            ParticipantLog.Leg ended = leg(4, true);
+            participantLog.prepare(prepared);
+            participantLog.prepare(committed);
+            participantLog.commit(committed);
+            participantLog.prepare(aborted);
+            participantLog.abort(aborted);
+            participantLog.prepare(ended);
+            participantLog.commit(ended);
+            participantLog.end(4);
+            participantLog.force(participantLog.abortUnknown(5));
+        }
+        //a record cut off by a crash
+        Files.write(directory.resolve("participant.log"), new byte[]{0, 0, 0, 40, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        try (ParticipantLog participantLog = new ParticipantLog(directory, Long.MAX_VALUE)) {
+            //two debits taken, one credit, the aborted debit was paid back
+            assertThat(participantLog.recoveredChanges().get("Id")).isEqualByComparingTo("-12.50");
+            assertThat(participantLog.leg(1).state).isEqualTo(ParticipantLog.State.PREPARED);
+            assertThat(participantLog.leg(1).counterpartyAccountId).isEqualTo("Other-1");
+            assertThat(participantLog.leg(2).state).isEqualTo(ParticipantLog.State.COMMITTED);
+            assertThat(participantLog.leg(3).state).isEqualTo(ParticipantLog.State.ABORTED);
+            assertThat(participantLog.leg(4)).isNull();
+            assertThat(participantLog.leg(5).state).isEqualTo(ParticipantLog.State.ABORTED);
+            participantLog.end(5);
+        }
+
+        //the torn tail was cut off, so the record written after it is read
+        try (ParticipantLog participantLog = new ParticipantLog(directory, Long.MAX_VALUE)) {
+            assertThat(participantLog.leg(5)).isNull();
+            assertThat(participantLog.legs()).hasSize(3);
+        }
+    }
+
+    @Test
+    void compactionKeepsTheChangesAndTheLegsNotEnded() throws IOException {
+        Path file = directory.resolve("participant.log");
+        try (ParticipantLog participantLog = new ParticipantLog(directory, 1024)) {
+            for (long txId = 0; txId < 100; txId++) {
+                ParticipantLog.Leg leg = leg(txId, txId % 2 == 0);
+                participantLog.prepare(leg);
+                participantLog.commit(leg);
+                if (txId != 7 && txId != 8) {
+                    participantLog.end(txId);
+                }
+            }
+            participantLog.abortUnknown(100);
+            long size = Files.size(file);
+            participantLog.compactIfNeeded();
+            assertThat(Files.size(file)).isLessThan(size);
+            participantLog.prepare(leg(101, true));
+        }
+
+        try (ParticipantLog participantLog = new ParticipantLog(directory, 1024)) {
+            assertThat(participantLog.legs()).hasSize(4);
+            assertThat(participantLog.leg(7).state).isEqualTo(ParticipantLog.State.COMMITTED);
+            assertThat(participantLog.leg(8).debit).isTrue();
+            assertThat(participantLog.leg(100).state).isEqualTo(ParticipantLog.State.ABORTED);
+            assertThat(participantLog.leg(101).state).isEqualTo(ParticipantLog.State.PREPARED);
+            //50 debits and 50 credits net out, the debit prepared after compaction does not
+            assertThat(participantLog.recoveredChanges().get("Id")).isEqualByComparingTo("-12.50");
+        }
+    }
+
+    private static ParticipantLog.Leg leg(long txId, boolean debit) {
+        return new ParticipantLog.Leg(txId, "Id", "Other-" + txId, new BigDecimal("12.50"), debit);
+    }
+}
@@ -0,0 +1,72 @@
+package com.dws.challenge.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedAccountTest {
+
+    private final StripedAccount account = new StripedAccount("Merchant-1", new BigDecimal(100), 3);
+
+    @Test
+    void stripesAreRoundedUpToAPowerOfTwo() {
+        assertThat(account.getStripes()).isEqualTo(4);
+        assertThat(account.getBalance()).isEqualByComparingTo("100");
+        assertThat(account.acceptsConcurrentDeposits()).isTrue();
+        assertThat(account.getDepositLock()).isNotSameAs(account.getLock());
+    }
+
+    @Test
+    void withdrawalsAndSetBalanceSpanAllStripes() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CompletableFuture<?>[] deposits = new CompletableFuture[4];
+        for (int i = 0; i < deposits.length; i++) {
+            deposits[i] = CompletableFuture.runAsync(() -> account.deposit(new BigDecimal(25)), executor);
+        }
+        CompletableFuture.allOf(deposits).get();
+        executor.shutdown();
+
+        assertThat(account.withdraw(new BigDecimal(200))).isFalse();
+        assertThat(account.withdraw(new BigDecimal("180.50"))).isTrue();
+        assertThat(account.getBalance()).isEqualByComparingTo("19.50");
+
+        account.setBalance(new BigDecimal(7));
+        assertThat(account.getBalance()).isEqualByComparingTo("7");
+    }
+
+    @Test
+    void concurrentDepositsUnderTheSharedLockAreNotLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CompletableFuture<?>[] transfers = new CompletableFuture[8000];
+        for (int i = 0; i < transfers.length; i++) {
+            boolean withdrawal = i % 8 == 0;
+            transfers[i] = CompletableFuture.runAsync(() -> {
+                if (withdrawal) {
+                    account.getLock().lock();
+                    try {
+                        account.withdraw(BigDecimal.ONE);
+                    } finally {
+                        account.getLock().unlock();
+                    }
+                } else {
+                    account.getDepositLock().lock();
+                    try {
+                        account.deposit(new BigDecimal("0.25"));
+                    } finally {
+                        account.getDepositLock().unlock();
+                    }
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(transfers).get();
+        executor.shutdown();
+
+        //7000 deposits of 0.25, 1000 withdrawals of 1
+        assertThat(account.getBalance()).isEqualByComparingTo("850");
+    }
+}
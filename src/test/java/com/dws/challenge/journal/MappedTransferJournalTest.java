@@ -0,0 +1,82 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedTransferJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void balancesAreRecoveredFromJournal() throws Exception {
+        MappedTransferJournal journal = new MappedTransferJournal(properties(), new AccountsRepositoryInMemory());
+        Account first = new Account("Id-0001", new BigDecimal("1000.50"));
+        Account second = new Account("Id-0002", new BigDecimal(2000));
+        journal.appendAccountCreated(first);
+        journal.appendAccountCreated(second);
+        //segments are 1KB, so these records roll over several segments
+        for (int i = 0; i < 100; i++) {
+            journal.appendTransfer(first, second, new BigDecimal(3));
+            journal.appendTransfer(second, first, BigDecimal.ONE);
+        }
+        journal.sync();
+        journal.close();
+
+        AccountsRepositoryInMemory recovered = new AccountsRepositoryInMemory();
+        new MappedTransferJournal(properties(), recovered).close();
+
+        assertThat(recovered.getAccount("Id-0001").getBalance()).isEqualByComparingTo("800.50");
+        assertThat(recovered.getAccount("Id-0002").getBalance()).isEqualByComparingTo("2200");
+    }
+
+    @Test
+    void snapshotReplacesCompactedSegments() throws Exception {
+        MappedTransferJournal journal = new MappedTransferJournal(properties(), new AccountsRepositoryInMemory());
+        Account first = new Account("Id-0001", new BigDecimal(1000));
+        Account second = new Account("Id-0002", new BigDecimal(2000));
+        journal.appendAccountCreated(first);
+        journal.appendAccountCreated(second);
+        for (int i = 0; i < 50; i++) {
+            journal.appendTransfer(first, second, BigDecimal.TEN);
+        }
+        journal.compact();
+        journal.appendTransfer(second, first, new BigDecimal(100));
+        journal.appendAccountCreated(new Account("Id-0003", new BigDecimal(5)));
+        journal.sync();
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count())
+                    .isEqualTo(1);
+        }
+
+        AccountsRepositoryInMemory recovered = new AccountsRepositoryInMemory();
+        new MappedTransferJournal(properties(), recovered).close();
+
+        assertThat(recovered.getAccount("Id-0001").getBalance()).isEqualByComparingTo("600");
+        assertThat(recovered.getAccount("Id-0002").getBalance()).isEqualByComparingTo("2400");
+        assertThat(recovered.getAccount("Id-0003").getBalance()).isEqualByComparingTo("5");
+    }
+
+    private JournalProperties properties() {
+        JournalProperties properties = new JournalProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(DataSize.ofKilobytes(1));
+        properties.setGroupCommitInterval(Duration.ofMillis(1));
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        return properties;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dws.challenge.ledger;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransactionDto;
+import com.dws.challenge.dto.TransactionPageDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferLedgerTest {
+
+    private final TransferLedger ledger = new TransferLedger(true);
+
+    private final Account sender = new Account("Id-0001", new BigDecimal(1000));
+
+    private final Account receiver = new Account("Id-0002", new BigDecimal(1000));
+
+    @Test
+    void chunksCoverEveryIndexOnce() {
+        long expected = 0;
+        int lastChunk = 0;
+        for (long index = 0; index < 100_000; index++) {
+            int chunk = AccountLedger.chunkOf(index);
+            int offset = AccountLedger.offsetOf(index);
+            if (chunk != lastChunk) {
+                assertThat(chunk).isEqualTo(lastChunk + 1);
+                assertThat(offset).isZero();
+                lastChunk = chunk;
+            } else {
+                assertThat(offset).isEqualTo(expected);
+            }
+            expected = offset + 1;
+        }
+        assertThat(AccountLedger.chunkOf(15)).isZero();
+        assertThat(AccountLedger.chunkOf(16)).isEqualTo(1);
+        assertThat(AccountLedger.offsetOf(4080)).isZero();
+        assertThat(AccountLedger.offsetOf(4079)).isEqualTo(2047);
+    }
+
+    @Test
+    void pagesAreNewestFirstAndFollowTheCursor() {
+        for (int i = 1; i <= 10_000; i++) {
+            ledger.transferred(sender, receiver, BigDecimal.valueOf(i, 2), 1_700_000_000_000L + i);
+        }
+
+        List<TransactionDto> all = new ArrayList<>();
+        Long cursor = null;
+        do {
+            TransactionPageDto page = ledger.page("Id-0002", cursor, 999);
+            all.addAll(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(all).hasSize(10_000);
+        assertThat(all.get(0).getSequence()).isEqualTo(9_999);
+        assertThat(all.get(0).getAmount()).isEqualByComparingTo("100.00");
+        assertThat(all.get(0).getCounterpartyAccountId()).isEqualTo("Id-0001");
+        assertThat(all.get(9_999).getAmount()).isEqualByComparingTo("0.01");
+        assertThat(all.get(9_999).getTimestamp().toEpochMilli()).isEqualTo(1_700_000_000_001L);
+        assertThat(ledger.page("Id-0001", null, 1).getTransactions().get(0).getAmount())
+                .isEqualByComparingTo("-100.00");
+    }
+
+    @Test
+    void amountsWhichDoNotFitALongAreKept() {
+        BigDecimal huge = new BigDecimal("123456789012345678901234567890.12");
+        ledger.transferred(sender, receiver, huge, 0);
+        ledger.transferred(sender, receiver, new BigDecimal("1E+200"), 0);
+
+        List<TransactionDto> transactions = ledger.page("Id-0002", null, 10).getTransactions();
+
+        assertThat(transactions).extracting(TransactionDto::getAmount)
+                .containsExactly(new BigDecimal("1E+200"), huge);
+        assertThat(ledger.page("Id-0002", 1L, 10).getNextCursor()).isNull();
+    }
+
+    @Test
+    void unknownAccountHasNoTransactions() {
+        TransactionPageDto page = ledger.page("Id-none", null, 10);
+
+        assertThat(page.getTransactions()).isEmpty();
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void readersSeeCompleteEntriesWhileTheWriterAppends() throws Exception {
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 1; i <= 200_000; i++) {
+                ledger.post(sender, receiver, BigDecimal.valueOf(i), i);
+            }
+        });
+        while (!writer.isDone()) {
+            for (TransactionDto transaction : ledger.page("Id-0001", null, 100).getTransactions()) {
+                assertThat(transaction.getAmount().longValueExact()).isEqualTo(transaction.getSequence() + 1);
+                assertThat(transaction.getTimestamp().toEpochMilli()).isEqualTo(transaction.getSequence() + 1);
+                assertThat(transaction.getCounterpartyAccountId()).isEqualTo("Id-0002");
+            }
+        }
+        writer.get(10, TimeUnit.SECONDS);
+        assertThat(ledger.page("Id-0001", null, 1).getNextCursor()).isEqualTo(199_999L);
+    }
+
+    @Test
+    void disabledLedgerKeepsNothing() {
+        TransferLedger disabled = new TransferLedger(false);
+        disabled.transferred(sender, receiver, BigDecimal.ONE, 0);
+
+        assertThat(disabled.page("Id-0001", null, 10).getTransactions()).isEmpty();
+    }
+}
@@ -0,0 +1,104 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountBalanceTransferService;
+import com.dws.challenge.service.AccountLockManager;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AsyncTransferExecutor;
+import com.dws.challenge.service.BalanceFeed;
+import com.dws.challenge.service.BalanceFeedProperties;
+import com.dws.challenge.service.BalanceSnapshots;
+import com.dws.challenge.service.LockManagerProperties;
+import com.dws.challenge.service.NotificationDispatcher;
+import com.dws.challenge.service.NotificationProperties;
+import com.dws.challenge.service.TransferAuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final TransferMetrics transferMetrics = new TransferMetrics(true, 1, 2, meterRegistry);
+
+    @Test
+    void heavyHittersAreTracked() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(8);
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 0) {
+                sketch.offer("Id-hot");
+            } else if (i % 4 == 1) {
+                sketch.offer("Id-warm");
+            } else {
+                sketch.offer("Id-" + i);
+            }
+        }
+
+        assertThat(sketch.top(2)).extracting(SpaceSavingSketch.Entry::getKey).containsExactly("Id-hot", "Id-warm");
+        assertThat(sketch.top(1).get(0).getCount() - sketch.top(1).get(0).getError()).isGreaterThanOrEqualTo(500);
+    }
+
+    @Test
+    void lockTimingsRejectionsAndContentionAreRecorded() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        AccountsService accountsService = new AccountsService(repository, new NoOpTransferJournal(),
+                new BalanceSnapshots(repository, new NoOpTransferJournal()));
+        accountsService.createAccount(new Account("Id-0001", new BigDecimal(1000)));
+        accountsService.createAccount(new Account("Id-0002", new BigDecimal(1000)));
+        NotificationProperties properties = new NotificationProperties();
+        properties.setAsync(false);
+        TransferAuditLog auditLog = new TransferAuditLog(1024, meterRegistry);
+        AccountBalanceTransferService transferService = new AccountBalanceTransferService(accountsService,
+                new NotificationDispatcher((account, description) -> { }, accountsService, properties, meterRegistry),
+                new BalanceFeed(new BalanceFeedProperties(), meterRegistry), new NoOpTransferJournal(),
+                accountsService.getBalanceSnapshots(), new TransferLedger(true), auditLog,
+                transferMetrics, new AccountLockManager(new LockManagerProperties(), transferMetrics),
+                new AsyncTransferExecutor(false, 1), Optional.empty(), Optional.empty());
+
+        transferService.transferThreadSafe(transfer(100));
+        assertThatThrownBy(() -> transferService.transferThreadSafe(transfer(5000)))
+                .isInstanceOf(InsufficientBalanceAmountException.class);
+
+        Account hot = accountsService.getAccount("Id-0002");
+        hot.getLock().lock();
+        CompletableFuture<Void> blocked;
+        try {
+            blocked = CompletableFuture.runAsync(() -> transferService.transferThreadSafe(transfer(100)));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (meterRegistry.counter("transfer.lock.contended").count() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            hot.getLock().unlock();
+        }
+        blocked.get(5, TimeUnit.SECONDS);
+
+        assertThat(meterRegistry.timer("transfer.lock.wait").count()).isEqualTo(3);
+        assertThat(meterRegistry.timer("transfer.lock.held").count()).isEqualTo(3);
+        assertThat(meterRegistry.counter("transfer.rejected", "reason", "insufficient_balance").count()).isEqualTo(1);
+        assertThat(transferMetrics.topContendedAccounts()).extracting(SpaceSavingSketch.Entry::getKey)
+                .containsExactly("Id-0002");
+        auditLog.shutdown();
+    }
+
+    private static AccountBalanceTransferDto transfer(int amount) {
+        AccountBalanceTransferDto transfer = new AccountBalanceTransferDto();
+        transfer.setSenderAccountId("Id-0001");
+        transfer.setReceiverAccountId("Id-0002");
+        transfer.setAmount(new BigDecimal(amount));
+        return transfer;
+    }
+}
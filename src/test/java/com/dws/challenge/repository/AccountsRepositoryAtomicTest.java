@@ -0,0 +1,106 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AtomicAccount;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountsRepositoryAtomicTest {
+
+    private final AccountsRepositoryAtomic repository = new AccountsRepositoryAtomic();
+
+    @Test
+    void accountsAreStoredAsAtomicAccounts() {
+        repository.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+
+        Account account = repository.getAccount("Id-123");
+
+        assertThat(account).isInstanceOf(AtomicAccount.class);
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal("123.45"));
+        assertThat(repository.getAccount("Id-999")).isNull();
+        assertThatThrownBy(() -> repository.createAccount(new Account("Id-123", BigDecimal.TEN)))
+                .isInstanceOf(DuplicateAccountIdException.class)
+                .hasMessage("Account id Id-123 already exists!");
+    }
+
+    @Test
+    void balanceIsReadWhileLockIsHeld() throws Exception {
+        repository.createAccount(new Account("Id-123", BigDecimal.TEN));
+        Account account = repository.getAccount("Id-123");
+
+        account.getLock().lock();
+        try {
+            BigDecimal balance = CompletableFuture.supplyAsync(account::getBalance).get(1, TimeUnit.SECONDS);
+            assertThat(balance).isEqualTo(BigDecimal.TEN);
+        } finally {
+            account.getLock().unlock();
+        }
+    }
+
+    @Test
+    void concurrentWithdrawalsNeverOverdraw() throws Exception {
+        repository.createAccount(new Account("Id-123", new BigDecimal(1000)));
+        Account account = repository.getAccount("Id-123");
+        AtomicInteger withdrawn = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CompletableFuture<?>[] futures = new CompletableFuture[2000];
+        for (int i = 0; i < futures.length; i++) {
+            boolean deposit = i % 4 == 0;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                if (deposit) {
+                    account.deposit(BigDecimal.ONE);
+                } else if (account.withdraw(BigDecimal.ONE)) {
+                    withdrawn.incrementAndGet();
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get();
+        executor.shutdown();
+
+        assertThat(account.getBalance()).isPositive();
+        assertThat(account.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(1000 + 500 - withdrawn.get()));
+    }
+
+    @Test
+    void accountsAreListedByPrefixWhileCreated() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            repository.createAccount(new Account(String.format("B-%03d", i), BigDecimal.ONE));
+        }
+        repository.createAccount(new Account("A-1", BigDecimal.ONE));
+        repository.createAccount(new Account("C-1", BigDecimal.ONE));
+
+        //creates of other branches go on while B- is paged through
+        CompletableFuture<Void> creates = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 2000; i++) {
+                repository.createAccount(new Account("A-x" + i, BigDecimal.ONE));
+                repository.createAccount(new Account("C-x" + i, BigDecimal.ONE));
+            }
+        });
+        List<String> listed = new ArrayList<>();
+        String after = null;
+        for (List<Account> page; !(page = repository.listAccounts("B-", after, 7)).isEmpty(); ) {
+            page.forEach(account -> listed.add(account.getAccountId()));
+            after = page.get(page.size() - 1).getAccountId();
+        }
+        creates.get();
+
+        assertThat(listed).hasSize(100).isSorted().allMatch(accountId -> accountId.startsWith("B-"));
+        assertThat(repository.listAccounts("", "B-099", 1)).extracting(Account::getAccountId).containsExactly("C-1");
+
+        repository.clearAccounts();
+        assertThat(repository.listAccounts("", null, 10)).isEmpty();
+    }
+}
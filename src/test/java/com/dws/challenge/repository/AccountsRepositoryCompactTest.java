@@ -0,0 +1,111 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountsRepositoryCompactTest {
+
+    private final AccountsRepositoryCompact repository = new AccountsRepositoryCompact(2);
+
+    @Test
+    void balancesAreKeptWithStoreScale() {
+        repository.createAccount(new Account("Id-123", new BigDecimal("123.4")));
+
+        Account account = repository.getAccount("Id-123");
+        account.deposit(new BigDecimal("0.05"));
+
+        assertThat(account.getAccountId()).isEqualTo("Id-123");
+        assertThat(repository.getAccount("Id-123").getBalance()).isEqualTo(new BigDecimal("123.45"));
+        assertThat(repository.getAccount("Id-999")).isNull();
+    }
+
+    @Test
+    void createdAccountIsFoundOnlyOnceItsCreationWasJournaled() {
+        Account[] found = {new Account("Unset")};
+        repository.createAccount(new Account("Id-123", BigDecimal.TEN), stored -> {
+            assertThat(stored.getBalance()).isEqualByComparingTo("10");
+            found[0] = CompletableFuture.supplyAsync(() -> repository.getAccount("Id-123")).join();
+        });
+
+        assertThat(found[0]).isNull();
+        assertThat(repository.getAccount("Id-123").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void duplicateAccountIsRejected() {
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+
+        assertThatThrownBy(() -> repository.createAccount(new Account("Id-123", BigDecimal.TEN)))
+                .isInstanceOf(DuplicateAccountIdException.class)
+                .hasMessage("Account id Id-123 already exists!");
+    }
+
+    @Test
+    void unrepresentableAmountsAreRejected() {
+        assertThatThrownBy(() -> repository.createAccount(new Account("Id-1", new BigDecimal("0.001"))))
+                .isInstanceOf(AmountOutOfRangeException.class);
+
+        repository.createAccount(new Account("Id-2", BigDecimal.valueOf(Long.MAX_VALUE / 100)));
+        assertThatThrownBy(() -> repository.getAccount("Id-2").deposit(BigDecimal.ONE))
+                .isInstanceOf(AmountOutOfRangeException.class);
+    }
+
+    @Test
+    void accountsAreListedByScanningInIdOrder() {
+        for (int i = 9; i >= 0; i--) {
+            repository.createAccount(new Account("B-" + i, BigDecimal.ONE));
+        }
+        repository.createAccount(new Account("A-1", BigDecimal.ONE));
+
+        assertThat(repository.listAccounts("B-", "B-3", 3)).extracting(Account::getAccountId)
+                .containsExactly("B-4", "B-5", "B-6");
+        assertThat(repository.listAccounts("", null, 2)).extracting(Account::getAccountId)
+                .containsExactly("A-1", "B-0");
+    }
+
+    @Test
+    void concurrentTransfersUnderSlotLocksKeepTotalAmount() throws Exception {
+        repository.createAccount(new Account("Id-0001", new BigDecimal(1000)));
+        repository.createAccount(new Account("Id-0002", new BigDecimal(2000)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CompletableFuture<?>[] futures = new CompletableFuture[1000];
+        for (int i = 0; i < futures.length; i++) {
+            boolean forward = i % 2 == 0;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                Account sender = repository.getAccount(forward ? "Id-0001" : "Id-0002");
+                Account receiver = repository.getAccount(forward ? "Id-0002" : "Id-0001");
+                Account first = repository.getAccount("Id-0002");
+                Account second = repository.getAccount("Id-0001");
+                first.getLock().lock();
+                try {
+                    second.getLock().lock();
+                    try {
+                        if (sender.withdraw(new BigDecimal("7.25"))) {
+                            receiver.deposit(new BigDecimal("7.25"));
+                        }
+                    } finally {
+                        second.getLock().unlock();
+                    }
+                } finally {
+                    first.getLock().unlock();
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get();
+        executor.shutdown();
+
+        assertThat(repository.getAccount("Id-0001").getBalance()
+                .add(repository.getAccount("Id-0002").getBalance())).isEqualByComparingTo("3000");
+    }
+}
@@ -0,0 +1,182 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountOutOfRangeException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountsRepositoryPersistentTest {
+
+    @TempDir
+    Path directory;
+
+    private AccountsRepositoryPersistent repository;
+
+    @AfterEach
+    void tearDown() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    private AccountsRepositoryPersistent open(int cachedAccounts) {
+        PersistentStoreProperties properties = new PersistentStoreProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        properties.setCacheMaxMemory(DataSize.ofBytes(
+                cachedAccounts * (AccountsRepositoryPersistent.ACCOUNT_OVERHEAD_BYTES + 16L)));
+        properties.setWriteBehindInterval(Duration.ofMillis(10));
+        repository = new AccountsRepositoryPersistent(properties, new SimpleMeterRegistry());
+        return repository;
+    }
+
+    @Test
+    void balancesSurviveReopen() {
+        open(100).createAccount(new Account("Id-123", new BigDecimal("123.4")));
+        repository.getAccount("Id-123").deposit(new BigDecimal("0.05"));
+        repository.close();
+
+        assertThat(open(100).getAccount("Id-123").getBalance()).isEqualTo(new BigDecimal("123.45"));
+        assertThat(repository.getAccount("Id-999")).isNull();
+        assertThatThrownBy(() -> repository.createAccount(new Account("Id-123", BigDecimal.TEN)))
+                .isInstanceOf(DuplicateAccountIdException.class)
+                .hasMessage("Account id Id-123 already exists!");
+    }
+
+    @Test
+    void createdAccountIsFoundOnlyOnceItsCreationWasJournaled() throws Exception {
+        CompletableFuture<Account> lookup = new CompletableFuture<>();
+        open(100).createAccount(new Account("Id-123", BigDecimal.TEN), stored -> {
+            assertThat(stored.getBalance()).isEqualByComparingTo("10");
+            CompletableFuture.runAsync(() -> lookup.complete(repository.getAccount("Id-123")));
+            //the lookup waits for the creation to finish
+            assertThatThrownBy(() -> lookup.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        });
+
+        assertThat(lookup.get(5, TimeUnit.SECONDS).getBalance()).isEqualByComparingTo("10");
+        assertThat(repository.getAccount("Id-123")).isSameAs(lookup.get());
+    }
+
+    @Test
+    void evictedAccountsAreReloadedWithTheirBalance() {
+        open(50);
+        for (int i = 0; i < 5000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.TEN));
+        }
+        for (int i = 0; i < 5000; i += 3) {
+            repository.getAccount("Id-" + i).deposit(BigDecimal.valueOf(i));
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            BigDecimal expected = BigDecimal.TEN.add(BigDecimal.valueOf(i % 3 == 0 ? i : 0));
+            assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(expected);
+        }
+        assertThat(repository.cachedWeight())
+                .isLessThanOrEqualTo(50 * (AccountsRepositoryPersistent.ACCOUNT_OVERHEAD_BYTES + 16L));
+    }
+
+    @Test
+    void heldAccountStaysTheOnlyObjectOfItsIdAfterEviction() {
+        open(10);
+        for (int i = 0; i < 1000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.TEN));
+        }
+        Account held = repository.getAccount("Id-0");
+        for (int i = 1; i < 1000; i++) {
+            repository.getAccount("Id-" + i);
+        }
+
+        held.deposit(BigDecimal.ONE);
+
+        assertThat(repository.getAccount("Id-0")).isSameAs(held);
+        assertThat(repository.getAccount("Id-0").getBalance()).isEqualByComparingTo("11");
+    }
+
+    @Test
+    void indexIsRebuiltWhenMissing() throws Exception {
+        open(100);
+        for (int i = 0; i < 3000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i)));
+        }
+        repository.close();
+        Files.delete(directory.resolve("accounts.idx"));
+
+        open(100);
+        for (int i = 0; i < 3000; i++) {
+            assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(BigDecimal.valueOf(i));
+        }
+        BigDecimal total = repository.reduceAccounts(Account::getBalance, BigDecimal::add);
+        assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(3000L * 2999 / 2));
+    }
+
+    @Test
+    void unrepresentableAmountsAreRejected() {
+        open(100);
+        assertThatThrownBy(() -> repository.createAccount(new Account("Id-1", new BigDecimal("0.001"))))
+                .isInstanceOf(AmountOutOfRangeException.class);
+
+        repository.createAccount(new Account("Id-2", BigDecimal.TEN));
+        assertThatThrownBy(() -> repository.getAccount("Id-2").withdraw(new BigDecimal("0.001")))
+                .isInstanceOf(AmountOutOfRangeException.class);
+        assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void concurrentTransfersWithEvictionsKeepTotalAmount() throws Exception {
+        open(20);
+        int accounts = 200;
+        for (int i = 0; i < accounts; i++) {
+            repository.createAccount(new Account(String.format("Id-%04d", i), new BigDecimal(100)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CompletableFuture<?>[] futures = new CompletableFuture[4000];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int from = ThreadLocalRandom.current().nextInt(accounts);
+                int to = (from + 1 + ThreadLocalRandom.current().nextInt(accounts - 1)) % accounts;
+                Account sender = repository.getAccount(String.format("Id-%04d", from));
+                Account receiver = repository.getAccount(String.format("Id-%04d", to));
+                Account first = from > to ? sender : receiver;
+                Account second = from > to ? receiver : sender;
+                first.getLock().lock();
+                try {
+                    second.getLock().lock();
+                    try {
+                        if (sender.withdraw(new BigDecimal("7.25"))) {
+                            receiver.deposit(new BigDecimal("7.25"));
+                        }
+                    } finally {
+                        second.getLock().unlock();
+                    }
+                } finally {
+                    first.getLock().unlock();
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get();
+        executor.shutdown();
+
+        assertThat(repository.reduceAccounts(Account::getBalance, BigDecimal::add)).isEqualByComparingTo("20000");
+        repository.close();
+        assertThat(open(20).reduceAccounts(Account::getBalance, BigDecimal::add)).isEqualByComparingTo("20000");
+    }
+}
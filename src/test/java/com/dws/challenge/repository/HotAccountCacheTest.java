@@ -0,0 +1,50 @@
+package com.dws.challenge.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotAccountCacheTest {
+
+    private final List<PersistentAccount> evicted = new ArrayList<>();
+    private final HotAccountCache cache = new HotAccountCache(100 * 10, 100, evicted::add);
+
+    private PersistentAccount load(String accountId) {
+        return cache.computeIfAbsent(accountId, id -> new PersistentAccount(id, null, 0, 0, null), 10);
+    }
+
+    @Test
+    void frequentlyUsedAccountsSurviveAScan() {
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                load("Hot-" + i);
+            }
+        }
+
+        //hot accounts keep being used while every cold account is seen once
+        for (int i = 0; i < 10_000; i++) {
+            load("Cold-" + i);
+            load("Hot-" + i % 50);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(cache.peek("Hot-" + i)).as("Hot-" + i).isNotNull();
+        }
+        assertThat(cache.weight()).isLessThanOrEqualTo(100 * 10);
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void evictedAccountsAreReportedBeforeTheyLeave() {
+        for (int i = 0; i < 150; i++) {
+            load("Id-" + i);
+        }
+
+        assertThat(evicted).hasSize(50);
+        evicted.forEach(account -> assertThat(cache.peek(account.getAccountId())).isNull());
+        assertThat(cache.size()).isEqualTo(100);
+    }
+}
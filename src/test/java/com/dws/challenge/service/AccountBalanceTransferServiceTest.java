@@ -1,6 +1,9 @@
 package com.dws.challenge.service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +13,13 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.math.BigDecimal;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
 public class AccountBalanceTransferServiceTest {
@@ -20,6 +30,12 @@ public class AccountBalanceTransferServiceTest {
     @Autowired
     AccountBalanceTransferService transferService;
 
+    @Autowired
+    AccountsService accountsService;
+
+    @Autowired
+    NotificationDispatcher notificationDispatcher;
+
     @Test
     public void transferTest() {
         Account account1 = new Account("Id-0001", new BigDecimal(1000));
@@ -46,4 +62,34 @@ public class AccountBalanceTransferServiceTest {
 
         System.out.println("---------   -------------------    ------------------------     ----------------    ---------------");
     }
+
+    @Test
+    public void rejectedTransferIsAnOutcomeWithNotifications() throws InterruptedException {
+        accountsService.createAccount(new Account("Id-Outcome-1", new BigDecimal(100)));
+        accountsService.createAccount(new Account("Id-Outcome-2", new BigDecimal(100)));
+
+        assertThat(transferService.transfer(transfer("Id-Outcome-1", "Id-Outcome-2", 500)))
+                .isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+        assertThat(transferService.transfer(transfer("Id-Outcome-1", "Id-Missing", 5)))
+                .isEqualTo(TransferStatus.UNKNOWN_ACCOUNT);
+        assertThat(transferService.transfer(transfer("Id-Outcome-1", "Id-Outcome-2", 40)))
+                .isEqualTo(TransferStatus.COMPLETED);
+        assertThat(accountsService.getAccount("Id-Outcome-1").getBalance()).isEqualByComparingTo("60");
+
+        notificationDispatcher.awaitIdle(5000);
+        verify(notificationService, times(2)).notifyAboutTransfer(any(Account.class), startsWith("Transfer of 500 "));
+        verify(notificationService, times(2)).notifyAboutTransfer(any(Account.class), startsWith("Transfer of 40 "));
+
+        //the exception-based API reports the same rejection
+        assertThatThrownBy(() -> transferService.transferThreadSafe(transfer("Id-Outcome-1", "Id-Outcome-2", 500)))
+                .isInstanceOf(InsufficientBalanceAmountException.class);
+    }
+
+    private static AccountBalanceTransferDto transfer(String senderAccountId, String receiverAccountId, int amount) {
+        AccountBalanceTransferDto dto = new AccountBalanceTransferDto();
+        dto.setSenderAccountId(senderAccountId);
+        dto.setReceiverAccountId(receiverAccountId);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
 }
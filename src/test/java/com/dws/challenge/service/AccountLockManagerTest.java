@@ -0,0 +1,122 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountBusyException;
+import com.dws.challenge.metrics.LockWaitStatistics;
+import com.dws.challenge.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountLockManagerTest {
+
+    private final AccountLockManager lockManager = lockManager(Duration.ofMillis(50));
+
+    private final Account first = new Account("Id-1", BigDecimal.TEN);
+
+    private final Account second = new Account("Id-2", BigDecimal.TEN);
+
+    private final Account third = new Account("Id-3", BigDecimal.TEN);
+
+    @Test
+    void accountsAreLockedOnceInGlobalOrder() {
+        List<Account> locked = lockManager.lockAll(List.of(first, third, second, first));
+        try {
+            assertThat(locked).containsExactly(third, second, first);
+            assertThat(((ReentrantLock) first.getLock()).getHoldCount()).isEqualTo(1);
+        } finally {
+            lockManager.unlockAll(locked);
+        }
+        assertThat(((ReentrantLock) first.getLock()).isLocked()).isFalse();
+        assertThat(((ReentrantLock) third.getLock()).isLocked()).isFalse();
+    }
+
+    @Test
+    void accountHeldPastTheTimeoutIsBusyAndNothingStaysLocked() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<?> holder = executor.submit(() -> {
+                second.getLock().lock();
+                try {
+                    held.countDown();
+                    release.await();
+                } finally {
+                    second.getLock().unlock();
+                }
+                return null;
+            });
+            held.await();
+
+            //third is taken first, then released again when second times out
+            assertThatThrownBy(() -> lockManager.lockAll(List.of(first, second, third)))
+                    .isInstanceOf(AccountBusyException.class)
+                    .hasMessage("Account Id-2 is busy, retry");
+            assertThatThrownBy(() -> lockManager.lockTransfer(third, second))
+                    .isInstanceOf(AccountBusyException.class);
+            assertThat(((ReentrantLock) third.getLock()).isLocked()).isFalse();
+
+            LockWaitStatistics.Entry entry = lockManager.getWaitStatistics().get("Id-2");
+            assertThat(entry.getWaits()).isEqualTo(2);
+            assertThat(entry.getTimeouts()).isEqualTo(2);
+            assertThat(entry.getMaxWaitMicros()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(40));
+            assertThat(lockManager.getWaitStatistics().top(10)).extracting(LockWaitStatistics.Entry::getAccountId)
+                    .containsExactly("Id-2");
+
+            release.countDown();
+            holder.get();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waiterGetsTheLockReleasedBeforeTheDeadline() throws Exception {
+        AccountLockManager patient = lockManager(Duration.ofSeconds(5));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch held = new CountDownLatch(1);
+        try {
+            Future<?> holder = executor.submit(() -> {
+                first.getLock().lock();
+                try {
+                    held.countDown();
+                    Thread.sleep(20);
+                } finally {
+                    first.getLock().unlock();
+                }
+                return null;
+            });
+            held.await();
+
+            patient.lockBoth(first, second);
+            patient.unlockBoth(first, second);
+            holder.get();
+
+            LockWaitStatistics.Entry entry = patient.getWaitStatistics().get("Id-1");
+            assertThat(entry.getWaits()).isEqualTo(1);
+            assertThat(entry.getTimeouts()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static AccountLockManager lockManager(Duration timeout) {
+        LockManagerProperties properties = new LockManagerProperties();
+        properties.setTimeout(timeout);
+        return new AccountLockManager(properties, new TransferMetrics(true, 64, 10, new SimpleMeterRegistry()));
+    }
+}
@@ -0,0 +1,144 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BalanceChangeDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceFeedTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BalanceFeed balanceFeed;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        balanceFeed.shutdown();
+    }
+
+    @Test
+    void subscriptionsAboveTheLimitAreRefused() {
+        BalanceFeedProperties properties = new BalanceFeedProperties();
+        properties.setMaxSubscribers(2);
+        balanceFeed = new BalanceFeed(properties, meterRegistry);
+        Account account = new Account("Id-1", BigDecimal.TEN);
+
+        assertThat(balanceFeed.subscribe(List.of(account))).isNotNull();
+        assertThat(balanceFeed.subscribe(List.of(account))).isNotNull();
+        assertThat(balanceFeed.subscribe(List.of(account))).isNull();
+        assertThat(balanceFeed.subscribers()).isEqualTo(2);
+        assertThat(meterRegistry.get("balance.feed.subscribers").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void slowSubscriberGetsOnlyTheLatestBalance() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<BigDecimal> received = new CopyOnWriteArrayList<>();
+        balanceFeed = feed(new BalanceFeedProperties(), () -> {
+            writing.countDown();
+            release.await();
+        }, received);
+        Account account = new Account("Id-1", BigDecimal.TEN);
+        balanceFeed.subscribe(List.of(account));
+        writing.await();
+
+        //the first balance is being written, the following ones replace each other in the buffer
+        for (int balance = 11; balance <= 14; balance++) {
+            account.setBalance(new BigDecimal(balance));
+            balanceFeed.changed(account);
+            Thread.sleep(20);
+        }
+        awaitCount("balance.feed.conflated", 1);
+        release.countDown();
+
+        for (int i = 0; i < 500 && received.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertThat(received).hasSize(2);
+        assertThat(received.get(0)).isEqualByComparingTo("10");
+        assertThat(received.get(1)).isEqualByComparingTo("14");
+    }
+
+    @Test
+    void stuckSubscriberIsDroppedAndTheOthersAreStillServed() throws Exception {
+        BalanceFeedProperties properties = new BalanceFeedProperties();
+        properties.setSenderThreads(1);
+        properties.setSendTimeout(Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+        List<BigDecimal> received = new CopyOnWriteArrayList<>();
+        Account stuck = new Account("Id-1", BigDecimal.ONE);
+        Account other = new Account("Id-2", BigDecimal.TEN);
+        balanceFeed = feed(properties, () -> {
+            //a container write which does not give up when interrupted
+            while (received.isEmpty()) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                    //keeps writing
+                }
+            }
+        }, received);
+        balanceFeed.subscribe(List.of(stuck));
+        awaitCount("balance.feed.dropped", 1);
+        assertThat(balanceFeed.subscribers()).isZero();
+
+        balanceFeed.subscribe(List.of(other));
+        for (int i = 0; i < 500 && received.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0)).isEqualByComparingTo("10");
+        release.countDown();
+    }
+
+    private interface Write {
+        void await() throws InterruptedException;
+    }
+
+    //the first write of the feed runs write before it is recorded
+    private BalanceFeed feed(BalanceFeedProperties properties, Write write, List<BigDecimal> received) {
+        CountDownLatch first = new CountDownLatch(1);
+        return new BalanceFeed(properties, meterRegistry) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                return new SseEmitter(timeoutMillis) {
+                    @Override
+                    public void send(SseEventBuilder builder) throws IOException {
+                        if (first.getCount() > 0) {
+                            first.countDown();
+                            try {
+                                write.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                        }
+                        builder.build().stream()
+                                .filter(data -> data.getData() instanceof BalanceChangeDto)
+                                .forEach(data -> received.add(((BalanceChangeDto) data.getData()).getBalance()));
+                    }
+                };
+            }
+        };
+    }
+
+    private void awaitCount(String counter, double count) throws InterruptedException {
+        for (int i = 0; i < 500 && meterRegistry.counter(counter).count() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(meterRegistry.counter(counter).count()).isGreaterThanOrEqualTo(count);
+    }
+}
@@ -0,0 +1,207 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.StripedAccount;
+import com.dws.challenge.dto.AccountBalanceTransferBatchDto;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.BatchTransferMode;
+import com.dws.challenge.dto.ReconciliationReportDto;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.StripedAccountProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BalanceSnapshotsTest {
+
+    private static final int ACCOUNTS = 50;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+    private final BalanceSnapshots snapshots = new BalanceSnapshots(repository, new NoOpTransferJournal());
+
+    private final StripedAccountProperties stripedAccounts = new StripedAccountProperties();
+
+    private final AccountsService accountsService = new AccountsService(repository, new NoOpTransferJournal(),
+            snapshots, stripedAccounts);
+
+    private final TransferAuditLog auditLog = new TransferAuditLog(1024, meterRegistry);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        auditLog.shutdown();
+    }
+
+    @Test
+    void totalIsInvariantWhileTransfersRun() throws Exception {
+        createAccounts();
+        AccountBalanceTransferService transferService = transferService(Optional.empty());
+
+        List<ReconciliationReportDto> reports = reconcileWhileTransferring(transferService, true);
+
+        assertThat(reports).isNotEmpty().allSatisfy(report -> {
+            assertThat(report.getAccounts()).isEqualTo(ACCOUNTS);
+            assertThat(report.getTotal()).isEqualByComparingTo(new BigDecimal(ACCOUNTS * 1000));
+            assertThat(report.isBalanced()).isTrue();
+        });
+        assertThat(reports.get(reports.size() - 1).getEpoch()).isEqualTo(reports.size() - 1);
+    }
+
+    @Test
+    void totalIsInvariantWithStripedAccounts() throws Exception {
+        stripedAccounts.setAccountIds(new HashSet<>(Arrays.asList("Id-0", "Id-1", "Id-2")));
+        createAccounts();
+        assertThat(accountsService.getAccount("Id-0")).isInstanceOf(StripedAccount.class);
+
+        List<ReconciliationReportDto> reports = reconcileWhileTransferring(transferService(Optional.empty()), true);
+
+        assertThat(reports).isNotEmpty().allSatisfy(report -> {
+            assertThat(report.getTotal()).isEqualByComparingTo(new BigDecimal(ACCOUNTS * 1000));
+            assertThat(report.isBalanced()).isTrue();
+        });
+    }
+
+    @Test
+    void totalIsInvariantWhileShardedTransfersRun() throws Exception {
+        createAccounts();
+        ShardedTransferEngine engine = new ShardedTransferEngine(4, new NoOpTransferJournal(), auditLog, snapshots,
+                new TransferLedger(true));
+        try {
+            List<ReconciliationReportDto> reports = reconcileWhileTransferring(transferService(Optional.of(engine)),
+                    false);
+
+            assertThat(reports).isNotEmpty().allSatisfy(report ->
+                    assertThat(report.getTotal()).isEqualByComparingTo(new BigDecimal(ACCOUNTS * 1000)));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void snapshotWaitsForChangesOfTheSealedEpochOnly() throws Exception {
+        createAccounts();
+        Account sender = accountsService.getAccount("Id-0");
+        Account receiver = accountsService.getAccount("Id-1");
+
+        //a transfer which has withdrawn but not deposited yet
+        long epoch = snapshots.enter();
+        snapshots.beforeChange(epoch, sender);
+        sender.withdraw(new BigDecimal(300));
+        CompletableFuture<ReconciliationReportDto> report = CompletableFuture.supplyAsync(snapshots::reconcile);
+        assertThatThrownBy(() -> report.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        //changes of the next epoch are not seen by the running snapshot
+        transferService(Optional.empty()).transferThreadSafe(dto("Id-2", "Id-3", 500));
+        snapshots.beforeChange(epoch, receiver);
+        receiver.deposit(new BigDecimal(300));
+        snapshots.exit(epoch);
+
+        assertThat(report.get(5, TimeUnit.SECONDS).isBalanced()).isTrue();
+        assertThat(snapshots.reconcile().getTotal()).isEqualByComparingTo(new BigDecimal(ACCOUNTS * 1000));
+    }
+
+    @Test
+    void createdAccountsAreExpected() {
+        createAccounts();
+        accountsService.createAccounts(Arrays.asList(new Account("Id-new", new BigDecimal(250)),
+                new Account("Id-0", new BigDecimal(999))), (e, index) -> { });
+
+        ReconciliationReportDto report = snapshots.reconcile();
+
+        assertThat(report.getAccounts()).isEqualTo(ACCOUNTS + 1);
+        assertThat(report.getExpectedTotal()).isEqualByComparingTo(new BigDecimal(ACCOUNTS * 1000 + 250));
+        assertThat(report.isBalanced()).isTrue();
+    }
+
+    //batches lock the accounts and are not combined with the sharded engine
+    private List<ReconciliationReportDto> reconcileWhileTransferring(AccountBalanceTransferService transferService,
+                                                                     boolean withBatches) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<?>[] transfers = new CompletableFuture<?>[6];
+        for (int t = 0; t < transfers.length; t++) {
+            boolean batches = withBatches && t == 0;
+            transfers[t] = CompletableFuture.runAsync(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    String sender = "Id-" + random.nextInt(ACCOUNTS);
+                    String receiver = "Id-" + random.nextInt(ACCOUNTS);
+                    int amount = 1 + random.nextInt(400);
+                    try {
+                        if (batches) {
+                            AccountBalanceTransferBatchDto batch = new AccountBalanceTransferBatchDto();
+                            batch.setMode(BatchTransferMode.BEST_EFFORT);
+                            batch.setTransfers(Arrays.asList(dto(sender, receiver, amount),
+                                    dto(receiver, sender, amount / 2)));
+                            transferService.transferBatchThreadSafe(batch);
+                        } else if (!sender.equals(receiver)) {
+                            transferService.transferThreadSafe(dto(sender, receiver, amount));
+                        }
+                    } catch (InsufficientBalanceAmountException ignored) {
+                        //rejections do not move money
+                    }
+                }
+            }, executor);
+        }
+
+        List<ReconciliationReportDto> reports = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < deadline) {
+            reports.add(snapshots.reconcile());
+        }
+        running.set(false);
+        CompletableFuture.allOf(transfers).get(10, TimeUnit.SECONDS);
+        return reports;
+    }
+
+    private AccountBalanceTransferService transferService(Optional<TransferEngine> engine) {
+        NotificationProperties properties = new NotificationProperties();
+        properties.setAsync(false);
+        TransferMetrics transferMetrics = new TransferMetrics(true, 64, 10, meterRegistry);
+        return new AccountBalanceTransferService(accountsService,
+                new NotificationDispatcher((account, description) -> { }, accountsService, properties, meterRegistry),
+                new BalanceFeed(new BalanceFeedProperties(), meterRegistry), new NoOpTransferJournal(), snapshots,
+                new TransferLedger(true), auditLog, transferMetrics,
+                new AccountLockManager(new LockManagerProperties(), transferMetrics), new AsyncTransferExecutor(false, 1),
+                engine, Optional.empty());
+    }
+
+    private void createAccounts() {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+    }
+
+    private static AccountBalanceTransferDto dto(String sender, String receiver, int amount) {
+        AccountBalanceTransferDto dto = new AccountBalanceTransferDto();
+        dto.setSenderAccountId(sender);
+        dto.setReceiverAccountId(receiver);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
+}
@@ -0,0 +1,138 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CoalescingTransferEngineTest {
+
+    private final TransferAuditLog auditLog = new TransferAuditLog(1024, new SimpleMeterRegistry());
+
+    private final TransferLedger transferLedger = new TransferLedger(true);
+
+    private CoalescingTransferEngine engine;
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        engine.shutdown();
+        auditLog.shutdown();
+    }
+
+    @Test
+    void legsAreValidatedInArrivalOrderAgainstRunningBalances() throws Exception {
+        engine = engine(256, Duration.ofMillis(200));
+        Account first = new Account("Id-0001", new BigDecimal(100));
+        Account second = new Account("Id-0002", new BigDecimal(100));
+
+        //one batch: the first leg needs more than the balance, the third is covered by the second
+        CompletableFuture<Void> rejected = engine.transferAsync(first, second, new BigDecimal(100));
+        CompletableFuture<Void> back = engine.transferAsync(second, first, new BigDecimal(50));
+        CompletableFuture<Void> covered = engine.transferAsync(first, second, new BigDecimal(120));
+
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(InsufficientBalanceAmountException.class)
+                .satisfies(e -> assertThat(e.getCause().getStackTrace()).isEmpty());
+        back.get(5, TimeUnit.SECONDS);
+        covered.get(5, TimeUnit.SECONDS);
+        assertThat(first.getBalance()).isEqualByComparingTo("30");
+        assertThat(second.getBalance()).isEqualByComparingTo("170");
+        assertThat(transferLedger.page("Id-0001", null, 10).getTransactions()).hasSize(2);
+    }
+
+    @Test
+    void pingPongBetweenPairsKeepsTheTotal() throws Exception {
+        engine = engine(64, Duration.ofNanos(200_000));
+        Account[] accounts = new Account[4];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account("Id-000" + i, new BigDecimal(1000));
+        }
+
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Account sender = accounts[i % accounts.length];
+            Account receiver = accounts[(i + 1 + (i / accounts.length) % 3) % accounts.length];
+            transfers.add(engine.transferAsync(sender, receiver, BigDecimal.valueOf(1 + i % 7)));
+        }
+        long completed = 0;
+        for (CompletableFuture<Void> transfer : transfers) {
+            try {
+                transfer.get(10, TimeUnit.SECONDS);
+                completed++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(InsufficientBalanceAmountException.class);
+            }
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts) {
+            total = total.add(account.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("4000");
+        assertThat(completed).isPositive();
+    }
+
+    @Test
+    void fullBatchIsAppliedWithoutWaitingForTheDelay() throws Exception {
+        engine = engine(2, Duration.ofHours(1));
+        Account first = new Account("Id-0001", new BigDecimal(100));
+        Account second = new Account("Id-0002", new BigDecimal(100));
+
+        CompletableFuture<Void> one = engine.transferAsync(first, second, BigDecimal.ONE);
+        CompletableFuture<Void> two = engine.transferAsync(second, first, BigDecimal.TEN);
+
+        CompletableFuture.allOf(one, two).get(5, TimeUnit.SECONDS);
+        assertThat(first.getBalance()).isEqualByComparingTo("109");
+        assertThat(second.getBalance()).isEqualByComparingTo("91");
+    }
+
+    @Test
+    void transfersRacingWithShutdownAllComplete() throws Exception {
+        engine = engine(16, Duration.ofMillis(1));
+        Account first = new Account("Id-0001", new BigDecimal(1_000_000));
+        Account second = new Account("Id-0002", new BigDecimal(1_000_000));
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        CompletableFuture<Void> submitter = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                results.add(engine.transferAsync(first, second, BigDecimal.ONE));
+            }
+        });
+        Thread.sleep(5);
+        engine.shutdown();
+        submitter.get(5, TimeUnit.SECONDS);
+
+        //none is left pending, whether it was applied or refused
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).exceptionally(e -> null)
+                .get(5, TimeUnit.SECONDS);
+        long applied = results.stream().filter(result -> !result.isCompletedExceptionally()).count();
+        assertThat(second.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(1_000_000 + applied));
+    }
+
+    private CoalescingTransferEngine engine(int maxBatchSize, Duration maxDelay) {
+        CoalescingProperties properties = new CoalescingProperties();
+        properties.setMaxBatchSize(maxBatchSize);
+        properties.setMaxDelay(maxDelay);
+        properties.setLanes(2);
+        return new CoalescingTransferEngine(properties, new NoOpTransferJournal(), auditLog,
+                new BalanceSnapshots(new AccountsRepositoryInMemory(), new NoOpTransferJournal()), transferLedger,
+                new AccountLockManager(new LockManagerProperties(),
+                        new TransferMetrics(true, 64, 10, new SimpleMeterRegistry())));
+    }
+}
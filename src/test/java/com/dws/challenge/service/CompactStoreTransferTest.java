@@ -0,0 +1,82 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.dto.AccountBalanceTransferBatchDto;
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.dws.challenge.dto.AccountBalanceTransferResultDto;
+import com.dws.challenge.dto.BatchTransferMode;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryCompact;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//transfers against accounts.store=compact, whose getAccount returns a new view of the slot on every call
+class CompactStoreTransferTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AccountsRepositoryCompact repository = new AccountsRepositoryCompact(2);
+
+    private final NoOpTransferJournal transferJournal = new NoOpTransferJournal();
+
+    private final AccountsService accountsService = new AccountsService(repository, transferJournal,
+            new BalanceSnapshots(repository, transferJournal));
+
+    private final TransferLedger transferLedger = new TransferLedger(true);
+
+    private final TransferAuditLog auditLog = new TransferAuditLog(1024, meterRegistry);
+
+    private final AccountBalanceTransferService transferService = transferService();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        auditLog.shutdown();
+    }
+
+    @Test
+    void batchLegsOfOneAccountSeeEachOther() {
+        accountsService.createAccount(new Account("Id-A", new BigDecimal(1000)));
+        accountsService.createAccount(new Account("Id-B", BigDecimal.ZERO));
+
+        AccountBalanceTransferBatchDto batch = new AccountBalanceTransferBatchDto();
+        batch.setMode(BatchTransferMode.BEST_EFFORT);
+        batch.setTransfers(List.of(transfer("Id-A", "Id-B", 800), transfer("Id-A", "Id-B", 800)));
+        List<AccountBalanceTransferResultDto> results = transferService.transferBatchThreadSafe(batch);
+
+        assertThat(results).extracting(AccountBalanceTransferResultDto::getStatus)
+                .containsExactly(TransferStatus.COMPLETED, TransferStatus.INSUFFICIENT_BALANCE);
+        assertThat(accountsService.getAccount("Id-A").getBalance()).isEqualByComparingTo("200");
+        assertThat(accountsService.getAccount("Id-B").getBalance()).isEqualByComparingTo("800");
+        assertThat(transferLedger.page("Id-A", null, 10).getTransactions()).hasSize(1);
+    }
+
+    private AccountBalanceTransferService transferService() {
+        NotificationProperties properties = new NotificationProperties();
+        properties.setAsync(false);
+        TransferMetrics transferMetrics = new TransferMetrics(true, 64, 10, meterRegistry);
+        return new AccountBalanceTransferService(accountsService,
+                new NotificationDispatcher((account, description) -> { }, accountsService, properties, meterRegistry),
+                new BalanceFeed(new BalanceFeedProperties(), meterRegistry), transferJournal,
+                accountsService.getBalanceSnapshots(), transferLedger, auditLog, transferMetrics,
+                new AccountLockManager(new LockManagerProperties(), transferMetrics), new AsyncTransferExecutor(false, 1),
+                Optional.empty(), Optional.empty());
+    }
+
+    private static AccountBalanceTransferDto transfer(String sender, String receiver, int amount) {
+        AccountBalanceTransferDto dto = new AccountBalanceTransferDto();
+        dto.setSenderAccountId(sender);
+        dto.setReceiverAccountId(receiver);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
+}
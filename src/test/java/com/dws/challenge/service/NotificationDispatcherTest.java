@@ -0,0 +1,158 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+    @TempDir
+    Path directory;
+
+    private final AccountsService accountsService = new AccountsService(repository, new NoOpTransferJournal(),
+            new BalanceSnapshots(repository, new NoOpTransferJournal()));
+
+    @Test
+    void failedDeliveryIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        NotificationProperties properties = properties(NotificationProperties.OverflowPolicy.BLOCK, 10);
+        NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("mail server is down");
+            }
+            delivered.add(description);
+        }, accountsService, properties, meterRegistry);
+
+        dispatcher.dispatch(new Account("Id-1"), "Transfer of 10 amount completed to Id-2");
+
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        assertThat(delivered).containsExactly("Transfer of 10 amount completed to Id-2");
+        assertThat(meterRegistry.counter("notifications.retried").count()).isEqualTo(2);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void oldestNotificationIsDroppedWhenQueueIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        NotificationProperties properties = properties(NotificationProperties.OverflowPolicy.DROP_OLDEST, 2);
+        NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(description);
+        }, accountsService, properties, meterRegistry);
+
+        Account account = new Account("Id-1");
+        dispatcher.dispatch(account, "first");
+        blocked.await();
+        dispatcher.dispatch(account, "second");
+        dispatcher.dispatch(account, "third");
+        dispatcher.dispatch(account, "fourth");
+        release.countDown();
+
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        assertThat(String.join("\n", delivered)).isEqualTo("first\nthird\nfourth");
+        assertThat(meterRegistry.counter("notifications.dropped").count()).isEqualTo(1);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void spilledNotificationsAreReplayedOnceTheQueueHasRoom() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        NotificationProperties properties = properties(NotificationProperties.OverflowPolicy.SPILL_TO_DISK, 2);
+        properties.setSpillFile(directory.resolve("spill.log").toString());
+        NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(description);
+        }, accountsService, properties, meterRegistry);
+
+        Account account = new Account("Id-1");
+        accountsService.createAccount(account);
+        dispatcher.dispatch(account, "first");
+        blocked.await();
+        List<String> expected = new ArrayList<>(List.of("first"));
+        for (int i = 0; i < 10; i++) {
+            expected.add("line\\" + i + "\nof " + i);
+            dispatcher.dispatch(account, expected.get(i + 1));
+        }
+        assertThat(meterRegistry.get("notifications.spilled").gauge().value()).isEqualTo(8);
+        release.countDown();
+
+        awaitDelivered(delivered, expected.size());
+        assertThat(String.join("\n", delivered)).isEqualTo(String.join("\n", expected));
+        assertThat(meterRegistry.get("notifications.spilled").gauge().value()).isZero();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void spillFileLargerThanTheQueueIsReplayedUnderBlockPolicy() throws Exception {
+        Path spillFile = directory.resolve("spill.log");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add("Id-1\tspilled " + i);
+        }
+        Files.write(spillFile, lines, StandardCharsets.UTF_8);
+        accountsService.createAccount(new Account("Id-1"));
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        NotificationProperties properties = properties(NotificationProperties.OverflowPolicy.BLOCK, 2);
+        properties.setSpillFile(spillFile.toString());
+        properties.setBatchSize(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) ->
+                delivered.add(description), accountsService, properties, meterRegistry);
+
+        awaitDelivered(delivered, lines.size());
+        dispatcher.shutdown();
+        assertThat(delivered).hasSize(10).startsWith("spilled 0").endsWith("spilled 9");
+        assertThat(meterRegistry.get("notifications.spilled").gauge().value()).isZero();
+        assertThat(spillFile).doesNotExist();
+        assertThat(directory.resolve("spill.log.replay")).doesNotExist();
+    }
+
+    private static void awaitDelivered(List<String> delivered, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static NotificationProperties properties(NotificationProperties.OverflowPolicy policy, int capacity) {
+        NotificationProperties properties = new NotificationProperties();
+        properties.setWorkers(1);
+        properties.setQueueCapacity(capacity);
+        properties.setOverflowPolicy(policy);
+        properties.setRetryBackoff(Duration.ofMillis(1));
+        return properties;
+    }
+}
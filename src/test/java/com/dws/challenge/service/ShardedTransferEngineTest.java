@@ -0,0 +1,141 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AtomicAccount;
+import com.dws.challenge.exception.InsufficientBalanceAmountException;
+import com.dws.challenge.journal.NoOpTransferJournal;
+import com.dws.challenge.ledger.TransferLedger;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedTransferEngineTest {
+
+    private final TransferAuditLog auditLog = new TransferAuditLog(1024, new SimpleMeterRegistry());
+
+    private final TransferLedger transferLedger = new TransferLedger(true);
+
+    private final ShardedTransferEngine engine = new ShardedTransferEngine(4, new NoOpTransferJournal(), auditLog,
+            new BalanceSnapshots(new AccountsRepositoryInMemory(), new NoOpTransferJournal()), transferLedger);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        engine.shutdown();
+        auditLog.shutdown();
+    }
+
+    @Test
+    void insufficientBalanceIsRejected() {
+        Account sender = new Account("Id-0001", new BigDecimal(100));
+        Account receiver = new Account("Id-0002", new BigDecimal(100));
+
+        //a rejection is an outcome, it costs no stack trace
+        assertThatThrownBy(() -> engine.transfer(sender, receiver, new BigDecimal(150)))
+                .isInstanceOf(InsufficientBalanceAmountException.class)
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+
+        assertThat(sender.getBalance()).isEqualByComparingTo("100");
+        assertThat(receiver.getBalance()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    void asyncTransferCompletesOnShards() throws Exception {
+        Account sender = new Account("Id-0001", new BigDecimal(100));
+        Account receiver = new Account("Id-0002", new BigDecimal(100));
+
+        engine.transferAsync(sender, receiver, new BigDecimal(40)).get(5, TimeUnit.SECONDS);
+        assertThat(engine.transferAsync(sender, receiver, new BigDecimal(80)))
+                .failsWithin(5, TimeUnit.SECONDS)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(InsufficientBalanceAmountException.class);
+
+        assertThat(sender.getBalance()).isEqualByComparingTo("60");
+        assertThat(receiver.getBalance()).isEqualByComparingTo("140");
+    }
+
+    @Test
+    void lockFreeAccountsAreNotChangedUnderTheirLock() throws Exception {
+        Account sender = new AtomicAccount("Id-0001", new BigDecimal(100));
+        Account receiver = new AtomicAccount("Id-0002", new BigDecimal(100));
+
+        //a batch holding the lock writes the balance it computed from the one it read
+        sender.getLock().lock();
+        CompletableFuture<Void> transfer;
+        try {
+            BigDecimal balance = sender.getBalance();
+            transfer = engine.transferAsync(sender, receiver, new BigDecimal(40));
+            Thread.sleep(100);
+            assertThat(transfer).isNotDone();
+            sender.setBalance(balance.add(BigDecimal.TEN));
+        } finally {
+            sender.getLock().unlock();
+        }
+        transfer.get(5, TimeUnit.SECONDS);
+
+        assertThat(sender.getBalance()).isEqualByComparingTo("70");
+        assertThat(receiver.getBalance()).isEqualByComparingTo("140");
+    }
+
+    @Test
+    void ledgerIsNotWrittenUnderTheLockOfABatch() throws Exception {
+        Account sender = new Account("Id-0001", new BigDecimal(100));
+        Account receiver = new Account("Id-0002", new BigDecimal(100));
+
+        //a batch holding the lock appends to the ledger of the account itself
+        receiver.getLock().lock();
+        CompletableFuture<Void> transfer;
+        try {
+            transfer = engine.transferAsync(sender, receiver, new BigDecimal(40));
+            Thread.sleep(100);
+            assertThat(transfer).isNotDone();
+            assertThat(transferLedger.page("Id-0002", null, 10).getTransactions()).isEmpty();
+        } finally {
+            receiver.getLock().unlock();
+        }
+        transfer.get(5, TimeUnit.SECONDS);
+
+        assertThat(transferLedger.page("Id-0001", null, 10).getTransactions()).hasSize(1);
+        assertThat(transferLedger.page("Id-0002", null, 10).getTransactions()).hasSize(1);
+    }
+
+    @Test
+    void concurrentTransfersKeepTotalAmount() throws Exception {
+        Account[] accounts = new Account[16];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account("Id-" + i, new BigDecimal(1000));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CompletableFuture<?>[] futures = new CompletableFuture[2000];
+        for (int i = 0; i < futures.length; i++) {
+            Account sender = accounts[i % accounts.length];
+            Account receiver = accounts[(i * 7 + 3) % accounts.length];
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    engine.transfer(sender, receiver, new BigDecimal(30));
+                } catch (InsufficientBalanceAmountException ignored) {
+                    //expected for drained accounts
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get();
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts) {
+            total = total.add(account.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("16000");
+    }
+}
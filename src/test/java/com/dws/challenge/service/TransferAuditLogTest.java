@@ -0,0 +1,48 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferAuditLogTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Account sender = new Account("Id-1", new BigDecimal(100));
+
+    private final Account receiver = new Account("Id-2", new BigDecimal(100));
+
+    @Test
+    void publishedEventsAreDrained() throws Exception {
+        TransferAuditLog auditLog = new TransferAuditLog(16, meterRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            auditLog.transferred(sender, receiver, BigDecimal.ONE);
+            auditLog.rejected(sender, receiver, BigDecimal.TEN, BigDecimal.ONE);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (auditLog.backlog() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(auditLog.backlog()).isZero();
+        auditLog.shutdown();
+    }
+
+    @Test
+    void eventsAreDroppedWhenRingIsFull() throws Exception {
+        TransferAuditLog auditLog = new TransferAuditLog(16, meterRegistry);
+        auditLog.shutdown();
+
+        for (int i = 0; i < 20; i++) {
+            auditLog.transferred(sender, receiver, BigDecimal.ONE);
+        }
+
+        assertThat(auditLog.backlog()).isEqualTo(16);
+        assertThat(meterRegistry.counter("transfer.audit.dropped").count()).isEqualTo(4);
+    }
+}
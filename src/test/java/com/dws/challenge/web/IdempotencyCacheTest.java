@@ -0,0 +1,131 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void duplicateGetsStoredResponse() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+
+        cache.execute("key-1", "request", this::execute);
+        ResponseEntity<Object> response = cache.execute("key-1", "request", this::execute);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(executions).hasValue(1);
+        assertThat(meterRegistry.counter("idempotency.hits").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("idempotency.misses").count()).isEqualTo(1);
+        assertThatThrownBy(() -> cache.execute("key-1", "other request", this::execute))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void unsuccessfulResponseIsNotStored() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+
+        ResponseEntity<Object> response = cache.execute("key-1", "request", () -> {
+            executions.incrementAndGet();
+            return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+        });
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        assertThat(cache.execute("key-1", "request", this::execute).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(executions).hasValue(2);
+        assertThat(cache.usedBytes()).isEqualTo(IdempotencyCache.ENTRY_OVERHEAD_BYTES + 2L * "key-1".length());
+    }
+
+    @Test
+    void expiredAndOverBudgetEntriesAreEvicted() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), DataSize.ofBytes(3 * IdempotencyCache.ENTRY_OVERHEAD_BYTES));
+
+        cache.execute("key-1", "request", this::execute);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        cache.execute("key-1", "request", this::execute);
+        assertThat(executions).hasValue(2);
+
+        for (int i = 2; i <= 5; i++) {
+            cache.execute("key-" + i, "request", this::execute);
+        }
+        assertThat(cache.usedBytes()).isLessThanOrEqualTo(3 * IdempotencyCache.ENTRY_OVERHEAD_BYTES);
+        cache.execute("key-5", "request", this::execute);
+        cache.execute("key-1", "request", this::execute);
+        assertThat(executions).hasValue(7);
+        assertThat(meterRegistry.counter("idempotency.evictions").count()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void failedExecutionReleasesKey() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+
+        assertThatThrownBy(() -> cache.execute("key-1", "request", () -> {
+            throw new IllegalStateException("rejected");
+        })).isInstanceOf(IllegalStateException.class);
+        cache.execute("key-1", "request", this::execute);
+
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void concurrentDuplicateWaitsForFirstExecution() throws Exception {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<ResponseEntity<Object>> first = CompletableFuture.supplyAsync(() ->
+                cache.execute("key-1", "request", () -> {
+                    started.countDown();
+                    await(release);
+                    return execute();
+                }));
+        started.await();
+        CompletableFuture<ResponseEntity<Object>> duplicate = CompletableFuture.supplyAsync(() ->
+                cache.execute("key-1", "request", this::execute));
+        Thread.sleep(50);
+        assertThat(duplicate).isNotDone();
+
+        release.countDown();
+        assertThat(duplicate.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+        assertThat(executions).hasValue(1);
+    }
+
+    private IdempotencyCache cache(Duration ttl, DataSize maxMemory) {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setTtl(ttl);
+        properties.setMaxMemory(maxMemory);
+        return new IdempotencyCache(properties, meterRegistry, now::get);
+    }
+
+    private ResponseEntity<Object> execute() {
+        executions.incrementAndGet();
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.dws.challenge.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void hotAccountIsShedWhenItsBucketIsEmptyWhileOthersPass() {
+        TransferAdmission admission = admission(properties(10, 5, 1000, 1000, 100, 100));
+
+        for (int i = 0; i < 5; i++) {
+            admission.admit("Id-" + i, "Merchant").release();
+        }
+        TransferAdmission.Permit shed = admission.admit("Id-9", "Merchant");
+        assertThat(shed.isAdmitted()).isFalse();
+        assertThat(shed.getRetryAfterSeconds()).isEqualTo(1);
+        assertThat(admission.admit("Id-9", "Id-10").isAdmitted()).isTrue();
+
+        //one token every 100ms
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(admission.admit("Id-9", "Merchant").isAdmitted()).isTrue();
+        assertThat(admission.admit("Id-9", "Merchant").isAdmitted()).isFalse();
+
+        assertThat(meterRegistry.counter("transfer.admission.shed", "reason", "account_rate").count()).isEqualTo(2);
+        assertThat(admission.topShedAccounts(10)).extracting(TransferAdmission.ShedAccount::getAccountId)
+                .containsExactly("Merchant");
+        assertThat(admission.topShedAccounts(10).get(0).getShed()).isEqualTo(2);
+    }
+
+    @Test
+    void transfersInFlightOfOneAccountAreCapped() {
+        TransferAdmission admission = admission(properties(1000, 1000, 1000, 1000, 2, 100));
+
+        TransferAdmission.Permit first = admission.admit("Id-1", "Merchant");
+        TransferAdmission.Permit second = admission.admit("Id-2", "Merchant");
+        assertThat(admission.admit("Id-3", "Merchant").isAdmitted()).isFalse();
+        //the refused transfer gave back the slot it took on Id-3
+        assertThat(admission.admit("Id-3", "Id-4").isAdmitted()).isTrue();
+
+        first.release();
+        assertThat(admission.admit("Id-3", "Merchant").isAdmitted()).isTrue();
+        second.release();
+        assertThat(meterRegistry.counter("transfer.admission.shed", "reason", "account_in_flight").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void globalBucketLimitsAllAccountsAndRefundsAccountTokens() {
+        TransferAdmission admission = admission(properties(1, 2, 10, 2, 100, 100));
+
+        assertThat(admission.admit("Id-1", "Id-2").isAdmitted()).isTrue();
+        assertThat(admission.admit("Id-3", "Id-4").isAdmitted()).isTrue();
+        TransferAdmission.Permit shed = admission.admit("Id-5", "Id-6");
+        assertThat(shed.isAdmitted()).isFalse();
+        assertThat(shed.getRetryAfterSeconds()).isEqualTo(1);
+        assertThat(meterRegistry.counter("transfer.admission.shed", "reason", "global_rate").count()).isEqualTo(1);
+
+        //the global bucket refilled, Id-5 and Id-6 still have both tokens as the shed transfer gave them back
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(admission.admit("Id-5", "Id-6").isAdmitted()).isTrue();
+        assertThat(admission.admit("Id-5", "Id-6").isAdmitted()).isTrue();
+    }
+
+    @Test
+    void idleAccountsAreForgottenAboveTheLimit() {
+        TransferAdmission admission = admission(properties(10, 1, 1000, 1000, 100, 4));
+
+        TransferAdmission.Permit busy = admission.admit("Id-1", "Id-2");
+        admission.admit("Id-3", "Id-4").release();
+        assertThat(admission.trackedAccounts()).isEqualTo(4);
+
+        //Id-3 and Id-4 are idle once their buckets are full again, Id-1 and Id-2 still have a transfer in flight
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        admission.admit("Id-5", "Id-6").release();
+        assertThat(admission.trackedAccounts()).isEqualTo(4);
+        assertThat(admission.admit("Id-1", "Id-7").isAdmitted()).isTrue();
+        assertThat(meterRegistry.counter("transfer.admission.evicted").count()).isEqualTo(2);
+        busy.release();
+    }
+
+    @Test
+    void everyTransferIsAdmittedWhenDisabled() {
+        AdmissionProperties properties = properties(1, 1, 1, 1, 1, 1);
+        properties.setEnabled(false);
+        TransferAdmission admission = admission(properties);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(admission.admit("Id-1", "Id-2").isAdmitted()).isTrue();
+        }
+        assertThat(admission.trackedAccounts()).isZero();
+    }
+
+    private TransferAdmission admission(AdmissionProperties properties) {
+        return new TransferAdmission(properties, meterRegistry, now::get);
+    }
+
+    private static AdmissionProperties properties(int accountRate, int accountBurst, int globalRate, int globalBurst,
+                                                  int maxInFlight, int maxTrackedAccounts) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setEnabled(true);
+        properties.setAccountRate(accountRate);
+        properties.setAccountBurst(accountBurst);
+        properties.setGlobalRate(globalRate);
+        properties.setGlobalBurst(globalBurst);
+        properties.setMaxInFlightPerAccount(maxInFlight);
+        properties.setMaxTrackedAccounts(maxTrackedAccounts);
+        return properties;
+    }
+}
@@ -0,0 +1,94 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.dto.AccountBalanceTransferDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferRequestConverterTest {
+
+    private final TransferRequestConverter converter = new TransferRequestConverter(new ObjectMapper());
+
+    private AccountBalanceTransferDto read(String json) throws IOException {
+        return converter.read(AccountBalanceTransferDto.class,
+                new MockHttpInputMessage(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private AccountBalanceTransferDto parse(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return converter.parse(bytes, bytes.length);
+    }
+
+    @Test
+    void flatTransferIsParsedWithInternedAccountIds() throws IOException {
+        String json = " {\"senderAccountId\" : \"Id-1\",\n\"receiverAccountId\":\"Id-2\", \"amount\":-12.50} ";
+        AccountBalanceTransferDto first = parse(json);
+        AccountBalanceTransferDto second = read(json);
+
+        assertThat(first.getSenderAccountId()).isEqualTo("Id-1");
+        assertThat(first.getReceiverAccountId()).isEqualTo("Id-2");
+        assertThat(first.getAmount()).isEqualTo(new BigDecimal("-12.50"));
+        assertThat(second).isEqualTo(first);
+        assertThat(second.getSenderAccountId()).isSameAs(first.getSenderAccountId());
+        assertThat(second.getReceiverAccountId()).isSameAs(first.getReceiverAccountId());
+    }
+
+    @Test
+    void otherShapesAreReadByJackson() throws IOException {
+        String[] jsons = {
+                "{\"senderAccountId\":\"Id-\\u0031\",\"receiverAccountId\":\"Id-2\",\"amount\":1}",
+                "{\"senderAccountId\":\"Id-1\",\"receiverAccountId\":\"Id-2\",\"amount\":1e1}",
+                "{\"senderAccountId\":\"Id-1\",\"receiverAccountId\":\"Id-2\",\"amount\":\"1\"}",
+                "{\"senderAccountId\":\"Id-1\",\"receiverAccountId\":\"Id-2\",\"amount\":12345678901234567890.1}",
+                "{\"senderAccountId\":\"Id-1\",\"receiverAccountId\":null,\"amount\":1}"
+        };
+        String[] amounts = {"1", "10", "1", "12345678901234567890.1", "1"};
+        for (int i = 0; i < jsons.length; i++) {
+            assertThat(parse(jsons[i])).as(jsons[i]).isNull();
+            AccountBalanceTransferDto transfer = read(jsons[i]);
+            assertThat(transfer.getSenderAccountId()).isEqualTo("Id-1");
+            assertThat(transfer.getAmount()).isEqualByComparingTo(amounts[i]);
+        }
+        assertThat(read("{\"senderAccountId\":\"Id-€\",\"receiverAccountId\":\"Id-2\",\"amount\":0}")
+                .getSenderAccountId()).isEqualTo("Id-€");
+    }
+
+    @Test
+    void malformedBodyIsNotReadable() {
+        assertThatThrownBy(() -> read("{\"senderAccountId\":\"Id-1\",\"amount\":01}"))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+        assertThatThrownBy(() -> read("{\"senderAccountId\":\"Id-1\","))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+    }
+
+    @Test
+    void largeBodyGrowsTheBuffer() throws IOException {
+        String accountId = "Id-" + "x".repeat(TransferRequestConverter.INITIAL_BUFFER_SIZE * 3);
+        AccountBalanceTransferDto transfer = read(
+                "{\"senderAccountId\":\"" + accountId + "\",\"receiverAccountId\":\"Id-2\",\"amount\":3}");
+
+        assertThat(transfer.getSenderAccountId()).isEqualTo(accountId);
+        assertThat(transfer.getAmount()).isEqualTo(new BigDecimal(3));
+    }
+
+    @Test
+    void writtenTransferIsReadBack() throws IOException {
+        AccountBalanceTransferDto transfer = parse(
+                "{\"senderAccountId\":\"Id-1\",\"receiverAccountId\":\"Id-2\",\"amount\":7.25}");
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(transfer, MediaType.APPLICATION_JSON, output);
+
+        assertThat(output.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(read(output.getBodyAsString(StandardCharsets.UTF_8))).isEqualTo(transfer);
+    }
+}
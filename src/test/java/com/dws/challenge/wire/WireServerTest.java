@@ -0,0 +1,94 @@
+package com.dws.challenge.wire;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"wire.enabled=true", "wire.port=0", "wire.io-threads=2"})
+class WireServerTest {
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @Autowired
+    private WireServer wireServer;
+
+    @BeforeEach
+    void clearAccounts() {
+        accountsService.clearAccounts();
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        try (WireClient client = new WireClient("localhost", wireServer.getPort())) {
+            client.createAccount("Id-1", new BigDecimal("100.00"));
+            client.createAccount("Id-2", BigDecimal.ZERO);
+            for (int i = 0; i < 400; i++) {
+                client.transfer("Id-1", "Id-2", new BigDecimal("0.25"));
+            }
+            long balance = client.getBalance("Id-2");
+
+            //pipelined transfers run concurrently, whichever comes last would empty the sender,
+            //which Account.withdraw does not allow
+            int rejected = 0;
+            for (long correlationId = 0; correlationId < balance; correlationId++) {
+                WireResponse response = client.receive();
+                assertThat(response.getCorrelationId()).isEqualTo(correlationId);
+                assertThat(response.getStatus()).as("request %d", correlationId)
+                        .isIn(WireStatus.OK, WireStatus.INSUFFICIENT_BALANCE);
+                if (response.getStatus() == WireStatus.INSUFFICIENT_BALANCE) {
+                    rejected++;
+                }
+            }
+            assertThat(rejected).isEqualTo(1);
+            WireResponse response = client.receive();
+            assertThat(response.getCorrelationId()).isEqualTo(balance);
+            assertThat(response.getBalance()).isEqualByComparingTo("99.75");
+        }
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("0.25");
+    }
+
+    @Test
+    void rejectedRequestsGetTheirStatus() throws IOException {
+        accountsService.createAccount(new Account("Id-1", BigDecimal.TEN));
+        try (WireClient client = new WireClient("localhost", wireServer.getPort())) {
+            client.createAccount("Id-1", BigDecimal.ONE);
+            client.createAccount("Id-2", new BigDecimal(-1));
+            client.transfer("Id-1", "Id-3", BigDecimal.ONE);
+            client.transfer("Id-1", "Id-1", new BigDecimal(-1));
+            client.getBalance("Id-3");
+
+            assertThat(client.receive().getStatus()).isEqualTo(WireStatus.DUPLICATE_ACCOUNT);
+            assertThat(client.receive().getStatus()).isEqualTo(WireStatus.INVALID_REQUEST);
+            assertThat(client.receive().getStatus()).isEqualTo(WireStatus.UNKNOWN_ACCOUNT);
+            assertThat(client.receive().getStatus()).isEqualTo(WireStatus.INVALID_REQUEST);
+            assertThat(client.receive().getStatus()).isEqualTo(WireStatus.UNKNOWN_ACCOUNT);
+        }
+        assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void oversizedFrameClosesTheConnection() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", wireServer.getPort()))) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1 << 20));
+
+            assertThat(channel.read(ByteBuffer.allocate(16))).isEqualTo(-1);
+        }
+    }
+}